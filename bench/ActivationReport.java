@@ -0,0 +1,107 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Accuracy of each activation on the training loop Runner uses. For each one a 40x17x10
+ * network is trained from the same starting weights for several passes over a synthetic price file and then predicts every
+ * week of the file. The report gives the largest difference of the activation from the exact
+ * sigmoid, the time of a training pass, and the mean percent error of the predicted prices
+ * from Runner.calculatePercError.
+ *
+ * Run with: java -cp bin:bench ActivationReport
+ *
+ */
+public class ActivationReport
+{
+	private static final String[] ACTIVATIONS = {"sigmoid-pow", "sigmoid", "table-1e-3", "table-1e-6", "tanh", "relu", "leaky-relu"};
+
+	//Number of weeks in the synthetic price file and training passes over it
+	private static final int WEEKS = 520;
+	private static final int EPOCHS = 30;
+
+	public static void main(String args[]) throws IOException
+	{
+		Runner shape = BenchmarkData.runner("40x17x10");
+		File prices = File.createTempFile("prices", ".csv");
+		try
+		{
+			BenchmarkData.writePrices(prices, shape, WEEKS);
+			//Every network starts from the same weights so only the activation differs
+			Network initial = new Network(shape);
+			System.out.println("activation          max |f - sigmoid|   ms per pass   mean % error");
+			for(String name : ACTIVATIONS)
+			{
+				Activation a = ActivationWorkload.activation(name);
+				Runner r = BenchmarkData.runner("40x17x10");
+				r.setDataBounds(BenchmarkData.DATA_MAX, BenchmarkData.DATA_MIN);
+				r.setActivations(a, a);
+				Network n = new Network(r);
+				System.arraycopy(initial.hiConnectionWeights, 0, n.hiConnectionWeights, 0, n.hiConnectionWeights.length);
+				System.arraycopy(initial.ohConnectionWeights, 0, n.ohConnectionWeights, 0, n.ohConnectionWeights.length);
+
+				//The first pass warms up the JIT and is not timed
+				Runner.train(r, n, prices);
+				long start = System.nanoTime();
+				for(int e=1; e<EPOCHS; e++)
+				{
+					Runner.train(r, n, prices);
+				}
+				double millis = (System.nanoTime() - start)/1e6/(EPOCHS - 1);
+
+				String distance = "-";
+				if(name.startsWith("sigmoid") || name.startsWith("table"))
+				{
+					distance = String.format("%.2e", maxDistance(a));
+				}
+				System.out.printf("%-19s %17s %13.2f %14.3f%n", name, distance, millis, meanPercError(r, n, prices));
+			}
+		}
+		finally
+		{
+			prices.delete();
+		}
+	}
+
+	/**
+	 * Largest difference of the activation from the exact sigmoid between -20 and 20
+	 */
+	private static double maxDistance(Activation a)
+	{
+		double max = 0;
+		for(double x=-20; x<=20; x+=1e-4)
+		{
+			max = Math.max(max, Math.abs(a.apply(x) - Activation.SIGMOID.apply(x)));
+		}
+		return max;
+	}
+
+	/**
+	 * Mean percent error of the predicted prices of every week in the file
+	 */
+	private static double meanPercError(Runner r, Network n, File prices) throws IOException
+	{
+		PriceLoader loader = new PriceLoader(prices, r.getNumInputs(), r.getNumOutputs());
+		double[][] window = new double[1][];
+		double sum = 0;
+		long count = 0;
+		try
+		{
+			while(loader.nextWeek())
+			{
+				window[0] = n.normalizeValues(loader.getInputs(), r.getDataMax(), r.getDataMin());
+				double[] predicted = n.denormalizeValues(n.predict(window)[0], r.getDataMax(), r.getDataMin());
+				double[] actuals = loader.getActuals();
+				for(int i=0; i<actuals.length; i++)
+				{
+					sum += Runner.calculatePercError(actuals[i], predicted[i]);
+					count++;
+				}
+			}
+		}
+		finally
+		{
+			loader.close();
+		}
+		return sum/count;
+	}
+}
@@ -0,0 +1,93 @@
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * Training a network on one weekly window with each activation in the hidden and output layers.
+ * The operation name is the activation, and "sigmoid-pow" is the Math.pow sigmoid the network
+ * used before activations could be chosen.
+ *
+ */
+public class ActivationWorkload implements Workload
+{
+	private Runner runner;
+	private double[] in;
+	private double[] actuals;
+
+	public void setup(String layers)
+	{
+		runner = BenchmarkData.runner(layers);
+		in = BenchmarkData.randomValues(runner.getNumInputs());
+		actuals = BenchmarkData.randomValues(runner.getNumOutputs());
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		Activation a = activation(name);
+		runner.setActivations(a, a);
+		final Network network = new Network(runner);
+		network.setActuals(actuals);
+		return () ->
+		{
+			network.setInputs(in);
+			network.feedForward();
+			network.calculateError();
+			network.updateWeights();
+			return network;
+		};
+	}
+
+	/**
+	 * Looks up an activation by the name the benchmarks use for it
+	 * @param name
+	 * @return the activation
+	 */
+	public static Activation activation(String name)
+	{
+		switch(name)
+		{
+			case "sigmoid-pow":
+				return new PowSigmoid();
+			case "sigmoid":
+				return Activation.SIGMOID;
+			case "table-1e-3":
+				return Activation.tableSigmoid(1e-3);
+			case "table-1e-6":
+				return Activation.tableSigmoid(1e-6);
+			case "tanh":
+				return Activation.TANH;
+			case "relu":
+				return Activation.RELU;
+			case "leaky-relu":
+				return Activation.leakyRelu(0.01);
+			default:
+				throw new IllegalArgumentException(name);
+		}
+	}
+
+	/**
+	 * The sigmoid as the network first computed it, with Math.pow
+	 */
+	private static class PowSigmoid extends Activation
+	{
+		public double apply(double sum)
+		{
+			return 1.0/(1.0+(Math.pow(Math.E, -(sum))));
+		}
+
+		public double derivative(double out)
+		{
+			return out*(1-out);
+		}
+
+		public int getCode()
+		{
+			return SIGMOID_CODE;
+		}
+
+		public String toString()
+		{
+			return "sigmoid (Math.pow)";
+		}
+	}
+}
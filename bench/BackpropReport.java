@@ -0,0 +1,137 @@
+/**
+ * Time to pass the errors of a wide layer back to the layer to its left, one sample at a time,
+ * for square layers of growing width. The hidden errors are the product of the transposed
+ * weight matrix and the layer's errors, done three ways:
+ *
+ *   columns      for each neuron to the left, walk down its column of the matrix, a stride of
+ *                a whole row between weights; the order the neurons used to read the weights in
+ *   rows         what DenseLayer.backPropagate does: add up the rows of the matrix scaled by
+ *                their errors, four rows at a time, reading the weights in order
+ *   transposed   dot products with the rows of a transposed copy of the matrix, also in order
+ *
+ * The transposed copy must be changed with the weights after every sample, so the report also
+ * times that extra update. Times are in microseconds per sample, with the weights read per
+ * nanosecond in GB/s.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -Xmx2g -cp target/classes:bench BackpropReport
+ *
+ */
+public class BackpropReport
+{
+	//Widths of the square layers (neurons, and inputs of each neuron)
+	private static final int[] WIDTHS = {512, 1024, 2048, 4096, 6144};
+
+	//Time each method runs before it is measured, so it is compiled, and the least time and
+	//number of samples each measurement runs for
+	private static final long WARMUP_NANOS = 200000000L;
+	private static final long MEASURE_NANOS = 500000000L;
+	private static final int MIN_SAMPLES = 5;
+
+	private static final String[] METHODS = {"columns", "rows", "transposed", "transposed update"};
+
+	public static void main(String args[])
+	{
+		System.out.println("Vector kernels " + Kernels.DEFAULT + ", tiles of Gemm: " + Gemm.DEFAULT);
+		System.out.printf("%-8s", "width");
+		for(String method : METHODS)
+		{
+			System.out.printf(" %19s %6s", method + " us", "GB/s");
+		}
+		System.out.println();
+		for(int width : WIDTHS)
+		{
+			double[] weights = BenchmarkData.randomValues(width*width);
+			double[] transposed = new double[weights.length];
+			for(int i=0; i<width; i++)
+			{
+				for(int j=0; j<width; j++)
+				{
+					transposed[j*width + i] = weights[i*width + j];
+				}
+			}
+			double[] errors = BenchmarkData.randomValues(width + 1);
+			double[] in = BenchmarkData.randomValues(width + 2);
+			double[] prevErrors = new double[width];
+			double[] check = new double[width];
+
+			System.out.printf("%-8d", width);
+			double bytes = 8.0*width*width;
+			for(int m=0; m<METHODS.length; m++)
+			{
+				long warmup = System.nanoTime();
+				while(System.nanoTime() - warmup < WARMUP_NANOS)
+				{
+					run(m, weights, transposed, width, errors, in, prevErrors);
+				}
+				int samples = 0;
+				long start = System.nanoTime();
+				long elapsed;
+				do
+				{
+					run(m, weights, transposed, width, errors, in, prevErrors);
+					samples++;
+					elapsed = System.nanoTime() - start;
+				}
+				while(elapsed < MEASURE_NANOS || samples < MIN_SAMPLES);
+				double nanos = (double) elapsed/samples;
+				System.out.printf(" %19.1f %6.2f", nanos/1e3, bytes/nanos);
+				if(m == 0)
+				{
+					System.arraycopy(prevErrors, 0, check, 0, width);
+				}
+				else if(m < 3 && !close(check, prevErrors))
+				{
+					throw new IllegalStateException(METHODS[m] + " gives different errors");
+				}
+			}
+			System.out.println();
+		}
+	}
+
+	private static void run(int method, double[] weights, double[] transposed, int width, double[] errors, double[] in, double[] prevErrors)
+	{
+		Kernels kernels = Kernels.DEFAULT;
+		switch(method)
+		{
+			case 0:
+				for(int j=0; j<width; j++)
+				{
+					double sum = 0;
+					for(int i=0; i<width; i++)
+					{
+						sum += errors[i]*weights[i*width + j];
+					}
+					prevErrors[j] = sum;
+				}
+				break;
+			case 1:
+				Gemm.DEFAULT.multiplyTransposed(kernels, weights, width, width, errors, 1, prevErrors);
+				break;
+			case 2:
+				for(int j=0; j<width; j++)
+				{
+					prevErrors[j] = kernels.dot(transposed, j*width, errors, 0, width);
+				}
+				break;
+			default:
+				//Training changes weight (i, j) by rate*errors[i]*in[j], which is row j of the copy
+				for(int j=0; j<width; j++)
+				{
+					kernels.axpy(1e-9*in[j], errors, 0, transposed, j*width, width);
+				}
+				break;
+		}
+	}
+
+	private static boolean close(double[] a, double[] b)
+	{
+		for(int j=0; j<a.length; j++)
+		{
+			if(Math.abs(a[j] - b[j]) > 1e-9*Math.max(1, Math.abs(a[j])))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
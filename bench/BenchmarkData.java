@@ -0,0 +1,90 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Shared setup for the benchmarks: network shapes, random samples and synthetic price files.
+ *
+ */
+public class BenchmarkData
+{
+	//Every benchmark uses its own generator so the data is the same between runs
+	private static final long SEED = 123456789;
+
+	//Bounds the prices are normalized with, the same as Runner's
+	public static final double DATA_MAX = 348.48;
+	public static final double DATA_MIN = 8.92;
+
+	/**
+	 * Creates the specifications of a network from a shape such as 40x17x10 or 40x32x16x10
+	 * @param layers inputs, each hidden layer and outputs separated by x
+	 * @return the specifications
+	 */
+	public static Runner runner(String layers)
+	{
+		String[] sizes = layers.split("x");
+		int[] hidden = new int[sizes.length - 2];
+		for(int l=0; l<hidden.length; l++)
+		{
+			hidden[l] = Integer.parseInt(sizes[l+1]);
+		}
+		return new Runner(Integer.parseInt(sizes[0]), hidden, Integer.parseInt(sizes[sizes.length-1]));
+	}
+
+	/**
+	 * Generates values between 0 and 1 like the normalized inputs of the network
+	 * @param length
+	 * @return values
+	 */
+	public static double[] randomValues(int length)
+	{
+		return randomValues(new Random(SEED + length), length, 0, 1);
+	}
+
+	/**
+	 * Writes a price file in the layout Runner trains on: 4 lines of inputs for each week
+	 * followed by a line of actuals. Prices follow a random walk between the data bounds.
+	 * @param file where the prices are written
+	 * @param r the specifications of the network
+	 * @param weeks number of weeks in the file
+	 * @throws IOException
+	 */
+	public static void writePrices(File file, Runner r, int weeks) throws IOException
+	{
+		Random random = new Random(SEED);
+		int perDay = r.getNumInputs()/4;
+		double[] prices = randomValues(random, Math.max(perDay, r.getNumOutputs()), 10, 300);
+		PrintWriter out = new PrintWriter(file);
+		try
+		{
+			for(int w=0; w<weeks; w++)
+			{
+				for(int day=0; day<5; day++)
+				{
+					int count = day < 4 ? perDay : r.getNumOutputs();
+					for(int i=0; i<count; i++)
+					{
+						prices[i] = Math.min(340, Math.max(10, prices[i]*(1 + (random.nextGaussian()*0.01))));
+						out.printf("%.2f,", prices[i]);
+					}
+					out.println();
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static double[] randomValues(Random random, int length, double min, double max)
+	{
+		double[] values = new double[length];
+		for(int i=0; i<length; i++)
+		{
+			values[i] = min + ((max-min)*random.nextDouble());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,240 @@
+import java.util.Vector;
+
+/**
+ * Measures training throughput in samples per second of the original neuron object graph
+ * against the flat array layer engine behind Network. Each sample is one pass of
+ * setInputs, feedForward, calculateError and updateWeights, or one row of trainBatch
+ * for the batch column.
+ *
+ * Run with: java -cp bin:bench EngineBenchmark
+ *
+ */
+public class EngineBenchmark
+{
+	//Layer sizes (inputs, hidden, outputs) that are measured
+	private static final int[][] SIZES = {{40, 17, 10}, {1000, 500, 100}};
+
+	//How long each measurement runs after warming up
+	private static final long WARMUP_NANOS = 2000000000L;
+	private static final long MEASURE_NANOS = 3000000000L;
+
+	//Number of samples in each trainBatch call
+	private static final int BATCH_SIZE = 64;
+
+	public static void main(String args[])
+	{
+		System.out.println("inputs/hidden/outputs   graph samples/sec   engine samples/sec   speedup   batch(" + BATCH_SIZE + ") samples/sec");
+		for(int s=0; s<SIZES.length; s++)
+		{
+			Runner r = new Runner(SIZES[s][0], SIZES[s][1], SIZES[s][2]);
+			double[] in = randomValues(r.getNumInputs());
+			double[] actuals = randomValues(r.getNumOutputs());
+
+			NeuronGraph graph = new NeuronGraph(r);
+			run(graph, in, actuals, WARMUP_NANOS);
+			double before = run(graph, in, actuals, MEASURE_NANOS);
+
+			Network n = new Network(r);
+			run(n, in, actuals, WARMUP_NANOS);
+			double after = run(n, in, actuals, MEASURE_NANOS);
+
+			double[][] batchIn = new double[BATCH_SIZE][];
+			double[][] batchActuals = new double[BATCH_SIZE][];
+			for(int b=0; b<BATCH_SIZE; b++)
+			{
+				batchIn[b] = randomValues(r.getNumInputs());
+				batchActuals[b] = randomValues(r.getNumOutputs());
+			}
+			runBatch(n, batchIn, batchActuals, WARMUP_NANOS);
+			double batch = runBatch(n, batchIn, batchActuals, MEASURE_NANOS);
+
+			System.out.printf("%-23s %19.0f %20.0f %9.1fx %23.0f%n", SIZES[s][0] + "/" + SIZES[s][1] + "/" + SIZES[s][2],
+					before, after, after/before, batch);
+		}
+	}
+
+	/**
+	 * Trains the network on the same sample for the given time
+	 * @return samples per second
+	 */
+	private static double run(Network n, double[] in, double[] actuals, long nanos)
+	{
+		n.setActuals(actuals);
+		long samples = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do
+		{
+			n.setInputs(in);
+			n.feedForward();
+			n.calculateError();
+			n.updateWeights();
+			samples++;
+			elapsed = System.nanoTime() - start;
+		}
+		while(elapsed < nanos);
+		return samples/(elapsed/1e9);
+	}
+
+	/**
+	 * Trains the network on the same batch for the given time
+	 * @return samples per second
+	 */
+	private static double runBatch(Network n, double[][] in, double[][] actuals, long nanos)
+	{
+		long samples = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do
+		{
+			n.trainBatch(in, actuals);
+			samples += in.length;
+			elapsed = System.nanoTime() - start;
+		}
+		while(elapsed < nanos);
+		return samples/(elapsed/1e9);
+	}
+
+	/**
+	 * Trains the neuron graph on the same sample for the given time
+	 * @return samples per second
+	 */
+	private static double run(NeuronGraph g, double[] in, double[] actuals, long nanos)
+	{
+		g.actuals = actuals;
+		long samples = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do
+		{
+			g.setInputs(in);
+			g.feedForward();
+			g.calculateError();
+			g.updateWeights();
+			samples++;
+			elapsed = System.nanoTime() - start;
+		}
+		while(elapsed < nanos);
+		return samples/(elapsed/1e9);
+	}
+
+	private static double[] randomValues(int length)
+	{
+		SingletonRandom random = SingletonRandom.getInstance();
+		double[] values = new double[length];
+		for(int i=0; i<length; i++)
+		{
+			values[i] = random.nextDouble(1, 0);
+		}
+		return values;
+	}
+
+	/**
+	 * The network as it was before the layer engine: every layer a Vector of neurons that
+	 * look up the outputs of their connected neurons one weight at a time.
+	 */
+	private static class NeuronGraph
+	{
+		private Runner variables;
+		private Vector<Neuron> inputNeurons = new Vector<Neuron>();
+		private Vector<Neuron> hiddenNeurons = new Vector<Neuron>();
+		private Vector<Neuron> outputNeurons = new Vector<Neuron>();
+		private double[] actuals;
+		private double[] outputErrors;
+		private double[] hiddenErrors;
+
+		NeuronGraph(Runner r)
+		{
+			variables = r;
+			SingletonRandom random = SingletonRandom.getInstance();
+			outputErrors = new double[r.getNumOutputs()];
+			hiddenErrors = new double[r.getNumHidden()];
+			for(int i=0; i<r.getNumInputs(); i++)
+			{
+				inputNeurons.add(new Neuron(r));
+			}
+			for(int i=0; i<r.getNumHidden(); i++)
+			{
+				Neuron n = new Neuron(r);
+				for(int j=0; j<r.getNumInputs(); j++)
+				{
+					n.addConnection(inputNeurons.get(j), random.nextDouble(r.getMaxWeight(), r.getMinWeight()));
+				}
+				hiddenNeurons.add(n);
+			}
+			for(int i=0; i<r.getNumOutputs(); i++)
+			{
+				Neuron n = new Neuron(r);
+				for(int j=0; j<r.getNumHidden(); j++)
+				{
+					n.addConnection(hiddenNeurons.get(j), random.nextDouble(r.getMaxWeight(), r.getMinWeight()));
+				}
+				outputNeurons.add(n);
+			}
+		}
+
+		void setInputs(double[] in)
+		{
+			for(int i=0; i<variables.getNumInputs(); i++)
+			{
+				inputNeurons.get(i).setOutput(in[i]);
+			}
+		}
+
+		void feedForward()
+		{
+			for(int i=0; i<variables.getNumHidden(); i++)
+			{
+				hiddenNeurons.get(i).combine();
+			}
+			for(int j=0; j<variables.getNumOutputs(); j++)
+			{
+				outputNeurons.get(j).combine();
+			}
+		}
+
+		void calculateError()
+		{
+			for(int i=0; i<variables.getNumOutputs(); i++)
+			{
+				double tempOut = outputNeurons.get(i).getOutput();
+				outputErrors[i] = (tempOut)*(1-tempOut)*(actuals[i]-tempOut);
+			}
+			for(int i=0; i < variables.getNumHidden(); i++)
+			{
+				double hiddenOut = hiddenNeurons.get(i).getOutput();
+				double sum = 0;
+				for(int j=0; j < variables.getNumOutputs(); j++)
+				{
+					sum = sum + (outputErrors[j]*outputNeurons.get(j).getConnected().get(i).getConnWeight(j));
+				}
+				hiddenErrors[i] = hiddenOut*(1-hiddenOut)*sum;
+			}
+		}
+
+		void updateWeights()
+		{
+			double learningRate = variables.getLearningRate();
+			for(int i=0; i<variables.getNumOutputs(); i++)
+			{
+				double outError = outputErrors[i];
+				for(int j=0; j < outputNeurons.get(i).getConnected().size(); j++)
+				{
+					double hidOut = outputNeurons.get(i).getConnected().get(j).getOutput();
+					double connWeight = outputNeurons.get(i).getConnWeight(j);
+					outputNeurons.get(i).setConnectionWeight(j, connWeight + (learningRate * (outError) * hidOut));
+				}
+			}
+			for(int i=0; i< variables.getNumHidden(); i++)
+			{
+				double hidError = hiddenErrors[i];
+				for(int j=0; j < hiddenNeurons.get(i).getConnected().size(); j++)
+				{
+					double inOut = hiddenNeurons.get(i).getConnected().get(j).getOutput();
+					double connWeight = hiddenNeurons.get(i).getConnWeight(j);
+					hiddenNeurons.get(i).setConnectionWeight(j, connWeight + (learningRate * (hidError) * inOut));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Time of training for many passes by calling Runner.train once per pass, which reads and
+ * parses the file every time, against EpochTrainer, which parses it once into a PriceDataset and
+ * shuffles the order of the weeks instead. Then the same network is trained with a validation
+ * split and early stopping to show how many of the passes it skips.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:bench EpochReport
+ *
+ */
+public class EpochReport
+{
+	private static final String[] SHAPES = {"40x17x10", "40x64x10"};
+
+	//Number of weeks in the synthetic price file and most passes over it
+	private static final int WEEKS = 2000;
+	private static final int EPOCHS = 50;
+
+	public static void main(String args[]) throws IOException
+	{
+		System.out.println(WEEKS + " weeks, at most " + EPOCHS + " passes");
+		System.out.println("shape         Runner.train ms   EpochTrainer ms   (load ms)   early stop passes   best pass   validation % error");
+		for(String shape : SHAPES)
+		{
+			File prices = File.createTempFile("prices", ".csv");
+			try
+			{
+				Runner r = BenchmarkData.runner(shape);
+				r.setDataBounds(BenchmarkData.DATA_MAX, BenchmarkData.DATA_MIN);
+				r.setBatchSize(8);
+				r.setEpochs(EPOCHS);
+				BenchmarkData.writePrices(prices, r, WEEKS);
+
+				//Warm up the JIT on both paths before timing them
+				Network warm = new Network(r);
+				Runner.train(r, warm, prices);
+				new EpochTrainer(warm, PriceDataset.load(prices, r)).train();
+
+				Network n = new Network(r);
+				long start = System.nanoTime();
+				for(int e=0; e<EPOCHS; e++)
+				{
+					Runner.train(r, n, prices);
+				}
+				double fileMillis = (System.nanoTime() - start)/1e6;
+
+				n = new Network(r);
+				start = System.nanoTime();
+				PriceDataset data = PriceDataset.load(prices, r);
+				double loadMillis = (System.nanoTime() - start)/1e6;
+				new EpochTrainer(n, data).train();
+				double memoryMillis = (System.nanoTime() - start)/1e6;
+
+				r.setValidation(0.2, 3);
+				n = new Network(r);
+				EpochTrainer trainer = new EpochTrainer(n, data);
+				trainer.train();
+				System.out.printf("%-12s %16.0f %17.0f %11.1f %19d %11d %20.3f%n", shape, fileMillis, memoryMillis, loadMillis,
+						trainer.getEpochs(), trainer.getBestEpoch() + 1, trainer.getBestError());
+				r.setValidation(0, 0);
+			}
+			finally
+			{
+				prices.delete();
+			}
+		}
+	}
+}
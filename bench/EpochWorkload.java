@@ -0,0 +1,52 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * One full training pass of Runner over a synthetic price file, including reading and parsing it.
+ *
+ */
+public class EpochWorkload implements Workload
+{
+	//Number of weeks in the synthetic price file
+	private static final int WEEKS = 520;
+
+	private Runner runner;
+	private Network network;
+	private File prices;
+
+	public void setup(String layers) throws IOException
+	{
+		runner = BenchmarkData.runner(layers);
+		network = new Network(runner);
+		prices = File.createTempFile("prices", ".csv");
+		BenchmarkData.writePrices(prices, runner, WEEKS);
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		if(name.equals("epoch"))
+		{
+			return () ->
+			{
+				try
+				{
+					Runner.train(runner, network, prices);
+				}
+				catch(IOException e)
+				{
+					throw new IllegalStateException(e);
+				}
+				return network;
+			};
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	public void tearDown()
+	{
+		prices.delete();
+	}
+}
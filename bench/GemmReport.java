@@ -0,0 +1,135 @@
+/**
+ * Speed of the tiled matrix products of Gemm against the loops the layers used before, which
+ * take one row of weights at a time. For each shape of layer and batch the three products are
+ * timed with:
+ *
+ *   scalar rows    a row at a time with the scalar kernels
+ *   vector rows    a row at a time with the vector kernels
+ *   untiled        the vector kernels four rows at a time, without tiles
+ *   tuned          the vector kernels four rows at a time in the tiles Gemm.tune chooses
+ *
+ * and reported in GFLOP/s, counting a multiply and an add as two operations.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:bench GemmReport
+ *
+ */
+public class GemmReport
+{
+	//Rows (neurons), depth (inputs of each neuron) and samples of each shape
+	private static final int[][] SHAPES = {{500, 1000, 1}, {2000, 1000, 1}, {4096, 4096, 1}, {500, 1000, 64}, {2000, 1000, 64}, {1000, 4096, 32}};
+
+	private static final String[] PRODUCTS = {"forward", "backward", "gradients"};
+	private static final String[] METHODS = {"scalar rows", "vector rows", "untiled", "tuned"};
+
+	//Least time each measurement runs for, in nanoseconds
+	private static final long MEASURE_NANOS = 500000000L;
+
+	public static void main(String args[])
+	{
+		long start = System.nanoTime();
+		Gemm tuned = Gemm.tune(Kernels.DEFAULT);
+		System.out.printf("Tuner chose rows,depth,samples = %s in %.0f ms with %s kernels%n%n", tuned,
+				(System.nanoTime() - start)/1e6, Kernels.DEFAULT);
+		System.out.println("rows x depth x samples   product       scalar rows   vector rows       untiled         tuned   (GFLOP/s)");
+		for(int[] shape : SHAPES)
+		{
+			int rows = shape[0];
+			int depth = shape[1];
+			int count = shape[2];
+			double[] w = BenchmarkData.randomValues(rows*depth);
+			double[] x = BenchmarkData.randomValues(count*depth);
+			double[] e = BenchmarkData.randomValues(count*rows);
+			double[] g = new double[rows*depth];
+			double[] out = new double[count*Math.max(rows, depth)];
+			for(int p=0; p<PRODUCTS.length; p++)
+			{
+				System.out.printf("%-24s %-10s", rows + " x " + depth + " x " + count, PRODUCTS[p]);
+				for(int m=0; m<METHODS.length; m++)
+				{
+					double flops = 2.0*rows*depth*count;
+					long runs = 0;
+					long begin = System.nanoTime();
+					long elapsed;
+					do
+					{
+						run(m, p, tuned, w, rows, depth, x, e, count, g, out);
+						runs++;
+						elapsed = System.nanoTime() - begin;
+					}
+					while(elapsed < MEASURE_NANOS || runs < 3);
+					System.out.printf(" %13.2f", flops*runs/elapsed);
+				}
+				System.out.println();
+			}
+		}
+	}
+
+	/**
+	 * Runs one product with one of the methods
+	 */
+	private static void run(int method, int product, Gemm tuned, double[] w, int rows, int depth, double[] x, double[] e,
+			int count, double[] g, double[] out)
+	{
+		if(method < 2)
+		{
+			Kernels kernels = method == 0 ? Kernels.SCALAR : Kernels.DEFAULT;
+			rowAtATime(kernels, product, w, rows, depth, x, e, count, g, out);
+			return;
+		}
+		Gemm gemm = method == 2 ? Gemm.UNTILED : tuned;
+		if(product == 0)
+		{
+			gemm.multiply(Kernels.DEFAULT, w, rows, depth, x, count, out);
+		}
+		else if(product == 1)
+		{
+			gemm.multiplyTransposed(Kernels.DEFAULT, w, rows, depth, e, count, out);
+		}
+		else
+		{
+			gemm.accumulate(Kernels.DEFAULT, e, rows, x, depth, count, g);
+		}
+	}
+
+	/**
+	 * The loops of DenseLayer before the products were tiled
+	 */
+	private static void rowAtATime(Kernels kernels, int product, double[] w, int rows, int depth, double[] x, double[] e,
+			int count, double[] g, double[] out)
+	{
+		if(product == 0)
+		{
+			for(int i=0; i<rows; i++)
+			{
+				for(int b=0; b<count; b++)
+				{
+					out[b*rows + i] = kernels.dot(x, b*depth, w, i*depth, depth);
+				}
+			}
+		}
+		else if(product == 1)
+		{
+			for(int b=0; b<count; b++)
+			{
+				for(int k=0; k<depth; k++)
+				{
+					out[b*depth + k] = 0;
+				}
+				for(int i=0; i<rows; i++)
+				{
+					kernels.axpy(e[b*rows + i], w, i*depth, out, b*depth, depth);
+				}
+			}
+		}
+		else
+		{
+			for(int i=0; i<rows; i++)
+			{
+				for(int b=0; b<count; b++)
+				{
+					kernels.axpy(e[b*rows + i], x, b*depth, g, i*depth, depth);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Searches the same 81 random trials of hidden neurons, learning rate and weight range on a week
+ * of random walk prices, training every trial for all 27 passes and with successive halving
+ * (3, 9 and 27 passes, keeping a third each round), each on one thread and on every core.
+ * Reports the time taken, the passes trained, the lowest validation error found, and where the
+ * trial successive halving picked ranks among all the trials trained in full.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:target/benchmarks.jar HyperparameterSearchReport
+ *
+ */
+public class HyperparameterSearchReport
+{
+	private static final int TRIALS = 81;
+	private static final int EPOCHS = 27;
+	private static final int WEEKS = 200;
+
+	public static void main(String args[])
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		Runner base = new Runner();
+		base.setDataBounds(150, 5);
+		base.setEpochs(EPOCHS);
+		base.setValidation(0.2, 0);
+		PriceDataset data = prices(base);
+		System.out.println(cores + " processors, " + TRIALS + " trials of 40x2..60x10, " + WEEKS + " weeks, up to " + EPOCHS + " passes");
+
+		//Once through to warm up
+		search(base, data, "halving", cores);
+
+		System.out.printf("%-24s %8s %10s %8s %10s %6s%n", "strategy", "threads", "seconds", "passes", "error %", "rank");
+		List<HyperparameterSearch.Trial> full = null;
+		for(String strategy : new String[] {"full", "halving"})
+		{
+			for(int threads : cores > 1 ? new int[] {1, cores} : new int[] {1})
+			{
+				long start = System.nanoTime();
+				List<HyperparameterSearch.Trial> results = search(base, data, strategy, threads);
+				double seconds = (System.nanoTime() - start)/1e9;
+				long passes = 0;
+				for(HyperparameterSearch.Trial trial : results)
+				{
+					passes += trial.getEpochs();
+				}
+				if(full == null)
+				{
+					full = results;
+				}
+				System.out.printf("%-24s %8d %10.2f %8d %10.4f %6d%n", strategy, threads, seconds, passes,
+						results.get(0).getError(), rank(full, results.get(0)));
+			}
+		}
+	}
+
+	private static List<HyperparameterSearch.Trial> search(Runner base, PriceDataset data, String strategy, int threads)
+	{
+		List<HyperparameterSearch.Trial> trials = HyperparameterSearch.random(TRIALS, 2, 60, 0.05, 2.0, 0.05, 1.0, 25);
+		HyperparameterSearch search = new HyperparameterSearch(base, data, threads);
+		try
+		{
+			return strategy.equals("full") ? search.run(trials) : search.successiveHalving(trials, 3, 3);
+		}
+		finally
+		{
+			search.close();
+		}
+	}
+
+	/**
+	 * Rank from 1 of the trial with the same hyperparameters among the trials trained in full
+	 */
+	private static int rank(List<HyperparameterSearch.Trial> full, HyperparameterSearch.Trial trial)
+	{
+		for(int k=0; k<full.size(); k++)
+		{
+			if(full.get(k).toString().equals(trial.toString()))
+			{
+				return k + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Weeks of 10 prices following a random walk between the bounds of the Runner
+	 */
+	private static PriceDataset prices(Runner r)
+	{
+		Random random = new Random(25);
+		PriceDataset data = new PriceDataset(40, 10, r.getDataMax(), r.getDataMin());
+		double[] prices = new double[10];
+		for(int i=0; i<10; i++)
+		{
+			prices[i] = r.getDataMin() + (r.getDataMax() - r.getDataMin())*(0.2 + 0.6*random.nextDouble());
+		}
+		double[] inputs = new double[40];
+		double[] actuals = new double[10];
+		for(int w=0; w<WEEKS; w++)
+		{
+			for(int day=0; day<5; day++)
+			{
+				for(int i=0; i<10; i++)
+				{
+					prices[i] = Math.min(r.getDataMax(), Math.max(r.getDataMin(), prices[i]*(1 + random.nextGaussian()*0.01)));
+					if(day < 4)
+					{
+						inputs[day*10 + i] = prices[i];
+					}
+					else
+					{
+						actuals[i] = prices[i];
+					}
+				}
+			}
+			data.add(inputs, actuals);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,42 @@
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * Training a network on one weekly window with each kind of kernel. The operation name is the
+ * name of the kernels given to Kernels.create.
+ *
+ */
+public class KernelWorkload implements Workload
+{
+	private Runner runner;
+	private double[] in;
+	private double[] actuals;
+
+	public void setup(String layers)
+	{
+		runner = BenchmarkData.runner(layers);
+		in = BenchmarkData.randomValues(runner.getNumInputs());
+		actuals = BenchmarkData.randomValues(runner.getNumOutputs());
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		Kernels kernels = Kernels.create(name);
+		if(!kernels.toString().equals(name))
+		{
+			throw new IllegalStateException(name + " kernels are not available on this JVM, got " + kernels);
+		}
+		final Network network = new Network(runner);
+		network.getEngine().setKernels(kernels);
+		network.setActuals(actuals);
+		return () ->
+		{
+			network.setInputs(in);
+			network.feedForward();
+			network.calculateError();
+			network.updateWeights();
+			return network;
+		};
+	}
+}
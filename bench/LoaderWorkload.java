@@ -0,0 +1,60 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * Reading every week of a synthetic price file with the price loader, without training.
+ *
+ */
+public class LoaderWorkload implements Workload
+{
+	//Number of weeks in the synthetic price file
+	private static final int WEEKS = 52000;
+
+	private Runner runner;
+	private File prices;
+
+	public void setup(String layers) throws IOException
+	{
+		runner = BenchmarkData.runner(layers);
+		prices = File.createTempFile("prices", ".csv");
+		BenchmarkData.writePrices(prices, runner, WEEKS);
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		if(name.equals("load"))
+		{
+			return () ->
+			{
+				try
+				{
+					PriceLoader loader = new PriceLoader(prices, runner.getNumInputs(), runner.getNumOutputs());
+					double sum = 0;
+					while(loader.nextWeek())
+					{
+						sum += loader.getActuals()[0];
+					}
+					loader.close();
+					return sum;
+				}
+				catch(IOException e)
+				{
+					throw new IllegalStateException(e);
+				}
+			};
+		}
+		if(name.equals("fileSize"))
+		{
+			return () -> prices.length();
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	public void tearDown()
+	{
+		prices.delete();
+	}
+}
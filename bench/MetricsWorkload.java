@@ -0,0 +1,59 @@
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * Training one sample through Network, whose steps record metrics when Metrics.ENABLED, and the
+ * same steps straight on its LayerEngine, which records nothing. With metrics switched off the
+ * two should take the same time.
+ *
+ */
+public class MetricsWorkload implements Workload
+{
+	private Network network;
+	private LayerEngine engine;
+	private Runner runner;
+	private double[] in;
+	private double[] actuals;
+	private double[] engineActuals;
+
+	public void setup(String layers)
+	{
+		runner = BenchmarkData.runner(layers);
+		network = new Network(runner);
+		engine = new Network(runner).getEngine();
+		in = BenchmarkData.randomValues(runner.getNumInputs());
+		actuals = BenchmarkData.randomValues(runner.getNumOutputs());
+		engineActuals = new double[actuals.length];
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		if(name.equals("network"))
+		{
+			return () ->
+			{
+				network.setInputs(in);
+				network.feedForward();
+				network.setActuals(actuals);
+				network.calculateError();
+				network.updateWeights();
+				return network;
+			};
+		}
+		if(name.equals("engine"))
+		{
+			//The work Network does around the engine, without the metrics
+			return () ->
+			{
+				engine.setInputs(in);
+				engine.feedForward();
+				System.arraycopy(actuals, 0, engineActuals, 0, actuals.length);
+				engine.calculateError(engineActuals);
+				engine.updateWeights(runner.getSchedule().rate(runner.getLearningRate(), 0));
+				return engine;
+			};
+		}
+		throw new IllegalArgumentException(name);
+	}
+}
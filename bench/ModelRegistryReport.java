@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Trains 100 small networks, 10 sectors of 10, with a ModelRegistry and reports:
+ *
+ *   training    networks trained per second on the registry's pool, and with a platform thread
+ *               started for each network instead
+ *   memory      heap retained by the 100 trained Networks against the registry's Models
+ *   predicting  windows predicted per second by whole ensembles of 10, one window per call and
+ *               64 windows per call
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:target/benchmarks.jar ModelRegistryReport
+ *
+ */
+public class ModelRegistryReport
+{
+	private static final int SECTORS = 10;
+	private static final int MEMBERS = 10;
+
+	//Weeks of prices of each sector and passes over them, and times all the networks are trained
+	private static final int WEEKS = 200;
+	private static final int EPOCHS = 5;
+	private static final int TRAINING_ROUNDS = 4;
+
+	//Windows predicted by each ensemble per round, and rounds timed
+	private static final int WINDOWS = 64;
+	private static final int ROUNDS = 2000;
+
+	public static void main(String args[]) throws InterruptedException
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println(cores + " processors, " + SECTORS + " sectors of " + MEMBERS + " networks of 40x17x10, "
+				+ WEEKS + " weeks, " + EPOCHS + " passes");
+		PriceDataset[] data = new PriceDataset[SECTORS];
+		double[][] bounds = new double[SECTORS][];
+		for(int s=0; s<SECTORS; s++)
+		{
+			bounds[s] = new double[] {100 + 50*s, 5 + s};
+			data[s] = sector(s, bounds[s]);
+		}
+
+		//Time the registry's pool against a thread per network, taking turns so both are as warmed
+		//up, and keep the best of each
+		ModelRegistry registry = null;
+		Network[] networks = null;
+		double poolSeconds = Double.MAX_VALUE;
+		double threadSeconds = Double.MAX_VALUE;
+		for(int round=0; round<TRAINING_ROUNDS; round++)
+		{
+			long start = System.nanoTime();
+			registry = train(data, bounds, cores);
+			poolSeconds = Math.min(poolSeconds, (System.nanoTime() - start)/1e9);
+			start = System.nanoTime();
+			networks = trainOnThreads(data, bounds);
+			threadSeconds = Math.min(threadSeconds, (System.nanoTime() - start)/1e9);
+		}
+		System.out.printf("%-36s %10.1f networks/s%n", "training, pool of " + cores, networks.length/poolSeconds);
+		System.out.printf("%-36s %10.1f networks/s%n", "training, a thread per network", networks.length/threadSeconds);
+
+		//Heap retained by the networks, then by the models once the networks are dropped
+		long withBoth = usedHeap();
+		for(int k=0; k<networks.length; k++)
+		{
+			networks[k] = null;
+		}
+		long withModels = usedHeap();
+		registry = null;
+		long withNeither = usedHeap();
+		System.out.printf("%-36s %10.1f KB per network%n", "memory, Network", (withBoth - withModels)/1024.0/networks.length);
+		System.out.printf("%-36s %10.1f KB per network%n", "memory, registry Model", (withModels - withNeither)/1024.0/networks.length);
+
+		//Predicting with every ensemble
+		registry = train(data, bounds, cores);
+		double[][] windows = new double[WINDOWS][];
+		double[][] predicted = new double[WINDOWS][10];
+		Random random = new Random(24);
+		for(int w=0; w<WINDOWS; w++)
+		{
+			windows[w] = new double[40];
+			for(int i=0; i<40; i++)
+			{
+				windows[w][i] = 10 + 90*random.nextDouble();
+			}
+		}
+		//Each way is run once to warm up, then timed
+		int[] batches = {1, WINDOWS, 1, WINDOWS};
+		for(int k=0; k<batches.length; k++)
+		{
+			int batch = batches[k];
+			double[][] batchWindows = new double[batch][];
+			long best = Long.MAX_VALUE;
+			for(int round=0; round<ROUNDS; round++)
+			{
+				long roundStart = System.nanoTime();
+				for(int s=0; s<SECTORS; s++)
+				{
+					for(int first=0; first<WINDOWS; first+=batch)
+					{
+						System.arraycopy(windows, first, batchWindows, 0, batch);
+						registry.predict("sector" + s, batchWindows, predicted, batch);
+					}
+				}
+				best = Math.min(best, System.nanoTime() - roundStart);
+			}
+			if(k < 2)
+			{
+				continue;
+			}
+			System.out.printf("%-36s %10.0f windows/s (%.0f network predictions/s)%n", "predicting, " + batch + " per call",
+					SECTORS*WINDOWS/(best/1e9), SECTORS*MEMBERS*WINDOWS/(best/1e9));
+		}
+	}
+
+	private static Network[] trainOnThreads(final PriceDataset[] data, final double[][] bounds) throws InterruptedException
+	{
+		final Network[] networks = new Network[SECTORS*MEMBERS];
+		Thread[] threads = new Thread[networks.length];
+		for(int k=0; k<networks.length; k++)
+		{
+			final int index = k;
+			threads[k] = new Thread()
+			{
+				public void run()
+				{
+					networks[index] = new Network(runner(index, bounds[index/MEMBERS]));
+					new EpochTrainer(networks[index], data[index/MEMBERS]).train();
+				}
+			};
+			threads[k].start();
+		}
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		return networks;
+	}
+
+	private static ModelRegistry train(PriceDataset[] data, double[][] bounds, int threads)
+	{
+		ModelRegistry registry = new ModelRegistry(threads);
+		List<ForkJoinTask<ModelRegistry.Model>> tasks = new ArrayList<ForkJoinTask<ModelRegistry.Model>>();
+		for(int k=0; k<SECTORS*MEMBERS; k++)
+		{
+			tasks.add(registry.submit("model" + k, "sector" + k/MEMBERS, runner(k, bounds[k/MEMBERS]), data[k/MEMBERS]));
+		}
+		for(ForkJoinTask<ModelRegistry.Model> task : tasks)
+		{
+			task.join();
+		}
+		registry.close();
+		return registry;
+	}
+
+	private static Runner runner(int k, double[] bounds)
+	{
+		Runner r = new Runner();
+		r.setDataBounds(bounds[0], bounds[1]);
+		r.setSeed(k);
+		r.setEpochs(EPOCHS);
+		return r;
+	}
+
+	/**
+	 * A sector's weeks of prices following a random walk between its bounds
+	 */
+	private static PriceDataset sector(int s, double[] bounds)
+	{
+		Random random = new Random(s);
+		PriceDataset data = new PriceDataset(40, 10, bounds[0], bounds[1]);
+		double[] prices = new double[10];
+		for(int i=0; i<10; i++)
+		{
+			prices[i] = bounds[1] + (bounds[0] - bounds[1])*(0.2 + 0.6*random.nextDouble());
+		}
+		double[] inputs = new double[40];
+		double[] actuals = new double[10];
+		for(int w=0; w<WEEKS; w++)
+		{
+			for(int day=0; day<5; day++)
+			{
+				for(int i=0; i<10; i++)
+				{
+					prices[i] = Math.min(bounds[0], Math.max(bounds[1], prices[i]*(1 + random.nextGaussian()*0.01)));
+					if(day < 4)
+					{
+						inputs[day*10 + i] = prices[i];
+					}
+					else
+					{
+						actuals[i] = prices[i];
+					}
+				}
+			}
+			data.add(inputs, actuals);
+		}
+		return data;
+	}
+
+	private static long usedHeap() throws InterruptedException
+	{
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for(int k=0; k<5; k++)
+		{
+			System.gc();
+			Thread.sleep(50);
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+}
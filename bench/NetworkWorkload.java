@@ -0,0 +1,59 @@
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * A network that has been fed one weekly window and had its error calculated, so every step of
+ * training can be measured on its own.
+ *
+ */
+public class NetworkWorkload implements Workload
+{
+	private Network network;
+	private double[] in;
+	private double[] prices;
+
+	public void setup(String layers)
+	{
+		Runner r = BenchmarkData.runner(layers);
+		network = new Network(r);
+		in = BenchmarkData.randomValues(r.getNumInputs());
+		prices = network.denormalizeValues(in, BenchmarkData.DATA_MAX, BenchmarkData.DATA_MIN);
+		network.setInputs(in);
+		network.setActuals(BenchmarkData.randomValues(r.getNumOutputs()));
+		network.feedForward();
+		network.calculateError();
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		if(name.equals("feedForward"))
+		{
+			return () -> { network.feedForward(); return network; };
+		}
+		if(name.equals("calculateError"))
+		{
+			return () -> { network.calculateError(); return network; };
+		}
+		if(name.equals("updateWeights"))
+		{
+			return () -> { network.updateWeights(); return network; };
+		}
+		if(name.equals("normalizeValues"))
+		{
+			return () -> network.normalizeValues(prices, BenchmarkData.DATA_MAX, BenchmarkData.DATA_MIN);
+		}
+		if(name.equals("trainSample"))
+		{
+			return () ->
+			{
+				network.setInputs(in);
+				network.feedForward();
+				network.calculateError();
+				network.updateWeights();
+				return network;
+			};
+		}
+		throw new IllegalArgumentException(name);
+	}
+}
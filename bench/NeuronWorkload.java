@@ -0,0 +1,46 @@
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * A standalone hidden neuron and output neuron connected to a full layer to their left.
+ *
+ */
+public class NeuronWorkload implements Workload
+{
+	private Neuron hidden;
+	private Neuron output;
+
+	public void setup(String layers)
+	{
+		Runner r = BenchmarkData.runner(layers);
+		hidden = connect(r, r.getNumInputs());
+		output = connect(r, r.getNumHidden());
+	}
+
+	private static Neuron connect(Runner r, int fanIn)
+	{
+		double[] outs = BenchmarkData.randomValues(fanIn);
+		Neuron n = new Neuron(r);
+		for(int i=0; i<fanIn; i++)
+		{
+			Neuron left = new Neuron(r);
+			left.setOutput(outs[i]);
+			n.addConnection(left, outs[fanIn-1-i] - 0.5);
+		}
+		return n;
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		if(name.equals("combineHidden"))
+		{
+			return () -> { hidden.combine(); return hidden; };
+		}
+		if(name.equals("combineOutput"))
+		{
+			return () -> { output.combine(); return output; };
+		}
+		throw new IllegalArgumentException(name);
+	}
+}
@@ -0,0 +1,165 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory of a network of 10^8 weights held on the heap against the same weights mapped from a
+ * checkpoint into OffHeapWeights. Each measurement runs in its own JVM:
+ *
+ *   heap       creates the Network (its engine's weight arrays and the neurons that view them),
+ *              saves it with ModelCheckpoint and predicts
+ *   mapped     maps the checkpoint read-only with a 64 MB heap and predicts with OffHeapEngine;
+ *              two of these run at the same time to show that they share the weights
+ *
+ * For each JVM the report gives the heap in use after a full GC, the resident set size (RSS)
+ * and the proportional set size (PSS, which splits shared pages between the processes sharing
+ * them) from /proc/self, and the time to predict one window. Needs Linux and about 3 GB of memory.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:bench OffHeapReport
+ *
+ */
+public class OffHeapReport
+{
+	//10^8 weights in two layers of 5*10^7
+	private static final String SHAPE = "1000x50000x1000";
+
+	//Windows predicted when timing predict
+	private static final int WINDOWS = 5;
+
+	//How long each mapped JVM waits after touching the weights, so the two are alive together
+	private static final long OVERLAP_MILLIS = 4000;
+
+	public static void main(String args[]) throws Exception
+	{
+		if(args.length == 2)
+		{
+			measure(args[0], new File(args[1]));
+			return;
+		}
+		File file = File.createTempFile("offheap", ".nnet");
+		try
+		{
+			System.out.println(SHAPE + ", " + BenchmarkData.runner(SHAPE).getLayerSizes().length + " layers");
+			System.out.println("jvm            weights            -Xmx   heap used MB     RSS MB     PSS MB   ms per predict");
+			run(start("heap", "-Xmx3g", file));
+			Process first = start("mapped", "-Xmx64m", file);
+			Process second = start("mapped", "-Xmx64m", file);
+			run(first);
+			run(second);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Starts a JVM measuring one way of holding the weights
+	 */
+	private static Process start(String mode, String maxHeap, File file) throws IOException
+	{
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("--add-modules");
+		command.add("jdk.incubator.vector");
+		command.add(maxHeap);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(OffHeapReport.class.getName());
+		command.add(mode);
+		command.add(file.getPath());
+		return new ProcessBuilder(command).redirectErrorStream(true).start();
+	}
+
+	/**
+	 * Prints the report line of a JVM once it finishes, leaving out the vector module's warning
+	 */
+	private static void run(Process process) throws IOException, InterruptedException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String line;
+		while((line = in.readLine()) != null)
+		{
+			if(!line.startsWith("WARNING"))
+			{
+				System.out.println(line);
+			}
+		}
+		process.waitFor();
+	}
+
+	/**
+	 * Holds the weights one way, predicts, and prints the memory of this JVM
+	 */
+	private static void measure(String mode, File file) throws IOException, InterruptedException
+	{
+		Runner r = BenchmarkData.runner(SHAPE);
+		double[][] windows = new double[WINDOWS][];
+		for(int w=0; w<WINDOWS; w++)
+		{
+			windows[w] = BenchmarkData.randomValues(r.getNumInputs() + w);
+		}
+		double[][] predictions = new double[WINDOWS][r.getNumOutputs()];
+		long weights;
+		double millis;
+		if(mode.equals("heap"))
+		{
+			Network n = new Network(r);
+			ModelCheckpoint.save(n, file);
+			n.predict(windows, predictions);
+			long start = System.nanoTime();
+			n.predict(windows, predictions);
+			millis = (System.nanoTime() - start)/1e6/WINDOWS;
+			weights = n.hiConnectionWeights.length + (long) n.ohConnectionWeights.length;
+			report(mode, weights, millis);
+		}
+		else
+		{
+			OffHeapWeights mapped = OffHeapWeights.map(file, false);
+			OffHeapEngine engine = new OffHeapEngine(mapped);
+			engine.predict(windows, predictions, WINDOWS);
+			long start = System.nanoTime();
+			engine.predict(windows, predictions, WINDOWS);
+			millis = (System.nanoTime() - start)/1e6/WINDOWS;
+			Thread.sleep(OVERLAP_MILLIS);
+			report(mode, mapped.getNumWeights(), millis);
+		}
+	}
+
+	private static void report(String mode, long weights, double millis) throws IOException
+	{
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		double heap = (runtime.totalMemory() - runtime.freeMemory())/1e6;
+		System.out.printf("%-10s %11d %15s %14.0f %10.0f %10.0f %16.1f%n", mode, weights, runtime.maxMemory()/(1<<20) + " MB", heap,
+				kilobytes("/proc/self/status", "VmRSS:")/1e3, kilobytes("/proc/self/smaps_rollup", "Pss:")/1e3, millis);
+	}
+
+	/**
+	 * Reads a value in kB from a file of /proc
+	 */
+	private static long kilobytes(String path, String name) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new FileReader(path));
+		try
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				if(line.startsWith(name))
+				{
+					return Long.parseLong(line.substring(name.length()).trim().split("\\s+")[0]);
+				}
+			}
+			return -1;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,176 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Time from a trading day arriving until its prediction is ready, in microseconds, for an
+ * OnlineLearner fed days one at a time. Each day completes a window, so the network is trained on
+ * the window before and then predicts the next day. With one series the learner reuses the
+ * activations of the last prediction for training; with 10 series taking turns it has to feed
+ * the window forward again, which the second row shows.
+ *
+ * The last rows send the days over a socket on the loopback address to OnlineRunner.serve, one
+ * at a time, each waiting for its prediction, and time the round trip as the client sees it.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:target/benchmarks.jar OnlineReport
+ *
+ */
+public class OnlineReport
+{
+	//Shapes of the networks, whose inputs are 4 days of as many prices as they have outputs
+	private static final String[] SHAPES = {"40x17x10", "40x64x10", "40x256x256x10"};
+
+	//Days fed to warm up the learner and days measured
+	private static final int WARMUP_DAYS = 20000;
+	private static final int DAYS = 100000;
+
+	//Days sent over the socket, each waiting for its reply
+	private static final int ROUND_TRIPS = 20000;
+
+	public static void main(String args[]) throws IOException
+	{
+		System.out.printf("%-16s %-10s %8s %8s %8s %8s %10s%n", "shape", "series", "p50", "p99", "p99.9", "max", "update");
+		for(String shape : SHAPES)
+		{
+			for(int numSeries : new int[] {1, 10})
+			{
+				Runner r = BenchmarkData.runner(shape);
+				OnlineLearner learner = new OnlineLearner(new Network(r));
+				double[][] days = walk(r.getNumOutputs(), WARMUP_DAYS + DAYS);
+				String[] symbols = new String[numSeries];
+				for(int s=0; s<numSeries; s++)
+				{
+					symbols[s] = "S" + s;
+				}
+				double[] predicted = new double[r.getNumOutputs()];
+				for(int d=0; d<days.length; d++)
+				{
+					if(d == WARMUP_DAYS)
+					{
+						learner.getTickToPrediction().reset();
+						learner.getUpdate().reset();
+					}
+					learner.tick(symbols[d % numSeries], days[d], System.nanoTime(), predicted);
+				}
+				LatencyHistogram latency = learner.getTickToPrediction();
+				System.out.printf("%-16s %-10d %8.2f %8.2f %8.2f %8.2f %10.2f%n", shape, numSeries,
+						latency.getValueAtPercentile(50)/1e3, latency.getValueAtPercentile(99)/1e3,
+						latency.getValueAtPercentile(99.9)/1e3, latency.getMax()/1e3, learner.getUpdate().getMean()/1e3);
+			}
+		}
+
+		System.out.println();
+		System.out.printf("%-16s %-10s %8s %8s %8s %8s%n", "socket", "", "p50", "p99", "p99.9", "max");
+		for(String shape : SHAPES)
+		{
+			LatencyHistogram roundTrip = roundTrips(BenchmarkData.runner(shape));
+			System.out.printf("%-16s %-10s %8.2f %8.2f %8.2f %8.2f%n", shape, "", roundTrip.getValueAtPercentile(50)/1e3,
+					roundTrip.getValueAtPercentile(99)/1e3, roundTrip.getValueAtPercentile(99.9)/1e3, roundTrip.getMax()/1e3);
+		}
+	}
+
+	/**
+	 * Sends days to a server thread one at a time and times each until its prediction comes back
+	 */
+	private static LatencyHistogram roundTrips(Runner r) throws IOException
+	{
+		final OnlineLearner learner = new OnlineLearner(new Network(r));
+		final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		Thread serving = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					Socket socket = server.accept();
+					socket.setTcpNoDelay(true);
+					OnlineRunner.serve(learner, Channels.newChannel(socket.getInputStream()),
+							new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false));
+					socket.close();
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}, "online-server");
+		serving.start();
+
+		LatencyHistogram roundTrip = new LatencyHistogram();
+		double[][] days = walk(r.getNumOutputs(), ROUND_TRIPS + 4);
+		Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+		try
+		{
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+			StringBuilder line = new StringBuilder();
+			for(int d=0; d<days.length; d++)
+			{
+				line.setLength(0);
+				line.append("S");
+				for(double price : days[d])
+				{
+					line.append(',').append(price);
+				}
+				line.append('\n');
+				byte[] bytes = line.toString().getBytes(StandardCharsets.ISO_8859_1);
+				long start = System.nanoTime();
+				out.write(bytes);
+				out.flush();
+				if(d >= 3)
+				{
+					in.readLine();
+					if(d >= ROUND_TRIPS/5)
+					{
+						roundTrip.record(System.nanoTime() - start);
+					}
+				}
+			}
+		}
+		finally
+		{
+			socket.close();
+			server.close();
+		}
+		try
+		{
+			serving.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return roundTrip;
+	}
+
+	/**
+	 * Prices that follow a random walk between the data bounds, one row per day
+	 */
+	private static double[][] walk(int numPrices, int numDays)
+	{
+		Random random = new Random(numPrices + numDays);
+		double[][] days = new double[numDays][numPrices];
+		for(int i=0; i<numPrices; i++)
+		{
+			days[0][i] = 10 + 290*random.nextDouble();
+		}
+		for(int d=1; d<numDays; d++)
+		{
+			for(int i=0; i<numPrices; i++)
+			{
+				days[d][i] = Math.min(340, Math.max(10, days[d-1][i]*(1 + random.nextGaussian()*0.01)));
+			}
+		}
+		return days;
+	}
+}
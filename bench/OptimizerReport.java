@@ -0,0 +1,169 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Number of samples each optimizer needs to train a network to a target error on a synthetic
+ * price series. The weeks of a random walk are trained one at a time in the order of the file,
+ * pass after pass, and every CHECK_EVERY samples the mean percent error of the predicted prices
+ * of the held back last weeks is measured. Every optimizer starts from the same weights. The
+ * report gives the samples until the error first falls below each target, the lowest error
+ * reached, and the time of a sample.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:bench OptimizerReport
+ *
+ */
+public class OptimizerReport
+{
+	private static final String SHAPE = "40x17x10";
+
+	//Weeks in the synthetic price file, of which the last HELD_BACK are validated on
+	private static final int WEEKS = 1000;
+	private static final int HELD_BACK = 200;
+
+	//Most samples trained and the number between measurements
+	private static final int MAX_SAMPLES = 200000;
+	private static final int CHECK_EVERY = 400;
+
+	//Mean percent errors of the held back weeks to reach
+	private static final double[] TARGETS = {15, 12, 10};
+
+	private static final String[] NAMES = {"sgd", "sgd, step schedule", "momentum 0.9", "nesterov 0.9", "rmsprop", "adam", "adam, cosine schedule"};
+
+	public static void main(String args[]) throws IOException
+	{
+		Runner shape = BenchmarkData.runner(SHAPE);
+		shape.setDataBounds(BenchmarkData.DATA_MAX, BenchmarkData.DATA_MIN);
+		File prices = File.createTempFile("prices", ".csv");
+		PriceDataset data;
+		try
+		{
+			BenchmarkData.writePrices(prices, shape, WEEKS);
+			data = PriceDataset.load(prices, shape);
+		}
+		finally
+		{
+			prices.delete();
+		}
+		Network initial = new Network(shape);
+		System.out.println(SHAPE + ", " + (WEEKS - HELD_BACK) + " weeks trained one at a time, " + HELD_BACK + " held back, at most " + MAX_SAMPLES + " samples");
+		System.out.printf("%-24s %8s", "optimizer", "rate");
+		for(double target : TARGETS)
+		{
+			System.out.printf("   samples to %2.0f%%", target);
+		}
+		System.out.println("   lowest % error   us per sample");
+		for(int o=0; o<NAMES.length; o++)
+		{
+			Runner r = BenchmarkData.runner(SHAPE);
+			r.setDataBounds(BenchmarkData.DATA_MAX, BenchmarkData.DATA_MIN);
+			configure(o, r);
+			Network n = new Network(r);
+			for(int l=0; l<n.getEngine().getNumLayers(); l++)
+			{
+				double[] weights = initial.getEngine().getLayer(l).getWeights();
+				System.arraycopy(weights, 0, n.getEngine().getLayer(l).getWeights(), 0, weights.length);
+			}
+			n.reloadWeights();
+
+			long[] reached = new long[TARGETS.length];
+			double lowest = Double.MAX_VALUE;
+			double[] in = new double[r.getNumInputs()];
+			double[] actuals = new double[r.getNumOutputs()];
+			long trainNanos = 0;
+			int trainCount = data.size() - HELD_BACK;
+			for(int sample=0; sample<MAX_SAMPLES && reached[TARGETS.length-1] == 0; )
+			{
+				long start = System.nanoTime();
+				for(int k=0; k<CHECK_EVERY; k++, sample++)
+				{
+					int week = sample%trainCount;
+					data.copyInputs(week, in);
+					data.copyActuals(week, actuals);
+					n.setInputs(in);
+					n.feedForward();
+					n.setActuals(actuals);
+					n.calculateError();
+					n.updateWeights();
+				}
+				trainNanos += System.nanoTime() - start;
+				double error = validationError(n, data, trainCount);
+				lowest = Math.min(lowest, error);
+				for(int t=0; t<TARGETS.length; t++)
+				{
+					if(reached[t] == 0 && error < TARGETS[t])
+					{
+						reached[t] = sample;
+					}
+				}
+			}
+			System.out.printf("%-24s %8.4f", NAMES[o], r.getLearningRate());
+			for(int t=0; t<TARGETS.length; t++)
+			{
+				System.out.printf(" %17s", reached[t] == 0 ? "> " + MAX_SAMPLES : Long.toString(reached[t]));
+			}
+			System.out.printf(" %16.3f %15.2f%n", lowest, trainNanos/1e3/n.getSamplesTrained());
+		}
+	}
+
+	/**
+	 * Sets the optimizer, learning rate and schedule of one row of the report. Plain gradient
+	 * descent keeps Runner's learning rate; the others use the best of a sweep over rates about
+	 * 3 times apart.
+	 */
+	private static void configure(int o, Runner r)
+	{
+		long pass = WEEKS - HELD_BACK;
+		switch(o)
+		{
+			case 1:
+				r.setSchedule(Schedule.step(20*pass, 0.5));
+				break;
+			case 2:
+				r.setOptimizer(Optimizer.momentum(0.9));
+				r.setLearningRate(0.03);
+				break;
+			case 3:
+				r.setOptimizer(Optimizer.nesterov(0.9));
+				r.setLearningRate(0.07);
+				break;
+			case 4:
+				r.setOptimizer(Optimizer.rmsProp(0.9, 1e-8));
+				r.setLearningRate(0.001);
+				break;
+			case 5:
+				r.setOptimizer(Optimizer.adam(0.9, 0.999, 1e-8));
+				r.setLearningRate(0.001);
+				break;
+			case 6:
+				r.setOptimizer(Optimizer.adam(0.9, 0.999, 1e-8));
+				r.setLearningRate(0.003);
+				r.setSchedule(Schedule.cosine(MAX_SAMPLES, 0.05));
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Mean percent error of the predicted prices of the held back weeks
+	 */
+	private static double validationError(Network n, PriceDataset data, int trainCount)
+	{
+		double[][] windows = new double[data.size() - trainCount][data.getNumInputs()];
+		for(int w=0; w<windows.length; w++)
+		{
+			data.copyInputs(trainCount + w, windows[w]);
+		}
+		double[][] predicted = n.predict(windows);
+		double sum = 0;
+		for(int w=0; w<windows.length; w++)
+		{
+			for(int i=0; i<data.getNumOutputs(); i++)
+			{
+				double actual = data.denormalize(data.getActuals()[(trainCount + w)*data.getNumOutputs() + i]);
+				sum += Runner.calculatePercError(actual, data.denormalize(predicted[w][i]));
+			}
+		}
+		return sum/(windows.length*data.getNumOutputs());
+	}
+}
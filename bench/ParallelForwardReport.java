@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Latency of one window fed forward through networks of growing width, on the calling thread
+ * and split between the threads of fork-join pools. For each width a network with that many
+ * inputs and hidden neurons is fed single windows one after another, and the 50th and 99th
+ * percentile of the time of feedForward are reported in microseconds. Where the split pools
+ * drop below the sequential times is the width from which Runner.setParallelForwardThreshold
+ * pays off on this machine.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:bench ParallelForwardReport
+ *
+ */
+public class ParallelForwardReport
+{
+	private static final int[] WIDTHS = {64, 256, 512, 1024, 2048, 4096};
+
+	//Numbers of threads of the pools the layers are split between
+	private static final int[] THREADS = {2, 4, 8};
+
+	//Least number of weights each thread reads from a layer
+	private static final int THRESHOLD = 16384;
+
+	//Least time and number of windows each measurement runs for
+	private static final long MEASURE_NANOS = 1000000000L;
+	private static final int MIN_WINDOWS = 200;
+
+	public static void main(String args[])
+	{
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors, threshold of " + THRESHOLD + " weights per thread");
+		System.out.printf("%-16s %-12s %10s %10s%n", "network", "threads", "p50 us", "p99 us");
+		for(int width : WIDTHS)
+		{
+			Network n = new Network(BenchmarkData.runner(width + "x" + width + "x10"));
+			n.setInputs(BenchmarkData.randomValues(width));
+			String shape = width + "x" + width + "x10";
+			report(shape, "sequential", n);
+			for(int threads : THREADS)
+			{
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try
+				{
+					n.getEngine().setParallelForward(pool, THRESHOLD);
+					report(shape, threads + " threads", n);
+				}
+				finally
+				{
+					n.getEngine().setParallelForward(null, 0);
+					pool.shutdown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Times feedForward until enough windows have been measured and prints the percentiles
+	 */
+	private static void report(String shape, String mode, Network n)
+	{
+		//Warm up the JIT and the pool threads
+		long warm = System.nanoTime();
+		while(System.nanoTime() - warm < MEASURE_NANOS/4)
+		{
+			n.feedForward();
+		}
+		long[] times = new long[1024];
+		int count = 0;
+		long start = System.nanoTime();
+		while(count < MIN_WINDOWS || System.nanoTime() - start < MEASURE_NANOS)
+		{
+			long begin = System.nanoTime();
+			n.feedForward();
+			long elapsed = System.nanoTime() - begin;
+			if(count == times.length)
+			{
+				times = Arrays.copyOf(times, count*2);
+			}
+			times[count++] = elapsed;
+		}
+		Arrays.sort(times, 0, count);
+		System.out.printf("%-16s %-12s %10.1f %10.1f%n", shape, mode, times[count/2]/1e3, times[(int) (count*0.99)]/1e3);
+	}
+}
@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * Training a batch of samples with the parallel trainer. Operations are named after the mode
+ * and number of threads, such as synchronous:4 or hogwild:8.
+ *
+ */
+public class ParallelWorkload implements Workload
+{
+	//Number of samples in each batch
+	public static final int BATCH_SIZE = 256;
+
+	private Runner runner;
+	private double[][] inputs;
+	private double[][] actuals;
+	private List<ParallelTrainer> trainers = new ArrayList<ParallelTrainer>();
+
+	public void setup(String layers)
+	{
+		runner = BenchmarkData.runner(layers);
+		inputs = new double[BATCH_SIZE][];
+		actuals = new double[BATCH_SIZE][];
+		for(int b=0; b<BATCH_SIZE; b++)
+		{
+			inputs[b] = BenchmarkData.randomValues(runner.getNumInputs() + b).clone();
+			actuals[b] = BenchmarkData.randomValues(runner.getNumOutputs() + b).clone();
+		}
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		String[] parts = name.split(":");
+		boolean hogwild = parts[0].equals("hogwild");
+		final Network network = new Network(runner);
+		final ParallelTrainer trainer = new ParallelTrainer(network, Integer.parseInt(parts[1]), hogwild);
+		trainers.add(trainer);
+		return () -> { trainer.train(inputs, actuals, BATCH_SIZE); return network; };
+	}
+
+	public void tearDown()
+	{
+		for(ParallelTrainer trainer : trainers)
+		{
+			trainer.shutdown();
+		}
+		trainers.clear();
+	}
+}
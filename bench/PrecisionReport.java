@@ -0,0 +1,197 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accuracy and speed of the single precision engine against the double engine on the training
+ * loop Runner uses. For each shape a double network, a single precision network and a single
+ * precision network with double accumulation are trained from the same starting weights for
+ * several passes over a synthetic price file, then predict every week of the file. The report
+ * gives the bytes of the weights, the time of a training pass, the time to predict a window,
+ * the mean percent error of the predicted prices from Runner.calculatePercError, and the largest
+ * difference of a predicted price from the one the double network predicts, both before and
+ * after training. The wide networks do not learn the synthetic prices at Runner's learning rate
+ * and training them amplifies any difference, so for them the difference before training is
+ * the one that measures the precision.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:bench PrecisionReport
+ *
+ */
+public class PrecisionReport
+{
+	private static final String[] SHAPES = {"40x17x10", "1000x500x100", "1000x2000x100"};
+
+	//Number of weeks in the synthetic price file and training passes over it for each shape
+	private static final int[] WEEKS = {520, 104, 52};
+	private static final int[] EPOCHS = {30, 4, 3};
+
+	//Number of times the windows are predicted when timing predict
+	private static final int PREDICT_ROUNDS = 20;
+
+	private static final String[] PRECISIONS = {"double", "float", "float, double sums"};
+
+	public static void main(String args[]) throws IOException
+	{
+		for(int s=0; s<SHAPES.length; s++)
+		{
+			Runner shape = BenchmarkData.runner(SHAPES[s]);
+			File prices = File.createTempFile("prices", ".csv");
+			try
+			{
+				BenchmarkData.writePrices(prices, shape, WEEKS[s]);
+				//Every network starts from the same weights so only the precision differs
+				Network initial = new Network(shape);
+				System.out.println(SHAPES[s] + ", " + EPOCHS[s] + " passes over " + WEEKS[s] + " weeks");
+				System.out.println("precision            weight MB   ms per pass   us per predict   mean % error   max |price - double| untrained, trained");
+				double[][] reference = null;
+				double[][] untrainedReference = null;
+				for(int p=0; p<PRECISIONS.length; p++)
+				{
+					Runner r = BenchmarkData.runner(SHAPES[s]);
+					r.setDataBounds(BenchmarkData.DATA_MAX, BenchmarkData.DATA_MIN);
+					r.setPrecision(p > 0, p > 1);
+					Network n = new Network(r);
+					for(int l=0; l<n.getEngine().getNumLayers(); l++)
+					{
+						double[] weights = initial.getEngine().getLayer(l).getWeights();
+						System.arraycopy(weights, 0, n.getEngine().getLayer(l).getWeights(), 0, weights.length);
+					}
+					n.reloadWeights();
+					double[][] windows = windows(r, n, prices);
+					double[][] untrained = denormalize(r, n, n.predict(windows));
+					if(untrainedReference == null)
+					{
+						untrainedReference = untrained;
+					}
+
+					//The first pass warms up the JIT and is not timed
+					Runner.train(r, n, prices);
+					long start = System.nanoTime();
+					for(int e=1; e<EPOCHS[s]; e++)
+					{
+						Runner.train(r, n, prices);
+					}
+					double millis = (System.nanoTime() - start)/1e6/(EPOCHS[s] - 1);
+
+					double[][] predicted = n.predict(windows);
+					start = System.nanoTime();
+					for(int k=0; k<PREDICT_ROUNDS; k++)
+					{
+						n.predict(windows, predicted);
+					}
+					double micros = (System.nanoTime() - start)/1e3/PREDICT_ROUNDS/windows.length;
+
+					denormalize(r, n, predicted);
+					if(reference == null)
+					{
+						reference = predicted;
+					}
+					System.out.printf("%-20s %10.2f %13.2f %16.2f %14.3f %21.2e, %.2e%n", PRECISIONS[p], weightBytes(n)/1e6, millis, micros,
+							meanPercError(r, prices, predicted), maxDifference(untrainedReference, untrained), maxDifference(reference, predicted));
+				}
+				System.out.println();
+			}
+			finally
+			{
+				prices.delete();
+			}
+		}
+	}
+
+	/**
+	 * Bytes of the weights the network trains and predicts with
+	 */
+	private static long weightBytes(Network n)
+	{
+		long bytes = 0;
+		for(int l=0; l<n.getEngine().getNumLayers(); l++)
+		{
+			if(n.getFloatEngine() != null)
+			{
+				bytes += 4L*n.getFloatEngine().getLayer(l).getWeights().length;
+			}
+			else
+			{
+				bytes += 8L*n.getEngine().getLayer(l).getWeights().length;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Turns normalized outputs into prices in place
+	 */
+	private static double[][] denormalize(Runner r, Network n, double[][] outputs)
+	{
+		for(int w=0; w<outputs.length; w++)
+		{
+			n.denormalizeValues(outputs[w], outputs[w], r.getDataMax(), r.getDataMin());
+		}
+		return outputs;
+	}
+
+	/**
+	 * The normalized inputs of every week in the file
+	 */
+	private static double[][] windows(Runner r, Network n, File prices) throws IOException
+	{
+		PriceLoader loader = new PriceLoader(prices, r.getNumInputs(), r.getNumOutputs());
+		List<double[]> windows = new ArrayList<double[]>();
+		try
+		{
+			while(loader.nextWeek())
+			{
+				windows.add(n.normalizeValues(loader.getInputs(), r.getDataMax(), r.getDataMin()));
+			}
+		}
+		finally
+		{
+			loader.close();
+		}
+		return windows.toArray(new double[windows.size()][]);
+	}
+
+	/**
+	 * Mean percent error of the predicted prices of every week in the file
+	 */
+	private static double meanPercError(Runner r, File prices, double[][] predicted) throws IOException
+	{
+		PriceLoader loader = new PriceLoader(prices, r.getNumInputs(), r.getNumOutputs());
+		double sum = 0;
+		long count = 0;
+		try
+		{
+			for(int w=0; loader.nextWeek(); w++)
+			{
+				double[] actuals = loader.getActuals();
+				for(int i=0; i<actuals.length; i++)
+				{
+					sum += Runner.calculatePercError(actuals[i], predicted[w][i]);
+					count++;
+				}
+			}
+		}
+		finally
+		{
+			loader.close();
+		}
+		return sum/count;
+	}
+
+	/**
+	 * Largest difference between two sets of predicted prices
+	 */
+	private static double maxDifference(double[][] a, double[][] b)
+	{
+		double max = 0;
+		for(int w=0; w<a.length; w++)
+		{
+			for(int i=0; i<a[w].length; i++)
+			{
+				max = Math.max(max, Math.abs(a[w][i] - b[w][i]));
+			}
+		}
+		return max;
+	}
+}
@@ -0,0 +1,36 @@
+import java.util.function.Supplier;
+
+import benchmarks.Workload;
+
+/**
+ * Predicting a block of windows with one network shared by every benchmark thread.
+ *
+ */
+public class PredictWorkload implements Workload
+{
+	//Number of windows in each call to predict
+	public static final int WINDOWS = 64;
+
+	private Network network;
+	private double[][] windows;
+
+	public void setup(String layers)
+	{
+		Runner r = BenchmarkData.runner(layers);
+		network = new Network(r);
+		windows = new double[WINDOWS][];
+		for(int b=0; b<WINDOWS; b++)
+		{
+			windows[b] = BenchmarkData.randomValues(r.getNumInputs() + b).clone();
+		}
+	}
+
+	public Supplier<Object> operation(String name)
+	{
+		if(name.equals("predict"))
+		{
+			return () -> network.predict(windows);
+		}
+		throw new IllegalArgumentException(name);
+	}
+}
@@ -0,0 +1,196 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load on a PredictionServer from clients on the loopback address, with batching off and on.
+ * Each client holds a connection open and sends one window at a time, waiting for each reply,
+ * for a few seconds. The report gives the requests answered per second, the round trip the
+ * clients saw at the median and 99th percentile in microseconds, and the mean batch.
+ *
+ * First it times the forward pass alone, in process: the microseconds per window of predicting
+ * 64 windows one at a time and as one batch, which is the most batching can save a request.
+ *
+ * Run with: java --add-modules jdk.incubator.vector -cp target/classes:target/benchmarks.jar PredictionServerReport
+ *
+ */
+public class PredictionServerReport
+{
+	//Shapes of the networks served
+	private static final String[] SHAPES = {"40x17x10", "40x256x256x10"};
+
+	//Numbers of clients sending at once
+	private static final int[] CLIENTS = {1, 8, 64};
+
+	//Batching: most windows in a batch (1 is off) and the longest a window waits for others
+	private static final int[] MAX_BATCH = {1, 64, 64};
+	private static final long[] MAX_WAIT_MICROS = {0, 0, 200};
+
+	//How long each client warms up and then sends for
+	private static final long WARMUP_NANOS = 1000000000L;
+	private static final long MEASURE_NANOS = 3000000000L;
+
+	//Windows the clients take turns sending
+	private static final int WINDOWS = 256;
+
+	public static void main(String args[]) throws Exception
+	{
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors, virtual threads "
+				+ (PredictionServer.newVirtualThreadExecutor() != null ? "yes" : "no, platform threads"));
+		System.out.printf("%-16s %14s %14s%n", "forward pass", "one at a time", "batch of 64");
+		for(String shape : SHAPES)
+		{
+			Network n = new Network(BenchmarkData.runner(shape));
+			double[][] windows = new double[64][];
+			double[][] outputs = new double[64][n.getVariables().getNumOutputs()];
+			for(int w=0; w<windows.length; w++)
+			{
+				windows[w] = BenchmarkData.randomValues(n.getVariables().getNumInputs() + w);
+			}
+			System.out.printf("%-16s %14.2f %14.2f%n", shape, forward(n, windows, outputs, 1), forward(n, windows, outputs, windows.length));
+		}
+		System.out.println();
+
+		System.out.printf("%-16s %-16s %8s %12s %10s %10s %8s%n", "shape", "batching", "clients", "requests/s", "p50 us", "p99 us", "batch");
+		for(String shape : SHAPES)
+		{
+			Network n = new Network(BenchmarkData.runner(shape));
+			byte[][] requests = requests(n.getVariables());
+			for(int mode=0; mode<MAX_BATCH.length; mode++)
+			{
+				String batching = MAX_BATCH[mode] == 1 ? "off" : "up to " + MAX_BATCH[mode] + (MAX_WAIT_MICROS[mode] > 0 ? ", " + MAX_WAIT_MICROS[mode] + "us" : "");
+				for(int clients : CLIENTS)
+				{
+					PredictionServer server = new PredictionServer(n, 0, MAX_BATCH[mode], MAX_WAIT_MICROS[mode], TimeUnit.MICROSECONDS);
+					try
+					{
+						LatencyHistogram latency = new LatencyHistogram();
+						long answered = load(server.getPort(), clients, requests, latency);
+						MicroBatcher batcher = server.getBatcher();
+						System.out.printf("%-16s %-16s %8d %12.0f %10.2f %10.2f %8s%n", shape, batching, clients,
+								answered/(MEASURE_NANOS/1e9), latency.getValueAtPercentile(50)/1e3, latency.getValueAtPercentile(99)/1e3,
+								batcher == null ? "-" : String.format("%.1f", batcher.getMeanBatchSize()));
+					}
+					finally
+					{
+						server.close();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Microseconds per window of predicting the windows in batches of the given size, the best of
+	 * several rounds after a warm up
+	 */
+	private static double forward(Network n, double[][] windows, double[][] outputs, int batchSize)
+	{
+		double[][] batchWindows = new double[batchSize][];
+		double[][] batchOutputs = new double[batchSize][];
+		long best = Long.MAX_VALUE;
+		for(int round=0; round<2000; round++)
+		{
+			long start = System.nanoTime();
+			for(int first=0; first<windows.length; first+=batchSize)
+			{
+				for(int b=0; b<batchSize; b++)
+				{
+					batchWindows[b] = windows[first + b];
+					batchOutputs[b] = outputs[first + b];
+				}
+				n.predict(batchWindows, batchOutputs, batchSize);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best/1e3/windows.length;
+	}
+
+	/**
+	 * Runs the clients against the server and records the round trips after the warm up
+	 * @return the number of requests answered after the warm up
+	 */
+	private static long load(final int port, int clients, final byte[][] requests, final LatencyHistogram latency) throws InterruptedException
+	{
+		final AtomicLong answered = new AtomicLong();
+		final long start = System.nanoTime();
+		Thread[] threads = new Thread[clients];
+		for(int c=0; c<clients; c++)
+		{
+			final int client = c;
+			threads[c] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+						try
+						{
+							socket.setTcpNoDelay(true);
+							OutputStream out = socket.getOutputStream();
+							BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+							long count = 0;
+							for(int k=client; ; k++)
+							{
+								long sent = System.nanoTime();
+								if(sent - start > WARMUP_NANOS + MEASURE_NANOS)
+								{
+									break;
+								}
+								out.write(requests[k % requests.length]);
+								out.flush();
+								in.readLine();
+								if(sent - start > WARMUP_NANOS)
+								{
+									latency.record(System.nanoTime() - sent);
+									count++;
+								}
+							}
+							answered.addAndGet(count);
+						}
+						finally
+						{
+							socket.close();
+						}
+					}
+					catch(IOException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}, "client-" + c);
+			threads[c].start();
+		}
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		return answered.get();
+	}
+
+	/**
+	 * Request lines of windows of random prices, ready to send
+	 */
+	private static byte[][] requests(Runner r)
+	{
+		byte[][] requests = new byte[WINDOWS][];
+		for(int w=0; w<WINDOWS; w++)
+		{
+			double[] window = BenchmarkData.randomValues(r.getNumInputs() + w);
+			StringBuilder line = new StringBuilder("W").append(w);
+			for(int i=0; i<r.getNumInputs(); i++)
+			{
+				line.append(',').append(Math.round((10 + 290*window[i])*100)/100.0);
+			}
+			requests[w] = line.append('\n').toString().getBytes(StandardCharsets.ISO_8859_1);
+		}
+		return requests;
+	}
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Time to draw the initial weights of a layer of 4 million weights, the old way from the shared
+ * SingletonRandom and with RandomSource.fill on the calling thread and on fork-join pools, and
+ * whether every pool drew the same weights. Then several threads draw at once, all from the
+ * shared generator against each from a stream of its own, to show what the shared one costs when
+ * threads contend for it.
+ *
+ * Run with: java -cp target/classes:bench RandomReport
+ *
+ */
+public class RandomReport
+{
+	//Weights in the layer, and the values each thread draws when they draw at once
+	private static final int WEIGHTS = 1 << 22;
+	private static final int DRAWS = 1 << 21;
+
+	//Numbers of threads of the pools, and of the threads drawing at once
+	private static final int[] THREADS = {1, 2, 4};
+
+	//Times each measurement is repeated, of which the fastest is reported
+	private static final int REPEATS = 7;
+
+	public static void main(String args[]) throws InterruptedException
+	{
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors, layer of " + WEIGHTS + " weights");
+		System.out.printf("%-32s %12s %14s%n", "initialization", "ns/weight", "same weights");
+		final double[] weights = new double[WEIGHTS];
+		final SingletonRandom shared = SingletonRandom.getInstance();
+		long best = Long.MAX_VALUE;
+		for(int k=0; k<REPEATS; k++)
+		{
+			long start = System.nanoTime();
+			for(int i=0; i<weights.length; i++)
+			{
+				weights[i] = shared.nextDouble(0.5, -0.5);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-32s %12.2f %14s%n", "SingletonRandom", (double) best/WEIGHTS, "-");
+
+		RandomSource source = new RandomSource(RandomSource.DEFAULT_SEED);
+		double[] expected = new double[WEIGHTS];
+		best = Long.MAX_VALUE;
+		for(int k=0; k<REPEATS; k++)
+		{
+			long start = System.nanoTime();
+			source.fill(0, expected, -0.5, 0.5, null);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-32s %12.2f %14s%n", "RandomSource, calling thread", (double) best/WEIGHTS, "yes");
+		for(int threads : THREADS)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				best = Long.MAX_VALUE;
+				for(int k=0; k<REPEATS; k++)
+				{
+					Arrays.fill(weights, 0);
+					long start = System.nanoTime();
+					source.fill(0, weights, -0.5, 0.5, pool);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				System.out.printf("%-32s %12.2f %14s%n", "RandomSource, pool of " + threads, (double) best/WEIGHTS, Arrays.equals(expected, weights) ? "yes" : "NO");
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+
+		System.out.println();
+		System.out.printf("%-32s %12s %14s%n", "threads drawing at once", "shared ns", "streams ns");
+		for(int threads : THREADS)
+		{
+			System.out.printf("%-32d %12.2f %14.2f%n", threads, drawAtOnce(threads, shared, null), drawAtOnce(threads, null, source));
+		}
+	}
+
+	/**
+	 * Nanoseconds per value while the threads each draw DRAWS values at once, from the shared
+	 * generator or from streams of their own
+	 */
+	private static double drawAtOnce(int threads, final SingletonRandom shared, final RandomSource source) throws InterruptedException
+	{
+		long best = Long.MAX_VALUE;
+		for(int k=0; k<REPEATS; k++)
+		{
+			Thread[] workers = new Thread[threads];
+			for(int t=0; t<threads; t++)
+			{
+				final int id = t;
+				workers[t] = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						double sum = 0;
+						if(shared != null)
+						{
+							for(int i=0; i<DRAWS; i++)
+							{
+								sum += shared.nextDouble(0.5, -0.5);
+							}
+						}
+						else
+						{
+							SplittableRandom random = source.stream(id);
+							for(int i=0; i<DRAWS; i++)
+							{
+								sum += random.nextDouble();
+							}
+						}
+						if(sum == 42)
+						{
+							System.out.print("");
+						}
+					}
+				});
+			}
+			long start = System.nanoTime();
+			for(Thread worker : workers)
+			{
+				worker.start();
+			}
+			for(Thread worker : workers)
+			{
+				worker.join();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best/((long) threads*DRAWS);
+	}
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of training a network on one weekly window with each activation. ActivationReport
+ * gives the accuracy of each one.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivationBenchmark
+{
+	@Param({"40x17x10", "1000x500x100"})
+	public String layers;
+
+	@Param({"sigmoid-pow", "sigmoid", "table-1e-3", "table-1e-6", "tanh", "relu", "leaky-relu"})
+	public String activation;
+
+	private Supplier<Object> trainSample;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		Workload workload = Workload.create("ActivationWorkload");
+		workload.setup(layers);
+		trainSample = workload.operation(activation);
+	}
+
+	@Benchmark
+	public Object trainSample()
+	{
+		return trainSample.get();
+	}
+}
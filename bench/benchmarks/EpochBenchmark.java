@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of one full training pass of Runner over a synthetic price file of 520 weeks,
+ * including reading and parsing the file.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EpochBenchmark
+{
+	@Param({"40x17x10", "1000x500x100"})
+	public String layers;
+
+	private Workload workload;
+	private Supplier<Object> epoch;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		workload = Workload.create("EpochWorkload");
+		workload.setup(layers);
+		epoch = workload.operation("epoch");
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object epoch()
+	{
+		return epoch.get();
+	}
+}
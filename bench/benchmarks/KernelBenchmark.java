@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of training a network on one weekly window with scalar kernels and with vector kernels
+ * of 128 (SSE/NEON), 256 (AVX2) and 512 (AVX-512) bits. A width the CPU does not have fails
+ * its setup instead of measuring the scalar fallback.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark
+{
+	@Param({"40x17x10", "1000x500x100", "1000x2000x100"})
+	public String layers;
+
+	@Param({"scalar", "vector128", "vector256", "vector512"})
+	public String kernels;
+
+	private Supplier<Object> trainSample;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		Workload workload = Workload.create("KernelWorkload");
+		workload.setup(layers);
+		trainSample = workload.operation(kernels);
+	}
+
+	@Benchmark
+	public Object trainSample()
+	{
+		return trainSample.get();
+	}
+}
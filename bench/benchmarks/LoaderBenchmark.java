@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of reading every week of a synthetic price file of 52000 weeks with the price loader.
+ * The file size is printed during setup so the time can be turned into megabytes per second.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoaderBenchmark
+{
+	@Param({"40x17x10", "1000x500x100"})
+	public String layers;
+
+	private Workload workload;
+	private Supplier<Object> load;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		workload = Workload.create("LoaderWorkload");
+		workload.setup(layers);
+		load = workload.operation("load");
+		System.out.println("File size: " + workload.operation("fileSize").get() + " bytes");
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object load()
+	{
+		return load.get();
+	}
+}
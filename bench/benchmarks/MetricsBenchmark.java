@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the metrics on training one sample. metricsOff and metricsOn train through Network in
+ * JVMs started with -Dnnet.metrics=false and true; engine does the same steps on a LayerEngine,
+ * which has no recording code at all. The overhead of the switched off metrics is metricsOff
+ * over engine, less 1.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class MetricsBenchmark
+{
+	@Param({"40x17x10", "1000x500x100"})
+	public String layers;
+
+	private Supplier<Object> network;
+	private Supplier<Object> engine;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		Workload workload = Workload.create("MetricsWorkload");
+		workload.setup(layers);
+		network = workload.operation("network");
+		engine = workload.operation("engine");
+	}
+
+	@Benchmark
+	@Fork(value = 3, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Dnnet.metrics=false"})
+	public Object engine()
+	{
+		return engine.get();
+	}
+
+	@Benchmark
+	@Fork(value = 3, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Dnnet.metrics=false"})
+	public Object metricsOff()
+	{
+		return network.get();
+	}
+
+	@Benchmark
+	@Fork(value = 3, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Dnnet.metrics=true"})
+	public Object metricsOn()
+	{
+		return network.get();
+	}
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of each step of training a network on one weekly window, and of a whole sample.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NetworkBenchmark
+{
+	@Param({"40x17x10", "1000x500x100"})
+	public String layers;
+
+	private Workload workload;
+	private Supplier<Object> feedForward;
+	private Supplier<Object> calculateError;
+	private Supplier<Object> updateWeights;
+	private Supplier<Object> normalizeValues;
+	private Supplier<Object> trainSample;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		workload = Workload.create("NetworkWorkload");
+		workload.setup(layers);
+		feedForward = workload.operation("feedForward");
+		calculateError = workload.operation("calculateError");
+		updateWeights = workload.operation("updateWeights");
+		normalizeValues = workload.operation("normalizeValues");
+		trainSample = workload.operation("trainSample");
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object feedForward()
+	{
+		return feedForward.get();
+	}
+
+	@Benchmark
+	public Object calculateError()
+	{
+		return calculateError.get();
+	}
+
+	@Benchmark
+	public Object updateWeights()
+	{
+		return updateWeights.get();
+	}
+
+	@Benchmark
+	public Object normalizeValues()
+	{
+		return normalizeValues.get();
+	}
+
+	@Benchmark
+	public Object trainSample()
+	{
+		return trainSample.get();
+	}
+}
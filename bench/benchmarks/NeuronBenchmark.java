@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of combining one standalone neuron with every neuron of the layer to its left, for a
+ * hidden neuron (fan-in of the inputs) and an output neuron (fan-in of the hidden layer).
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NeuronBenchmark
+{
+	@Param({"40x17x10", "1000x500x100"})
+	public String layers;
+
+	private Workload workload;
+	private Supplier<Object> combineHidden;
+	private Supplier<Object> combineOutput;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		workload = Workload.create("NeuronWorkload");
+		workload.setup(layers);
+		combineHidden = workload.operation("combineHidden");
+		combineOutput = workload.operation("combineOutput");
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object combineHidden()
+	{
+		return combineHidden.get();
+	}
+
+	@Benchmark
+	public Object combineOutput()
+	{
+		return combineOutput.get();
+	}
+}
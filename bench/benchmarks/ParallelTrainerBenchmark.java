@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Samples per second of the parallel trainer on batches of 256 samples. The scaling
+ * efficiency at N threads is the score at N threads divided by N times the score at 1 thread.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelTrainerBenchmark
+{
+	@Param({"40x17x10", "1000x500x100"})
+	public String layers;
+
+	@Param({"synchronous", "hogwild"})
+	public String mode;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private Workload workload;
+	private Supplier<Object> train;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		workload = Workload.create("ParallelWorkload");
+		workload.setup(layers);
+		train = workload.operation(mode + ":" + threads);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		workload.tearDown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(256)
+	public Object train()
+	{
+		return train.get();
+	}
+}
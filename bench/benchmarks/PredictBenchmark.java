@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Predictions per second with 1, 8 and 32 threads sharing one network, 64 windows per call.
+ * The score is the total over all threads.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredictBenchmark
+{
+	@Param({"40x17x10", "1000x500x100"})
+	public String layers;
+
+	private Supplier<Object> predict;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		Workload workload = Workload.create("PredictWorkload");
+		workload.setup(layers);
+		predict = workload.operation("predict");
+	}
+
+	@Benchmark
+	@Threads(1)
+	@OperationsPerInvocation(64)
+	public Object threads1()
+	{
+		return predict.get();
+	}
+
+	@Benchmark
+	@Threads(8)
+	@OperationsPerInvocation(64)
+	public Object threads8()
+	{
+		return predict.get();
+	}
+
+	@Benchmark
+	@Threads(32)
+	@OperationsPerInvocation(64)
+	public Object threads32()
+	{
+		return predict.get();
+	}
+}
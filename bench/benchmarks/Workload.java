@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.util.function.Supplier;
+
+/**
+ * The network classes live in the default package, which code in a named package cannot refer
+ * to, while JMH only accepts benchmarks in a named package. Each benchmark therefore drives a
+ * workload class from the default package through this interface. Every benchmark method calls
+ * a single operation, so the call is monomorphic and inlined by the JIT.
+ *
+ */
+public interface Workload
+{
+	/**
+	 * Builds the networks and data for the given shape
+	 * @param layers inputs, each hidden layer and outputs separated by x, such as 40x17x10
+	 * @throws Exception
+	 */
+	void setup(String layers) throws Exception;
+
+	/**
+	 * Looks up one of the operations this workload measures
+	 * @param name name of the operation
+	 * @return the operation, returning its result so it is not optimized away
+	 */
+	Supplier<Object> operation(String name);
+
+	/**
+	 * Releases anything the workload created during setup
+	 */
+	default void tearDown()
+	{
+	}
+
+	/**
+	 * Creates a workload from the default package by name
+	 * @param className
+	 * @return the workload
+	 */
+	static Workload create(String className)
+	{
+		try
+		{
+			return (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("Could not create workload " + className, e);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/**
+ * The transfer function a layer applies to the sum of each neuron's weighted inputs, together
+ * with its derivative for back propagation. The derivative is written in terms of the neuron's
+ * output rather than its sum, since the output is what the layers keep, the same way the
+ * sigmoid's derivative is out*(1-out).
+ *
+ */
+public abstract class Activation
+{
+	//Codes that identify each kind of activation in a saved network
+	public static final int SIGMOID_CODE = 0;
+	public static final int TANH_CODE = 1;
+	public static final int RELU_CODE = 2;
+	public static final int LEAKY_RELU_CODE = 3;
+	public static final int TABLE_SIGMOID_CODE = 4;
+
+	//The logistic function 1/(1+e^-x), computed exactly with Math.exp
+	public static final Activation SIGMOID = new Sigmoid();
+
+	//The hyperbolic tangent, with outputs between -1 and 1
+	public static final Activation TANH = new Tanh();
+
+	//max(0, x)
+	public static final Activation RELU = new LeakyRelu(0);
+
+	/**
+	 * The transfer function
+	 * @param sum sum of the products of a neuron's inputs and weights
+	 * @return the output of the neuron
+	 */
+	public abstract double apply(double sum);
+
+	/**
+	 * The derivative of the transfer function at the sum that gave the output
+	 * @param out the output of the neuron
+	 * @return the derivative
+	 */
+	public abstract double derivative(double out);
+
+	/**
+	 * Getter for the code that identifies this kind of activation
+	 * @return code
+	 */
+	public abstract int getCode();
+
+	/**
+	 * Getter for the setting of this activation that is saved with it, such as the slope of
+	 * a leaky ReLU or the error bound of a table sigmoid
+	 * @return the parameter, or 0 if the activation has none
+	 */
+	public double getParameter()
+	{
+		return 0;
+	}
+
+	/**
+	 * A ReLU whose slope below 0 is the given fraction instead of 0, so neurons with a negative
+	 * sum still learn
+	 * @param slope slope below 0, usually around 0.01
+	 * @return the activation
+	 */
+	public static Activation leakyRelu(double slope)
+	{
+		if(slope < 0 || slope >= 1)
+		{
+			throw new IllegalArgumentException("Slope must be at least 0 and below 1");
+		}
+		return new LeakyRelu(slope);
+	}
+
+	/**
+	 * A sigmoid that interpolates a precomputed table instead of calling Math.exp
+	 * @param maxError largest difference from the exact sigmoid anywhere
+	 * @return the activation
+	 */
+	public static Activation tableSigmoid(double maxError)
+	{
+		return new TableSigmoid(maxError);
+	}
+
+	/**
+	 * Creates the activation a saved network was trained with
+	 * @param code the code of the kind of activation
+	 * @param parameter the setting of the activation
+	 * @return the activation
+	 */
+	public static Activation create(int code, double parameter)
+	{
+		switch(code)
+		{
+			case SIGMOID_CODE:
+				return SIGMOID;
+			case TANH_CODE:
+				return TANH;
+			case RELU_CODE:
+				return RELU;
+			case LEAKY_RELU_CODE:
+				return leakyRelu(parameter);
+			case TABLE_SIGMOID_CODE:
+				return tableSigmoid(parameter);
+			default:
+				throw new IllegalArgumentException("Unknown activation " + code);
+		}
+	}
+
+	private static class Sigmoid extends Activation
+	{
+		public double apply(double sum)
+		{
+			return 1.0/(1.0+Math.exp(-sum));
+		}
+
+		public double derivative(double out)
+		{
+			return out*(1-out);
+		}
+
+		public int getCode()
+		{
+			return SIGMOID_CODE;
+		}
+
+		public String toString()
+		{
+			return "sigmoid";
+		}
+	}
+
+	private static class Tanh extends Activation
+	{
+		public double apply(double sum)
+		{
+			return Math.tanh(sum);
+		}
+
+		public double derivative(double out)
+		{
+			return 1 - (out*out);
+		}
+
+		public int getCode()
+		{
+			return TANH_CODE;
+		}
+
+		public String toString()
+		{
+			return "tanh";
+		}
+	}
+
+	private static class LeakyRelu extends Activation
+	{
+		//Slope of the function below 0
+		private final double slope;
+
+		LeakyRelu(double slope)
+		{
+			this.slope = slope;
+		}
+
+		public double apply(double sum)
+		{
+			return sum > 0 ? sum : slope*sum;
+		}
+
+		public double derivative(double out)
+		{
+			return out > 0 ? 1 : slope;
+		}
+
+		public int getCode()
+		{
+			return slope == 0 ? RELU_CODE : LEAKY_RELU_CODE;
+		}
+
+		public double getParameter()
+		{
+			return slope;
+		}
+
+		public String toString()
+		{
+			return slope == 0 ? "relu" : "leaky relu " + slope;
+		}
+	}
+
+	/**
+	 * The sigmoid read from a table of evenly spaced values with linear interpolation between
+	 * them. The error of linear interpolation is at most h*h/8 times the largest second
+	 * derivative of the sigmoid, which is 1/(6*sqrt(3)), so the spacing h is chosen from the
+	 * error bound. Beyond the ends of the table the sigmoid is within the bound of 0 or 1.
+	 */
+	private static class TableSigmoid extends Activation
+	{
+		//Largest second derivative of the sigmoid
+		private static final double MAX_SECOND_DERIVATIVE = 1/(6*Math.sqrt(3));
+
+		private final double maxError;
+
+		//The table covers sums from -range to range
+		private final double range;
+
+		//Number of table entries per unit of the sum
+		private final double scale;
+
+		//Sigmoid at each entry, with one extra entry past the end for interpolation
+		private final double[] table;
+
+		TableSigmoid(double maxError)
+		{
+			if(!(maxError > 0 && maxError < 0.5))
+			{
+				throw new IllegalArgumentException("Error bound must be above 0 and below 0.5");
+			}
+			this.maxError = maxError;
+			//Interpolation uses half of the bound, leaving the rest as margin
+			double spacing = Math.sqrt(8*(maxError/2)/MAX_SECOND_DERIVATIVE);
+			range = Math.log(1/maxError);
+			int entries = (int) Math.ceil(2*range/spacing);
+			scale = entries/(2*range);
+			table = new double[entries + 2];
+			for(int k=0; k<table.length; k++)
+			{
+				table[k] = SIGMOID.apply((k/scale) - range);
+			}
+		}
+
+		public double apply(double sum)
+		{
+			double x = (sum + range)*scale;
+			if(!(x > 0))
+			{
+				return sum != sum ? sum : table[0];
+			}
+			if(x >= table.length - 2)
+			{
+				return table[table.length - 2];
+			}
+			int k = (int) x;
+			double fraction = x - k;
+			return table[k] + (fraction*(table[k+1] - table[k]));
+		}
+
+		public double derivative(double out)
+		{
+			return out*(1-out);
+		}
+
+		public int getCode()
+		{
+			return TABLE_SIGMOID_CODE;
+		}
+
+		public double getParameter()
+		{
+			return maxError;
+		}
+
+		public String toString()
+		{
+			return "table sigmoid " + maxError;
+		}
+	}
+}
@@ -4,7 +4,7 @@ import org.junit.runners.Suite.SuiteClasses;
 
 
 @RunWith(Suite.class)
-@SuiteClasses({TestNeuron.class, TestNetwork.class, TestSimulator.class})
+@SuiteClasses({TestNeuron.class, TestNetwork.class, TestSimulator.class, TestPriceLoader.class, TestParallelTrainer.class, TestModelCheckpoint.class, TestEpochTrainer.class, TestOptimizer.class, TestRandomSource.class, TestMetrics.class, TestOnlineLearner.class, TestMicroBatcher.class, TestPredictionServer.class, TestModelRegistry.class, TestHyperparameterSearch.class})
 public final class AllTests{
 	
 }
@@ -0,0 +1,436 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fully connected layer of the network stored as flat primitive arrays. The weights into
+ * every neuron of the layer are kept in one row-major matrix, so that the weights into neuron i
+ * are found at weights[i*fanIn] through weights[i*fanIn + fanIn - 1]. This is the same layout
+ * as the hiConnectionWeights and ohConnectionWeights arrays of the network. The matrix products
+ * of the layer are done in cache-sized tiles by Gemm.
+ *
+ */
+public class DenseLayer
+{
+	//The number of neurons in this layer
+	final int size;
+
+	//The number of neurons in the layer to the left that feed into this layer
+	final int fanIn;
+
+	//Row-major weight matrix of size*fanIn connection weights
+	final double[] weights;
+
+	//The output of each neuron in this layer
+	final double[] outputs;
+
+	//The error of each neuron in this layer, calculated during back propagation
+	final double[] errors;
+
+	//Outputs and errors of a whole batch of samples, one row of size values per sample
+	double[] batchOutputs;
+	double[] batchErrors;
+
+	//Sum of the delta weights of every sample in a batch, in the same layout as weights
+	double[] gradients;
+
+	//Transfer function applied to the sum of each neuron's weighted inputs
+	Activation activation = Activation.SIGMOID;
+
+	//The dot product and AXPY loops the layer's math is written in
+	Kernels kernels = Kernels.DEFAULT;
+
+	//The tiles the matrix products of the layer are cut into
+	Gemm gemm = Gemm.DEFAULT;
+
+	//The rule the delta weights change the weights by, its state arrays (created on the first
+	//update, each the length of weights) and the number of updates made with it. Layers that
+	//train the same weights on several threads share the state and the count.
+	Optimizer optimizer = Optimizer.SGD;
+	double[][] optimizerState;
+	AtomicLong updates = new AtomicLong();
+
+	/**
+	 * Creates a layer with the given number of neurons, each connected to every neuron
+	 * of the layer to the left
+	 * @param size number of neurons in this layer
+	 * @param fanIn number of neurons in the layer to the left
+	 */
+	public DenseLayer(int size, int fanIn)
+	{
+		this(size, fanIn, new double[size*fanIn]);
+	}
+
+	/**
+	 * Creates a layer that reads and trains the given weight matrix, which may be shared with
+	 * layers of other engines
+	 * @param size number of neurons in this layer
+	 * @param fanIn number of neurons in the layer to the left
+	 * @param weights row-major matrix of size*fanIn weights
+	 */
+	public DenseLayer(int size, int fanIn, double[] weights)
+	{
+		this.size = size;
+		this.fanIn = fanIn;
+		this.weights = weights;
+		outputs = new double[size];
+		errors = new double[size];
+	}
+
+	/**
+	 * Combination and transfer function for every neuron of the layer. Each output is the
+	 * activation of the sum of products of the inputs and the neuron's row of weights.
+	 * @param in outputs of the layer to the left
+	 */
+	public void forward(double[] in)
+	{
+		gemm.multiply(kernels, weights, size, fanIn, in, 1, outputs);
+		for(int i=0; i<size; i++)
+		{
+			outputs[i] = activation.apply(outputs[i]);
+		}
+	}
+
+	/**
+	 * Combination and transfer function for the neurons from one index up to another, so the
+	 * neurons of a layer can be split between threads. The outputs are the same as forward's.
+	 * @param in outputs of the layer to the left
+	 * @param from index of the first neuron
+	 * @param to index after the last neuron
+	 */
+	public void forward(double[] in, int from, int to)
+	{
+		int i = from;
+		for(; i+4<=to; i+=4)
+		{
+			outputs[i] = 0;
+			outputs[i+1] = 0;
+			outputs[i+2] = 0;
+			outputs[i+3] = 0;
+			kernels.dot4(in, 0, weights, i*fanIn, fanIn, fanIn, outputs, i);
+		}
+		for(; i<to; i++)
+		{
+			outputs[i] = kernels.dot(in, 0, weights, i*fanIn, fanIn);
+		}
+		for(i=from; i<to; i++)
+		{
+			outputs[i] = activation.apply(outputs[i]);
+		}
+	}
+
+	/**
+	 * Calculates the error of each neuron when this is the output layer
+	 * @param actuals the expected outputs
+	 */
+	public void outputErrors(double[] actuals)
+	{
+		for(int i=0; i<size; i++)
+		{
+			double out = outputs[i];
+			errors[i] = activation.derivative(out)*(actuals[i]-out);
+		}
+	}
+
+	/**
+	 * Passes the errors of this layer back to the layer to the left. The error of neuron i
+	 * to the left is the sum of this layer's errors times the weight of the connection from
+	 * neuron i into each neuron of this layer. The sums are built by adding each row of the
+	 * weight matrix scaled by its neuron's error, so the weights are read in order.
+	 * @param prevOutputs outputs of the layer to the left
+	 * @param prevErrors receives the errors of the layer to the left
+	 * @param prevActivation activation of the layer to the left
+	 */
+	public void backPropagate(double[] prevOutputs, double[] prevErrors, Activation prevActivation)
+	{
+		gemm.multiplyTransposed(kernels, weights, size, fanIn, errors, 1, prevErrors);
+		for(int i=0; i<fanIn; i++)
+		{
+			prevErrors[i] = prevActivation.derivative(prevOutputs[i])*prevErrors[i];
+		}
+	}
+
+	/**
+	 * Adds the delta weight to every connection into this layer
+	 * @param in outputs of the layer to the left
+	 * @param learningRate
+	 */
+	public void updateWeights(double[] in, double learningRate)
+	{
+		if(optimizer == Optimizer.SGD)
+		{
+			for(int i=0; i<size; i++)
+			{
+				double delta = learningRate * errors[i];
+				kernels.axpy(delta, in, 0, weights, i*fanIn, fanIn);
+			}
+			return;
+		}
+		clearGradients();
+		for(int i=0; i<size; i++)
+		{
+			kernels.axpy(errors[i], in, 0, gradients, i*fanIn, fanIn);
+		}
+		applyGradients(learningRate, 1);
+	}
+
+	/**
+	 * Makes sure the batch buffers can hold the given number of samples
+	 * @param batchSize
+	 */
+	void ensureBatchCapacity(int batchSize)
+	{
+		if(batchOutputs == null || batchOutputs.length < batchSize*size)
+		{
+			batchOutputs = new double[batchSize*size];
+			batchErrors = new double[batchSize*size];
+		}
+		if(gradients == null)
+		{
+			gradients = new double[weights.length];
+		}
+	}
+
+	/**
+	 * Feeds a batch of samples through the layer as one matrix product of the batch inputs
+	 * and the transposed weight matrix. Each tile of weights is kept hot while a tile of
+	 * samples of the batch is combined with it.
+	 * @param in outputs of the layer to the left, one row of fanIn values per sample
+	 * @param count number of samples in the batch
+	 */
+	public void forwardBatch(double[] in, int count)
+	{
+		forwardBatch(in, count, batchOutputs);
+	}
+
+	/**
+	 * Feeds a batch of samples through the layer into the given buffer instead of the layer's
+	 * own, which only reads the layer's weights
+	 * @param in outputs of the layer to the left, one row of fanIn values per sample
+	 * @param count number of samples in the batch
+	 * @param out receives the outputs, one row of size values per sample
+	 */
+	public void forwardBatch(double[] in, int count, double[] out)
+	{
+		gemm.multiply(kernels, weights, size, fanIn, in, count, out);
+		for(int k=0; k<count*size; k++)
+		{
+			out[k] = activation.apply(out[k]);
+		}
+	}
+
+	/**
+	 * Calculates the error of each neuron for every sample of a batch when this is the output layer
+	 * @param actuals expected outputs, one row of size values per sample
+	 * @param count number of samples in the batch
+	 */
+	public void outputErrorsBatch(double[] actuals, int count)
+	{
+		for(int k=0; k<count*size; k++)
+		{
+			double out = batchOutputs[k];
+			batchErrors[k] = activation.derivative(out)*(actuals[k]-out);
+		}
+	}
+
+	/**
+	 * Passes the errors of every sample in a batch back to the layer to the left. For each sample
+	 * the rows of the weight matrix are scaled by the errors and summed, so the weights are read
+	 * in order.
+	 * @param prevOutputs batch outputs of the layer to the left
+	 * @param prevErrors receives the batch errors of the layer to the left
+	 * @param count number of samples in the batch
+	 * @param prevActivation activation of the layer to the left
+	 */
+	public void backPropagateBatch(double[] prevOutputs, double[] prevErrors, int count, Activation prevActivation)
+	{
+		gemm.multiplyTransposed(kernels, weights, size, fanIn, batchErrors, count, prevErrors);
+		for(int k=0; k<count*fanIn; k++)
+		{
+			prevErrors[k] = prevActivation.derivative(prevOutputs[k])*prevErrors[k];
+		}
+	}
+
+	/**
+	 * Sums the delta weights of every sample in a batch into gradients, which is the product
+	 * of the transposed batch errors and the batch inputs
+	 * @param in batch outputs of the layer to the left
+	 * @param count number of samples in the batch
+	 */
+	public void accumulateGradients(double[] in, int count)
+	{
+		clearGradients();
+		gemm.accumulate(kernels, batchErrors, size, in, fanIn, count, gradients);
+	}
+
+	/**
+	 * Sets every gradient to 0
+	 */
+	public void clearGradients()
+	{
+		if(gradients == null)
+		{
+			gradients = new double[weights.length];
+		}
+		for(int k=0; k<gradients.length; k++)
+		{
+			gradients[k] = 0;
+		}
+	}
+
+	/**
+	 * Changes the weights by the accumulated gradients with the layer's optimizer
+	 * @param learningRate
+	 * @param count number of samples that were accumulated
+	 */
+	public void applyGradients(double learningRate, int count)
+	{
+		applyGradients(learningRate, count, 0, weights.length, nextUpdate());
+	}
+
+	/**
+	 * Changes the weights from one index up to another by the accumulated gradients with the
+	 * layer's optimizer, so the weights of a layer can be updated in slices by several threads
+	 * @param learningRate
+	 * @param count number of samples that were accumulated
+	 * @param from index of the first weight
+	 * @param to index after the last weight
+	 * @param step the number of the update from nextUpdate, the same for every slice
+	 */
+	void applyGradients(double learningRate, int count, int from, int to, long step)
+	{
+		optimizer.update(kernels, weights, gradients, from, to, learningRate, count, getOptimizerState(), step);
+	}
+
+	/**
+	 * Counts an update of the weights
+	 * @return the number of updates including this one
+	 */
+	long nextUpdate()
+	{
+		return updates.incrementAndGet();
+	}
+
+	/**
+	 * Getter for the number of updates made with the optimizer, counting those of every layer
+	 * sharing its state
+	 * @return updates
+	 */
+	public long getUpdates()
+	{
+		return updates.get();
+	}
+
+	/**
+	 * Getter for the state arrays of the optimizer, which are created the first time they are needed
+	 * @return optimizerState
+	 */
+	double[][] getOptimizerState()
+	{
+		if(optimizerState == null)
+		{
+			optimizerState = new double[optimizer.getStateArrays()][weights.length];
+		}
+		return optimizerState;
+	}
+
+	/**
+	 * Getter for the number of neurons in this layer
+	 * @return size
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Getter for the number of inputs into each neuron of this layer
+	 * @return fanIn
+	 */
+	public int getFanIn()
+	{
+		return fanIn;
+	}
+
+	/**
+	 * Getter for the transfer function of this layer
+	 * @return activation
+	 */
+	public Activation getActivation()
+	{
+		return activation;
+	}
+
+	/**
+	 * Setter for the transfer function of this layer
+	 * @param activation
+	 */
+	public void setActivation(Activation activation)
+	{
+		this.activation = activation;
+	}
+
+	/**
+	 * Setter for the loops the layer's math is written in
+	 * @param kernels
+	 */
+	public void setKernels(Kernels kernels)
+	{
+		this.kernels = kernels;
+	}
+
+	/**
+	 * Getter for the rule the delta weights change the weights by
+	 * @return optimizer
+	 */
+	public Optimizer getOptimizer()
+	{
+		return optimizer;
+	}
+
+	/**
+	 * Setter for the rule the delta weights change the weights by. The state of the previous
+	 * optimizer is dropped and the new one starts from 0.
+	 * @param optimizer
+	 */
+	public void setOptimizer(Optimizer optimizer)
+	{
+		this.optimizer = optimizer;
+		optimizerState = null;
+		updates = new AtomicLong();
+	}
+
+	/**
+	 * Setter for the tiles the layer's matrix products are cut into
+	 * @param gemm
+	 */
+	public void setGemm(Gemm gemm)
+	{
+		this.gemm = gemm;
+	}
+
+	/**
+	 * Getter for the row-major weight matrix of this layer
+	 * @return weights
+	 */
+	public double[] getWeights()
+	{
+		return weights;
+	}
+
+	/**
+	 * Getter for the outputs of this layer
+	 * @return outputs
+	 */
+	public double[] getOutputs()
+	{
+		return outputs;
+	}
+
+	/**
+	 * Getter for the errors of this layer
+	 * @return errors
+	 */
+	public double[] getErrors()
+	{
+		return errors;
+	}
+}
@@ -0,0 +1,364 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trains a network for several passes (epochs) over a dataset held in memory. The last weeks of
+ * the dataset are held back for validation and the rest are trained on in a new random order
+ * every pass. Only an array of week indices is shuffled; the weeks themselves stay where they
+ * are in the dataset and are copied straight into the batch buffers.
+ *
+ * After each pass the weights are copied into a spare engine and a second thread measures the
+ * mean percent error of the held back weeks with them while the next pass trains. Once the error
+ * has not improved for the number of passes set by Runner.setValidation, training stops and the
+ * weights of the pass with the lowest error are put back into the network. Because each error is
+ * known one pass late, training runs one pass more than the patience asks for, and that pass is
+ * validated too.
+ *
+ */
+public class EpochTrainer
+{
+	//The network that is trained and the weeks it is trained and validated on
+	private Network network;
+	private PriceDataset data;
+
+	//Number of weeks trained on, from the start of the dataset; the weeks after them are validated on
+	private int trainCount;
+
+	//Indices of the weeks trained on, in the order of the current pass
+	private int[] order;
+	private SplittableRandom random;
+
+	//Rows of a batch of weeks, reused for every batch
+	private double[][] batchInputs;
+	private double[][] batchActuals;
+
+	//Weights of the pass with the lowest validation error, and a copy of the weights being validated
+	private LayerEngine best;
+	private LayerEngine spare;
+
+	//Buffers the validating thread predicts the held back weeks with
+	private LayerEngine.Scratch scratch;
+	private double[][] windows;
+	private double[][] predictions;
+
+	//Validation error after each pass, the pass with the lowest one and the number of passes made
+	private double[] validationErrors;
+	private int bestEpoch = -1;
+	private int epochs;
+
+	/**
+	 * Creates a trainer for the network using the epochs, validation fraction, patience,
+	 * batch size and threads of its Runner
+	 * @param n the network to train
+	 * @param data the weeks to train and validate on
+	 */
+	public EpochTrainer(Network n, PriceDataset data)
+	{
+		Runner r = n.getVariables();
+		if(data.getNumInputs() != r.getNumInputs() || data.getNumOutputs() != r.getNumOutputs())
+		{
+			throw new IllegalArgumentException("The dataset does not fit the network");
+		}
+		network = n;
+		this.data = data;
+		random = new RandomSource(r.getSeed()).stream(RandomSource.SHUFFLE);
+		int validationCount = (int) (data.size()*r.getValidationFraction());
+		trainCount = data.size() - validationCount;
+		if(trainCount == 0)
+		{
+			throw new IllegalArgumentException("The dataset has no weeks left to train on");
+		}
+		order = new int[trainCount];
+		for(int k=0; k<trainCount; k++)
+		{
+			order[k] = k;
+		}
+		batchInputs = new double[r.getBatchSize()][r.getNumInputs()];
+		batchActuals = new double[r.getBatchSize()][r.getNumOutputs()];
+		validationErrors = new double[r.getEpochs()];
+		if(validationCount > 0)
+		{
+			best = n.getEngine().replicate();
+			spare = n.getEngine().replicate();
+			scratch = spare.newScratch();
+			windows = new double[LayerEngine.PREDICT_BLOCK][r.getNumInputs()];
+			predictions = new double[LayerEngine.PREDICT_BLOCK][r.getNumOutputs()];
+		}
+	}
+
+	/**
+	 * Sets the seed of the order the weeks are trained in, in place of the seed of the Runner
+	 * @param seed
+	 */
+	public void setSeed(long seed)
+	{
+		random = new RandomSource(seed).stream(RandomSource.SHUFFLE);
+	}
+
+	/**
+	 * Trains until the most passes have been made or the validation error stops improving, then
+	 * leaves the network with the weights of the pass with the lowest validation error
+	 * @return the number of passes made
+	 */
+	public int train()
+	{
+		Runner r = network.getVariables();
+		ParallelTrainer trainer = null;
+		if(r.getNumThreads() > 1)
+		{
+			trainer = new ParallelTrainer(network, r.getNumThreads(), r.isHogwild());
+		}
+		ExecutorService validator = best != null ? Executors.newSingleThreadExecutor() : null;
+		Future<Double> pending = null;
+		int sinceBest = 0;
+		epochs = 0;
+		bestEpoch = -1;
+		try
+		{
+			while(epochs < validationErrors.length && (r.getPatience() == 0 || sinceBest < r.getPatience()))
+			{
+				shuffle();
+				trainEpoch(r, trainer);
+				epochs++;
+				if(Metrics.ENABLED)
+				{
+					network.getMetrics().countEpoch();
+				}
+				if(pending != null)
+				{
+					sinceBest = judge(epochs-2, waitFor(pending), sinceBest);
+					pending = null;
+				}
+				if(validator != null)
+				{
+					final LayerEngine snapshot = spare;
+					copyWeightsTo(snapshot);
+					pending = validator.submit(new Callable<Double>()
+					{
+						public Double call()
+						{
+							return validate(snapshot);
+						}
+					});
+				}
+			}
+			if(pending != null)
+			{
+				judge(epochs-1, waitFor(pending), sinceBest);
+			}
+			if(bestEpoch >= 0)
+			{
+				for(int l=0; l<best.getNumLayers(); l++)
+				{
+					double[] weights = best.getLayer(l).getWeights();
+					System.arraycopy(weights, 0, network.getEngine().getLayer(l).getWeights(), 0, weights.length);
+				}
+				network.reloadWeights();
+			}
+		}
+		finally
+		{
+			network.syncWeights();
+			if(trainer != null)
+			{
+				trainer.shutdown();
+			}
+			if(validator != null)
+			{
+				validator.shutdownNow();
+			}
+		}
+		return epochs;
+	}
+
+	/**
+	 * Puts the indices of the weeks trained on in a new random order (Fisher-Yates)
+	 */
+	private void shuffle()
+	{
+		for(int k=trainCount-1; k>0; k--)
+		{
+			int other = random.nextInt(k+1);
+			int temp = order[k];
+			order[k] = order[other];
+			order[other] = temp;
+		}
+	}
+
+	/**
+	 * Makes one pass over the weeks trained on in the current order, the same way Runner.train
+	 * makes a pass over a file
+	 */
+	private void trainEpoch(Runner r, ParallelTrainer trainer)
+	{
+		int batchSize = r.getBatchSize();
+		for(int start=0; start<trainCount; start+=batchSize)
+		{
+			int count = Math.min(batchSize, trainCount - start);
+			for(int b=0; b<count; b++)
+			{
+				data.copyInputs(order[start+b], batchInputs[b]);
+				data.copyActuals(order[start+b], batchActuals[b]);
+			}
+			if(batchSize == 1 && trainer == null)
+			{
+				network.setInputs(batchInputs[0]);
+				network.feedForward();
+				network.setActuals(batchActuals[0]);
+				network.calculateError();
+				network.updateWeights();
+			}
+			else if(trainer == null)
+			{
+				network.trainBatch(batchInputs, batchActuals, count);
+			}
+			else
+			{
+				trainer.train(batchInputs, batchActuals, count);
+			}
+		}
+	}
+
+	/**
+	 * Copies the current weights of the network into an engine, from the single precision engine
+	 * when the network has one
+	 */
+	private void copyWeightsTo(LayerEngine to)
+	{
+		if(network.getFloatEngine() != null)
+		{
+			network.getFloatEngine().copyWeightsTo(to);
+			return;
+		}
+		for(int l=0; l<to.getNumLayers(); l++)
+		{
+			double[] weights = network.getEngine().getLayer(l).getWeights();
+			System.arraycopy(weights, 0, to.getLayer(l).getWeights(), 0, weights.length);
+		}
+	}
+
+	/**
+	 * Mean percent error of the predicted prices of the held back weeks
+	 * @param weights engine holding the weights to validate
+	 * @return the mean percent error
+	 */
+	double validate(LayerEngine weights)
+	{
+		int numOutputs = data.getNumOutputs();
+		double[] actuals = data.getActuals();
+		double sum = 0;
+		for(int start=trainCount; start<data.size(); start+=LayerEngine.PREDICT_BLOCK)
+		{
+			int block = Math.min(LayerEngine.PREDICT_BLOCK, data.size() - start);
+			for(int b=0; b<block; b++)
+			{
+				data.copyInputs(start+b, windows[b]);
+			}
+			weights.predict(windows, predictions, block, scratch);
+			for(int b=0; b<block; b++)
+			{
+				for(int i=0; i<numOutputs; i++)
+				{
+					double actual = data.denormalize(actuals[(start+b)*numOutputs + i]);
+					sum += Runner.calculatePercError(actual, data.denormalize(predictions[b][i]));
+				}
+			}
+		}
+		return sum/((data.size() - trainCount)*numOutputs);
+	}
+
+	/**
+	 * Records the validation error of a pass and keeps its weights when it is the lowest so far
+	 * @param epoch the pass
+	 * @param error its validation error
+	 * @param sinceBest number of passes since the lowest error before this one
+	 * @return number of passes since the lowest error including this one
+	 */
+	private int judge(int epoch, double error, int sinceBest)
+	{
+		validationErrors[epoch] = error;
+		if(Metrics.ENABLED)
+		{
+			network.getMetrics().setValidationError(error);
+		}
+		if(bestEpoch < 0 || error < validationErrors[bestEpoch])
+		{
+			bestEpoch = epoch;
+			LayerEngine temp = best;
+			best = spare;
+			spare = temp;
+			return 0;
+		}
+		return sinceBest + 1;
+	}
+
+	/**
+	 * Waits for the validating thread to finish
+	 */
+	private static double waitFor(Future<Double> pending)
+	{
+		try
+		{
+			return pending.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Validation was interrupted", e);
+		}
+		catch(ExecutionException e)
+		{
+			throw new IllegalStateException("Validation failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Getter for the number of passes the last call to train made
+	 * @return epochs
+	 */
+	public int getEpochs()
+	{
+		return epochs;
+	}
+
+	/**
+	 * Getter for the validation error after each pass of the last call to train
+	 * @return the mean percent error of the held back weeks after each pass, empty when nothing was held back
+	 */
+	public double[] getValidationErrors()
+	{
+		return Arrays.copyOf(validationErrors, best != null ? epochs : 0);
+	}
+
+	/**
+	 * Getter for the pass with the lowest validation error, counting from 0
+	 * @return bestEpoch, or -1 when nothing was held back for validation
+	 */
+	public int getBestEpoch()
+	{
+		return bestEpoch;
+	}
+
+	/**
+	 * Getter for the lowest validation error
+	 * @return the mean percent error of the held back weeks after the best pass
+	 */
+	public double getBestError()
+	{
+		return bestEpoch < 0 ? Double.NaN : validationErrors[bestEpoch];
+	}
+
+	/**
+	 * Getter for the number of weeks trained on; the rest of the dataset is validated on
+	 * @return trainCount
+	 */
+	public int getTrainCount()
+	{
+		return trainCount;
+	}
+}
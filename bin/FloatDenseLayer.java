@@ -0,0 +1,341 @@
+/**
+ * A fully connected layer stored in single precision, with the same layout and math as
+ * DenseLayer. Weights, outputs and errors are floats, which halves the memory the layer takes
+ * and the bytes read from memory on every pass. Sums are kept in floats too unless the layer
+ * accumulates in double, in which case every dot product, error sum and batch gradient is added
+ * up in a double and only rounded to a float when it is stored. The loops are the float and wide
+ * float kernels of Kernels.
+ *
+ */
+public class FloatDenseLayer
+{
+	//The number of neurons in this layer
+	final int size;
+
+	//The number of neurons in the layer to the left that feed into this layer
+	final int fanIn;
+
+	//Whether sums are added up in doubles before being stored as floats
+	final boolean doubleAccumulation;
+
+	//Row-major weight matrix of size*fanIn connection weights
+	final float[] weights;
+
+	//The output and error of each neuron in this layer
+	final float[] outputs;
+	final float[] errors;
+
+	//Errors of the layer to the left while they are summed in double
+	private double[] sums;
+
+	//Outputs and errors of a whole batch of samples, one row of size values per sample
+	float[] batchOutputs;
+	float[] batchErrors;
+
+	//Sum of the delta weights of every sample in a batch, in the same layout as weights
+	double[] gradients;
+
+	//Transfer function applied to the sum of each neuron's weighted inputs
+	Activation activation = Activation.SIGMOID;
+
+	//Loops the math of the layer is written in
+	Kernels kernels = Kernels.DEFAULT;
+
+	/**
+	 * Creates a layer with the given number of neurons, each connected to every neuron
+	 * of the layer to the left
+	 * @param size number of neurons in this layer
+	 * @param fanIn number of neurons in the layer to the left
+	 * @param doubleAccumulation true to add up sums in double
+	 */
+	public FloatDenseLayer(int size, int fanIn, boolean doubleAccumulation)
+	{
+		this.size = size;
+		this.fanIn = fanIn;
+		this.doubleAccumulation = doubleAccumulation;
+		weights = new float[size*fanIn];
+		outputs = new float[size];
+		errors = new float[size];
+		if(doubleAccumulation)
+		{
+			sums = new double[fanIn];
+		}
+	}
+
+	/**
+	 * The sum of the products of a row of inputs and a row of weights
+	 */
+	private double dot(float[] in, int inOffset, int row)
+	{
+		if(doubleAccumulation)
+		{
+			return kernels.wideDot(in, inOffset, weights, row, fanIn);
+		}
+		return kernels.dot(in, inOffset, weights, row, fanIn);
+	}
+
+	/**
+	 * Combination and transfer function for every neuron of the layer
+	 * @param in outputs of the layer to the left
+	 */
+	public void forward(float[] in)
+	{
+		for(int i=0; i<size; i++)
+		{
+			outputs[i] = (float) activation.apply(dot(in, 0, i*fanIn));
+		}
+	}
+
+	/**
+	 * Calculates the error of each neuron when this is the output layer
+	 * @param actuals the expected outputs
+	 */
+	public void outputErrors(double[] actuals)
+	{
+		for(int i=0; i<size; i++)
+		{
+			double out = outputs[i];
+			errors[i] = (float) (activation.derivative(out)*(actuals[i]-out));
+		}
+	}
+
+	/**
+	 * Passes the errors of this layer back to the layer to the left by adding each row of the
+	 * weight matrix scaled by its neuron's error
+	 * @param prevOutputs outputs of the layer to the left
+	 * @param prevErrors receives the errors of the layer to the left
+	 * @param prevErrorsOffset where the errors of the layer to the left start
+	 * @param errorsOffset where the errors of this layer start in errors
+	 * @param errors errors of this layer
+	 * @param prevActivation activation of the layer to the left
+	 */
+	private void backPropagate(float[] prevOutputs, float[] prevErrors, int prevErrorsOffset, float[] errors,
+			int errorsOffset, Activation prevActivation)
+	{
+		if(doubleAccumulation)
+		{
+			for(int k=0; k<fanIn; k++)
+			{
+				sums[k] = 0;
+			}
+			for(int i=0; i<size; i++)
+			{
+				kernels.wideAxpy(errors[errorsOffset+i], weights, i*fanIn, sums, 0, fanIn);
+			}
+			for(int k=0; k<fanIn; k++)
+			{
+				int p = prevErrorsOffset+k;
+				prevErrors[p] = (float) (prevActivation.derivative(prevOutputs[p])*sums[k]);
+			}
+			return;
+		}
+		for(int k=0; k<fanIn; k++)
+		{
+			prevErrors[prevErrorsOffset+k] = 0;
+		}
+		for(int i=0; i<size; i++)
+		{
+			kernels.axpy(errors[errorsOffset+i], weights, i*fanIn, prevErrors, prevErrorsOffset, fanIn);
+		}
+		for(int k=0; k<fanIn; k++)
+		{
+			int p = prevErrorsOffset+k;
+			prevErrors[p] = (float) (prevActivation.derivative(prevOutputs[p])*prevErrors[p]);
+		}
+	}
+
+	/**
+	 * Passes the errors of this layer back to the layer to the left
+	 * @param prevOutputs outputs of the layer to the left
+	 * @param prevErrors receives the errors of the layer to the left
+	 * @param prevActivation activation of the layer to the left
+	 */
+	public void backPropagate(float[] prevOutputs, float[] prevErrors, Activation prevActivation)
+	{
+		backPropagate(prevOutputs, prevErrors, 0, errors, 0, prevActivation);
+	}
+
+	/**
+	 * Adds the delta weight to every connection into this layer
+	 * @param in outputs of the layer to the left
+	 * @param learningRate
+	 */
+	public void updateWeights(float[] in, double learningRate)
+	{
+		for(int i=0; i<size; i++)
+		{
+			kernels.axpy((float) (learningRate * errors[i]), in, 0, weights, i*fanIn, fanIn);
+		}
+	}
+
+	/**
+	 * Makes sure the batch buffers can hold the given number of samples
+	 * @param batchSize
+	 */
+	void ensureBatchCapacity(int batchSize)
+	{
+		if(batchOutputs == null || batchOutputs.length < batchSize*size)
+		{
+			batchOutputs = new float[batchSize*size];
+			batchErrors = new float[batchSize*size];
+		}
+		if(gradients == null)
+		{
+			gradients = new double[weights.length];
+		}
+	}
+
+	/**
+	 * Feeds a batch of samples through the layer into the given buffer
+	 * @param in outputs of the layer to the left, one row of fanIn values per sample
+	 * @param count number of samples in the batch
+	 * @param out receives the outputs, one row of size values per sample
+	 */
+	public void forwardBatch(float[] in, int count, float[] out)
+	{
+		for(int i=0; i<size; i++)
+		{
+			int row = i*fanIn;
+			for(int b=0; b<count; b++)
+			{
+				out[b*size + i] = (float) activation.apply(dot(in, b*fanIn, row));
+			}
+		}
+	}
+
+	/**
+	 * Calculates the error of each neuron for every sample of a batch when this is the output layer
+	 * @param actuals expected outputs, one row of size values per sample
+	 * @param count number of samples in the batch
+	 */
+	public void outputErrorsBatch(double[] actuals, int count)
+	{
+		for(int k=0; k<count*size; k++)
+		{
+			double out = batchOutputs[k];
+			batchErrors[k] = (float) (activation.derivative(out)*(actuals[k]-out));
+		}
+	}
+
+	/**
+	 * Passes the errors of every sample in a batch back to the layer to the left
+	 * @param prevOutputs batch outputs of the layer to the left
+	 * @param prevErrors receives the batch errors of the layer to the left
+	 * @param count number of samples in the batch
+	 * @param prevActivation activation of the layer to the left
+	 */
+	public void backPropagateBatch(float[] prevOutputs, float[] prevErrors, int count, Activation prevActivation)
+	{
+		for(int b=0; b<count; b++)
+		{
+			backPropagate(prevOutputs, prevErrors, b*fanIn, batchErrors, b*size, prevActivation);
+		}
+	}
+
+	/**
+	 * Sums the delta weights of every sample in a batch into gradients. The gradients are
+	 * doubles whether or not the layer accumulates in double, since a batch adds many small
+	 * products to each one.
+	 * @param in batch outputs of the layer to the left
+	 * @param count number of samples in the batch
+	 */
+	public void accumulateGradients(float[] in, int count)
+	{
+		for(int w=0; w<gradients.length; w++)
+		{
+			gradients[w] = 0;
+		}
+		for(int i=0; i<size; i++)
+		{
+			int row = i*fanIn;
+			for(int b=0; b<count; b++)
+			{
+				kernels.wideAxpy(batchErrors[b*size + i], in, b*fanIn, gradients, row, fanIn);
+			}
+		}
+	}
+
+	/**
+	 * Adds the accumulated gradients to the weights
+	 * @param scale the learning rate divided by the number of samples that were accumulated
+	 */
+	public void applyGradients(double scale)
+	{
+		for(int w=0; w<weights.length; w++)
+		{
+			weights[w] = (float) (weights[w] + (scale * gradients[w]));
+		}
+	}
+
+	/**
+	 * Getter for the number of neurons in this layer
+	 * @return size
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Getter for the number of inputs into each neuron of this layer
+	 * @return fanIn
+	 */
+	public int getFanIn()
+	{
+		return fanIn;
+	}
+
+	/**
+	 * Getter for the row-major weight matrix of this layer
+	 * @return weights
+	 */
+	public float[] getWeights()
+	{
+		return weights;
+	}
+
+	/**
+	 * Getter for the outputs of this layer
+	 * @return outputs
+	 */
+	public float[] getOutputs()
+	{
+		return outputs;
+	}
+
+	/**
+	 * Getter for the errors of this layer
+	 * @return errors
+	 */
+	public float[] getErrors()
+	{
+		return errors;
+	}
+
+	/**
+	 * Getter for the transfer function of this layer
+	 * @return activation
+	 */
+	public Activation getActivation()
+	{
+		return activation;
+	}
+
+	/**
+	 * Setter for the transfer function of this layer
+	 * @param activation
+	 */
+	public void setActivation(Activation activation)
+	{
+		this.activation = activation;
+	}
+
+	/**
+	 * Setter for the loops the math of this layer is written in
+	 * @param kernels
+	 */
+	public void setKernels(Kernels kernels)
+	{
+		this.kernels = kernels;
+	}
+}
@@ -0,0 +1,375 @@
+/**
+ * The layer engine in single precision. It has the same layers and training methods as
+ * LayerEngine but keeps every weight, output and error as a float in FloatDenseLayers, so the
+ * weights take half the memory and every pass reads half as many bytes. Inputs and actuals are
+ * still given as doubles and rounded when they are copied in.
+ *
+ * With double accumulation every sum is added up in a double and only the stored values are
+ * floats, which keeps the long dot products of wide layers as accurate as the double engine's
+ * for the price of a conversion per product.
+ *
+ */
+public class FloatLayerEngine
+{
+	//The outputs of the input layer (the normalized data values)
+	final float[] inputs;
+
+	//Every layer to the right of the input layer, ending with the output layer
+	final FloatDenseLayer[] layers;
+
+	//Inputs and actuals of a batch of samples, one row per sample
+	private float[] batchInputs;
+	private double[] batchActuals;
+
+	/**
+	 * Creates an engine with the given number of neurons in each layer, starting with the
+	 * input layer and ending with the output layer
+	 * @param doubleAccumulation true to add up sums in double
+	 * @param sizes number of neurons in each layer
+	 */
+	public FloatLayerEngine(boolean doubleAccumulation, int... sizes)
+	{
+		if(sizes.length < 2)
+		{
+			throw new IllegalArgumentException("A network needs at least an input and an output layer");
+		}
+		inputs = new float[sizes[0]];
+		layers = new FloatDenseLayer[sizes.length - 1];
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l] = new FloatDenseLayer(sizes[l+1], sizes[l], doubleAccumulation);
+		}
+	}
+
+	/**
+	 * Creates an engine with the same layer sizes and activations as a double engine, starting
+	 * from its weights rounded to floats
+	 * @param engine the double engine to copy
+	 * @param doubleAccumulation true to add up sums in double
+	 */
+	public FloatLayerEngine(LayerEngine engine, boolean doubleAccumulation)
+	{
+		this(doubleAccumulation, sizesOf(engine));
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].activation = engine.getLayer(l).getActivation();
+			layers[l].kernels = engine.getLayer(l).kernels;
+		}
+		copyWeightsFrom(engine);
+	}
+
+	/**
+	 * The number of neurons in each layer of a double engine
+	 */
+	private static int[] sizesOf(LayerEngine engine)
+	{
+		int[] sizes = new int[engine.getNumLayers() + 1];
+		sizes[0] = engine.getInputs().length;
+		for(int l=0; l<engine.getNumLayers(); l++)
+		{
+			sizes[l+1] = engine.getLayer(l).getSize();
+		}
+		return sizes;
+	}
+
+	/**
+	 * Rounds the weights of a double engine with the same layer sizes into this engine
+	 * @param engine
+	 */
+	public void copyWeightsFrom(LayerEngine engine)
+	{
+		for(int l=0; l<layers.length; l++)
+		{
+			double[] from = engine.getLayer(l).getWeights();
+			float[] to = layers[l].weights;
+			for(int w=0; w<to.length; w++)
+			{
+				to[w] = (float) from[w];
+			}
+		}
+	}
+
+	/**
+	 * Copies the weights of this engine into a double engine with the same layer sizes
+	 * @param engine
+	 */
+	public void copyWeightsTo(LayerEngine engine)
+	{
+		for(int l=0; l<layers.length; l++)
+		{
+			float[] from = layers[l].weights;
+			double[] to = engine.getLayer(l).getWeights();
+			for(int w=0; w<from.length; w++)
+			{
+				to[w] = from[w];
+			}
+		}
+	}
+
+	/**
+	 * Copies the outputs and errors of every layer into a double engine with the same layer
+	 * sizes, so anything reading the double engine's buffers sees the last sample
+	 * @param engine
+	 */
+	public void copyActivationsTo(LayerEngine engine)
+	{
+		copy(inputs, engine.getInputs());
+		for(int l=0; l<layers.length; l++)
+		{
+			copy(layers[l].outputs, engine.getLayer(l).getOutputs());
+			copy(layers[l].errors, engine.getLayer(l).getErrors());
+		}
+	}
+
+	private static void copy(float[] from, double[] to)
+	{
+		for(int i=0; i<from.length; i++)
+		{
+			to[i] = from[i];
+		}
+	}
+
+	/**
+	 * Copies the normalized values into the input layer
+	 * @param in
+	 */
+	public void setInputs(double[] in)
+	{
+		for(int i=0; i<inputs.length; i++)
+		{
+			inputs[i] = (float) in[i];
+		}
+	}
+
+	/**
+	 * Passes the inputs through every layer, producing an output for each output neuron
+	 */
+	public void feedForward()
+	{
+		float[] in = inputs;
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].forward(in);
+			in = layers[l].outputs;
+		}
+	}
+
+	/**
+	 * Calculates the error of the output layer against the actuals, then passes the
+	 * error back through the hidden layers
+	 * @param actuals the expected outputs
+	 */
+	public void calculateError(double[] actuals)
+	{
+		int last = layers.length - 1;
+		layers[last].outputErrors(actuals);
+		for(int l=last; l>0; l--)
+		{
+			layers[l].backPropagate(layers[l-1].outputs, layers[l-1].errors, layers[l-1].activation);
+		}
+	}
+
+	/**
+	 * Updates the weights of every layer using the errors from calculateError
+	 * @param learningRate
+	 */
+	public void updateWeights(double learningRate)
+	{
+		for(int l=layers.length-1; l>=0; l--)
+		{
+			layers[l].updateWeights(l == 0 ? inputs : layers[l-1].outputs, learningRate);
+		}
+	}
+
+	/**
+	 * Trains on a batch of samples at once the same way LayerEngine.trainBatch does. Afterwards
+	 * the layer outputs and errors hold the values of the last sample of the batch. An empty
+	 * batch leaves the engine as it was.
+	 * @param in normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 * @param count number of samples to use from the start of in and actuals
+	 * @param learningRate
+	 */
+	public void trainBatch(double[][] in, double[][] actuals, int count, double learningRate)
+	{
+		if(count <= 0)
+		{
+			return;
+		}
+		ensureBatchCapacity(count);
+		int numInputs = inputs.length;
+		int numOutputs = getOutputs().length;
+		for(int b=0; b<count; b++)
+		{
+			double[] row = in[b];
+			for(int j=0; j<numInputs; j++)
+			{
+				batchInputs[b*numInputs + j] = (float) row[j];
+			}
+			System.arraycopy(actuals[b], 0, batchActuals, b*numOutputs, numOutputs);
+		}
+
+		float[] x = batchInputs;
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].forwardBatch(x, count, layers[l].batchOutputs);
+			x = layers[l].batchOutputs;
+		}
+		int last = layers.length - 1;
+		layers[last].outputErrorsBatch(batchActuals, count);
+		for(int l=last; l>0; l--)
+		{
+			layers[l].backPropagateBatch(layers[l-1].batchOutputs, layers[l-1].batchErrors, count, layers[l-1].activation);
+		}
+		for(int l=last; l>=0; l--)
+		{
+			layers[l].accumulateGradients(l == 0 ? batchInputs : layers[l-1].batchOutputs, count);
+			layers[l].applyGradients(learningRate/count);
+		}
+
+		//Leave the last sample in the single sample buffers
+		System.arraycopy(batchInputs, (count-1)*numInputs, inputs, 0, numInputs);
+		for(int l=0; l<layers.length; l++)
+		{
+			FloatDenseLayer layer = layers[l];
+			System.arraycopy(layer.batchOutputs, (count-1)*layer.size, layer.outputs, 0, layer.size);
+			System.arraycopy(layer.batchErrors, (count-1)*layer.size, layer.errors, 0, layer.size);
+		}
+	}
+
+	/**
+	 * Feeds windows through the network without touching any of the engine's own buffers, so any
+	 * number of threads can predict with the same engine at once as long as it is not being
+	 * trained. The windows are fed through the layers in blocks as batches.
+	 * @param windows normalized inputs of each window
+	 * @param outputs receives the outputs of each window
+	 * @param count number of windows to predict
+	 * @param scratch buffers for the activations, used by one thread at a time
+	 */
+	public void predict(double[][] windows, double[][] outputs, int count, Scratch scratch)
+	{
+		int numInputs = inputs.length;
+		int numOutputs = getOutputs().length;
+		for(int start=0; start<count; start+=LayerEngine.PREDICT_BLOCK)
+		{
+			int block = Math.min(LayerEngine.PREDICT_BLOCK, count - start);
+			for(int b=0; b<block; b++)
+			{
+				double[] window = windows[start+b];
+				for(int j=0; j<numInputs; j++)
+				{
+					scratch.inputs[b*numInputs + j] = (float) window[j];
+				}
+			}
+			float[] x = scratch.inputs;
+			for(int l=0; l<layers.length; l++)
+			{
+				layers[l].forwardBatch(x, block, scratch.outputs[l]);
+				x = scratch.outputs[l];
+			}
+			for(int b=0; b<block; b++)
+			{
+				double[] out = outputs[start+b];
+				for(int i=0; i<numOutputs; i++)
+				{
+					out[i] = x[b*numOutputs + i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the activation buffers one thread needs to call predict
+	 * @return the scratch buffers
+	 */
+	public Scratch newScratch()
+	{
+		return new Scratch(this);
+	}
+
+	/**
+	 * Activation buffers for feeding a block of windows through the layers, so that predicting
+	 * does not write to the engine
+	 */
+	public static class Scratch
+	{
+		final float[] inputs;
+		final float[][] outputs;
+
+		Scratch(FloatLayerEngine engine)
+		{
+			inputs = new float[LayerEngine.PREDICT_BLOCK*engine.inputs.length];
+			outputs = new float[engine.layers.length][];
+			for(int l=0; l<outputs.length; l++)
+			{
+				outputs[l] = new float[LayerEngine.PREDICT_BLOCK*engine.layers[l].size];
+			}
+		}
+	}
+
+	/**
+	 * Sets the loops the math of every layer is written in
+	 * @param kernels
+	 */
+	public void setKernels(Kernels kernels)
+	{
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].setKernels(kernels);
+		}
+	}
+
+	/**
+	 * Makes sure the batch buffers of the engine and every layer can hold the given number of samples
+	 * @param batchSize
+	 */
+	private void ensureBatchCapacity(int batchSize)
+	{
+		if(batchInputs == null || batchInputs.length < batchSize*inputs.length)
+		{
+			batchInputs = new float[batchSize*inputs.length];
+			batchActuals = new double[batchSize*getOutputs().length];
+		}
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].ensureBatchCapacity(batchSize);
+		}
+	}
+
+	/**
+	 * Getter for the input layer buffer
+	 * @return inputs
+	 */
+	public float[] getInputs()
+	{
+		return inputs;
+	}
+
+	/**
+	 * Getter for the outputs of the output layer
+	 * @return outputs
+	 */
+	public float[] getOutputs()
+	{
+		return layers[layers.length-1].outputs;
+	}
+
+	/**
+	 * Getter for the layer at the given index, where 0 is the first hidden layer
+	 * @param l
+	 * @return the layer
+	 */
+	public FloatDenseLayer getLayer(int l)
+	{
+		return layers[l];
+	}
+
+	/**
+	 * Getter for the number of layers to the right of the input layer
+	 * @return number of layers
+	 */
+	public int getNumLayers()
+	{
+		return layers.length;
+	}
+}
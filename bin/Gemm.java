@@ -0,0 +1,349 @@
+/**
+ * The matrix products of the layers, cut into tiles that fit in the caches. A layer's weights
+ * are a row-major matrix of rows*depth values and its inputs, outputs and errors are one row per
+ * sample, so feeding forward, passing errors back and summing gradients are three products:
+ *
+ *   multiply            out[b][i] = sum over j of x[b][j]*w[i][j]      (forward)
+ *   multiplyTransposed  out[b][j] = sum over i of e[b][i]*w[i][j]      (back propagation)
+ *   accumulate          g[i][j] += sum over b of e[b][i]*x[b][j]       (batch gradients)
+ *
+ * A single sample is a batch of 1, which makes the products matrix-vector products. Each product
+ * walks the samples in tiles of sampleBlock and the rows in tiles of rowBlock, so a tile of
+ * weights is reused for every sample of a tile of inputs while both are still in the cache.
+ * multiplyTransposed and accumulate also walk the depth in tiles of depthBlock values. Inside a
+ * tile four rows are done at once with Kernels.dot4 and Kernels.axpy4, which load each input
+ * once for the four rows instead of once per row.
+ *
+ * Every sum is added up in the same order as a row at a time, so the results do not depend on
+ * the tiles and tuning can never change what a network learns. That is why multiply does not
+ * split the depth: each dot product would be added up in pieces.
+ *
+ * The tiles are chosen once at startup with the nn.tiles system property:
+ *   rows,depth,samples    the given tile sizes (DEFAULT_TILES when the property is not set)
+ *   auto                  time a few tile sizes on this machine and keep the fastest
+ *
+ * Tuning is only done when asked for, since it runs while Gemm is first loaded. It takes around
+ * half a second with the vector kernels, most of it compiling the loops, and its pick can change
+ * from run to run with the timings, though never what a network learns. GemmReport shows what
+ * tuning gains on a machine. Tiles make a difference for batches; a single sample reads every
+ * weight once whatever the tiles, so its speed is bound by memory.
+ *
+ */
+public class Gemm
+{
+	//Tiles that never split a layer, which leaves only the blocking of four rows at a time
+	public static final Gemm UNTILED = new Gemm(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+	//Size of the products the tuner times: 128 neurons with 1024 inputs each, in batches of 16
+	private static final int TUNE_ROWS = 128;
+	private static final int TUNE_DEPTH = 1024;
+	private static final int TUNE_SAMPLES = 16;
+
+	//Tile sizes the tuner tries, one dimension at a time
+	private static final int[] DEPTH_CANDIDATES = {128, 256, 512, 1024};
+	private static final int[] ROW_CANDIDATES = {8, 32, 128};
+	private static final int[] SAMPLE_CANDIDATES = {2, 4, 8, 16};
+
+	//Tiles used unless nn.tiles asks for others, which the tuner picks on most machines
+	public static final String DEFAULT_TILES = "8,256,8";
+
+	//The tiles chosen at startup
+	public static final Gemm DEFAULT = create(System.getProperty("nn.tiles", DEFAULT_TILES));
+
+	//Number of weight rows, depth values and samples in a tile
+	final int rowBlock;
+	final int depthBlock;
+	final int sampleBlock;
+
+	/**
+	 * Creates the products with the given tile sizes
+	 * @param rowBlock number of weight rows in a tile
+	 * @param depthBlock number of values of each row in a tile
+	 * @param sampleBlock number of samples in a tile
+	 */
+	public Gemm(int rowBlock, int depthBlock, int sampleBlock)
+	{
+		if(rowBlock < 1 || depthBlock < 1 || sampleBlock < 1)
+		{
+			throw new IllegalArgumentException("Tiles must be at least 1 in every dimension");
+		}
+		this.rowBlock = rowBlock;
+		this.depthBlock = depthBlock;
+		this.sampleBlock = sampleBlock;
+	}
+
+	/**
+	 * Creates the products with the tiles of the given setting
+	 * @param tiles auto, or the rows, depth and samples of a tile separated by commas
+	 * @return the products
+	 */
+	public static Gemm create(String tiles)
+	{
+		if(tiles.equals("auto"))
+		{
+			return tune(Kernels.DEFAULT);
+		}
+		String[] sizes = tiles.split(",");
+		if(sizes.length != 3)
+		{
+			throw new IllegalArgumentException("Tiles must be auto or rows,depth,samples but were " + tiles);
+		}
+		return new Gemm(Integer.parseInt(sizes[0].trim()), Integer.parseInt(sizes[1].trim()), Integer.parseInt(sizes[2].trim()));
+	}
+
+	/**
+	 * Products of every sample's inputs with every row of weights
+	 * @param kernels the loops of each tile
+	 * @param w row-major matrix of rows*depth weights
+	 * @param rows number of rows of w
+	 * @param depth number of values in each row of w and each sample of x
+	 * @param x one row of depth values per sample
+	 * @param count number of samples
+	 * @param out receives one row of rows sums per sample
+	 */
+	public void multiply(Kernels kernels, double[] w, int rows, int depth, double[] x, int count, double[] out)
+	{
+		for(int k=0; k<count*rows; k++)
+		{
+			out[k] = 0;
+		}
+		for(int b0=0; b0<count; b0=end(b0, sampleBlock, count))
+		{
+			int b1 = end(b0, sampleBlock, count);
+			for(int i0=0; i0<rows; i0=end(i0, rowBlock, rows))
+			{
+				int i1 = end(i0, rowBlock, rows);
+				for(int b=b0; b<b1; b++)
+				{
+					int in = b*depth;
+					int o = b*rows;
+					int i = i0;
+					for(; i+4<=i1; i+=4)
+					{
+						kernels.dot4(x, in, w, i*depth, depth, depth, out, o+i);
+					}
+					for(; i<i1; i++)
+					{
+						out[o+i] = kernels.dot(x, in, w, i*depth, depth);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Products of every sample's errors with the columns of the weights, which passes the
+	 * errors of a layer back to the layer to the left
+	 * @param kernels the loops of each tile
+	 * @param w row-major matrix of rows*depth weights
+	 * @param rows number of rows of w
+	 * @param depth number of values in each row of w
+	 * @param e one row of rows errors per sample
+	 * @param count number of samples
+	 * @param out receives one row of depth sums per sample
+	 */
+	public void multiplyTransposed(Kernels kernels, double[] w, int rows, int depth, double[] e, int count, double[] out)
+	{
+		for(int k=0; k<count*depth; k++)
+		{
+			out[k] = 0;
+		}
+		for(int j0=0; j0<depth; j0=end(j0, depthBlock, depth))
+		{
+			int length = end(j0, depthBlock, depth) - j0;
+			for(int b0=0; b0<count; b0=end(b0, sampleBlock, count))
+			{
+				int b1 = end(b0, sampleBlock, count);
+				for(int i0=0; i0<rows; i0=end(i0, rowBlock, rows))
+				{
+					int i1 = end(i0, rowBlock, rows);
+					for(int b=b0; b<b1; b++)
+					{
+						int errors = b*rows;
+						int o = b*depth + j0;
+						int i = i0;
+						for(; i+4<=i1; i+=4)
+						{
+							kernels.axpy4(e[errors+i], e[errors+i+1], e[errors+i+2], e[errors+i+3],
+									w, i*depth + j0, depth, out, o, length);
+						}
+						for(; i<i1; i++)
+						{
+							kernels.axpy(e[errors+i], w, i*depth + j0, out, o, length);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the products of every sample's errors and inputs to the gradients
+	 * @param kernels the loops of each tile
+	 * @param e one row of rows errors per sample
+	 * @param rows number of rows of g
+	 * @param x one row of depth inputs per sample
+	 * @param depth number of values in each row of g
+	 * @param count number of samples
+	 * @param g row-major matrix of rows*depth gradients the products are added to
+	 */
+	public void accumulate(Kernels kernels, double[] e, int rows, double[] x, int depth, int count, double[] g)
+	{
+		for(int j0=0; j0<depth; j0=end(j0, depthBlock, depth))
+		{
+			int length = end(j0, depthBlock, depth) - j0;
+			for(int b0=0; b0<count; b0=end(b0, sampleBlock, count))
+			{
+				int b1 = end(b0, sampleBlock, count);
+				for(int i=0; i<rows; i++)
+				{
+					int row = i*depth + j0;
+					int b = b0;
+					for(; b+4<=b1; b+=4)
+					{
+						kernels.axpy4(e[b*rows + i], e[(b+1)*rows + i], e[(b+2)*rows + i], e[(b+3)*rows + i],
+								x, b*depth + j0, depth, g, row, length);
+					}
+					for(; b<b1; b++)
+					{
+						kernels.axpy(e[b*rows + i], x, b*depth + j0, g, row, length);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The end of the tile starting at start, which is block values long unless the limit
+	 * comes first. Written so that tiles of Integer.MAX_VALUE do not overflow.
+	 */
+	private static int end(int start, int block, int limit)
+	{
+		return limit - start > block ? start + block : limit;
+	}
+
+	/**
+	 * Finds the tiles that do the three products fastest with the given kernels on this
+	 * machine. The products of a layer of TUNE_ROWS neurons with TUNE_DEPTH inputs on a batch
+	 * of TUNE_SAMPLES are timed for each depth tile, then each row tile with the best depth, then
+	 * each sample tile with the best of both.
+	 * @param kernels
+	 * @return the fastest tiles
+	 */
+	public static Gemm tune(Kernels kernels)
+	{
+		double[] w = new double[TUNE_ROWS*TUNE_DEPTH];
+		double[] x = new double[TUNE_SAMPLES*TUNE_DEPTH];
+		double[] e = new double[TUNE_SAMPLES*TUNE_ROWS];
+		for(int k=0; k<w.length; k++)
+		{
+			w[k] = ((k*7919) % 1000)/1000.0 - 0.5;
+		}
+		for(int k=0; k<x.length; k++)
+		{
+			x[k] = ((k*104729) % 1000)/1000.0;
+		}
+		for(int k=0; k<e.length; k++)
+		{
+			e[k] = ((k*15485863) % 1000)/1000.0 - 0.5;
+		}
+		double[] out = new double[Math.max(e.length, x.length)];
+		double[] g = new double[w.length];
+
+		int rowBlock = ROW_CANDIDATES[1];
+		int depthBlock = DEPTH_CANDIDATES[2];
+		int sampleBlock = SAMPLE_CANDIDATES[2];
+
+		//Compile the loops before anything is timed. Many small products get the JIT to
+		//compile them sooner than a few large ones. This is most of the time the tuner takes,
+		//and the first training steps would spend it anyway.
+		Gemm warm = new Gemm(4, 32, 4);
+		for(int r=0; r<1000; r++)
+		{
+			warm.multiply(kernels, w, 8, 64, x, 8, out);
+			warm.multiplyTransposed(kernels, w, 8, 64, e, 8, out);
+			warm.accumulate(kernels, e, 8, x, 64, 8, g);
+		}
+
+		long best = Long.MAX_VALUE;
+		for(int depth : DEPTH_CANDIDATES)
+		{
+			long t = time(new Gemm(rowBlock, depth, sampleBlock), kernels, w, x, e, out, g);
+			if(t < best)
+			{
+				best = t;
+				depthBlock = depth;
+			}
+		}
+		best = Long.MAX_VALUE;
+		for(int rows : ROW_CANDIDATES)
+		{
+			long t = time(new Gemm(rows, depthBlock, sampleBlock), kernels, w, x, e, out, g);
+			if(t < best)
+			{
+				best = t;
+				rowBlock = rows;
+			}
+		}
+		best = Long.MAX_VALUE;
+		for(int samples : SAMPLE_CANDIDATES)
+		{
+			long t = time(new Gemm(rowBlock, depthBlock, samples), kernels, w, x, e, out, g);
+			if(t < best)
+			{
+				best = t;
+				sampleBlock = samples;
+			}
+		}
+		return new Gemm(rowBlock, depthBlock, sampleBlock);
+	}
+
+	/**
+	 * The fastest of five runs of the three products with the given tiles, in nanoseconds
+	 */
+	private static long time(Gemm gemm, Kernels kernels, double[] w, double[] x, double[] e, double[] out, double[] g)
+	{
+		long best = Long.MAX_VALUE;
+		for(int r=0; r<5; r++)
+		{
+			long start = System.nanoTime();
+			gemm.multiply(kernels, w, TUNE_ROWS, TUNE_DEPTH, x, TUNE_SAMPLES, out);
+			gemm.multiplyTransposed(kernels, w, TUNE_ROWS, TUNE_DEPTH, e, TUNE_SAMPLES, out);
+			gemm.accumulate(kernels, e, TUNE_ROWS, x, TUNE_DEPTH, TUNE_SAMPLES, g);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	/**
+	 * Getter for the number of weight rows in a tile
+	 * @return rowBlock
+	 */
+	public int getRowBlock()
+	{
+		return rowBlock;
+	}
+
+	/**
+	 * Getter for the number of values of each row in a tile
+	 * @return depthBlock
+	 */
+	public int getDepthBlock()
+	{
+		return depthBlock;
+	}
+
+	/**
+	 * Getter for the number of samples in a tile
+	 * @return sampleBlock
+	 */
+	public int getSampleBlock()
+	{
+		return sampleBlock;
+	}
+
+	public String toString()
+	{
+		return rowBlock + "," + depthBlock + "," + sampleBlock;
+	}
+}
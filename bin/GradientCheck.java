@@ -0,0 +1,149 @@
+/**
+ * Checks the gradients an engine works out by back propagation against gradients measured by
+ * finite differences of the loss. The loss of a set of samples is half the sum of the squared
+ * differences between their outputs and actuals, the loss whose gradient training follows: each
+ * weight moves by the learning rate times minus its gradient.
+ *
+ * The back propagated gradients are taken either from the errors of the single sample path
+ * (calculateError, whose errors times the inputs of a layer are minus its gradients) or from
+ * the batch path of computeGradients. The finite differences feed every sample forward twice per
+ * weight, so checks are meant for networks of a few hundred weights, such as in the tests.
+ *
+ */
+public class GradientCheck
+{
+	//Gradients this close to 0 are compared by their absolute difference instead of their relative
+	//one, since a finite difference with a step of 1e-6 is only good to about 1e-10
+	private static final double FLOOR = 1e-4;
+
+	/**
+	 * Half the sum over the samples and outputs of the squared difference between the outputs
+	 * and the actuals. The engine's own buffers are not touched.
+	 * @param engine
+	 * @param inputs normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 * @param count number of samples
+	 * @return the loss
+	 */
+	public static double loss(LayerEngine engine, double[][] inputs, double[][] actuals, int count)
+	{
+		double[][] outputs = new double[count][actuals[0].length];
+		engine.predict(inputs, outputs, count, engine.newScratch());
+		double sum = 0;
+		for(int b=0; b<count; b++)
+		{
+			for(int i=0; i<outputs[b].length; i++)
+			{
+				double difference = actuals[b][i] - outputs[b][i];
+				sum += difference*difference;
+			}
+		}
+		return sum/2;
+	}
+
+	/**
+	 * The gradient of the loss with respect to every weight, summed over the samples, from back
+	 * propagation. The weights are not changed.
+	 * @param engine
+	 * @param inputs normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 * @param count number of samples
+	 * @param batch true to use computeGradients, false to feed the samples through one at a time
+	 * @return one array of gradients per layer, in the layout of its weights
+	 */
+	public static double[][] backPropagated(LayerEngine engine, double[][] inputs, double[][] actuals, int count, boolean batch)
+	{
+		double[][] gradients = new double[engine.getNumLayers()][];
+		for(int l=0; l<gradients.length; l++)
+		{
+			gradients[l] = new double[engine.getLayer(l).getWeights().length];
+		}
+		if(batch)
+		{
+			engine.clearGradients();
+			engine.computeGradients(inputs, actuals, 0, count);
+			for(int l=0; l<gradients.length; l++)
+			{
+				double[] summed = engine.getLayer(l).gradients;
+				for(int k=0; k<summed.length; k++)
+				{
+					gradients[l][k] = -summed[k];
+				}
+			}
+			engine.clearGradients();
+			return gradients;
+		}
+		for(int b=0; b<count; b++)
+		{
+			engine.setInputs(inputs[b]);
+			engine.feedForward();
+			engine.calculateError(actuals[b]);
+			for(int l=0; l<gradients.length; l++)
+			{
+				double[] in = l == 0 ? engine.getInputs() : engine.getLayer(l-1).getOutputs();
+				double[] errors = engine.getLayer(l).getErrors();
+				for(int i=0; i<errors.length; i++)
+				{
+					for(int j=0; j<in.length; j++)
+					{
+						gradients[l][i*in.length + j] -= errors[i]*in[j];
+					}
+				}
+			}
+		}
+		return gradients;
+	}
+
+	/**
+	 * The gradient of the loss with respect to every weight, measured by moving the weight a
+	 * step either way: (loss(w + step) - loss(w - step))/(2 step). Each weight is put back after.
+	 * @param engine
+	 * @param inputs normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 * @param count number of samples
+	 * @param step how far each weight is moved, such as 1e-6
+	 * @return one array of gradients per layer, in the layout of its weights
+	 */
+	public static double[][] finiteDifferences(LayerEngine engine, double[][] inputs, double[][] actuals, int count, double step)
+	{
+		double[][] gradients = new double[engine.getNumLayers()][];
+		for(int l=0; l<gradients.length; l++)
+		{
+			double[] weights = engine.getLayer(l).getWeights();
+			gradients[l] = new double[weights.length];
+			for(int k=0; k<weights.length; k++)
+			{
+				double weight = weights[k];
+				weights[k] = weight + step;
+				double above = loss(engine, inputs, actuals, count);
+				weights[k] = weight - step;
+				double below = loss(engine, inputs, actuals, count);
+				weights[k] = weight;
+				gradients[l][k] = (above - below)/(2*step);
+			}
+		}
+		return gradients;
+	}
+
+	/**
+	 * The largest relative difference between two sets of gradients, |a - b|/max(|a|, |b|),
+	 * over every weight. Pairs of gradients both smaller than 1e-4 are compared by their
+	 * absolute difference over 1e-4.
+	 * @param a
+	 * @param b
+	 * @return the largest difference, around 1e-7 against finite differences when back propagation is right
+	 */
+	public static double maxRelativeError(double[][] a, double[][] b)
+	{
+		double max = 0;
+		for(int l=0; l<a.length; l++)
+		{
+			for(int k=0; k<a[l].length; k++)
+			{
+				double scale = Math.max(FLOOR, Math.max(Math.abs(a[l][k]), Math.abs(b[l][k])));
+				max = Math.max(max, Math.abs(a[l][k] - b[l][k])/scale);
+			}
+		}
+		return max;
+	}
+}
@@ -0,0 +1,467 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Searches for the number of hidden neurons, learning rate and range of initial weights that give
+ * the lowest validation error on a dataset. Each trial is one setting of the three, trained as a
+ * network of its own with EpochTrainer, and the trials are trained at once as tasks on a fork-join
+ * pool. Every other specification, including the epochs and the share of weeks validated on, is
+ * taken from a base Runner. Trials are best given one thread each, which is the Runner default.
+ *
+ * The trials come from a grid of every combination of the given values, or are drawn at random
+ * from ranges. run trains every trial for all the epochs of the base Runner. successiveHalving
+ * trains every trial for a few epochs, keeps the best share of them and trains those on for more,
+ * and so on until the epochs run out, so most of the time goes to the trials worth it.
+ *
+ * Each trial's network has the seed of the base Runner, so a search gives the same results on
+ * any number of threads.
+ *
+ */
+public class HyperparameterSearch implements Closeable
+{
+	private final ForkJoinPool pool;
+	private final boolean ownsPool;
+
+	//The specifications every trial starts from, and the weeks trials are trained and compared on
+	private final Runner base;
+	private final PriceDataset data;
+
+	/**
+	 * One setting of the hyperparameters searched, and how it did
+	 */
+	public static class Trial
+	{
+		private final int numHidden;
+		private final double learningRate;
+		private final double minWeight;
+		private final double maxWeight;
+
+		//The network being trained, let go once the trial is pruned
+		private Network network;
+
+		//Validation error after the last round the trial was trained in, the passes it has been
+		//trained for, the last round it was trained in and the time it took
+		private double error = Double.NaN;
+		private int epochs;
+		private int round;
+		private boolean pruned;
+		private long nanos;
+
+		/**
+		 * Creates a trial that has not been trained yet
+		 * @param numHidden number of hidden neurons
+		 * @param learningRate
+		 * @param minWeight lowest initial weight
+		 * @param maxWeight highest initial weight
+		 */
+		public Trial(int numHidden, double learningRate, double minWeight, double maxWeight)
+		{
+			this.numHidden = numHidden;
+			this.learningRate = learningRate;
+			this.minWeight = minWeight;
+			this.maxWeight = maxWeight;
+		}
+
+		public int getNumHidden()
+		{
+			return numHidden;
+		}
+
+		public double getLearningRate()
+		{
+			return learningRate;
+		}
+
+		public double getMinWeight()
+		{
+			return minWeight;
+		}
+
+		public double getMaxWeight()
+		{
+			return maxWeight;
+		}
+
+		/**
+		 * Getter for the trained network
+		 * @return network, or null before the trial is trained or once it is pruned
+		 */
+		public Network getNetwork()
+		{
+			return network;
+		}
+
+		/**
+		 * Getter for the validation error
+		 * @return the mean percent error of the held back weeks after the last round the trial was
+		 * trained in, or NaN before it is trained
+		 */
+		public double getError()
+		{
+			return error;
+		}
+
+		/**
+		 * Getter for the number of passes the trial has been trained for
+		 * @return epochs
+		 */
+		public int getEpochs()
+		{
+			return epochs;
+		}
+
+		/**
+		 * Getter for the last round of successive halving the trial was trained in
+		 * @return round, counting from 0
+		 */
+		public int getRound()
+		{
+			return round;
+		}
+
+		/**
+		 * Whether successive halving stopped training the trial before the last round
+		 * @return pruned
+		 */
+		public boolean isPruned()
+		{
+			return pruned;
+		}
+
+		/**
+		 * Getter for the time spent training the trial
+		 * @return nanos
+		 */
+		public long getNanos()
+		{
+			return nanos;
+		}
+
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%d hidden, rate %.4f, weights %.3f to %.3f", numHidden, learningRate, minWeight, maxWeight);
+		}
+	}
+
+	//Trials that got further first, then the lowest errors first, then the trials not yet trained
+	private static final Comparator<Trial> BEST_FIRST = new Comparator<Trial>()
+	{
+		public int compare(Trial a, Trial b)
+		{
+			if(a.round != b.round)
+			{
+				return Integer.compare(b.round, a.round);
+			}
+			return Double.compare(Double.isNaN(a.error) ? Double.MAX_VALUE : a.error, Double.isNaN(b.error) ? Double.MAX_VALUE : b.error);
+		}
+	};
+
+	/**
+	 * Creates a search that trains on a pool of its own
+	 * @param base the specifications every trial starts from, which must hold back weeks to validate on
+	 * @param data the weeks to train and validate on, normalized with the bounds of base
+	 * @param parallelism number of trials trained at once, such as the number of cores
+	 */
+	public HyperparameterSearch(Runner base, PriceDataset data, int parallelism)
+	{
+		this(base, data, new ForkJoinPool(parallelism), true);
+	}
+
+	/**
+	 * Creates a search that trains on the given pool, which it leaves running when closed
+	 * @param base the specifications every trial starts from, which must hold back weeks to validate on
+	 * @param data the weeks to train and validate on, normalized with the bounds of base
+	 * @param pool
+	 */
+	public HyperparameterSearch(Runner base, PriceDataset data, ForkJoinPool pool)
+	{
+		this(base, data, pool, false);
+	}
+
+	private HyperparameterSearch(Runner base, PriceDataset data, ForkJoinPool pool, boolean ownsPool)
+	{
+		if(base.getValidationFraction() == 0)
+		{
+			if(ownsPool)
+			{
+				pool.shutdown();
+			}
+			throw new IllegalArgumentException("Trials are compared on held back weeks, so the validation fraction must be above 0");
+		}
+		this.base = new Runner(base);
+		this.data = data;
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+	}
+
+	/**
+	 * Every combination of the given values. Each weight range r gives initial weights from -r to r.
+	 * @param hiddenSizes numbers of hidden neurons
+	 * @param learningRates
+	 * @param weightRanges
+	 * @return the trials, the first value of every list changing slowest
+	 */
+	public static List<Trial> grid(int[] hiddenSizes, double[] learningRates, double[] weightRanges)
+	{
+		List<Trial> trials = new ArrayList<Trial>();
+		for(int hidden : hiddenSizes)
+		{
+			for(double rate : learningRates)
+			{
+				for(double range : weightRanges)
+				{
+					trials.add(new Trial(hidden, rate, -range, range));
+				}
+			}
+		}
+		return trials;
+	}
+
+	/**
+	 * Trials drawn at random: the hidden neurons evenly from their bounds, the learning rate evenly
+	 * on a log scale, since a rate twice another matters as much at 0.1 as at 1, and the weight
+	 * range evenly, initial weights going from minus the range to the range.
+	 * @param count number of trials
+	 * @param minHidden fewest hidden neurons
+	 * @param maxHidden most hidden neurons
+	 * @param minRate lowest learning rate
+	 * @param maxRate highest learning rate
+	 * @param minRange smallest weight range
+	 * @param maxRange largest weight range
+	 * @param seed the same seed draws the same trials
+	 * @return the trials
+	 */
+	public static List<Trial> random(int count, int minHidden, int maxHidden, double minRate, double maxRate, double minRange, double maxRange, long seed)
+	{
+		if(minHidden < 1 || minHidden > maxHidden || !(minRate > 0) || minRate > maxRate || !(minRange > 0) || minRange > maxRange)
+		{
+			throw new IllegalArgumentException("Each bound must be above 0 and no more than the bound above it");
+		}
+		SplittableRandom random = new RandomSource(seed).stream(RandomSource.SEARCH);
+		List<Trial> trials = new ArrayList<Trial>();
+		for(int k=0; k<count; k++)
+		{
+			int hidden = random.nextInt(minHidden, maxHidden + 1);
+			double rate = Math.exp(Math.log(minRate) + random.nextDouble()*(Math.log(maxRate) - Math.log(minRate)));
+			double range = minRange + random.nextDouble()*(maxRange - minRange);
+			trials.add(new Trial(hidden, rate, -range, range));
+		}
+		return trials;
+	}
+
+	/**
+	 * Trains every trial for the epochs of the base Runner, stopping early as its patience says
+	 * @param trials trials not yet trained
+	 * @return the trials, lowest error first
+	 */
+	public List<Trial> run(List<Trial> trials)
+	{
+		train(trials, base.getEpochs(), 0);
+		List<Trial> sorted = new ArrayList<Trial>(trials);
+		Collections.sort(sorted, BEST_FIRST);
+		return sorted;
+	}
+
+	/**
+	 * Successive halving. Every trial is trained for minEpochs passes, then the best 1 in eta are
+	 * trained on until they have had eta times as many, and so on until a round reaches the epochs
+	 * of the base Runner, which the trials left are trained for. The rest are pruned, and their
+	 * networks let go. A trial trained on keeps its weights, so no pass is made twice.
+	 * @param trials trials not yet trained
+	 * @param minEpochs passes of the first round
+	 * @param eta how many times fewer trials each round trains, and for how many times as many passes
+	 * @return the trials, those that got furthest first and then the lowest error first
+	 */
+	public List<Trial> successiveHalving(List<Trial> trials, int minEpochs, int eta)
+	{
+		if(minEpochs < 1 || eta < 2)
+		{
+			throw new IllegalArgumentException("Rounds need at least one pass and to keep fewer trials each time");
+		}
+		List<Trial> left = new ArrayList<Trial>(trials);
+		int budget = Math.min(minEpochs, base.getEpochs());
+		for(int round=0; ; round++)
+		{
+			train(left, budget, round);
+			if(budget == base.getEpochs())
+			{
+				break;
+			}
+			Collections.sort(left, BEST_FIRST);
+			int keep = Math.max(1, left.size()/eta);
+			for(Trial trial : left.subList(keep, left.size()))
+			{
+				trial.pruned = true;
+				trial.network = null;
+			}
+			left = new ArrayList<Trial>(left.subList(0, keep));
+			budget = (int) Math.min(base.getEpochs(), (long) budget*eta);
+		}
+		List<Trial> sorted = new ArrayList<Trial>(trials);
+		Collections.sort(sorted, BEST_FIRST);
+		return sorted;
+	}
+
+	/**
+	 * Trains each trial on the pool until it has been trained for the given number of passes, or
+	 * its patience runs out in this round
+	 */
+	private void train(List<Trial> trials, final int budget, final int round)
+	{
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for(final Trial trial : trials)
+		{
+			tasks.add(pool.submit(new Callable<Trial>()
+			{
+				public Trial call()
+				{
+					long start = System.nanoTime();
+					if(trial.network == null)
+					{
+						Runner r = new Runner(base);
+						r.setHiddenSizes(trial.numHidden);
+						r.setLearningRate(trial.learningRate);
+						r.setWeightRange(trial.minWeight, trial.maxWeight);
+						trial.network = new Network(r);
+					}
+					if(trial.epochs < budget)
+					{
+						trial.network.getVariables().setEpochs(budget - trial.epochs);
+						EpochTrainer trainer = new EpochTrainer(trial.network, data);
+						//A new order of weeks for each round, not the order the first round started with
+						trainer.setSeed(base.getSeed() + round);
+						trainer.train();
+						trial.epochs += trainer.getEpochs();
+						trial.error = trainer.getBestError();
+					}
+					trial.round = round;
+					trial.nanos += System.nanoTime() - start;
+					return trial;
+				}
+			}));
+		}
+		for(ForkJoinTask<?> task : tasks)
+		{
+			task.join();
+		}
+	}
+
+	/**
+	 * Writes a table of the trials, a line each, in the order given
+	 * @param trials
+	 * @param out
+	 */
+	public static void writeTable(List<Trial> trials, PrintStream out)
+	{
+		out.println(String.format(Locale.ROOT, "%5s %7s %10s %17s %7s %10s %9s  %s", "rank", "hidden", "rate", "weights", "passes", "error %", "seconds", "status"));
+		int rank = 1;
+		for(Trial trial : trials)
+		{
+			out.println(String.format(Locale.ROOT, "%5d %7d %10.4f %8.3f %8.3f %7d %10.4f %9.2f  %s", rank++, trial.numHidden, trial.learningRate,
+					trial.minWeight, trial.maxWeight, trial.epochs, trial.error, trial.nanos/1e9,
+					trial.pruned ? "pruned after round " + trial.round : "finished"));
+		}
+	}
+
+	/**
+	 * Getter for the pool the trials are trained on
+	 * @return pool
+	 */
+	public ForkJoinPool getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * Shuts the pool down if the search created it
+	 */
+	public void close()
+	{
+		if(ownsPool)
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Searches for the best hyperparameters for a file of prices and prints the table of trials.
+	 * Every trial is trained for up to 27 passes with a fifth of the weeks held back.
+	 * grid trains every combination of 6 hidden sizes, 5 learning rates and 3 weight ranges for
+	 * all the passes. random trains as many trials drawn at random for all the passes. halving
+	 * draws them the same way, trains them for 3 passes, and trains the best third on for 9 and
+	 * the best ninth of those for 27.
+	 * Usage: HyperparameterSearch file [grid|random|halving] [trials] [threads]
+	 * @param args the file of prices, the strategy (halving by default), the number of trials
+	 * drawn (243 by default) and the trials trained at once (the number of cores by default)
+	 * @throws IOException
+	 */
+	public static void main(String args[]) throws IOException
+	{
+		if(args.length < 1)
+		{
+			System.err.println("Usage: HyperparameterSearch file [grid|random|halving] [trials] [threads]");
+			System.exit(1);
+		}
+		File file = new File(args[0]);
+		String strategy = args.length > 1 ? args[1] : "halving";
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : 243;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		Runner r = new Runner();
+		double[] bounds = PriceDataset.findBounds(file, r);
+		if(bounds == null)
+		{
+			System.err.println("No prices in " + args[0]);
+			System.exit(1);
+		}
+		r.setDataBounds(bounds[0], bounds[1]);
+		r.setEpochs(27);
+		r.setValidation(0.2, 0);
+		PriceDataset data = PriceDataset.load(file, r);
+
+		List<Trial> trials;
+		if(strategy.equals("grid"))
+		{
+			trials = grid(new int[] {5, 10, 17, 25, 35, 50}, new double[] {0.1, 0.3, 0.7, 1.0, 1.65}, new double[] {0.1, 0.5, 1.0});
+		}
+		else if(strategy.equals("random") || strategy.equals("halving"))
+		{
+			trials = random(count, 2, 60, 0.05, 2.0, 0.05, 1.0, r.getSeed());
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown strategy " + strategy);
+		}
+
+		HyperparameterSearch search = new HyperparameterSearch(r, data, threads);
+		long start = System.nanoTime();
+		List<Trial> results;
+		try
+		{
+			results = strategy.equals("halving") ? search.successiveHalving(trials, 3, 3) : search.run(trials);
+		}
+		finally
+		{
+			search.close();
+		}
+		long passes = 0;
+		for(Trial trial : results)
+		{
+			passes += trial.epochs;
+		}
+		writeTable(results, System.out);
+		System.err.println(String.format(Locale.ROOT, "Searched %d trials with %s in %.2f s, %d passes on %d threads",
+				results.size(), strategy, (System.nanoTime() - start)/1e9, passes, threads));
+	}
+}
@@ -0,0 +1,321 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The inner loops of the layers: dot products for feeding forward and AXPY (y = y + a*x) for
+ * passing errors back and updating weights, for the doubles of LayerEngine and the floats of
+ * FloatLayerEngine. The wide float kernels add up products of floats in doubles, for layers that
+ * accumulate in double. The scalar kernels are plain loops. When the JVM is
+ * started with --add-modules jdk.incubator.vector the vector kernels in VectorKernels are used
+ * instead, and when the module is missing the scalar ones are used automatically.
+ *
+ * The off-heap kernels read or write a little-endian ByteBuffer of doubles, such as the direct or
+ * memory-mapped buffers of OffHeapWeights, in place of one of the arrays. Their positions in the
+ * buffer are counted in doubles, not bytes.
+ *
+ * The kernels are chosen once at startup with the nn.kernels system property:
+ *   vector      the widest vectors the CPU supports (the default)
+ *   vector128, vector256, vector512   vectors of the given number of bits (AVX, AVX2, AVX-512)
+ *   scalar      plain loops
+ *
+ */
+public abstract class Kernels
+{
+	//Plain loops, which are always available
+	public static final Kernels SCALAR = new Scalar();
+
+	//The kernels chosen at startup
+	public static final Kernels DEFAULT = create(System.getProperty("nn.kernels", "vector"));
+
+	/**
+	 * The sum of the products of length values of a and b
+	 * @param a
+	 * @param aOffset index of the first value of a
+	 * @param b
+	 * @param bOffset index of the first value of b
+	 * @param length number of products
+	 * @return the sum
+	 */
+	public abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+	/**
+	 * Adds alpha times length values of x to the values of y
+	 * @param alpha
+	 * @param x
+	 * @param xOffset index of the first value of x
+	 * @param y receives the sums
+	 * @param yOffset index of the first value of y
+	 * @param length number of values
+	 */
+	public abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	/**
+	 * Adds the dot products of length values of x with four rows of w to four sums. Each value
+	 * of x is loaded once for all four rows, which is the register blocking of the Gemm tiles.
+	 * @param x
+	 * @param xOffset index of the first value of x
+	 * @param w
+	 * @param wOffset index of the first value of the first row of w
+	 * @param wStride distance between the starts of the rows of w
+	 * @param length number of products in each dot product
+	 * @param sums receives the four dot products added to its values
+	 * @param sumsOffset index of the first sum
+	 */
+	public abstract void dot4(double[] x, int xOffset, double[] w, int wOffset, int wStride, int length,
+			double[] sums, int sumsOffset);
+
+	/**
+	 * Adds a0 times a row of x to y, then a1 times the next row and so on for four rows,
+	 * loading and storing y once for all four. The sums are the same as four calls to axpy.
+	 * @param a0
+	 * @param a1
+	 * @param a2
+	 * @param a3
+	 * @param x
+	 * @param xOffset index of the first value of the first row of x
+	 * @param xStride distance between the starts of the rows of x
+	 * @param y receives the sums
+	 * @param yOffset index of the first value of y
+	 * @param length number of values
+	 */
+	public abstract void axpy4(double a0, double a1, double a2, double a3, double[] x, int xOffset, int xStride,
+			double[] y, int yOffset, int length);
+
+	/**
+	 * The sum of the products of length values of a and b, added up in a float
+	 * @param a
+	 * @param aOffset index of the first value of a
+	 * @param b
+	 * @param bOffset index of the first value of b
+	 * @param length number of products
+	 * @return the sum
+	 */
+	public abstract float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+	/**
+	 * The sum of the products of length values of a and b, each product and the sum in a double
+	 * @param a
+	 * @param aOffset index of the first value of a
+	 * @param b
+	 * @param bOffset index of the first value of b
+	 * @param length number of products
+	 * @return the sum
+	 */
+	public abstract double wideDot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+	/**
+	 * Adds alpha times length values of x to the values of y, in floats
+	 * @param alpha
+	 * @param x
+	 * @param xOffset index of the first value of x
+	 * @param y receives the sums
+	 * @param yOffset index of the first value of y
+	 * @param length number of values
+	 */
+	public abstract void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+	/**
+	 * Adds alpha times length values of x to the double values of y, each product in a double
+	 * @param alpha
+	 * @param x
+	 * @param xOffset index of the first value of x
+	 * @param y receives the sums
+	 * @param yOffset index of the first value of y
+	 * @param length number of values
+	 */
+	public abstract void wideAxpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length);
+
+	/**
+	 * The sum of the products of length values of an array and of a little-endian buffer of doubles
+	 * @param a
+	 * @param aOffset index of the first value of a
+	 * @param b
+	 * @param bIndex index of the first double of b
+	 * @param length number of products
+	 * @return the sum
+	 */
+	public abstract double dot(double[] a, int aOffset, ByteBuffer b, int bIndex, int length);
+
+	/**
+	 * Adds alpha times length doubles of a little-endian buffer to the values of y
+	 * @param alpha
+	 * @param x
+	 * @param xIndex index of the first double of x
+	 * @param y receives the sums
+	 * @param yOffset index of the first value of y
+	 * @param length number of values
+	 */
+	public abstract void axpy(double alpha, ByteBuffer x, int xIndex, double[] y, int yOffset, int length);
+
+	/**
+	 * Adds alpha times length values of x to the doubles of a little-endian buffer
+	 * @param alpha
+	 * @param x
+	 * @param xOffset index of the first value of x
+	 * @param y receives the sums, which must be writable
+	 * @param yIndex index of the first double of y
+	 * @param length number of values
+	 */
+	public abstract void axpy(double alpha, double[] x, int xOffset, ByteBuffer y, int yIndex, int length);
+
+	/**
+	 * Creates the kernels with the given name, falling back to the scalar kernels when the
+	 * vector module is missing or the CPU does not have vectors of the requested width
+	 * @param name scalar, vector, or vector followed by a number of bits
+	 * @return the kernels
+	 */
+	public static Kernels create(String name)
+	{
+		if(name.equals("scalar"))
+		{
+			return SCALAR;
+		}
+		if(!name.startsWith("vector"))
+		{
+			throw new IllegalArgumentException("Unknown kernels " + name);
+		}
+		int bits = name.equals("vector") ? 0 : Integer.parseInt(name.substring("vector".length()));
+		try
+		{
+			return (Kernels) Class.forName("VectorKernels").getDeclaredMethod("forBits", int.class).invoke(null, bits);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			return SCALAR;
+		}
+		catch(LinkageError e)
+		{
+			return SCALAR;
+		}
+	}
+
+	private static class Scalar extends Kernels
+	{
+		public double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+		{
+			double sum = 0;
+			for(int j=0; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+		{
+			for(int j=0; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public void dot4(double[] x, int xOffset, double[] w, int wOffset, int wStride, int length,
+				double[] sums, int sumsOffset)
+		{
+			int w1 = wOffset + wStride;
+			int w2 = w1 + wStride;
+			int w3 = w2 + wStride;
+			double s0 = 0;
+			double s1 = 0;
+			double s2 = 0;
+			double s3 = 0;
+			for(int j=0; j<length; j++)
+			{
+				double v = x[xOffset+j];
+				s0 = s0 + (v*w[wOffset+j]);
+				s1 = s1 + (v*w[w1+j]);
+				s2 = s2 + (v*w[w2+j]);
+				s3 = s3 + (v*w[w3+j]);
+			}
+			sums[sumsOffset] = sums[sumsOffset] + s0;
+			sums[sumsOffset+1] = sums[sumsOffset+1] + s1;
+			sums[sumsOffset+2] = sums[sumsOffset+2] + s2;
+			sums[sumsOffset+3] = sums[sumsOffset+3] + s3;
+		}
+
+		public void axpy4(double a0, double a1, double a2, double a3, double[] x, int xOffset, int xStride,
+				double[] y, int yOffset, int length)
+		{
+			int x1 = xOffset + xStride;
+			int x2 = x1 + xStride;
+			int x3 = x2 + xStride;
+			for(int j=0; j<length; j++)
+			{
+				double v = y[yOffset+j];
+				v = v + (a0*x[xOffset+j]);
+				v = v + (a1*x[x1+j]);
+				v = v + (a2*x[x2+j]);
+				v = v + (a3*x[x3+j]);
+				y[yOffset+j] = v;
+			}
+		}
+
+		public float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+		{
+			float sum = 0;
+			for(int j=0; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public double wideDot(float[] a, int aOffset, float[] b, int bOffset, int length)
+		{
+			double sum = 0;
+			for(int j=0; j<length; j++)
+			{
+				sum = sum + ((double) a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+		{
+			for(int j=0; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public void wideAxpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length)
+		{
+			for(int j=0; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public double dot(double[] a, int aOffset, ByteBuffer b, int bIndex, int length)
+		{
+			double sum = 0;
+			for(int j=0; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b.getDouble((bIndex+j)*8));
+			}
+			return sum;
+		}
+
+		public void axpy(double alpha, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+		{
+			for(int j=0; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x.getDouble((xIndex+j)*8));
+			}
+		}
+
+		public void axpy(double alpha, double[] x, int xOffset, ByteBuffer y, int yIndex, int length)
+		{
+			for(int j=0; j<length; j++)
+			{
+				int at = (yIndex+j)*8;
+				y.putDouble(at, y.getDouble(at) + (alpha*x[xOffset+j]));
+			}
+		}
+
+		public String toString()
+		{
+			return "scalar";
+		}
+	}
+}
@@ -0,0 +1,136 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of durations in nanoseconds in buckets whose width grows with the value, in the manner
+ * of HdrHistogram. Each power of two is split into 2^SUB_BITS buckets, so every value is known to
+ * within 1/2^SUB_BITS of itself (6%) however large it is, with a fixed array of counts and no
+ * allocation when recording. Any number of threads can record at once; reading while they do
+ * gives counts that are at most a few recordings behind.
+ *
+ */
+public class LatencyHistogram
+{
+	//Bits of a value kept below its highest bit, and the buckets of each power of two
+	static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	//Highest power of two recorded; longer durations (over 30 minutes) count in the last bucket
+	private static final int MAX_EXPONENT = 40;
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Counts one duration
+	 * @param nanos the duration, which is counted as 0 if negative
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		counts.incrementAndGet(index(value));
+		count.increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * The bucket a value is counted in. Values below SUB_BUCKETS each have a bucket of their own.
+	 */
+	static int index(long value)
+	{
+		if(value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1)*SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * The highest value counted in a bucket
+	 */
+	static long highestValue(int index)
+	{
+		if(index < SUB_BUCKETS)
+		{
+			return index;
+		}
+		int shift = index/SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + index%SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * The duration that the given percent of the durations are at most, to within the width of
+	 * its bucket
+	 * @param percentile from 0 to 100, such as 99 for the 99th percentile
+	 * @return the duration in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long recorded = 0;
+		for(int i=0; i<counts.length(); i++)
+		{
+			recorded += counts.get(i);
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile/100*recorded));
+		long seen = 0;
+		for(int i=0; i<counts.length(); i++)
+		{
+			seen += counts.get(i);
+			if(seen >= target)
+			{
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Getter for the number of durations counted
+	 * @return count
+	 */
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * The mean of the durations counted
+	 * @return the mean in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public double getMean()
+	{
+		long n = count.sum();
+		return n == 0 ? 0 : (double) total.sum()/n;
+	}
+
+	/**
+	 * Getter for the longest duration counted
+	 * @return max in nanoseconds
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Forgets every duration counted. Durations recorded while it runs may be kept or lost.
+	 */
+	public void reset()
+	{
+		for(int i=0; i<counts.length(); i++)
+		{
+			counts.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+}
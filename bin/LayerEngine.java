@@ -0,0 +1,474 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The layer engine does the math of the network on flat primitive arrays. The input layer is a
+ * plain activation buffer and every layer to the right of it is a DenseLayer holding a row-major
+ * weight matrix, so feeding forward, calculating the error and updating the weights are all tight
+ * loops over contiguous arrays instead of walks over connected neurons.
+ *
+ */
+public class LayerEngine
+{
+	//The outputs of the input layer (the normalized data values)
+	final double[] inputs;
+
+	//Every layer to the right of the input layer, ending with the output layer
+	final DenseLayer[] layers;
+
+	//Inputs and actuals of a batch of samples, one row per sample
+	private double[] batchInputs;
+	private double[] batchActuals;
+
+	//Most windows fed through the layers at once by predict
+	public static final int PREDICT_BLOCK = 64;
+
+	//Pool the neurons of wide layers are split between by feedForward, or null to feed forward
+	//on the calling thread only
+	private ForkJoinPool forwardPool;
+
+	//Least number of weights each task of a split layer reads
+	private int forwardThreshold;
+
+	/**
+	 * Creates an engine with the given number of neurons in each layer, starting with the
+	 * input layer and ending with the output layer
+	 * @param sizes number of neurons in each layer
+	 */
+	public LayerEngine(int... sizes)
+	{
+		if(sizes.length < 2)
+		{
+			throw new IllegalArgumentException("A network needs at least an input and an output layer");
+		}
+		inputs = new double[sizes[0]];
+		layers = new DenseLayer[sizes.length - 1];
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l] = new DenseLayer(sizes[l+1], sizes[l]);
+		}
+	}
+
+	/**
+	 * Creates an engine with the same layer sizes as another one and its own activation, error
+	 * and batch buffers
+	 * @param other the engine to copy the layer sizes and weights from
+	 * @param shareWeights true to train the other engine's weight arrays, false to start from a copy
+	 */
+	private LayerEngine(LayerEngine other, boolean shareWeights)
+	{
+		inputs = new double[other.inputs.length];
+		layers = new DenseLayer[other.layers.length];
+		for(int l=0; l<layers.length; l++)
+		{
+			DenseLayer layer = other.layers[l];
+			double[] weights = shareWeights ? layer.weights : layer.weights.clone();
+			layers[l] = new DenseLayer(layer.size, layer.fanIn, weights);
+			layers[l].activation = layer.activation;
+			layers[l].kernels = layer.kernels;
+			layers[l].gemm = layer.gemm;
+			layers[l].optimizer = layer.optimizer;
+			if(shareWeights)
+			{
+				//Threads training the same weights share the optimizer's state and count of
+				//updates as well, so bias corrections see every thread's updates
+				layers[l].optimizerState = layer.getOptimizerState();
+				layers[l].updates = layer.updates;
+			}
+		}
+	}
+
+	/**
+	 * Creates an engine with a copy of this engine's weights. Its optimizer starts from fresh state.
+	 * @return the copy
+	 */
+	public LayerEngine replicate()
+	{
+		return new LayerEngine(this, false);
+	}
+
+	/**
+	 * Creates an engine that reads and trains this engine's weight arrays but has its own
+	 * activations and errors, so another thread can train the same weights
+	 * @return the engine sharing the weights
+	 */
+	public LayerEngine shareWeights()
+	{
+		return new LayerEngine(this, true);
+	}
+
+	/**
+	 * Copies the normalized values into the input layer
+	 * @param in
+	 */
+	public void setInputs(double[] in)
+	{
+		System.arraycopy(in, 0, inputs, 0, inputs.length);
+	}
+
+	/**
+	 * Passes the inputs through every layer, producing an output for each output neuron
+	 */
+	public void feedForward()
+	{
+		double[] in = inputs;
+		for(int l=0; l<layers.length; l++)
+		{
+			DenseLayer layer = layers[l];
+			if(forwardPool != null && (long) layer.size*layer.fanIn >= 2L*forwardThreshold)
+			{
+				forwardPool.invoke(new ForwardTask(layer, in, 0, layer.size, forwardThreshold));
+			}
+			else
+			{
+				layer.forward(in);
+			}
+			in = layer.outputs;
+		}
+	}
+
+	/**
+	 * Feeds a range of the neurons of a layer forward, splitting it in half between the
+	 * threads of the pool for as long as each half reads at least threshold weights
+	 */
+	private static class ForwardTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final DenseLayer layer;
+		private final double[] in;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		ForwardTask(DenseLayer layer, double[] in, int from, int to, int threshold)
+		{
+			this.layer = layer;
+			this.in = in;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		protected void compute()
+		{
+			//Halves start on a multiple of 4 neurons so each keeps whole blocks of four rows
+			int middle = from + (((to - from)/2) & ~3);
+			if(middle == from || (long) (to - from)*layer.fanIn < 2L*threshold)
+			{
+				layer.forward(in, from, to);
+			}
+			else
+			{
+				invokeAll(new ForwardTask(layer, in, from, middle, threshold), new ForwardTask(layer, in, middle, to, threshold));
+			}
+		}
+	}
+
+	/**
+	 * Makes feedForward split the neurons of every layer with at least twice threshold weights
+	 * between the threads of a pool, which lowers the time of one sample through a wide network
+	 * when there are idle cores. The outputs are the same as on one thread. Training and
+	 * predict are not split.
+	 * @param pool the threads to split the layers between, or null to feed forward on the calling thread
+	 * @param threshold least number of weights each thread reads from a layer
+	 */
+	public void setParallelForward(ForkJoinPool pool, int threshold)
+	{
+		if(pool != null && threshold < 1)
+		{
+			throw new IllegalArgumentException("Threshold must be at least 1 weight");
+		}
+		forwardPool = pool;
+		forwardThreshold = threshold;
+	}
+
+	/**
+	 * Calculates the error of the output layer against the actuals, then passes the
+	 * error back through the hidden layers
+	 * @param actuals the expected outputs
+	 */
+	public void calculateError(double[] actuals)
+	{
+		int last = layers.length - 1;
+		layers[last].outputErrors(actuals);
+		for(int l=last; l>0; l--)
+		{
+			layers[l].backPropagate(layers[l-1].outputs, layers[l-1].errors, layers[l-1].activation);
+		}
+	}
+
+	/**
+	 * Updates the weights of every layer using the errors from calculateError
+	 * @param learningRate
+	 */
+	public void updateWeights(double learningRate)
+	{
+		for(int l=layers.length-1; l>=0; l--)
+		{
+			layers[l].updateWeights(inputOf(l), learningRate);
+		}
+	}
+
+	/**
+	 * Trains on a batch of samples at once. The whole batch is fed forward and the errors are
+	 * passed back as matrix products, the delta weights of every sample are summed, and the
+	 * weights are updated once by the average. Afterwards the layer outputs and errors hold the
+	 * values of the last sample of the batch. An empty batch leaves the engine as it was.
+	 * @param in normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 * @param count number of samples to use from the start of in and actuals
+	 * @param learningRate
+	 */
+	public void trainBatch(double[][] in, double[][] actuals, int count, double learningRate)
+	{
+		if(count <= 0)
+		{
+			return;
+		}
+		computeGradients(in, actuals, 0, count);
+		applyGradients(learningRate, count);
+
+		//Leave the last sample in the single sample buffers the neurons read from
+		System.arraycopy(batchInputs, (count-1)*inputs.length, inputs, 0, inputs.length);
+		for(int l=0; l<layers.length; l++)
+		{
+			DenseLayer layer = layers[l];
+			System.arraycopy(layer.batchOutputs, (count-1)*layer.size, layer.outputs, 0, layer.size);
+			System.arraycopy(layer.batchErrors, (count-1)*layer.size, layer.errors, 0, layer.size);
+		}
+	}
+
+	/**
+	 * Feeds a run of samples forward as one batch, passes the errors back, and sums the delta
+	 * weights of every sample into the gradients of each layer without changing the weights.
+	 * @param in normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 * @param from index of the first sample to use
+	 * @param count number of samples to use
+	 */
+	public void computeGradients(double[][] in, double[][] actuals, int from, int count)
+	{
+		ensureBatchCapacity(count);
+		int numInputs = inputs.length;
+		int numOutputs = getOutputs().length;
+		for(int b=0; b<count; b++)
+		{
+			System.arraycopy(in[from+b], 0, batchInputs, b*numInputs, numInputs);
+			System.arraycopy(actuals[from+b], 0, batchActuals, b*numOutputs, numOutputs);
+		}
+
+		double[] x = batchInputs;
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].forwardBatch(x, count);
+			x = layers[l].batchOutputs;
+		}
+		int last = layers.length - 1;
+		layers[last].outputErrorsBatch(batchActuals, count);
+		for(int l=last; l>0; l--)
+		{
+			layers[l].backPropagateBatch(layers[l-1].batchOutputs, layers[l-1].batchErrors, count, layers[l-1].activation);
+		}
+		for(int l=last; l>=0; l--)
+		{
+			layers[l].accumulateGradients(batchInputOf(l), count);
+		}
+	}
+
+	/**
+	 * Feeds windows through the network without touching any of the engine's own buffers, so any
+	 * number of threads can predict with the same engine at once as long as it is not being
+	 * trained. The windows are fed through the layers in blocks as batches.
+	 * @param windows normalized inputs of each window
+	 * @param outputs receives the outputs of each window
+	 * @param count number of windows to predict
+	 * @param scratch buffers for the activations, used by one thread at a time
+	 */
+	public void predict(double[][] windows, double[][] outputs, int count, Scratch scratch)
+	{
+		int numInputs = inputs.length;
+		int numOutputs = getOutputs().length;
+		for(int start=0; start<count; start+=PREDICT_BLOCK)
+		{
+			int block = Math.min(PREDICT_BLOCK, count - start);
+			for(int b=0; b<block; b++)
+			{
+				System.arraycopy(windows[start+b], 0, scratch.inputs, b*numInputs, numInputs);
+			}
+			double[] x = scratch.inputs;
+			for(int l=0; l<layers.length; l++)
+			{
+				layers[l].forwardBatch(x, block, scratch.outputs[l]);
+				x = scratch.outputs[l];
+			}
+			for(int b=0; b<block; b++)
+			{
+				System.arraycopy(x, b*numOutputs, outputs[start+b], 0, numOutputs);
+			}
+		}
+	}
+
+	/**
+	 * Creates the activation buffers one thread needs to call predict
+	 * @return the scratch buffers
+	 */
+	public Scratch newScratch()
+	{
+		return new Scratch(this);
+	}
+
+	/**
+	 * Activation buffers for feeding a block of windows through the layers, so that predicting
+	 * does not write to the engine
+	 */
+	public static class Scratch
+	{
+		final double[] inputs;
+		final double[][] outputs;
+
+		Scratch(LayerEngine engine)
+		{
+			inputs = new double[PREDICT_BLOCK*engine.inputs.length];
+			outputs = new double[engine.layers.length][];
+			for(int l=0; l<outputs.length; l++)
+			{
+				outputs[l] = new double[PREDICT_BLOCK*engine.layers[l].size];
+			}
+		}
+	}
+
+	/**
+	 * Sets the loops the math of every layer is written in
+	 * @param kernels
+	 */
+	public void setKernels(Kernels kernels)
+	{
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].setKernels(kernels);
+		}
+	}
+
+	/**
+	 * Sets the tiles the matrix products of every layer are cut into
+	 * @param gemm
+	 */
+	public void setGemm(Gemm gemm)
+	{
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].setGemm(gemm);
+		}
+	}
+
+	/**
+	 * Sets the gradients of every layer to 0, as if computeGradients was given no samples
+	 */
+	public void clearGradients()
+	{
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].clearGradients();
+		}
+	}
+
+	/**
+	 * Changes the weights of every layer by the gradients summed by computeGradients
+	 * @param learningRate
+	 * @param count number of samples the gradients were summed over
+	 */
+	public void applyGradients(double learningRate, int count)
+	{
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].applyGradients(learningRate, count);
+		}
+	}
+
+	/**
+	 * Sets the rule the delta weights change the weights of every layer by
+	 * @param optimizer
+	 */
+	public void setOptimizer(Optimizer optimizer)
+	{
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].setOptimizer(optimizer);
+		}
+	}
+
+	/**
+	 * Makes sure the batch buffers of the engine and every layer can hold the given number of samples
+	 * @param batchSize
+	 */
+	private void ensureBatchCapacity(int batchSize)
+	{
+		if(batchInputs == null || batchInputs.length < batchSize*inputs.length)
+		{
+			batchInputs = new double[batchSize*inputs.length];
+			batchActuals = new double[batchSize*getOutputs().length];
+		}
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].ensureBatchCapacity(batchSize);
+		}
+	}
+
+	/**
+	 * Getter for the batch outputs of the layer feeding into the given layer
+	 * @param l index of the layer
+	 * @return the batch outputs of the layer to the left
+	 */
+	double[] batchInputOf(int l)
+	{
+		return l == 0 ? batchInputs : layers[l-1].batchOutputs;
+	}
+
+	/**
+	 * Getter for the outputs of the layer feeding into the given layer
+	 * @param l index of the layer
+	 * @return the outputs of the layer to the left
+	 */
+	double[] inputOf(int l)
+	{
+		return l == 0 ? inputs : layers[l-1].outputs;
+	}
+
+	/**
+	 * Getter for the input layer buffer
+	 * @return inputs
+	 */
+	public double[] getInputs()
+	{
+		return inputs;
+	}
+
+	/**
+	 * Getter for the outputs of the output layer
+	 * @return outputs
+	 */
+	public double[] getOutputs()
+	{
+		return layers[layers.length-1].outputs;
+	}
+
+	/**
+	 * Getter for the layer at the given index, where 0 is the first hidden layer
+	 * @param l
+	 * @return the layer
+	 */
+	public DenseLayer getLayer(int l)
+	{
+		return layers[l];
+	}
+
+	/**
+	 * Getter for the number of layers to the right of the input layer
+	 * @return number of layers
+	 */
+	public int getNumLayers()
+	{
+		return layers.length;
+	}
+}
@@ -0,0 +1,384 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * What a network has done and how long it took: samples trained and predicted, the loss of the
+ * samples trained, the validation error of EpochTrainer, and histograms of the time of each
+ * step of training and of predicting. The counters are LongAdders, which each thread adds to
+ * without contending with the others.
+ *
+ * Recording is switched on for the whole JVM with -Dnnet.metrics=true. The switch is a constant,
+ * so when it is off the JIT drops the recording code from Network and the trainers altogether
+ * and getMetrics returns an instance that stays empty. The metrics can be registered with the
+ * platform MBean server to be read through JMX, and MetricsReporter prints them periodically.
+ *
+ */
+public class Metrics implements MetricsMBean
+{
+	//Whether networks record metrics, read once from the system property nnet.metrics
+	public static final boolean ENABLED = Boolean.getBoolean("nnet.metrics");
+
+	//Metrics of every network when recording is switched off, which nothing records into
+	static final Metrics DISABLED = new Metrics();
+
+	//Domain of the names the metrics are registered under in JMX
+	public static final String DOMAIN = "nnet";
+
+	private final LongAdder samplesTrained = new LongAdder();
+	private final LongAdder samplesPredicted = new LongAdder();
+	private final LongAdder batchesTrained = new LongAdder();
+	private final LongAdder epochs = new LongAdder();
+
+	//Sum of the mean squared error of the outputs of each sample trained one at a time, and the
+	//number of samples in the sum
+	private final DoubleAdder lossSum = new DoubleAdder();
+	private final LongAdder lossCount = new LongAdder();
+
+	//Mean percent error of the validation weeks after the last pass EpochTrainer validated
+	private volatile double validationError = Double.NaN;
+
+	//Time of each step of training one sample, of training a batch, and of a call to predict
+	private final LatencyHistogram feedForward = new LatencyHistogram();
+	private final LatencyHistogram calculateError = new LatencyHistogram();
+	private final LatencyHistogram updateWeights = new LatencyHistogram();
+	private final LatencyHistogram trainBatch = new LatencyHistogram();
+	private final LatencyHistogram predict = new LatencyHistogram();
+
+	//The name the metrics are registered under in JMX, or null
+	private ObjectName name;
+
+	/**
+	 * Adds the loss of one sample, the mean of the squared differences between its outputs and actuals
+	 * @param outputs
+	 * @param actuals
+	 */
+	void recordLoss(double[] outputs, double[] actuals)
+	{
+		double sum = 0;
+		for(int i=0; i<outputs.length; i++)
+		{
+			double difference = actuals[i] - outputs[i];
+			sum += difference*difference;
+		}
+		lossSum.add(sum/outputs.length);
+		lossCount.increment();
+	}
+
+	/**
+	 * Counts samples trained, either one at a time or as a batch
+	 * @param count number of samples
+	 * @param batch true if they were trained as one batch
+	 */
+	void countTrained(int count, boolean batch)
+	{
+		samplesTrained.add(count);
+		if(batch)
+		{
+			batchesTrained.increment();
+		}
+	}
+
+	/**
+	 * Counts samples predicted
+	 * @param count
+	 */
+	void countPredicted(int count)
+	{
+		samplesPredicted.add(count);
+	}
+
+	/**
+	 * Counts a pass of EpochTrainer
+	 */
+	void countEpoch()
+	{
+		epochs.increment();
+	}
+
+	/**
+	 * Setter for the validation error of the last pass validated
+	 * @param error mean percent error
+	 */
+	void setValidationError(double error)
+	{
+		validationError = error;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server under nnet:type=Network,name=name
+	 * @param networkName name that tells this network from others in the JVM
+	 * @throws JMException if the name is taken or not valid
+	 */
+	public synchronized void register(String networkName) throws JMException
+	{
+		if(this == DISABLED)
+		{
+			throw new IllegalStateException("Metrics are switched off; run with -Dnnet.metrics=true");
+		}
+		ObjectName objectName = new ObjectName(DOMAIN + ":type=Network,name=" + ObjectName.quote(networkName));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		unregister();
+		name = objectName;
+	}
+
+	/**
+	 * Removes the metrics from the platform MBean server, if they were registered
+	 * @throws JMException
+	 */
+	public synchronized void unregister() throws JMException
+	{
+		if(name != null)
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			name = null;
+		}
+	}
+
+	/**
+	 * Getter for the name the metrics are registered under in JMX
+	 * @return name, or null if they are not registered
+	 */
+	public synchronized ObjectName getObjectName()
+	{
+		return name;
+	}
+
+	public long getSamplesTrained()
+	{
+		return samplesTrained.sum();
+	}
+
+	public long getSamplesPredicted()
+	{
+		return samplesPredicted.sum();
+	}
+
+	public long getBatchesTrained()
+	{
+		return batchesTrained.sum();
+	}
+
+	public long getEpochs()
+	{
+		return epochs.sum();
+	}
+
+	/**
+	 * The mean loss of the samples trained one at a time
+	 * @return the mean of their mean squared errors, or NaN if none were trained
+	 */
+	public double getMeanLoss()
+	{
+		long n = lossCount.sum();
+		return n == 0 ? Double.NaN : lossSum.sum()/n;
+	}
+
+	/**
+	 * Getter for the sum of the losses of the samples trained one at a time, for working out
+	 * the loss over an interval
+	 * @return the sum of their mean squared errors
+	 */
+	public double getLossSum()
+	{
+		return lossSum.sum();
+	}
+
+	/**
+	 * Getter for the number of samples whose loss has been added up
+	 * @return lossCount
+	 */
+	public long getLossCount()
+	{
+		return lossCount.sum();
+	}
+
+	public double getValidationError()
+	{
+		return validationError;
+	}
+
+	/**
+	 * Getter for the time of each feedForward
+	 * @return the histogram
+	 */
+	public LatencyHistogram getFeedForward()
+	{
+		return feedForward;
+	}
+
+	/**
+	 * Getter for the time of each calculateError
+	 * @return the histogram
+	 */
+	public LatencyHistogram getCalculateError()
+	{
+		return calculateError;
+	}
+
+	/**
+	 * Getter for the time of each updateWeights
+	 * @return the histogram
+	 */
+	public LatencyHistogram getUpdateWeights()
+	{
+		return updateWeights;
+	}
+
+	/**
+	 * Getter for the time of each batch trained by trainBatch or ParallelTrainer
+	 * @return the histogram
+	 */
+	public LatencyHistogram getTrainBatch()
+	{
+		return trainBatch;
+	}
+
+	/**
+	 * Getter for the time of each call to predict
+	 * @return the histogram
+	 */
+	public LatencyHistogram getPredict()
+	{
+		return predict;
+	}
+
+	public double getFeedForwardMeanNanos()
+	{
+		return feedForward.getMean();
+	}
+
+	public long getFeedForwardP99Nanos()
+	{
+		return feedForward.getValueAtPercentile(99);
+	}
+
+	public double getCalculateErrorMeanNanos()
+	{
+		return calculateError.getMean();
+	}
+
+	public long getCalculateErrorP99Nanos()
+	{
+		return calculateError.getValueAtPercentile(99);
+	}
+
+	public double getUpdateWeightsMeanNanos()
+	{
+		return updateWeights.getMean();
+	}
+
+	public long getUpdateWeightsP99Nanos()
+	{
+		return updateWeights.getValueAtPercentile(99);
+	}
+
+	public double getTrainBatchMeanNanos()
+	{
+		return trainBatch.getMean();
+	}
+
+	public long getTrainBatchP99Nanos()
+	{
+		return trainBatch.getValueAtPercentile(99);
+	}
+
+	public double getPredictMeanNanos()
+	{
+		return predict.getMean();
+	}
+
+	public long getPredictP99Nanos()
+	{
+		return predict.getValueAtPercentile(99);
+	}
+
+	/**
+	 * The metrics on one line, with durations in microseconds
+	 * @return text such as "trained 1200 (0 batches, 0 epochs) predicted 0 loss 0.0213 ..."
+	 */
+	public String toText()
+	{
+		StringBuilder text = new StringBuilder();
+		text.append(String.format(Locale.ROOT, "trained %d (%d batches, %d epochs) predicted %d loss %.6f validation %.3f%%",
+				getSamplesTrained(), getBatchesTrained(), getEpochs(), getSamplesPredicted(), getMeanLoss(), getValidationError()));
+		appendText(text, "feedForward", feedForward);
+		appendText(text, "calculateError", calculateError);
+		appendText(text, "updateWeights", updateWeights);
+		appendText(text, "trainBatch", trainBatch);
+		appendText(text, "predict", predict);
+		return text.toString();
+	}
+
+	private static void appendText(StringBuilder text, String step, LatencyHistogram histogram)
+	{
+		if(histogram.getCount() > 0)
+		{
+			text.append(String.format(Locale.ROOT, " %s mean %.2fus p50 %.2fus p99 %.2fus", step, histogram.getMean()/1e3,
+					histogram.getValueAtPercentile(50)/1e3, histogram.getValueAtPercentile(99)/1e3));
+		}
+	}
+
+	/**
+	 * The metrics as a JSON object, with durations in nanoseconds. A loss or validation error
+	 * that is not known yet is null.
+	 * @return the JSON text
+	 */
+	public String toJson()
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("{\"samplesTrained\":").append(getSamplesTrained());
+		json.append(",\"batchesTrained\":").append(getBatchesTrained());
+		json.append(",\"epochs\":").append(getEpochs());
+		json.append(",\"samplesPredicted\":").append(getSamplesPredicted());
+		json.append(",\"meanLoss\":").append(jsonNumber(getMeanLoss()));
+		json.append(",\"validationError\":").append(jsonNumber(getValidationError()));
+		appendJson(json, "feedForward", feedForward);
+		appendJson(json, "calculateError", calculateError);
+		appendJson(json, "updateWeights", updateWeights);
+		appendJson(json, "trainBatch", trainBatch);
+		appendJson(json, "predict", predict);
+		return json.append('}').toString();
+	}
+
+	private static void appendJson(StringBuilder json, String step, LatencyHistogram histogram)
+	{
+		json.append(",\"").append(step).append("\":{\"count\":").append(histogram.getCount());
+		json.append(",\"meanNanos\":").append(jsonNumber(histogram.getMean()));
+		json.append(",\"p50Nanos\":").append(histogram.getValueAtPercentile(50));
+		json.append(",\"p99Nanos\":").append(histogram.getValueAtPercentile(99));
+		json.append(",\"maxNanos\":").append(histogram.getMax()).append('}');
+	}
+
+	static String jsonNumber(double value)
+	{
+		return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+	}
+
+	/**
+	 * Forgets everything recorded so far
+	 */
+	public void reset()
+	{
+		samplesTrained.reset();
+		samplesPredicted.reset();
+		batchesTrained.reset();
+		epochs.reset();
+		lossSum.reset();
+		lossCount.reset();
+		validationError = Double.NaN;
+		feedForward.reset();
+		calculateError.reset();
+		updateWeights.reset();
+		trainBatch.reset();
+		predict.reset();
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * The attributes and operations of a network's Metrics seen through JMX, such as in JConsole or
+ * VisualVM. Durations are in nanoseconds.
+ *
+ */
+public interface MetricsMBean
+{
+	long getSamplesTrained();
+
+	long getSamplesPredicted();
+
+	long getBatchesTrained();
+
+	long getEpochs();
+
+	double getMeanLoss();
+
+	double getValidationError();
+
+	double getFeedForwardMeanNanos();
+
+	long getFeedForwardP99Nanos();
+
+	double getCalculateErrorMeanNanos();
+
+	long getCalculateErrorP99Nanos();
+
+	double getUpdateWeightsMeanNanos();
+
+	long getUpdateWeightsP99Nanos();
+
+	double getTrainBatchMeanNanos();
+
+	long getTrainBatchP99Nanos();
+
+	double getPredictMeanNanos();
+
+	long getPredictP99Nanos();
+
+	String toText();
+
+	String toJson();
+
+	void reset();
+}
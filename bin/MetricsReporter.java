@@ -0,0 +1,116 @@
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the metrics of a network every so often on a daemon thread, one line per report, as
+ * text or as JSON lines. Besides the totals of Metrics each line gives the samples trained and
+ * predicted per second and the mean loss since the line before, so a log shows the loss falling
+ * as the network trains.
+ *
+ */
+public class MetricsReporter
+{
+	private final Metrics metrics;
+	private final PrintStream out;
+	private final boolean json;
+	private ScheduledExecutorService timer;
+
+	//Totals at the last report, which the rates and loss of the next report are worked out from
+	private long lastNanos;
+	private long lastTrained;
+	private long lastPredicted;
+	private double lastLossSum;
+	private long lastLossCount;
+
+	/**
+	 * Creates a reporter that prints the given metrics when report is called or once started
+	 * @param metrics
+	 * @param out where the lines are printed, such as System.err or a log file
+	 * @param json true to print JSON lines, false for text
+	 */
+	public MetricsReporter(Metrics metrics, PrintStream out, boolean json)
+	{
+		this.metrics = metrics;
+		this.out = out;
+		this.json = json;
+		lastNanos = System.nanoTime();
+		lastTrained = metrics.getSamplesTrained();
+		lastPredicted = metrics.getSamplesPredicted();
+		lastLossSum = metrics.getLossSum();
+		lastLossCount = metrics.getLossCount();
+	}
+
+	/**
+	 * Starts printing a report every period
+	 * @param period
+	 * @param unit
+	 */
+	public synchronized void start(long period, TimeUnit unit)
+	{
+		if(timer != null)
+		{
+			throw new IllegalStateException("The reporter is already started");
+		}
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable task)
+			{
+				Thread thread = new Thread(task, "metrics-reporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer.scheduleAtFixedRate(new Runnable()
+		{
+			public void run()
+			{
+				out.println(report());
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Stops the periodic reports and prints a last one
+	 */
+	public synchronized void stop()
+	{
+		if(timer != null)
+		{
+			timer.shutdownNow();
+			timer = null;
+			out.println(report());
+		}
+	}
+
+	/**
+	 * Works out one report line and starts the next interval
+	 * @return the line
+	 */
+	public synchronized String report()
+	{
+		long now = System.nanoTime();
+		long trained = metrics.getSamplesTrained();
+		long predicted = metrics.getSamplesPredicted();
+		double lossSum = metrics.getLossSum();
+		long lossCount = metrics.getLossCount();
+		double seconds = Math.max(now - lastNanos, 1)/1e9;
+		double trainedRate = (trained - lastTrained)/seconds;
+		double predictedRate = (predicted - lastPredicted)/seconds;
+		double loss = lossCount == lastLossCount ? Double.NaN : (lossSum - lastLossSum)/(lossCount - lastLossCount);
+		lastNanos = now;
+		lastTrained = trained;
+		lastPredicted = predicted;
+		lastLossSum = lossSum;
+		lastLossCount = lossCount;
+		if(json)
+		{
+			return String.format(Locale.ROOT, "{\"time\":%d,\"seconds\":%.3f,\"trainedPerSecond\":%.1f,\"predictedPerSecond\":%.1f,\"loss\":%s,\"metrics\":%s}",
+					System.currentTimeMillis(), seconds, trainedRate, predictedRate, Metrics.jsonNumber(loss), metrics.toJson());
+		}
+		return String.format(Locale.ROOT, "%.0f trained/s %.0f predicted/s loss %.6f | %s", trainedRate, predictedRate, loss, metrics.toText());
+	}
+}
@@ -0,0 +1,268 @@
+import java.io.Closeable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gathers the windows that many threads want predicted into batches, so the network is fed
+ * forward once per batch with matrix products instead of once per window. A thread that calls
+ * predict queues its window. If no batch is being predicted, the thread takes the lead: it takes
+ * the windows queued, and every other one that arrives until the batch is full or the longest
+ * wait is up, predicts them all at once and wakes their threads. Otherwise it waits for the
+ * thread in the lead to predict its window, or to hand the lead over.
+ *
+ * There is no thread of the batcher's own, so a window that finds the batcher idle is predicted
+ * on its own thread without waking another. With a longest wait of 0 a batch is just the
+ * windows that queued up while the one before was being predicted, which adds no latency when
+ * the server is quiet and batches more the busier it gets. A longer wait builds larger batches
+ * at the cost of that much latency.
+ *
+ */
+public class MicroBatcher implements Closeable
+{
+	private final Network network;
+	private final int maxBatch;
+	private final long maxWaitNanos;
+
+	//Windows waiting to be predicted
+	private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+	//Held by the thread in the lead while it gathers and predicts a batch
+	private final ReentrantLock lead = new ReentrantLock();
+
+	//The requests of the batch being predicted, and their windows and outputs, reused for every
+	//batch by the thread in the lead
+	private final Request[] batch;
+	private final double[][] windows;
+	private final double[][] outputs;
+
+	private volatile boolean closed;
+
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * A window a thread is waiting on
+	 */
+	private static class Request
+	{
+		final double[] window;
+		final double[] output;
+		final Thread waiter;
+		volatile boolean done;
+		volatile boolean failed;
+
+		//Set when the waiting thread is interrupted and gives up on the window
+		volatile boolean cancelled;
+
+		Request(double[] window, double[] output)
+		{
+			this.window = window;
+			this.output = output;
+			this.waiter = Thread.currentThread();
+		}
+	}
+
+	/**
+	 * Creates a batcher for the given network
+	 * @param network the network predicted with, which must not be trained while the batcher is used
+	 * @param maxBatch most windows in a batch
+	 * @param maxWait longest time the thread in the lead waits for windows to join its batch
+	 * @param unit unit of maxWait
+	 */
+	public MicroBatcher(Network network, int maxBatch, long maxWait, TimeUnit unit)
+	{
+		if(maxBatch < 1)
+		{
+			throw new IllegalArgumentException("A batch must hold at least one window");
+		}
+		this.network = network;
+		this.maxBatch = maxBatch;
+		this.maxWaitNanos = unit.toNanos(maxWait);
+		batch = new Request[maxBatch];
+		windows = new double[maxBatch][];
+		outputs = new double[maxBatch][];
+	}
+
+	/**
+	 * Predicts one window as part of the next batch, waiting until it is done
+	 * @param window normalized inputs of the window
+	 * @param output receives the normalized outputs
+	 * @throws InterruptedException if the thread is interrupted while it waits, in which case
+	 * the window is taken back unless a batch has already taken it
+	 * @throws IllegalStateException if the batcher is closed before the window is predicted, or
+	 * predicting its batch failed
+	 */
+	public void predict(double[] window, double[] output) throws InterruptedException
+	{
+		if(closed)
+		{
+			throw new IllegalStateException("The batcher is closed");
+		}
+		Request request = new Request(window, output);
+		queue.add(request);
+		while(!request.done)
+		{
+			if(lead.tryLock())
+			{
+				try
+				{
+					//Batches are taken in order, so the batch with this window comes up in time
+					while(!request.done)
+					{
+						predictBatch();
+					}
+				}
+				finally
+				{
+					lead.unlock();
+				}
+				//Windows that queued while this thread was in the lead need a thread to lead them
+				Request next = queue.peek();
+				if(next != null)
+				{
+					LockSupport.unpark(next.waiter);
+				}
+			}
+			else
+			{
+				LockSupport.park(this);
+				if(Thread.interrupted())
+				{
+					//A batch that has not taken the window yet leaves it out; one that already has
+					//still writes its output
+					request.cancelled = true;
+					queue.remove(request);
+					//The lead may have just been handed to this thread, so hand it on
+					Request next = queue.peek();
+					if(next != null)
+					{
+						LockSupport.unpark(next.waiter);
+					}
+					throw new InterruptedException();
+				}
+			}
+		}
+		if(request.failed)
+		{
+			throw new IllegalStateException("The batcher closed or failed before the window was predicted");
+		}
+	}
+
+	/**
+	 * Takes a batch off the queue and predicts it, waking the threads of its windows. Called
+	 * holding the lead. An interrupt while waiting for windows cuts the wait short and is kept
+	 * for the caller.
+	 */
+	private void predictBatch()
+	{
+		int count = 0;
+		long deadline = System.nanoTime() + maxWaitNanos;
+		try
+		{
+			while(count < maxBatch)
+			{
+				Request next = queue.poll();
+				if(next == null)
+				{
+					long remaining = deadline - System.nanoTime();
+					if(remaining <= 0 || (next = queue.poll(remaining, TimeUnit.NANOSECONDS)) == null)
+					{
+						break;
+					}
+				}
+				if(next.cancelled)
+				{
+					continue;
+				}
+				batch[count] = next;
+				count++;
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		for(int b=0; b<count; b++)
+		{
+			windows[b] = batch[b].window;
+			outputs[b] = batch[b].output;
+		}
+		boolean predicted = false;
+		try
+		{
+			if(closed || count == 0)
+			{
+				return;
+			}
+			network.predict(windows, outputs, count);
+			predicted = true;
+			batches.incrementAndGet();
+			requests.addAndGet(count);
+		}
+		finally
+		{
+			for(int b=0; b<count; b++)
+			{
+				finish(batch[b], !predicted);
+				batch[b] = null;
+				windows[b] = null;
+				outputs[b] = null;
+			}
+		}
+	}
+
+	private static void finish(Request request, boolean failed)
+	{
+		request.failed = failed;
+		request.done = true;
+		if(request.waiter != Thread.currentThread())
+		{
+			LockSupport.unpark(request.waiter);
+		}
+	}
+
+	/**
+	 * Getter for the number of batches predicted
+	 * @return batches
+	 */
+	public long getBatches()
+	{
+		return batches.get();
+	}
+
+	/**
+	 * Getter for the number of windows predicted
+	 * @return requests
+	 */
+	public long getRequests()
+	{
+		return requests.get();
+	}
+
+	/**
+	 * The mean number of windows in a batch
+	 * @return requests over batches, or NaN before the first batch
+	 */
+	public double getMeanBatchSize()
+	{
+		long b = batches.get();
+		return b == 0 ? Double.NaN : (double) requests.get()/b;
+	}
+
+	/**
+	 * Stops predicting. Windows still waiting fail with an IllegalStateException, and so do
+	 * windows queued after.
+	 */
+	public void close()
+	{
+		closed = true;
+		Request request;
+		while((request = queue.poll()) != null)
+		{
+			finish(request, true);
+		}
+	}
+}
@@ -0,0 +1,337 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a trained network to a binary file and loads it back, so a model does not have to be
+ * trained again every time a program starts.
+ *
+ * The file is little-endian:
+ *   int     magic number 0x4E4E4554 ("NNET")
+ *   int     format version
+ *   int     number of layers, including the input layer
+ *   int[]   number of neurons in each layer
+ *   int[]   activation code of every layer after the input layer (since version 2)
+ *   double  highest price in the data (dataMax)
+ *   double  lowest price in the data (dataMin)
+ *   double[] activation parameter of every layer after the input layer (since version 2)
+ *   padding to a multiple of 8 bytes
+ *   double[] row-major weight matrix of every layer after the input layer, in order
+ *   int     CRC32 of every byte before it
+ *
+ * The weights start on an 8 byte boundary so they can be read through an aligned view of
+ * the memory-mapped file. Version 1 files, written before layers had a choice of activation,
+ * are loaded with sigmoid layers. Single precision networks are saved with their weights widened
+ * to doubles and load as double precision networks.
+ *
+ */
+public class ModelCheckpoint
+{
+	public static final int MAGIC = 0x4E4E4554;
+	public static final int VERSION = 2;
+
+	//Size of the buffer the file is written through
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Writes the layer sizes, weights and data bounds of the network to a file
+	 * @param n the network to save
+	 * @param file where the network is saved
+	 * @throws IOException
+	 */
+	public static void save(Network n, File file) throws IOException
+	{
+		n.syncWeights();
+		LayerEngine engine = n.getEngine();
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 crc = new CRC32();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(engine.getNumLayers() + 1);
+			buffer.putInt(engine.getInputs().length);
+			for(int l=0; l<engine.getNumLayers(); l++)
+			{
+				buffer.putInt(engine.getLayer(l).getSize());
+			}
+			for(int l=0; l<engine.getNumLayers(); l++)
+			{
+				buffer.putInt(engine.getLayer(l).getActivation().getCode());
+			}
+			buffer.putDouble(n.getVariables().getDataMax());
+			buffer.putDouble(n.getVariables().getDataMin());
+			for(int l=0; l<engine.getNumLayers(); l++)
+			{
+				buffer.putDouble(engine.getLayer(l).getActivation().getParameter());
+			}
+			while(buffer.position()%8 != 0)
+			{
+				buffer.put((byte) 0);
+			}
+			for(int l=0; l<engine.getNumLayers(); l++)
+			{
+				double[] weights = engine.getLayer(l).getWeights();
+				int w = 0;
+				while(w < weights.length)
+				{
+					if(buffer.remaining() < 8)
+					{
+						flush(channel, buffer, crc);
+					}
+					int count = Math.min(weights.length - w, buffer.remaining()/8);
+					buffer.asDoubleBuffer().put(weights, w, count);
+					buffer.position(buffer.position() + count*8);
+					w += count;
+				}
+			}
+			flush(channel, buffer, crc);
+			buffer.putInt((int) crc.getValue());
+			flush(channel, buffer, null);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the buffer to the channel and adds its bytes to the checksum
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException
+	{
+		buffer.flip();
+		if(crc != null)
+		{
+			crc.update(buffer.duplicate());
+		}
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Maps a saved network into memory, checks it, and builds a network from it. The weights
+	 * are read straight from the mapped file into the network's weight arrays.
+	 * @param file the saved network
+	 * @return the network
+	 * @throws IOException if the file is not a saved network or is damaged
+	 */
+	public static Network load(File file) throws IOException
+	{
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException(file + " is too large to map");
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(mapped.order(ByteOrder.LITTLE_ENDIAN), file.toString());
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Checks a saved network held in a little-endian buffer and builds a network from it
+	 * @param buffer the bytes of the saved network
+	 * @param name name of the file, for error messages
+	 * @return the network
+	 * @throws IOException if the bytes are not a saved network or are damaged
+	 */
+	private static Network read(ByteBuffer buffer, String name) throws IOException
+	{
+		int length = buffer.limit();
+		if(length < 16 || buffer.getInt(0) != MAGIC)
+		{
+			throw new IOException(name + " is not a saved network");
+		}
+		int version = buffer.getInt(4);
+		if(version < 1 || version > VERSION)
+		{
+			throw new IOException(name + " has unsupported version " + version);
+		}
+		CRC32 crc = new CRC32();
+		ByteBuffer contents = buffer.duplicate();
+		contents.position(0).limit(length - 4);
+		crc.update(contents);
+		if((int) crc.getValue() != buffer.getInt(length - 4))
+		{
+			throw new IOException(name + " failed its checksum");
+		}
+		Header header = readHeader(buffer, length, name);
+
+		Network n = new Network(header.toRunner(), false);
+		LayerEngine engine = n.getEngine();
+		ByteBuffer weightBytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		weightBytes.position((int) header.weightsOffset);
+		DoubleBuffer weights = weightBytes.asDoubleBuffer();
+		for(int l=0; l<engine.getNumLayers(); l++)
+		{
+			engine.getLayer(l).setActivation(header.activations[l]);
+			weights.get(engine.getLayer(l).getWeights());
+		}
+		n.reloadWeights();
+		return n;
+	}
+
+	/**
+	 * Reads the header of a saved network from the start of a file, without reading its weights
+	 * @param channel the open file
+	 * @param name name of the file, for error messages
+	 * @return the header
+	 * @throws IOException if the file is not a saved network
+	 */
+	static Header readHeader(FileChannel channel, String name) throws IOException
+	{
+		long length = channel.size();
+		ByteBuffer start = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+		channel.read(start, 0);
+		if(length < 16 || start.getInt(0) != MAGIC)
+		{
+			throw new IOException(name + " is not a saved network");
+		}
+		int numLayers = start.getInt(8);
+		if(numLayers < 3 || numLayers > length/4)
+		{
+			throw new IOException(name + " has " + numLayers + " layers but networks have at least 3");
+		}
+		//The longest a header of this many layers can be, with the activations and padding
+		int headerLength = (int) Math.min(length, 12 + (numLayers*16L) + 24);
+		ByteBuffer buffer = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+		int read = 0;
+		while(buffer.hasRemaining() && read >= 0)
+		{
+			read = channel.read(buffer, buffer.position());
+		}
+		return readHeader(buffer, length, name);
+	}
+
+	/**
+	 * Reads the header of a saved network and checks that the file has the right length for it
+	 * @param buffer little-endian buffer holding at least the header from the start of the file
+	 * @param length length of the whole file
+	 * @param name name of the file, for error messages
+	 * @return the header
+	 * @throws IOException if the header does not describe a saved network of this length
+	 */
+	private static Header readHeader(ByteBuffer buffer, long length, String name) throws IOException
+	{
+		Header header = new Header();
+		int version = buffer.getInt(4);
+		if(version < 1 || version > VERSION)
+		{
+			throw new IOException(name + " has unsupported version " + version);
+		}
+		int numLayers = buffer.getInt(8);
+		if(numLayers < 3 || numLayers > length/4)
+		{
+			throw new IOException(name + " has " + numLayers + " layers but networks have at least 3");
+		}
+		long headerLength = 12 + (numLayers*4L) + 16;
+		if(version >= 2)
+		{
+			headerLength += (numLayers - 1)*12L;
+		}
+		if(headerLength + 4 > length)
+		{
+			throw new IOException(name + " is too short for its layer sizes");
+		}
+		int[] sizes = new int[numLayers];
+		int position = 12;
+		long numWeights = 0;
+		for(int l=0; l<numLayers; l++)
+		{
+			sizes[l] = buffer.getInt(position);
+			position += 4;
+			if(sizes[l] <= 0)
+			{
+				throw new IOException(name + " has a layer of " + sizes[l] + " neurons");
+			}
+			if(l > 0)
+			{
+				numWeights += (long) sizes[l]*sizes[l-1];
+			}
+		}
+		int[] codes = new int[numLayers - 1];
+		if(version >= 2)
+		{
+			for(int l=0; l<codes.length; l++)
+			{
+				codes[l] = buffer.getInt(position);
+				position += 4;
+			}
+		}
+		header.dataMax = buffer.getDouble(position);
+		header.dataMin = buffer.getDouble(position + 8);
+		position += 16;
+		Activation[] activations = new Activation[codes.length];
+		for(int l=0; l<codes.length; l++)
+		{
+			double parameter = 0;
+			if(version >= 2)
+			{
+				parameter = buffer.getDouble(position);
+				position += 8;
+			}
+			try
+			{
+				activations[l] = Activation.create(codes[l], parameter);
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new IOException(name + " has an unknown activation", e);
+			}
+		}
+		position += (8 - position%8)%8;
+		if(position + numWeights*8 + 4 != length)
+		{
+			throw new IOException(name + " has the wrong length for its layer sizes");
+		}
+		header.sizes = sizes;
+		header.activations = activations;
+		header.weightsOffset = position;
+		return header;
+	}
+
+	/**
+	 * The layer sizes, activations and data bounds of a saved network, and where its weights start
+	 */
+	static class Header
+	{
+		int[] sizes;
+		Activation[] activations;
+		double dataMax;
+		double dataMin;
+
+		//Position of the first weight in the file
+		long weightsOffset;
+
+		/**
+		 * Creates the specifications of a network of this shape and data bounds
+		 * @return the specifications
+		 */
+		Runner toRunner()
+		{
+			int numLayers = sizes.length;
+			Runner r = new Runner(sizes[0], Arrays.copyOfRange(sizes, 1, numLayers-1), sizes[numLayers-1]);
+			r.setDataBounds(dataMax, dataMin);
+			r.setActivations(activations[0], activations[activations.length-1]);
+			return r;
+		}
+	}
+}
@@ -0,0 +1,465 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Many trained networks held by name and grouped into ensembles, such as a few networks per
+ * sector trained from different seeds. Networks are trained as tasks on one fork-join pool, whose
+ * idle threads steal waiting tasks from busy ones, so a hundred small networks keep every core
+ * busy without a thread each. Each network has a Runner of its own, so its own shape and data
+ * bounds; networks trained in the registry are best given one thread each.
+ *
+ * Once trained, a network is kept as a Model: a copy of its layer engine, without the neurons,
+ * batch buffers and optimizer state of the Network, which for a small network are most of its
+ * memory. The prediction of an ensemble is the mean of the prices its members predict, each
+ * member normalizing the windows with its own data bounds. Any number of threads can predict at
+ * once.
+ *
+ */
+public class ModelRegistry implements Closeable
+{
+	private final ForkJoinPool pool;
+	private final boolean ownsPool;
+
+	//Every model by name, and the members of each ensemble in the order they were added
+	private final ConcurrentHashMap<String, Model> models = new ConcurrentHashMap<String, Model>();
+	private final ConcurrentHashMap<String, Model[]> ensembles = new ConcurrentHashMap<String, Model[]>();
+
+	//Buffers each thread predicts with, one set per shape of network
+	private final ThreadLocal<HashMap<String, Buffers>> buffers = new ThreadLocal<HashMap<String, Buffers>>();
+
+	/**
+	 * A trained network as the registry keeps it
+	 */
+	public static class Model
+	{
+		private final String name;
+		private final String ensemble;
+		private final LayerEngine engine;
+		private final double dataMax;
+		private final double dataMin;
+		private final double validationError;
+
+		//Number of neurons in each layer, which models share prediction buffers by
+		private final String shape;
+
+		Model(String name, String ensemble, Network n, double validationError)
+		{
+			this.name = name;
+			this.ensemble = ensemble;
+			n.syncWeights();
+			this.engine = n.getEngine().replicate();
+			this.dataMax = n.getVariables().getDataMax();
+			this.dataMin = n.getVariables().getDataMin();
+			this.validationError = validationError;
+			this.shape = Arrays.toString(n.getVariables().getLayerSizes());
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public String getEnsemble()
+		{
+			return ensemble;
+		}
+
+		/**
+		 * Getter for the copy of the network's engine the model predicts with
+		 * @return engine
+		 */
+		public LayerEngine getEngine()
+		{
+			return engine;
+		}
+
+		public double getDataMax()
+		{
+			return dataMax;
+		}
+
+		public double getDataMin()
+		{
+			return dataMin;
+		}
+
+		/**
+		 * Getter for the lowest validation error of training
+		 * @return the mean percent error, or NaN if no weeks were held back to validate on
+		 */
+		public double getValidationError()
+		{
+			return validationError;
+		}
+
+		/**
+		 * The number of weights of every layer together
+		 * @return the number of weights
+		 */
+		public long getNumWeights()
+		{
+			long count = 0;
+			for(int l=0; l<engine.getNumLayers(); l++)
+			{
+				count += engine.getLayer(l).getWeights().length;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * The normalized windows, outputs and activations a thread predicts a block of windows with
+	 */
+	private static class Buffers
+	{
+		final LayerEngine.Scratch scratch;
+		final double[][] windows;
+		final double[][] outputs;
+
+		Buffers(LayerEngine engine)
+		{
+			scratch = engine.newScratch();
+			windows = new double[LayerEngine.PREDICT_BLOCK][engine.getInputs().length];
+			outputs = new double[LayerEngine.PREDICT_BLOCK][engine.getOutputs().length];
+		}
+	}
+
+	/**
+	 * Creates a registry that trains on a pool of its own
+	 * @param parallelism number of networks trained at once, such as the number of cores
+	 */
+	public ModelRegistry(int parallelism)
+	{
+		this.pool = new ForkJoinPool(parallelism);
+		this.ownsPool = true;
+	}
+
+	/**
+	 * Creates a registry that trains on the given pool, which it leaves running when closed
+	 * @param pool
+	 */
+	public ModelRegistry(ForkJoinPool pool)
+	{
+		this.pool = pool;
+		this.ownsPool = false;
+	}
+
+	/**
+	 * Trains a new network on the pool with EpochTrainer and adds it to the registry once it is
+	 * trained
+	 * @param name name of the model, which no other model may have
+	 * @param ensemble the ensemble the model is a member of
+	 * @param r the specifications of the network
+	 * @param data the weeks to train and validate on, normalized with the bounds of r
+	 * @return the task, whose result is the model
+	 */
+	public ForkJoinTask<Model> submit(final String name, final String ensemble, final Runner r, final PriceDataset data)
+	{
+		return pool.submit(new Callable<Model>()
+		{
+			public Model call()
+			{
+				Network n = new Network(r);
+				EpochTrainer trainer = new EpochTrainer(n, data);
+				trainer.train();
+				return add(name, ensemble, n, trainer.getBestEpoch() >= 0 ? trainer.getBestError() : Double.NaN);
+			}
+		});
+	}
+
+	/**
+	 * Adds a network that has already been trained. Later training of the network does not
+	 * change the model.
+	 * @param name name of the model, which no other model may have
+	 * @param ensemble the ensemble the model is a member of
+	 * @param n the trained network
+	 * @return the model
+	 */
+	public Model add(String name, String ensemble, Network n)
+	{
+		return add(name, ensemble, n, Double.NaN);
+	}
+
+	private synchronized Model add(String name, String ensemble, Network n, double validationError)
+	{
+		if(models.containsKey(name))
+		{
+			throw new IllegalArgumentException("A model named " + name + " is already registered");
+		}
+		Model model = new Model(name, ensemble, n, validationError);
+		Model[] members = ensembles.get(ensemble);
+		if(members == null)
+		{
+			members = new Model[] {model};
+		}
+		else
+		{
+			LayerEngine first = members[0].engine;
+			if(first.getInputs().length != model.engine.getInputs().length || first.getOutputs().length != model.engine.getOutputs().length)
+			{
+				throw new IllegalArgumentException("The inputs and outputs of " + name + " do not match the ensemble " + ensemble);
+			}
+			members = Arrays.copyOf(members, members.length + 1);
+			members[members.length - 1] = model;
+		}
+		models.put(name, model);
+		ensembles.put(ensemble, members);
+		return model;
+	}
+
+	/**
+	 * Predicts the prices of the 5th day of windows of prices with every member of an ensemble,
+	 * and averages them
+	 * @param ensemble
+	 * @param windows prices of the 4 input days of each window
+	 * @param predicted receives the mean predicted prices of each window
+	 * @param count number of windows
+	 */
+	public void predict(String ensemble, double[][] windows, double[][] predicted, int count)
+	{
+		Model[] members = ensembles.get(ensemble);
+		if(members == null)
+		{
+			throw new IllegalArgumentException("No ensemble named " + ensemble);
+		}
+		HashMap<String, Buffers> threadBuffers = buffers.get();
+		if(threadBuffers == null)
+		{
+			threadBuffers = new HashMap<String, Buffers>();
+			buffers.set(threadBuffers);
+		}
+		for(int start=0; start<count; start+=LayerEngine.PREDICT_BLOCK)
+		{
+			int block = Math.min(LayerEngine.PREDICT_BLOCK, count - start);
+			for(int b=0; b<block; b++)
+			{
+				Arrays.fill(predicted[start+b], 0);
+			}
+			for(Model m : members)
+			{
+				Buffers buffer = threadBuffers.get(m.shape);
+				if(buffer == null)
+				{
+					buffer = new Buffers(m.engine);
+					threadBuffers.put(m.shape, buffer);
+				}
+				double range = m.dataMax - m.dataMin;
+				for(int b=0; b<block; b++)
+				{
+					double[] window = windows[start+b];
+					double[] normalized = buffer.windows[b];
+					for(int i=0; i<normalized.length; i++)
+					{
+						normalized[i] = (window[i] - m.dataMin)/range;
+					}
+				}
+				m.engine.predict(buffer.windows, buffer.outputs, block, buffer.scratch);
+				for(int b=0; b<block; b++)
+				{
+					double[] outputs = buffer.outputs[b];
+					double[] prices = predicted[start+b];
+					for(int i=0; i<outputs.length; i++)
+					{
+						prices[i] += outputs[i]*range + m.dataMin;
+					}
+				}
+			}
+			for(int b=0; b<block; b++)
+			{
+				double[] prices = predicted[start+b];
+				for(int i=0; i<prices.length; i++)
+				{
+					prices[i] /= members.length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Predicts the prices of the 5th day of one window with an ensemble
+	 * @param ensemble
+	 * @param window prices of the 4 input days
+	 * @return the mean predicted prices
+	 */
+	public double[] predict(String ensemble, double[] window)
+	{
+		Model[] members = ensembles.get(ensemble);
+		if(members == null)
+		{
+			throw new IllegalArgumentException("No ensemble named " + ensemble);
+		}
+		double[][] predicted = new double[1][members[0].engine.getOutputs().length];
+		predict(ensemble, new double[][] {window}, predicted, 1);
+		return predicted[0];
+	}
+
+	/**
+	 * Getter for a model by name
+	 * @param name
+	 * @return the model, or null if there is none of that name
+	 */
+	public Model get(String name)
+	{
+		return models.get(name);
+	}
+
+	/**
+	 * Getter for the members of an ensemble
+	 * @param ensemble
+	 * @return the models, empty if there is no ensemble of that name
+	 */
+	public List<Model> getMembers(String ensemble)
+	{
+		Model[] members = ensembles.get(ensemble);
+		return members == null ? Collections.<Model>emptyList() : Collections.unmodifiableList(Arrays.asList(members));
+	}
+
+	/**
+	 * The names of the ensembles, sorted
+	 * @return the names
+	 */
+	public List<String> getEnsembles()
+	{
+		List<String> names = new ArrayList<String>(ensembles.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Getter for the number of models
+	 * @return the number of models of every ensemble
+	 */
+	public int size()
+	{
+		return models.size();
+	}
+
+	/**
+	 * Getter for the pool networks are trained on
+	 * @return pool
+	 */
+	public ForkJoinPool getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * Shuts the pool down if the registry created it. The models can still predict.
+	 */
+	public void close()
+	{
+		if(ownsPool)
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Trains an ensemble for every file of prices in a directory, all at once, and prints the
+	 * error of each ensemble on the last week of its file. Each file is a sector, whose prices
+	 * are normalized with the highest and lowest price in it.
+	 * Usage: ModelRegistry directory [models per sector] [threads]
+	 * @param args the directory of .csv files, the members of each ensemble (3 by default) and
+	 * the networks trained at once (the number of cores by default)
+	 * @throws IOException
+	 */
+	public static void main(String args[]) throws IOException
+	{
+		if(args.length < 1)
+		{
+			System.err.println("Usage: ModelRegistry directory [models per sector] [threads]");
+			System.exit(1);
+		}
+		File[] files = new File(args[0]).listFiles(new FileFilter()
+		{
+			public boolean accept(File file)
+			{
+				return file.isFile() && file.getName().endsWith(".csv");
+			}
+		});
+		if(files == null || files.length == 0)
+		{
+			System.err.println("No .csv files in " + args[0]);
+			System.exit(1);
+		}
+		Arrays.sort(files);
+		int members = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		ModelRegistry registry = new ModelRegistry(threads);
+		HashMap<String, PriceDataset> datasets = new HashMap<String, PriceDataset>();
+		List<ForkJoinTask<Model>> tasks = new ArrayList<ForkJoinTask<Model>>();
+		long start = System.nanoTime();
+		try
+		{
+			for(File file : files)
+			{
+				String sector = file.getName().substring(0, file.getName().length() - 4);
+				Runner r = new Runner();
+				double[] bounds = PriceDataset.findBounds(file, r);
+				if(bounds == null)
+				{
+					continue;
+				}
+				r.setDataBounds(bounds[0], bounds[1]);
+				PriceDataset data = PriceDataset.load(file, r);
+				if(data.size() < 2)
+				{
+					continue;
+				}
+				datasets.put(sector, data);
+				for(int k=0; k<members; k++)
+				{
+					Runner member = new Runner();
+					member.setDataBounds(bounds[0], bounds[1]);
+					member.setSeed(r.getSeed() + k);
+					tasks.add(registry.submit(sector + "-" + k, sector, member, data));
+				}
+			}
+			for(ForkJoinTask<Model> task : tasks)
+			{
+				task.join();
+			}
+		}
+		finally
+		{
+			registry.close();
+		}
+		System.out.println(String.format(Locale.ROOT, "Trained %d networks for %d sectors in %.2f s on %d threads",
+				registry.size(), datasets.size(), (System.nanoTime() - start)/1e9, threads));
+
+		for(String sector : registry.getEnsembles())
+		{
+			PriceDataset data = datasets.get(sector);
+			int last = data.size() - 1;
+			double[] window = new double[data.getNumInputs()];
+			double[] actuals = new double[data.getNumOutputs()];
+			data.copyInputs(last, window);
+			data.copyActuals(last, actuals);
+			for(int i=0; i<window.length; i++)
+			{
+				window[i] = data.denormalize(window[i]);
+			}
+			double[] predicted = registry.predict(sector, window);
+			double error = 0;
+			for(int i=0; i<actuals.length; i++)
+			{
+				error += Runner.calculatePercError(data.denormalize(actuals[i]), predicted[i]);
+			}
+			System.out.println(String.format(Locale.ROOT, "%-24s %d members, last week mean error %.3f%%", sector,
+					registry.getMembers(sector).size(), error/actuals.length));
+		}
+	}
+}
@@ -1,4 +1,5 @@
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The network class is the structure of the model. It allows each layer to hold neurons, 
@@ -12,23 +13,46 @@ public class Network
 	//The current network's variables and specs (number of neurons in each layer, weights. etc.)
 	private Runner variables;
 
-	//The nerons contained in each of the layers in the network
+	//The flat array engine that does the math. The neurons below are a view over its layers.
+	private LayerEngine engine;
+
+	//The single precision engine that does the math instead when the network is single precision,
+	//otherwise null. The double engine then holds a copy of its weights made by syncWeights.
+	private FloatLayerEngine floatEngine;
+
+	//Number of samples the network has trained on, which the learning rate schedule is based on
+	private long samplesTrained;
+
+	//What the network has done and how long it took, recorded when Metrics.ENABLED
+	private final Metrics metrics = Metrics.ENABLED ? new Metrics() : Metrics.DISABLED;
+
+	//Activation buffers of each thread that predicts with this network
+	private ThreadLocal<LayerEngine.Scratch> scratch = new ThreadLocal<LayerEngine.Scratch>();
+	private ThreadLocal<FloatLayerEngine.Scratch> floatScratch = new ThreadLocal<FloatLayerEngine.Scratch>();
+
+	//The nerons contained in each of the layers in the network, from the input layer to the
+	//output layer. The input, first hidden and output layers are also kept on their own.
+	Vector<Vector<Neuron>> layers;
 	Vector<Neuron> inputNeurons;
 	Vector<Neuron> hiddenNeurons;
 	Vector<Neuron> outputNeurons;
 
-	//hi and oh connection weights hold the randomized weights of the connections between the 
-	//three layers
+	//hi and oh connection weights hold the randomized weights of the connections into the first
+	//hidden layer and into the output layer. They are the row-major weight matrices of the
+	//engine's first and last layers, which the neurons of those layers are views of.
 	public double[] hiConnectionWeights;
 	public double[] ohConnectionWeights;
 
-	//The random number generator used for the weights. 
-	private SingletonRandom random = SingletonRandom.getInstance();
+	//The random number generator used for the weights, and the number of times they have been
+	//randomized, so that each time draws new weights
+	private RandomSource random;
+	private int randomizations;
 
 	//Actuals hold the expected output which is used to compute the error
 	public double[] actuals;
 
-	//The following two arrays hold the errors of the output and hidden layer neurons
+	//The following two arrays hold the errors of the output and first hidden layer neurons. They
+	//are the error buffers of the engine's last and first layers.
 	public double[] outputErrors;
 	public double[] hiddenErrors;
 
@@ -37,86 +61,122 @@ public class Network
 	 * @param r the specifications of the network
 	 */
 	public Network(Runner r)
+	{
+		this(r, true);
+	}
+
+	/**
+	 * Creates a neural network with the given specs and variables
+	 * @param r the specifications of the network
+	 * @param randomize false to leave every weight at 0, for when the weights are loaded afterwards
+	 */
+	Network(Runner r, boolean randomize)
 	{
 		variables = r;
-		inputNeurons = new Vector<Neuron>();
-		hiddenNeurons = new Vector<Neuron>();
-		outputNeurons = new Vector<Neuron>();
-		hiConnectionWeights = new double[(variables.getNumHidden())*(variables.getNumInputs())];
-		ohConnectionWeights = new double[(variables.getNumOutputs())*(variables.getNumHidden())];
+		random = new RandomSource(variables.getSeed());
+		layers = new Vector<Vector<Neuron>>();
+		engine = new LayerEngine(variables.getLayerSizes());
+		int last = engine.getNumLayers() - 1;
+		for(int l=0; l<last; l++)
+		{
+			engine.getLayer(l).setActivation(variables.getHiddenActivation());
+		}
+		engine.getLayer(last).setActivation(variables.getOutputActivation());
+		hiConnectionWeights = engine.getLayer(0).getWeights();
+		ohConnectionWeights = engine.getLayer(last).getWeights();
 		actuals = new double[variables.getNumOutputs()];
-		outputErrors = new double[variables.getNumOutputs()];
-		hiddenErrors = new double[variables.getNumHidden()];
+		outputErrors = engine.getLayer(last).getErrors();
+		hiddenErrors = engine.getLayer(0).getErrors();
 		populateNetwork();
-		randomizeWeights();
+		if(randomize)
+		{
+			randomizeWeights();
+		}
 		connectLayers();
+		if(variables.getParallelForwardThreshold() > 0)
+		{
+			engine.setParallelForward(ForkJoinPool.commonPool(), variables.getParallelForwardThreshold());
+		}
+		engine.setOptimizer(variables.getOptimizer());
+		if(variables.isSinglePrecision())
+		{
+			if(variables.getOptimizer() != Optimizer.SGD)
+			{
+				throw new IllegalArgumentException("Single precision networks only train with plain gradient descent");
+			}
+			floatEngine = new FloatLayerEngine(engine, variables.isDoubleAccumulation());
+		}
 	}
 
 	/**
-	 * Adds neurons and connections to each of the layers of the network
+	 * Adds neurons and connections to each of the layers of the network. Each neuron is bound
+	 * to its position in the engine's layer arrays.
 	 */
 	private void populateNetwork() 
 	{
 		//Input Layer neurons
+		Vector<Neuron> inputs = new Vector<Neuron>();
 		for(int i=0; i<variables.getNumInputs(); i++)
 		{
 			Neuron n = new Neuron(variables);
-			inputNeurons.add(n);
-		}
-		//Hidden Layer neurons
-		for(int j=0; j<variables.getNumHidden(); j++)
-		{
-			Neuron n = new Neuron(variables);
-			hiddenNeurons.add(n);
+			n.bind(engine.getInputs(), i, null, 0, null);
+			inputs.add(n);
 		}
-		//Output Layer neurons
-		for(int k=0; k<variables.getNumOutputs(); k++)
+		layers.add(inputs);
+		//Hidden and output Layer neurons
+		for(int l=0; l<engine.getNumLayers(); l++)
 		{
-			Neuron n = new Neuron(variables);
-			outputNeurons.add(n);
+			DenseLayer layer = engine.getLayer(l);
+			Vector<Neuron> neurons = new Vector<Neuron>();
+			for(int j=0; j<layer.getSize(); j++)
+			{
+				Neuron n = new Neuron(variables);
+				n.bind(layer.getOutputs(), j, layer.getWeights(), j*layer.getFanIn(), layer.getActivation());
+				neurons.add(n);
+			}
+			layers.add(neurons);
 		}
+		inputNeurons = layers.firstElement();
+		hiddenNeurons = layers.get(1);
+		outputNeurons = layers.lastElement();
 	}
 
 	/**
-	 * Randomizes the weights of the connections between the layers by using the 
-	 * singleton random class generated
+	 * Randomizes the weights of the connections between the layers. Each layer draws from its
+	 * own stream of the Runner's seed, and wide layers are filled by the threads of the common
+	 * fork-join pool, so the weights depend only on the seed and the number of times they have
+	 * been randomized, not on the number of threads.
 	 */
 	public void randomizeWeights()
 	{
-		for(int i=0; i<hiConnectionWeights.length; i++)
+		for(int l=0; l<engine.getNumLayers(); l++)
 		{
-			hiConnectionWeights[i] = random.nextDouble(variables.getMaxWeight(), variables.getMinWeight());
-			//			hiConnectionWeights[i] = 0.01;
-		}
-		for(int j=0; j<ohConnectionWeights.length; j++)
-		{
-			ohConnectionWeights[j] = random.nextDouble(variables.getMaxWeight(), variables.getMinWeight());
-			//			ohConnectionWeights[j] = 0.01;
+			long stream = ((long) randomizations << 20) + l;
+			random.fill(stream, engine.getLayer(l).getWeights(), variables.getMinWeight(), variables.getMaxWeight());
 		}
+		randomizations++;
+		reloadWeights();
 	}
 
 	/**
-	 * This takes the output and hidden layers and adds connections between the layer of neurons to the
+	 * This takes the hidden and output layers and adds connections between the layer of neurons to the
 	 * right so that the connection weights are randomized and the inputs have a path to the output
 	 */
 	public void connectLayers()
 	{
-		int hiconnectCounter = 0;
-		for(int i=0; i<variables.getNumHidden(); i++)
-		{
-			for(int j=0; j<variables.getNumInputs(); j++)
-			{
-				hiddenNeurons.get(i).addConnection(inputNeurons.get(j), hiConnectionWeights[hiconnectCounter]);
-				hiconnectCounter++;
-			}
-		}
-		int ohconnectCounter=0;
-		for(int i=0; i<variables.getNumOutputs(); i++)
+		for(int l=1; l<layers.size(); l++)
 		{
-			for(int j=0; j<variables.getNumHidden(); j++)
+			Vector<Neuron> left = layers.get(l-1);
+			Vector<Neuron> right = layers.get(l);
+			double[] weights = engine.getLayer(l-1).getWeights();
+			int connectCounter = 0;
+			for(int i=0; i<right.size(); i++)
 			{
-				outputNeurons.get(i).addConnection(hiddenNeurons.get(j), ohConnectionWeights[ohconnectCounter]);
-				ohconnectCounter++;
+				for(int j=0; j<left.size(); j++)
+				{
+					right.get(i).addConnection(left.get(j), weights[connectCounter]);
+					connectCounter++;
+				}
 			}
 		}
 	}
@@ -127,9 +187,13 @@ public class Network
 	 */
 	public void setInputs(double[] in)
 	{
-		for(int i=0; i<variables.getNumInputs(); i++)
+		if(floatEngine != null)
+		{
+			floatEngine.setInputs(in);
+		}
+		else
 		{
-			inputNeurons.get(i).setOutput(in[i]);
+			engine.setInputs(in);
 		}
 	}
 
@@ -138,88 +202,273 @@ public class Network
 	 */
 	public void feedForward()
 	{		
-		//Pass the hidden neurons through the network
-		for(int i=0; i<variables.getNumHidden(); i++)
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		if(floatEngine != null)
+		{
+			floatEngine.feedForward();
+			floatEngine.copyActivationsTo(engine);
+		}
+		else
 		{
-			hiddenNeurons.get(i).combine();
+			engine.feedForward();
 		}
-		//Pass the output neurons through the network
-		for(int j=0; j<variables.getNumOutputs(); j++)
+		if(Metrics.ENABLED)
 		{
-			outputNeurons.get(j).combine();
+			metrics.getFeedForward().record(System.nanoTime() - start);
 		}
 	}
 
 	/**
 	 * First calculates the error among the output neurons, then calculates the
-	 * error among the hidden neurons
+	 * error among the hidden neurons. The error of a hidden neuron is the sum of the output
+	 * errors times the weight of the connection from that hidden neuron to each output neuron.
 	 */
 	public void calculateError()
 	{
-		//Calculate output errors
-		for(int i=0; i<variables.getNumOutputs(); i++)
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		if(floatEngine != null)
 		{
-			double tempOut = outputNeurons.get(i).getOutput();
-			outputErrors[i] = (tempOut)*(1-tempOut)*(actuals[i]-tempOut);
+			floatEngine.calculateError(actuals);
+			floatEngine.copyActivationsTo(engine);
 		}
-
-		//Calculate hidden neuron errors
-		for(int i=0; i < variables.getNumHidden(); i++)
+		else
 		{
-			double hiddenOut = hiddenNeurons.get(i).getOutput();
-			double sum = 0;
-			for(int j=0; j < variables.getNumOutputs(); j++)
-			{
-				double outputError = outputErrors[j];
-				double connWeight = outputNeurons.get(j).getConnected().get(i).connWeights[j];
-				sum = sum + (outputError*connWeight);
-			}
-			hiddenErrors[i] = hiddenOut*(1-hiddenOut)*sum;
+			engine.calculateError(actuals);
+		}
+		if(Metrics.ENABLED)
+		{
+			metrics.getCalculateError().record(System.nanoTime() - start);
+			metrics.recordLoss(engine.getOutputs(), actuals);
 		}
 	}
 
 	/**
 	 * First the delta weight of each connection will be calculated using the error of the 
 	 * hidden and output neurons. Then once that is complete, the weights of the connections 
-	 * are updated by adding delta weight to the connection.
+	 * are updated by adding delta weight to the connection. In single precision the neurons see
+	 * the new weights after syncWeights.
 	 */
 	public void updateWeights()
 	{	
-		double learningRate = variables.getLearningRate();
-		//Updates the weights between output and hidden layers
-		for(int i=0; i<variables.getNumOutputs(); i++)
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		double learningRate = getLearningRate();
+		if(floatEngine != null)
+		{
+			floatEngine.updateWeights(learningRate);
+		}
+		else
+		{
+			engine.updateWeights(learningRate);
+		}
+		samplesTrained++;
+		if(Metrics.ENABLED)
+		{
+			metrics.getUpdateWeights().record(System.nanoTime() - start);
+			metrics.countTrained(1, false);
+		}
+	}
+
+	/**
+	 * Trains the network on a batch of samples at once. Every sample is passed through the
+	 * network, the delta weights of all of them are summed, and the weights are updated once by
+	 * their average. The neurons are left holding the outputs of the last sample.
+	 * @param inputs normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 */
+	public void trainBatch(double[][] inputs, double[][] actuals)
+	{
+		trainBatch(inputs, actuals, inputs.length);
+	}
+
+	/**
+	 * Trains the network on the first count samples of a batch. This lets a batch buffer be
+	 * reused when the last batch of the data is not full.
+	 * @param inputs normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 * @param count number of samples to train on
+	 */
+	public void trainBatch(double[][] inputs, double[][] actuals, int count)
+	{
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		double learningRate = getLearningRate();
+		if(floatEngine != null)
+		{
+			floatEngine.trainBatch(inputs, actuals, count, learningRate);
+			floatEngine.copyActivationsTo(engine);
+		}
+		else
 		{
-			double outError = outputErrors[i];
-			for(int j=0; j < outputNeurons.get(i).getConnected().size(); j++)
+			engine.trainBatch(inputs, actuals, count, learningRate);
+		}
+		samplesTrained += count;
+		if(Metrics.ENABLED)
+		{
+			metrics.getTrainBatch().record(System.nanoTime() - start);
+			metrics.countTrained(count, true);
+		}
+	}
+
+	/**
+	 * The learning rate the next samples are trained with, from the learning rate and schedule
+	 * of the Runner and the number of samples trained so far
+	 * @return the learning rate
+	 */
+	public double getLearningRate()
+	{
+		return variables.getSchedule().rate(variables.getLearningRate(), samplesTrained);
+	}
+
+	/**
+	 * Getter for the number of samples the network has trained on
+	 * @return samplesTrained
+	 */
+	public long getSamplesTrained()
+	{
+		return samplesTrained;
+	}
+
+	/**
+	 * Counts samples trained outside the network's own methods, such as by ParallelTrainer
+	 * @param count
+	 */
+	void countSamples(int count)
+	{
+		samplesTrained += count;
+		if(Metrics.ENABLED)
+		{
+			metrics.countTrained(count, true);
+		}
+	}
+
+	/**
+	 * Getter for what the network has done and how long it took. When Metrics.ENABLED is false
+	 * nothing is recorded and every network returns the same empty metrics.
+	 * @return metrics
+	 */
+	public Metrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Copies the weights of the single precision engine into the double engine's weight arrays,
+	 * so hiConnectionWeights, ohConnectionWeights and the neurons show the trained weights.
+	 * Copying every weight after every sample would read them twice, so a single precision
+	 * network only does it when asked; Runner.train calls it at the end of each pass and
+	 * ModelCheckpoint.save before saving. Does nothing in double precision, where the neurons
+	 * are views of the engine's weights.
+	 */
+	public void syncWeights()
+	{
+		if(floatEngine != null)
+		{
+			floatEngine.copyWeightsTo(engine);
+		}
+	}
+
+	/**
+	 * Copies the weights of the double engine into the single precision engine after they
+	 * were changed through hiConnectionWeights, ohConnectionWeights, getEngine or the neurons.
+	 * Does nothing in double precision.
+	 */
+	public void reloadWeights()
+	{
+		if(floatEngine != null)
+		{
+			floatEngine.copyWeightsFrom(engine);
+		}
+	}
+
+	/**
+	 * Predicts the outputs of many windows without changing the network. The neurons keep
+	 * their outputs, so many threads can predict with one trained network at once.
+	 * @param windows normalized inputs of each window
+	 * @return the normalized outputs of each window
+	 */
+	public double[][] predict(double[][] windows)
+	{
+		double[][] outputs = new double[windows.length][variables.getNumOutputs()];
+		predict(windows, outputs);
+		return outputs;
+	}
+
+	/**
+	 * Predicts the outputs of many windows into the given arrays without changing the network
+	 * @param windows normalized inputs of each window
+	 * @param outputs receives the normalized outputs of each window
+	 */
+	public void predict(double[][] windows, double[][] outputs)
+	{
+		predict(windows, outputs, windows.length);
+	}
+
+	/**
+	 * Predicts the outputs of the first count windows, so a caller that gathers windows into
+	 * batches of different sizes can reuse the same arrays for all of them
+	 * @param windows normalized inputs of each window
+	 * @param outputs receives the normalized outputs of each window
+	 * @param count number of windows
+	 */
+	public void predict(double[][] windows, double[][] outputs, int count)
+	{
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		if(floatEngine != null)
+		{
+			FloatLayerEngine.Scratch floatBuffers = floatScratch.get();
+			if(floatBuffers == null)
 			{
-				double hidOut = outputNeurons.get(i).getConnected().get(j).getOutput();
-				double connWeight = outputNeurons.get(i).connWeights[j];
-				double newWeight = connWeight + (learningRate * (outError) * hidOut);
-				outputNeurons.get(i).setConnectionWeight(j, newWeight);
+				floatBuffers = floatEngine.newScratch();
+				floatScratch.set(floatBuffers);
 			}
+			floatEngine.predict(windows, outputs, count, floatBuffers);
 		}
-
-		//Updates the weights between input and hidden layers
-		for(int i=0; i< variables.getNumHidden(); i++)
+		else
 		{
-			double hidError = hiddenErrors[i];
-			for(int j=0; j < hiddenNeurons.get(i).getConnected().size(); j++)
+			LayerEngine.Scratch buffers = scratch.get();
+			if(buffers == null)
 			{
-				double inOut = hiddenNeurons.get(i).getConnected().get(j).getOutput();
-				double connWeight = hiddenNeurons.get(i).connWeights[j];
-				double newWeight = connWeight + (learningRate * (hidError) * inOut);
-				hiddenNeurons.get(i).setConnectionWeight(j, newWeight);
+				buffers = engine.newScratch();
+				scratch.set(buffers);
 			}
+			engine.predict(windows, outputs, count, buffers);
+		}
+		if(Metrics.ENABLED)
+		{
+			metrics.getPredict().record(System.nanoTime() - start);
+			metrics.countPredicted(count);
 		}
 	}
 
 	/**
-	 * Sets the actual values for computing the error among the output layer neurons
+	 * Sets the actual values for computing the error among the output layer neurons. The
+	 * values are copied, so the caller can reuse its array for the next window.
 	 * @param x
 	 */
 	public void setActuals(double[] x)
 	{
-		actuals = x;
+		if(x.length != actuals.length)
+		{
+			throw new IllegalArgumentException("Expected " + actuals.length + " actuals but got " + x.length);
+		}
+		System.arraycopy(x, 0, actuals, 0, actuals.length);
+	}
+
+	/**
+	 * Getter for the layer engine that does the math of this network
+	 * @return engine
+	 */
+	public LayerEngine getEngine()
+	{
+		return engine;
+	}
+
+	/**
+	 * Getter for the single precision engine
+	 * @return floatEngine, or null when the network is double precision
+	 */
+	public FloatLayerEngine getFloatEngine()
+	{
+		return floatEngine;
 	}
 
 	/**
@@ -242,12 +491,25 @@ public class Network
 	public double[] normalizeValues(double[] in, double max, double min)
 	{
 		double[] normValues = new double[in.length];
+		normalizeValues(in, normValues, max, min);
+		return normValues;
+	}
+
+	/**
+	 * Normalizes the values into the given array instead of a new one. The array can be
+	 * the same one as the values, which normalizes them in place.
+	 * @param in
+	 * @param normValues receives the normalized values
+	 * @param max
+	 * @param min
+	 */
+	public void normalizeValues(double[] in, double[] normValues, double max, double min)
+	{
 		for(int i=0; i<in.length; i++)
 		{
 			double temp = in[i];
 			normValues[i] = (temp-(min))/((max) - (min));
 		}
-		return normValues;
 	}
 
 	/**
@@ -259,12 +521,25 @@ public class Network
 	public double[] denormalizeValues(double[] outs, double max, double min)
 	{
 		double[] deNormValues = new double[outs.length];
+		denormalizeValues(outs, deNormValues, max, min);
+		return deNormValues;
+	}
+
+	/**
+	 * Denormalizes the outputs into the given array instead of a new one. The array can be
+	 * the same one as the outputs, which denormalizes them in place.
+	 * @param outs
+	 * @param deNormValues receives the prices
+	 * @param max
+	 * @param min
+	 */
+	public void denormalizeValues(double[] outs, double[] deNormValues, double max, double min)
+	{
 		for(int i=0; i<outs.length; i++)
 		{
 			double temp = outs[i];
 			deNormValues[i] = temp*(max-min)+min;
 		}
-		return deNormValues;
 	}
 
 }
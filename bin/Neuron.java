@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
@@ -16,15 +17,29 @@ public class Neuron
 	//The other neurons that this neuron is connected to
 	private Vector<Neuron> connected;
 	
-	//Stores the connection weights of the neuron depending on if it is a neuron
-	//in the output or hidden layer
-	public double[] connWeights;
+	//The weights of the connections, in the order the connections were added, from weightOffset
+	//up to weightLimit. A neuron on its own keeps them in an array of its own that grows; a neuron
+	//that belongs to a network (shared) is a view of its row of the layer's weight matrix, so each
+	//weight is stored once and the neuron sees training at once.
+	private double[] weights;
+	private int weightOffset;
+	private int weightLimit;
+	private boolean shared;
 	
-	//Used to specify where in connWeights the weight will be added
+	//Used to specify where in the weights the next connection's weight will be added
 	int index = 0;
 	
-	//The output of the neuron (input layer output is the normalized data value)
-	private double output;
+	//The output of the neuron (input layer output is the normalized data value). A neuron that
+	//belongs to a network reads and writes its output in the layer's activation buffer.
+	private double[] outputs;
+	private int position;
+	
+	//The transfer function combine applies. A neuron on its own uses the sigmoid; a neuron that
+	//belongs to a network uses the activation of its layer, so combining agrees with the engine.
+	private Activation activation = Activation.SIGMOID;
+	
+	//Weights of a neuron before its first connection
+	private static final double[] NO_WEIGHTS = new double[0];
 	
 
 	/**
@@ -33,15 +48,35 @@ public class Neuron
 	public Neuron(Runner s)
 	{
 		this.numNeurons++;
-		if(numNeurons > (s.getNumHidden() + s.getNumInputs()))
-		{
-			connWeights = new double[s.getNumInputs()];
-		}
-		else
+		weights = NO_WEIGHTS;
+		connected = new Vector<Neuron>();
+		outputs = new double[1];
+		position = 0;
+	}
+	
+	/**
+	 * Binds the neuron to the flat arrays of the network's layer engine so that its output
+	 * and connection weights are read from and written to the layer it belongs to
+	 * @param layerOutputs activation buffer of the layer
+	 * @param index position of this neuron in the layer
+	 * @param layerWeights weight matrix of the layer, or null for the input layer
+	 * @param offset where this neuron's row of weights starts in the matrix
+	 * @param layerActivation transfer function of the layer, or null for the input layer
+	 */
+	void bind(double[] layerOutputs, int index, double[] layerWeights, int offset, Activation layerActivation)
+	{
+		layerOutputs[index] = outputs[position];
+		outputs = layerOutputs;
+		position = index;
+		if(layerWeights != null)
 		{
-			connWeights = new double[(s.getNumInputs())];
+			System.arraycopy(weights, 0, layerWeights, offset, this.index);
+			weights = layerWeights;
+			weightOffset = offset;
+			weightLimit = offset + layerWeights.length/layerOutputs.length;
+			shared = true;
+			activation = layerActivation;
 		}
-		connected = new Vector<Neuron>();
 	}
 	
 	/**
@@ -62,12 +97,23 @@ public class Neuron
 	public void addConnection(Neuron n, double weight)
 	{
 		connected.add(n);
-		connWeights[index] = weight;
+		if(weightOffset + index == weightLimit)
+		{
+			if(shared)
+			{
+				throw new IllegalStateException("The neuron's row of the layer weight matrix is full");
+			}
+			//A neuron on its own grows its array as connections are added
+			weights = Arrays.copyOf(weights, Math.max(4, 2*weights.length));
+			weightLimit = weights.length;
+		}
+		weights[weightOffset + index] = weight;
 		index++;
 	}	
 	
 	/**
-	 * Combination funtion that is the sum of products of the inputs and the corresponding weights
+	 * Combination funtion that is the sum of products of the inputs and the corresponding weights,
+	 * passed through the transfer function of the neuron's layer
 	 */
 	public void combine()
 	{
@@ -75,10 +121,10 @@ public class Neuron
 		for(int i=0; i < connected.size(); i++)
 		{
 			double input = connected.get(i).getOutput();
-			double weight = connWeights[i];
+			double weight = weights[weightOffset + i];
 			sum = sum + (input*weight);
 		}
-		output = 1.0/(1.0+(Math.pow(Math.E, -(sum))));
+		outputs[position] = activation.apply(sum);
 	}
 	
 	/**
@@ -91,12 +137,46 @@ public class Neuron
 	}
 	
 	/**
-	 * Getter for the connection weights of this neuron
-	 * @return connWeights
+	 * Getter for a copy of the connection weights of this neuron. Writing into the copy does not
+	 * change the neuron's weights: set a weight with setConnectionWeight, or write into
+	 * getWeightBuffer from getWeightOffset. getConnWeight reads a weight without copying.
+	 * @return the weight of each connection
+	 * @deprecated the weights are a view of the layer's weight matrix, so the array returned is
+	 * only a copy; use getConnWeight, setConnectionWeight or getWeightBuffer and getWeightOffset
 	 */
+	@Deprecated
 	public double[] getConnWeights()
 	{
-		return connWeights;
+		return Arrays.copyOfRange(weights, weightOffset, weightOffset + connected.size());
+	}
+	
+	/**
+	 * Getter for the weight of one connection
+	 * @param index the connection, in the order the connections were added
+	 * @return the weight
+	 */
+	public double getConnWeight(int index)
+	{
+		return weights[weightOffset + index];
+	}
+	
+	/**
+	 * Getter for the array the connection weights are stored in, which for a neuron in a
+	 * network is the weight matrix of its layer
+	 * @return the weight buffer
+	 */
+	public double[] getWeightBuffer()
+	{
+		return weights;
+	}
+	
+	/**
+	 * Getter for where this neuron's weights start in the weight buffer
+	 * @return the offset
+	 */
+	public int getWeightOffset()
+	{
+		return weightOffset;
 	}
 
 	/**
@@ -105,7 +185,7 @@ public class Neuron
 	 */
 	public void setOutput(double out) 
 	{
-		output = out;
+		outputs[position] = out;
 	}
 	
 	/**
@@ -114,11 +194,16 @@ public class Neuron
 	 */
 	public double getOutput()
 	{
-		return output;
+		return outputs[position];
 	}
 
+	/**
+	 * Setter for the weight of one connection
+	 * @param index the connection, in the order the connections were added
+	 * @param newConnectionWeight
+	 */
 	public void setConnectionWeight(int index, double newConnectionWeight)
 	{
-		connWeights[index] = newConnectionWeight;
+		weights[weightOffset + index] = newConnectionWeight;
 	}
 }
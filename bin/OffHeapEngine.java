@@ -0,0 +1,182 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds samples forward, passes the errors back and updates the weights the same way as the
+ * single sample methods of LayerEngine, but reads and writes the weights in the buffers of
+ * OffHeapWeights instead of arrays on the heap. The engine holds only the activations and
+ * errors, so each thread creates its own engine over the shared weights, and any number of them
+ * can feed forward and predict at once while nobody trains.
+ *
+ * Batches are not supported; the tiled matrix products of Gemm work on arrays.
+ *
+ */
+public class OffHeapEngine
+{
+	//The weights this engine reads and trains
+	private final OffHeapWeights weights;
+
+	//The outputs of the input layer (the normalized data values)
+	private final double[] inputs;
+
+	//The outputs and errors of every layer to the right of the input layer
+	private final double[][] outputs;
+	private final double[][] errors;
+
+	//The dot product and AXPY loops the math is written in
+	private Kernels kernels = Kernels.DEFAULT;
+
+	/**
+	 * Creates an engine over the given weights
+	 * @param weights
+	 */
+	public OffHeapEngine(OffHeapWeights weights)
+	{
+		this.weights = weights;
+		inputs = new double[weights.getSize(0)];
+		outputs = new double[weights.getNumLayers()][];
+		errors = new double[weights.getNumLayers()][];
+		for(int l=0; l<outputs.length; l++)
+		{
+			outputs[l] = new double[weights.getSize(l+1)];
+			errors[l] = new double[weights.getSize(l+1)];
+		}
+	}
+
+	/**
+	 * Copies the normalized values into the input layer
+	 * @param in
+	 */
+	public void setInputs(double[] in)
+	{
+		System.arraycopy(in, 0, inputs, 0, inputs.length);
+	}
+
+	/**
+	 * Passes the inputs through every layer, producing an output for each output neuron
+	 */
+	public void feedForward()
+	{
+		double[] in = inputs;
+		for(int l=0; l<outputs.length; l++)
+		{
+			ByteBuffer w = weights.getLayer(l);
+			Activation activation = weights.getActivation(l);
+			double[] out = outputs[l];
+			int fanIn = in.length;
+			for(int i=0; i<out.length; i++)
+			{
+				out[i] = activation.apply(kernels.dot(in, 0, w, i*fanIn, fanIn));
+			}
+			in = out;
+		}
+	}
+
+	/**
+	 * Calculates the error of the output layer against the actuals, then passes the
+	 * error back through the hidden layers
+	 * @param actuals the expected outputs
+	 */
+	public void calculateError(double[] actuals)
+	{
+		int last = outputs.length - 1;
+		Activation activation = weights.getActivation(last);
+		for(int i=0; i<outputs[last].length; i++)
+		{
+			double out = outputs[last][i];
+			errors[last][i] = activation.derivative(out)*(actuals[i]-out);
+		}
+		for(int l=last; l>0; l--)
+		{
+			ByteBuffer w = weights.getLayer(l);
+			double[] prevOutputs = outputs[l-1];
+			double[] prevErrors = errors[l-1];
+			int fanIn = prevErrors.length;
+			for(int k=0; k<fanIn; k++)
+			{
+				prevErrors[k] = 0;
+			}
+			for(int i=0; i<errors[l].length; i++)
+			{
+				kernels.axpy(errors[l][i], w, i*fanIn, prevErrors, 0, fanIn);
+			}
+			Activation prevActivation = weights.getActivation(l-1);
+			for(int k=0; k<fanIn; k++)
+			{
+				prevErrors[k] = prevActivation.derivative(prevOutputs[k])*prevErrors[k];
+			}
+		}
+	}
+
+	/**
+	 * Updates the weights of every layer using the errors from calculateError
+	 * @param learningRate
+	 * @throws java.nio.ReadOnlyBufferException if the weights are mapped read-only
+	 */
+	public void updateWeights(double learningRate)
+	{
+		for(int l=outputs.length-1; l>=0; l--)
+		{
+			ByteBuffer w = weights.getLayer(l);
+			double[] in = l == 0 ? inputs : outputs[l-1];
+			for(int i=0; i<errors[l].length; i++)
+			{
+				double delta = learningRate * errors[l][i];
+				kernels.axpy(delta, in, 0, w, i*in.length, in.length);
+			}
+		}
+	}
+
+	/**
+	 * Feeds each window through the network and copies the outputs out
+	 * @param windows normalized inputs of each window
+	 * @param predictions receives the normalized outputs of each window
+	 * @param count number of windows to predict
+	 */
+	public void predict(double[][] windows, double[][] predictions, int count)
+	{
+		double[] out = getOutputs();
+		for(int w=0; w<count; w++)
+		{
+			setInputs(windows[w]);
+			feedForward();
+			System.arraycopy(out, 0, predictions[w], 0, out.length);
+		}
+	}
+
+	/**
+	 * Setter for the loops the math is written in
+	 * @param kernels
+	 */
+	public void setKernels(Kernels kernels)
+	{
+		this.kernels = kernels;
+	}
+
+	/**
+	 * Getter for the weights this engine reads and trains
+	 * @return weights
+	 */
+	public OffHeapWeights getWeights()
+	{
+		return weights;
+	}
+
+	/**
+	 * Getter for the outputs of the output layer
+	 * @return outputs
+	 */
+	public double[] getOutputs()
+	{
+		return outputs[outputs.length-1];
+	}
+
+	/**
+	 * Getter for the errors of a layer
+	 * @param l the layer, where 0 is the first hidden layer
+	 * @return errors
+	 */
+	public double[] getErrors(int l)
+	{
+		return errors[l];
+	}
+}
@@ -0,0 +1,282 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The weight matrices of a network kept outside the Java heap, one little-endian buffer of
+ * doubles per layer in the same row-major layout as DenseLayer. The garbage collector never
+ * scans or copies them, so a network with hundreds of millions of weights needs only a small heap.
+ *
+ * The buffers are either direct buffers holding a copy of a network's weights, or views of the
+ * weights of a file saved by ModelCheckpoint mapped into memory. Every process that maps the
+ * same file shares one copy of the weights in the operating system's page cache, so many scoring
+ * JVMs on a host cost the memory of one. A read-only mapping is the usual choice for scoring; a
+ * writable mapping trains the weights in the file itself, which every process mapping it sees.
+ * OffHeapEngine does the math on the buffers.
+ *
+ * Java cannot unmap a file on demand; the mapping is released once the weights are garbage
+ * collected. No layer may have more than Integer.MAX_VALUE/8 weights.
+ *
+ */
+public class OffHeapWeights
+{
+	//Most weights in one layer, the most doubles a buffer can hold
+	public static final int MAX_LAYER_WEIGHTS = Integer.MAX_VALUE/8;
+
+	//Number of neurons in each layer, from the input layer to the output layer
+	private final int[] sizes;
+
+	//Transfer function and weight matrix of every layer after the input layer
+	private final Activation[] activations;
+	private final ByteBuffer[] layers;
+
+	//Bounds of the prices the network was trained on
+	private final double dataMax;
+	private final double dataMin;
+
+	//The mapped file, or null for direct buffers
+	private final File file;
+
+	private OffHeapWeights(int[] sizes, Activation[] activations, ByteBuffer[] layers, double dataMax, double dataMin, File file)
+	{
+		this.sizes = sizes;
+		this.activations = activations;
+		this.layers = layers;
+		this.dataMax = dataMax;
+		this.dataMin = dataMin;
+		this.file = file;
+	}
+
+	/**
+	 * Copies the weights of a network into direct buffers
+	 * @param n the network
+	 * @return the weights
+	 */
+	public static OffHeapWeights copyOf(Network n)
+	{
+		n.syncWeights();
+		LayerEngine engine = n.getEngine();
+		int[] sizes = n.getVariables().getLayerSizes();
+		Activation[] activations = new Activation[engine.getNumLayers()];
+		ByteBuffer[] layers = new ByteBuffer[engine.getNumLayers()];
+		for(int l=0; l<layers.length; l++)
+		{
+			double[] weights = engine.getLayer(l).getWeights();
+			checkLayerSize(weights.length);
+			activations[l] = engine.getLayer(l).getActivation();
+			layers[l] = ByteBuffer.allocateDirect(weights.length*8).order(ByteOrder.LITTLE_ENDIAN);
+			layers[l].asDoubleBuffer().put(weights);
+		}
+		return new OffHeapWeights(sizes, activations, layers, n.getVariables().getDataMax(), n.getVariables().getDataMin(), null);
+	}
+
+	/**
+	 * Maps the weights of a network saved by ModelCheckpoint into memory after checking the file
+	 * @param checkpoint the saved network
+	 * @param writable true to map the weights so that training changes the file, false to map them read-only
+	 * @return the weights
+	 * @throws IOException if the file is not a saved network or is damaged
+	 */
+	public static OffHeapWeights map(File checkpoint, boolean writable) throws IOException
+	{
+		FileChannel channel = writable
+				? FileChannel.open(checkpoint.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(checkpoint.toPath(), StandardOpenOption.READ);
+		try
+		{
+			ModelCheckpoint.Header header = ModelCheckpoint.readHeader(channel, checkpoint.toString());
+			if(checksum(channel) != readInt(channel, channel.size() - 4))
+			{
+				throw new IOException(checkpoint + " failed its checksum");
+			}
+			FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+			ByteBuffer[] layers = new ByteBuffer[header.sizes.length - 1];
+			long position = header.weightsOffset;
+			for(int l=0; l<layers.length; l++)
+			{
+				long count = (long) header.sizes[l]*header.sizes[l+1];
+				checkLayerSize(count);
+				layers[l] = channel.map(mode, position, count*8).order(ByteOrder.LITTLE_ENDIAN);
+				position += count*8;
+			}
+			return new OffHeapWeights(header.sizes, header.activations, layers, header.dataMax, header.dataMin, checkpoint);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	private static void checkLayerSize(long count)
+	{
+		if(count > MAX_LAYER_WEIGHTS)
+		{
+			throw new IllegalArgumentException("A layer of " + count + " weights is too large for a buffer");
+		}
+	}
+
+	/**
+	 * The CRC32 of every byte of the file before the checksum at its end, read through mappings of
+	 * at most 1 GB at a time
+	 */
+	private static int checksum(FileChannel channel) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		long end = channel.size() - 4;
+		for(long position=0; position<end; position+=1L<<30)
+		{
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(1L<<30, end - position)));
+		}
+		return (int) crc.getValue();
+	}
+
+	private static int readInt(FileChannel channel, long position) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		int read = 0;
+		while(buffer.hasRemaining() && read >= 0)
+		{
+			read = channel.read(buffer, position + buffer.position());
+		}
+		return buffer.getInt(0);
+	}
+
+	/**
+	 * Writes the weights of a writable mapping to the file and brings its checksum up to date, so
+	 * that ModelCheckpoint.load accepts the file again after training
+	 * @throws IOException
+	 */
+	public void force() throws IOException
+	{
+		if(file == null)
+		{
+			return;
+		}
+		for(int l=0; l<layers.length; l++)
+		{
+			if(layers[l] instanceof MappedByteBuffer && !layers[l].isReadOnly())
+			{
+				((MappedByteBuffer) layers[l]).force();
+			}
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			ByteBuffer crc = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			crc.putInt(0, checksum(channel));
+			channel.write(crc, channel.size() - 4);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Copies the weights into a network of the same shape
+	 * @param n the network
+	 */
+	public void copyTo(Network n)
+	{
+		LayerEngine engine = n.getEngine();
+		for(int l=0; l<layers.length; l++)
+		{
+			layers[l].duplicate().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(engine.getLayer(l).getWeights());
+		}
+		n.reloadWeights();
+	}
+
+	/**
+	 * Getter for the weights of a layer
+	 * @param l the layer, where 0 is the first hidden layer
+	 * @return the little-endian buffer of the layer's row-major weight matrix
+	 */
+	public ByteBuffer getLayer(int l)
+	{
+		return layers[l];
+	}
+
+	/**
+	 * Getter for the transfer function of a layer
+	 * @param l the layer, where 0 is the first hidden layer
+	 * @return the activation
+	 */
+	public Activation getActivation(int l)
+	{
+		return activations[l];
+	}
+
+	/**
+	 * Getter for the number of layers after the input layer
+	 * @return number of layers
+	 */
+	public int getNumLayers()
+	{
+		return layers.length;
+	}
+
+	/**
+	 * Getter for the number of neurons in each layer, from the input layer to the output layer
+	 * @return sizes
+	 */
+	public int[] getSizes()
+	{
+		return sizes.clone();
+	}
+
+	/**
+	 * The number of neurons in a layer
+	 * @param l the layer, where 0 is the input layer
+	 * @return the number of neurons
+	 */
+	int getSize(int l)
+	{
+		return sizes[l];
+	}
+
+	/**
+	 * Getter for the number of weights of every layer together
+	 * @return number of weights
+	 */
+	public long getNumWeights()
+	{
+		long count = 0;
+		for(int l=0; l<layers.length; l++)
+		{
+			count += layers[l].capacity()/8;
+		}
+		return count;
+	}
+
+	/**
+	 * Whether the weights can be trained
+	 * @return false for a read-only mapping
+	 */
+	public boolean isWritable()
+	{
+		return !layers[0].isReadOnly();
+	}
+
+	/**
+	 * Getter for the highest price in the data
+	 * @return dataMax
+	 */
+	public double getDataMax()
+	{
+		return dataMax;
+	}
+
+	/**
+	 * Getter for the lowest price in the data
+	 * @return dataMin
+	 */
+	public double getDataMin()
+	{
+		return dataMin;
+	}
+}
@@ -0,0 +1,239 @@
+import java.util.HashMap;
+
+/**
+ * Learns from prices as they arrive instead of from a file. Each series of prices, such as one
+ * industry's stocks, is keyed by its symbol and keeps its last 4 trading days in a ring buffer.
+ * Every day that arrives for a series:
+ *
+ *   1. if the series already had 4 days, the day is the actual 5th day of the window the last
+ *      prediction was made from, and the network is trained on that window and day;
+ *   2. the day replaces the oldest one in the ring;
+ *   3. once the ring holds 4 days, they are the inputs of the next prediction, which is made
+ *      straight away.
+ *
+ * So the windows roll forward a day at a time, and every prediction is made with weights that
+ * have already learned from the day it follows. Training on a window needs the activations of
+ * the network for it; those are still in the network from the prediction when no other series
+ * was fed forward since, which is always the case with a single series, so a day then costs one
+ * pass forward, one back and one update.
+ *
+ * The time from a day arriving until its prediction is ready is recorded in a LatencyHistogram,
+ * as is the time of each update. A learner is used by one thread at a time.
+ *
+ */
+public class OnlineLearner
+{
+	private final Network network;
+	private final Runner variables;
+
+	//Number of prices in a trading day, the same as the outputs of the network
+	private final int numPrices;
+
+	//The series seen so far by their symbol
+	private final HashMap<String, Series> series = new HashMap<String, Series>();
+
+	//The series whose pending window the network was fed forward with last, while the weights
+	//have not changed since, otherwise null
+	private Series forwarded;
+
+	//Time from a day arriving until its prediction was ready, and time of each training step
+	private final LatencyHistogram tickToPrediction = new LatencyHistogram();
+	private final LatencyHistogram update = new LatencyHistogram();
+
+	private long ticks;
+	private long predictions;
+	private long updates;
+
+	//Sum and count of the percent errors of the predictions whose actual day has arrived, and
+	//the prices of the prediction being scored
+	private double percErrorSum;
+	private long percErrorCount;
+	private final double[] scored;
+
+	/**
+	 * The last 4 trading days of one series and the window a prediction is pending on
+	 */
+	private static class Series
+	{
+		//Normalized days in a ring, the oldest at next once it is full
+		final double[][] days;
+		int next;
+		int count;
+
+		//Normalized inputs and outputs of the last prediction, waiting for its actual day
+		final double[] window;
+		final double[] prediction;
+		boolean pending;
+
+		Series(int numInputs, int numPrices)
+		{
+			days = new double[PriceLoader.INPUT_LINES][numPrices];
+			window = new double[numInputs];
+			prediction = new double[numPrices];
+		}
+	}
+
+	/**
+	 * Creates a learner that trains and predicts with the given network
+	 * @param network a network whose inputs are 4 days of as many prices as it has outputs
+	 */
+	public OnlineLearner(Network network)
+	{
+		this.network = network;
+		this.variables = network.getVariables();
+		this.numPrices = variables.getNumOutputs();
+		scored = new double[numPrices];
+		if(variables.getNumInputs() != PriceLoader.INPUT_LINES*numPrices)
+		{
+			throw new IllegalArgumentException("A network with " + variables.getNumInputs() + " inputs and " + numPrices
+					+ " outputs does not take " + PriceLoader.INPUT_LINES + " days of " + numPrices + " prices");
+		}
+	}
+
+	/**
+	 * Takes the next trading day of a series, training on it if it completes a pending window and
+	 * predicting the day after once the series has 4 days
+	 * @param symbol the series the day belongs to
+	 * @param prices the prices of the day, as many as the network has outputs
+	 * @param received System.nanoTime() when the day arrived, which the latency is measured from
+	 * @param predicted receives the predicted prices of the next day
+	 * @return true if a prediction was made
+	 */
+	public boolean tick(String symbol, double[] prices, long received, double[] predicted)
+	{
+		Series s = series.get(symbol);
+		if(s == null)
+		{
+			s = new Series(variables.getNumInputs(), numPrices);
+			series.put(symbol, s);
+		}
+		ticks++;
+		double[] day = s.days[s.next];
+		network.normalizeValues(prices, day, variables.getDataMax(), variables.getDataMin());
+		if(s.pending)
+		{
+			train(s, prices, day);
+		}
+		s.next = (s.next + 1) % s.days.length;
+		s.count = Math.min(s.count + 1, s.days.length);
+		if(s.count < s.days.length)
+		{
+			return false;
+		}
+		for(int d=0; d<s.days.length; d++)
+		{
+			System.arraycopy(s.days[(s.next + d) % s.days.length], 0, s.window, d*numPrices, numPrices);
+		}
+		network.setInputs(s.window);
+		network.feedForward();
+		System.arraycopy(network.getEngine().getOutputs(), 0, s.prediction, 0, numPrices);
+		network.denormalizeValues(s.prediction, predicted, variables.getDataMax(), variables.getDataMin());
+		s.pending = true;
+		forwarded = s;
+		predictions++;
+		tickToPrediction.record(System.nanoTime() - received);
+		return true;
+	}
+
+	/**
+	 * Trains the network on the pending window of a series and the day that follows it
+	 * @param s
+	 * @param prices the day's prices
+	 * @param day the day's normalized prices
+	 */
+	private void train(Series s, double[] prices, double[] day)
+	{
+		long start = System.nanoTime();
+		network.denormalizeValues(s.prediction, scored, variables.getDataMax(), variables.getDataMin());
+		for(int i=0; i<numPrices; i++)
+		{
+			percErrorSum += Runner.calculatePercError(prices[i], scored[i]);
+		}
+		percErrorCount += numPrices;
+		if(forwarded != s)
+		{
+			network.setInputs(s.window);
+			network.feedForward();
+		}
+		network.setActuals(day);
+		network.calculateError();
+		network.updateWeights();
+		forwarded = null;
+		s.pending = false;
+		updates++;
+		update.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Getter for the network being trained
+	 * @return network
+	 */
+	public Network getNetwork()
+	{
+		return network;
+	}
+
+	/**
+	 * Getter for the number of series seen so far
+	 * @return the number of symbols
+	 */
+	public int getNumSeries()
+	{
+		return series.size();
+	}
+
+	/**
+	 * Getter for the number of days taken
+	 * @return ticks
+	 */
+	public long getTicks()
+	{
+		return ticks;
+	}
+
+	/**
+	 * Getter for the number of predictions made
+	 * @return predictions
+	 */
+	public long getPredictions()
+	{
+		return predictions;
+	}
+
+	/**
+	 * Getter for the number of times the network was trained
+	 * @return updates
+	 */
+	public long getUpdates()
+	{
+		return updates;
+	}
+
+	/**
+	 * The mean percent error of the predictions whose actual day has arrived, before the network
+	 * was trained on that day
+	 * @return the mean over every price, or NaN before any actual day arrived
+	 */
+	public double getMeanPercError()
+	{
+		return percErrorCount == 0 ? Double.NaN : percErrorSum/percErrorCount;
+	}
+
+	/**
+	 * Getter for the time from a day arriving until its prediction was ready
+	 * @return the histogram, in nanoseconds
+	 */
+	public LatencyHistogram getTickToPrediction()
+	{
+		return tickToPrediction;
+	}
+
+	/**
+	 * Getter for the time of each training step on an actual day
+	 * @return the histogram, in nanoseconds
+	 */
+	public LatencyHistogram getUpdate()
+	{
+		return update;
+	}
+}
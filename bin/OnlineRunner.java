@@ -0,0 +1,190 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+
+/**
+ * Runs an OnlineLearner over a stream of prices that does not end when a file does. Each line of
+ * the stream is one trading day of a series, "SYMBOL,price,price,..." with as many prices as the
+ * network has outputs, or just the prices when there is only one series. Each prediction is
+ * written as a line in the same layout, holding the prices predicted for the series' next day.
+ *
+ * The stream is standard input, a file or named pipe, or the connections to a port on the
+ * loopback address, which are served one after another with the predictions written back to
+ * each. Replies are flushed whenever no whole line is waiting to be read, so a busy stream is
+ * answered in blocks and a quiet one line by line.
+ *
+ */
+public class OnlineRunner
+{
+	/**
+	 * Serves a stream of prices until it ends.
+	 * Usage: OnlineRunner [- | file or named pipe | tcp:port] [checkpoint]
+	 * With a checkpoint, the network is loaded from it when it exists and saved to it whenever a
+	 * stream ends.
+	 * @param args where the prices are read from, standard input by default, and the checkpoint
+	 * @throws IOException
+	 * @throws JMException if the metrics cannot be registered with JMX
+	 */
+	public static void main(String args[]) throws IOException, JMException
+	{
+		String source = args.length > 0 ? args[0] : "-";
+		File checkpoint = args.length > 1 ? new File(args[1]) : null;
+		Network n = checkpoint != null && checkpoint.exists() ? ModelCheckpoint.load(checkpoint) : new Network(new Runner());
+		OnlineLearner learner = new OnlineLearner(n);
+
+		//With -Dnnet.metrics=true the metrics are registered with JMX and printed every 10 seconds
+		MetricsReporter reporter = null;
+		if(Metrics.ENABLED)
+		{
+			n.getMetrics().register("OnlineRunner");
+			reporter = new MetricsReporter(n.getMetrics(), System.err, Boolean.getBoolean("nnet.metrics.json"));
+			reporter.start(10, TimeUnit.SECONDS);
+		}
+		try
+		{
+			if(source.startsWith("tcp:"))
+			{
+				listen(learner, Integer.parseInt(source.substring(4)), checkpoint);
+			}
+			else
+			{
+				ReadableByteChannel in = source.equals("-") ? Channels.newChannel(System.in) : new FileInputStream(source).getChannel();
+				serve(learner, in, new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false));
+				finished(learner, checkpoint);
+			}
+		}
+		finally
+		{
+			if(reporter != null)
+			{
+				reporter.stop();
+			}
+		}
+	}
+
+	/**
+	 * Serves the connections to a port on the loopback address one after another, for as long as
+	 * the program runs
+	 * @param learner
+	 * @param port
+	 * @param checkpoint where the network is saved after each connection, or null
+	 * @throws IOException
+	 */
+	private static void listen(OnlineLearner learner, int port, File checkpoint) throws IOException
+	{
+		ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		try
+		{
+			System.err.println("Listening on " + server.getLocalSocketAddress());
+			while(true)
+			{
+				Socket socket = server.accept();
+				try
+				{
+					socket.setTcpNoDelay(true);
+					serve(learner, Channels.newChannel(socket.getInputStream()),
+							new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false));
+				}
+				finally
+				{
+					socket.close();
+				}
+				finished(learner, checkpoint);
+			}
+		}
+		finally
+		{
+			server.close();
+		}
+	}
+
+	/**
+	 * Feeds every day of a stream to the learner and writes out its predictions
+	 * @param learner
+	 * @param in the stream of prices, closed once it ends
+	 * @param out where the predictions are written, flushed but not closed
+	 * @throws IOException
+	 */
+	public static void serve(OnlineLearner learner, ReadableByteChannel in, PrintStream out) throws IOException
+	{
+		Runner r = learner.getNetwork().getVariables();
+		PriceLoader loader = new PriceLoader(in, r.getNumInputs(), r.getNumOutputs());
+		double[] prices = new double[r.getNumOutputs()];
+		double[] predicted = new double[r.getNumOutputs()];
+		StringBuilder line = new StringBuilder();
+		try
+		{
+			String symbol;
+			while((symbol = loader.nextTick(prices)) != null)
+			{
+				long received = System.nanoTime();
+				if(loader.getTickValues() != prices.length)
+				{
+					System.err.println("Skipped a day of " + (symbol.isEmpty() ? "prices" : symbol) + " with "
+							+ loader.getTickValues() + " prices instead of " + prices.length);
+				}
+				else if(learner.tick(symbol, prices, received, predicted))
+				{
+					line.setLength(0);
+					appendPrediction(line, symbol, predicted);
+					out.println(line);
+				}
+				if(!loader.hasBufferedLine())
+				{
+					out.flush();
+				}
+			}
+		}
+		finally
+		{
+			loader.close();
+			out.flush();
+		}
+	}
+
+	/**
+	 * Writes a line of predicted prices, rounded to 4 decimals, after the symbol they belong to
+	 * @param line where the line is written
+	 * @param symbol the series, or "" for none
+	 * @param predicted the prices
+	 */
+	static void appendPrediction(StringBuilder line, String symbol, double[] predicted)
+	{
+		if(!symbol.isEmpty())
+		{
+			line.append(symbol).append(',');
+		}
+		for(int i=0; i<predicted.length; i++)
+		{
+			line.append(i == 0 ? "" : ",").append(Math.round(predicted[i]*1e4)/1e4);
+		}
+	}
+
+	/**
+	 * Prints what the learner has done so far and saves the network if there is a checkpoint
+	 */
+	private static void finished(OnlineLearner learner, File checkpoint) throws IOException
+	{
+		LatencyHistogram latency = learner.getTickToPrediction();
+		System.err.println(String.format(Locale.ROOT, "%d days of %d series, %d predictions, %d updates, mean error %.3f%%, "
+				+ "tick to prediction p50 %.2fus p99 %.2fus max %.2fus", learner.getTicks(), learner.getNumSeries(),
+				learner.getPredictions(), learner.getUpdates(), learner.getMeanPercError(),
+				latency.getValueAtPercentile(50)/1e3, latency.getValueAtPercentile(99)/1e3, latency.getMax()/1e3));
+		if(checkpoint != null)
+		{
+			ModelCheckpoint.save(learner.getNetwork(), checkpoint);
+		}
+	}
+}
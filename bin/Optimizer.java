@@ -0,0 +1,235 @@
+/**
+ * The rule that turns the summed delta weights of a layer into the change of its weights. Plain
+ * gradient descent adds the delta weights scaled by the learning rate; the other optimizers keep
+ * running averages of the delta weights in state arrays of the same length as the layer's weight
+ * array, so the state of weight k is found at index k of each of them.
+ *
+ * The delta weights are the error of each neuron times each of its inputs, summed over the
+ * samples of a batch. They point the way the weights should move, so every optimizer adds to
+ * the weights. An optimizer holds only its settings and can be shared between layers and
+ * networks; the state lives in the layers.
+ *
+ */
+public abstract class Optimizer
+{
+	//Plain gradient descent, the update the network has always used
+	public static final Optimizer SGD = new Sgd();
+
+	/**
+	 * Number of state arrays the optimizer keeps for each weight array
+	 * @return the number of arrays
+	 */
+	public abstract int getStateArrays();
+
+	/**
+	 * Changes the weights from one index up to another by the mean of the summed delta weights
+	 * @param kernels the loops to use for plain scaled additions
+	 * @param weights the weights to change
+	 * @param gradients the delta weights summed over count samples, in the same layout as weights
+	 * @param from index of the first weight
+	 * @param to index after the last weight
+	 * @param learningRate
+	 * @param count number of samples the delta weights were summed over
+	 * @param state the state arrays of the weights, getStateArrays() of them
+	 * @param step number of updates the weights have had including this one, starting at 1
+	 */
+	public abstract void update(Kernels kernels, double[] weights, double[] gradients, int from, int to, double learningRate,
+			int count, double[][] state, long step);
+
+	/**
+	 * Gradient descent with momentum. A velocity keeps a decaying sum of the mean delta weights,
+	 * v = momentum*v + g, and the weights move by the learning rate times the velocity.
+	 * @param momentum fraction of the velocity kept from one update to the next, usually 0.9
+	 * @return the optimizer
+	 */
+	public static Optimizer momentum(double momentum)
+	{
+		checkFraction(momentum, "Momentum");
+		return new Momentum(momentum, false);
+	}
+
+	/**
+	 * Gradient descent with Nesterov momentum, which moves the weights by the learning rate times
+	 * momentum*v + g, looking ahead along the velocity after it is updated
+	 * @param momentum fraction of the velocity kept from one update to the next, usually 0.9
+	 * @return the optimizer
+	 */
+	public static Optimizer nesterov(double momentum)
+	{
+		checkFraction(momentum, "Momentum");
+		return new Momentum(momentum, true);
+	}
+
+	/**
+	 * RMSProp, which divides each mean delta weight by the root of a decaying average of its
+	 * squares, so every weight moves at about the learning rate whatever the size of its gradient
+	 * @param decay fraction of the average kept from one update to the next, usually 0.9
+	 * @param epsilon added to the root so it is never 0, usually 1e-8
+	 * @return the optimizer
+	 */
+	public static Optimizer rmsProp(double decay, double epsilon)
+	{
+		checkFraction(decay, "Decay");
+		return new RmsProp(decay, epsilon);
+	}
+
+	/**
+	 * Adam, which divides a decaying average of the mean delta weights by the root of a decaying
+	 * average of their squares, both corrected for starting at 0
+	 * @param beta1 fraction of the average kept from one update to the next, usually 0.9
+	 * @param beta2 fraction of the average of the squares kept, usually 0.999
+	 * @param epsilon added to the root so it is never 0, usually 1e-8
+	 * @return the optimizer
+	 */
+	public static Optimizer adam(double beta1, double beta2, double epsilon)
+	{
+		checkFraction(beta1, "Beta1");
+		checkFraction(beta2, "Beta2");
+		return new Adam(beta1, beta2, epsilon);
+	}
+
+	private static void checkFraction(double value, String name)
+	{
+		if(value < 0 || value >= 1)
+		{
+			throw new IllegalArgumentException(name + " must be at least 0 and below 1");
+		}
+	}
+
+	private static class Sgd extends Optimizer
+	{
+		public int getStateArrays()
+		{
+			return 0;
+		}
+
+		public void update(Kernels kernels, double[] weights, double[] gradients, int from, int to, double learningRate,
+				int count, double[][] state, long step)
+		{
+			kernels.axpy(learningRate/count, gradients, from, weights, from, to - from);
+		}
+
+		public String toString()
+		{
+			return "sgd";
+		}
+	}
+
+	private static class Momentum extends Optimizer
+	{
+		private final double momentum;
+		private final boolean nesterov;
+
+		Momentum(double momentum, boolean nesterov)
+		{
+			this.momentum = momentum;
+			this.nesterov = nesterov;
+		}
+
+		public int getStateArrays()
+		{
+			return 1;
+		}
+
+		public void update(Kernels kernels, double[] weights, double[] gradients, int from, int to, double learningRate,
+				int count, double[][] state, long step)
+		{
+			double[] velocity = state[0];
+			double mean = 1.0/count;
+			for(int k=from; k<to; k++)
+			{
+				double g = gradients[k]*mean;
+				double v = momentum*velocity[k] + g;
+				velocity[k] = v;
+				weights[k] = weights[k] + learningRate*(nesterov ? momentum*v + g : v);
+			}
+		}
+
+		public String toString()
+		{
+			return (nesterov ? "nesterov " : "momentum ") + momentum;
+		}
+	}
+
+	private static class RmsProp extends Optimizer
+	{
+		private final double decay;
+		private final double epsilon;
+
+		RmsProp(double decay, double epsilon)
+		{
+			this.decay = decay;
+			this.epsilon = epsilon;
+		}
+
+		public int getStateArrays()
+		{
+			return 1;
+		}
+
+		public void update(Kernels kernels, double[] weights, double[] gradients, int from, int to, double learningRate,
+				int count, double[][] state, long step)
+		{
+			double[] squares = state[0];
+			double mean = 1.0/count;
+			for(int k=from; k<to; k++)
+			{
+				double g = gradients[k]*mean;
+				double s = decay*squares[k] + (1-decay)*g*g;
+				squares[k] = s;
+				weights[k] = weights[k] + learningRate*g/(Math.sqrt(s) + epsilon);
+			}
+		}
+
+		public String toString()
+		{
+			return "rmsprop " + decay;
+		}
+	}
+
+	private static class Adam extends Optimizer
+	{
+		private final double beta1;
+		private final double beta2;
+		private final double epsilon;
+
+		Adam(double beta1, double beta2, double epsilon)
+		{
+			this.beta1 = beta1;
+			this.beta2 = beta2;
+			this.epsilon = epsilon;
+		}
+
+		public int getStateArrays()
+		{
+			return 2;
+		}
+
+		public void update(Kernels kernels, double[] weights, double[] gradients, int from, int to, double learningRate,
+				int count, double[][] state, long step)
+		{
+			double[] averages = state[0];
+			double[] squares = state[1];
+			double mean = 1.0/count;
+			//The bias corrections of both averages folded into the learning rate and epsilon
+			double correction1 = 1 - Math.pow(beta1, step);
+			double root2 = Math.sqrt(1 - Math.pow(beta2, step));
+			double rate = learningRate*root2/correction1;
+			double e = epsilon*root2;
+			for(int k=from; k<to; k++)
+			{
+				double g = gradients[k]*mean;
+				double m = beta1*averages[k] + (1-beta1)*g;
+				double s = beta2*squares[k] + (1-beta2)*g*g;
+				averages[k] = m;
+				squares[k] = s;
+				weights[k] = weights[k] + rate*m/(Math.sqrt(s) + e);
+			}
+		}
+
+		public String toString()
+		{
+			return "adam " + beta1 + ", " + beta2;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trains a network on several threads at once by splitting each batch of samples between them.
+ *
+ * In the synchronous mode every thread holds its own replica of the weights. Each thread copies
+ * the network's weights into its replica and sums the delta weights of its share of the batch.
+ * The gradients are then all-reduced: each thread sums one slice of the weight arrays over every
+ * replica and adds the average to the network. The result is the same as Network.trainBatch on
+ * the whole batch.
+ *
+ * In the Hogwild mode the threads share the network's weight arrays and each one trains its
+ * share of the samples one at a time, updating the shared weights without any locking. Updates
+ * from different threads can overwrite each other, which in practice costs little accuracy.
+ *
+ */
+public class ParallelTrainer
+{
+	//The network whose weights are trained
+	private Network network;
+
+	//Number of threads the samples are split between
+	private int numThreads;
+
+	//True to update the shared weights without locking instead of averaging the gradients
+	private boolean hogwild;
+
+	//One engine per thread. Replicas of the weights in the synchronous mode, engines sharing
+	//the network's weight arrays in the Hogwild mode.
+	private LayerEngine[] workers;
+
+	private ExecutorService pool;
+
+	/**
+	 * Creates a trainer for the network with the given number of threads
+	 * @param n the network to train
+	 * @param numThreads number of threads to split the samples between
+	 * @param hogwild true to update the shared weights without locking
+	 */
+	public ParallelTrainer(Network n, int numThreads, boolean hogwild)
+	{
+		if(numThreads < 1)
+		{
+			throw new IllegalArgumentException("A trainer needs at least 1 thread");
+		}
+		if(n.getFloatEngine() != null)
+		{
+			throw new IllegalArgumentException("Single precision networks train on one thread");
+		}
+		network = n;
+		this.numThreads = numThreads;
+		this.hogwild = hogwild;
+		workers = new LayerEngine[numThreads];
+		for(int t=0; t<numThreads; t++)
+		{
+			workers[t] = hogwild ? n.getEngine().shareWeights() : n.getEngine().replicate();
+		}
+		pool = Executors.newFixedThreadPool(numThreads);
+	}
+
+	/**
+	 * Trains the network on the first count samples of a batch, split between the threads. An
+	 * empty batch leaves the network as it was.
+	 * @param inputs normalized inputs of each sample
+	 * @param actuals normalized expected outputs of each sample
+	 * @param count number of samples to train on
+	 */
+	public void train(double[][] inputs, double[][] actuals, int count)
+	{
+		if(count <= 0)
+		{
+			return;
+		}
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		if(hogwild)
+		{
+			trainHogwild(inputs, actuals, count);
+		}
+		else
+		{
+			trainSynchronous(inputs, actuals, count);
+		}
+		if(Metrics.ENABLED)
+		{
+			network.getMetrics().getTrainBatch().record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Each thread sums the gradients of its share of the batch on its replica, then each
+	 * thread reduces one slice of the weights over all replicas into the network.
+	 */
+	private void trainSynchronous(final double[][] inputs, final double[][] actuals, final int count)
+	{
+		final LayerEngine master = network.getEngine();
+		List<Callable<Void>> compute = new ArrayList<Callable<Void>>();
+		for(int t=0; t<numThreads; t++)
+		{
+			final LayerEngine replica = workers[t];
+			final int from = shardStart(t, count);
+			final int shard = shardStart(t+1, count) - from;
+			compute.add(new Callable<Void>()
+			{
+				public Void call()
+				{
+					for(int l=0; l<master.getNumLayers(); l++)
+					{
+						double[] weights = master.getLayer(l).getWeights();
+						System.arraycopy(weights, 0, replica.getLayer(l).getWeights(), 0, weights.length);
+					}
+					if(shard > 0)
+					{
+						replica.computeGradients(inputs, actuals, from, shard);
+					}
+					else
+					{
+						replica.clearGradients();
+					}
+					return null;
+				}
+			});
+		}
+		runAll(compute);
+
+		final double learningRate = network.getLearningRate();
+		final double scale = learningRate/count;
+		final long[] steps = new long[master.getNumLayers()];
+		for(int l=0; l<steps.length; l++)
+		{
+			//The reduced gradients and the optimizer's state are written by every thread, so
+			//they are created here first
+			DenseLayer layer = master.getLayer(l);
+			steps[l] = layer.nextUpdate();
+			layer.getOptimizerState();
+			if(layer.gradients == null)
+			{
+				layer.clearGradients();
+			}
+		}
+		List<Callable<Void>> reduce = new ArrayList<Callable<Void>>();
+		for(int t=0; t<numThreads; t++)
+		{
+			final int slice = t;
+			reduce.add(new Callable<Void>()
+			{
+				public Void call()
+				{
+					for(int l=0; l<master.getNumLayers(); l++)
+					{
+						DenseLayer layer = master.getLayer(l);
+						double[] weights = layer.getWeights();
+						int from = (int) ((long) weights.length*slice/numThreads);
+						int to = (int) ((long) weights.length*(slice+1)/numThreads);
+						boolean sgd = layer.getOptimizer() == Optimizer.SGD;
+						for(int w=from; w<to; w++)
+						{
+							double sum = 0;
+							for(int r=0; r<numThreads; r++)
+							{
+								sum = sum + workers[r].getLayer(l).gradients[w];
+							}
+							if(sgd)
+							{
+								weights[w] = weights[w] + (scale * sum);
+							}
+							else
+							{
+								layer.gradients[w] = sum;
+							}
+						}
+						//Every optimizer treats each weight on its own, so each thread updates its slice
+						if(!sgd)
+						{
+							layer.applyGradients(learningRate, count, from, to, steps[l]);
+						}
+					}
+					return null;
+				}
+			});
+		}
+		runAll(reduce);
+		network.countSamples(count);
+	}
+
+	/**
+	 * Each thread trains its share of the samples one at a time on the shared weights
+	 */
+	private void trainHogwild(final double[][] inputs, final double[][] actuals, final int count)
+	{
+		final double learningRate = network.getLearningRate();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int t=0; t<numThreads; t++)
+		{
+			final LayerEngine engine = workers[t];
+			final int from = shardStart(t, count);
+			final int to = shardStart(t+1, count);
+			tasks.add(new Callable<Void>()
+			{
+				public Void call()
+				{
+					for(int b=from; b<to; b++)
+					{
+						engine.setInputs(inputs[b]);
+						engine.feedForward();
+						engine.calculateError(actuals[b]);
+						engine.updateWeights(learningRate);
+					}
+					return null;
+				}
+			});
+		}
+		runAll(tasks);
+		network.countSamples(count);
+	}
+
+	/**
+	 * Index of the first sample of a thread's share of the batch
+	 * @param t the thread
+	 * @param count number of samples in the batch
+	 * @return index of the first sample
+	 */
+	private int shardStart(int t, int count)
+	{
+		return (int) ((long) count*t/numThreads);
+	}
+
+	/**
+	 * Runs the tasks on the pool and waits for all of them to finish
+	 * @param tasks
+	 */
+	private void runAll(List<Callable<Void>> tasks)
+	{
+		try
+		{
+			List<Future<Void>> results = pool.invokeAll(tasks);
+			for(Future<Void> result : results)
+			{
+				result.get();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Training was interrupted", e);
+		}
+		catch(ExecutionException e)
+		{
+			throw new IllegalStateException("Training failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Getter for the number of threads
+	 * @return numThreads
+	 */
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Stops the threads of this trainer
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+}
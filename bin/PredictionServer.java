@@ -0,0 +1,299 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.Channels;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves predictions of a trained network over connections to a port on the loopback address.
+ * Each request is a line holding a window of prices, the 4 days of inputs one after another,
+ * optionally after an id such as a symbol: "TECH,p1,p2,...,p40". The reply is a line with the
+ * id and the predicted prices, or a line starting with ERROR. Requests on one connection are
+ * answered in order, and may be sent without waiting for the replies.
+ *
+ * Each connection is served on a thread of its own: a virtual thread on Java 21 and later, so
+ * thousands of connections cost little, and a platform thread before. With batching on, the
+ * windows of all the connections are predicted together by a MicroBatcher; with it off, each
+ * connection predicts its own windows one at a time.
+ *
+ */
+public class PredictionServer implements Closeable
+{
+	private final Network network;
+	private final Runner variables;
+
+	//Gathers the windows of every connection into batches, or null to predict them one at a time
+	private final MicroBatcher batcher;
+
+	private final ServerSocket server;
+	private final ExecutorService connections;
+	private final boolean virtualThreads;
+	private final Thread acceptor;
+
+	//Connections being served, which are closed with the server
+	private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+
+	//Time from a request being read until its reply is ready
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * Starts serving a network
+	 * @param network a trained network, which must not be trained while it is served
+	 * @param port port on the loopback address, or 0 for any free one
+	 * @param maxBatch most windows predicted together, or 1 to turn batching off
+	 * @param maxWait longest a window waits for others to join its batch
+	 * @param unit unit of maxWait
+	 * @throws IOException if the port cannot be bound
+	 */
+	public PredictionServer(Network network, int port, int maxBatch, long maxWait, TimeUnit unit) throws IOException
+	{
+		this.network = network;
+		this.variables = network.getVariables();
+		this.server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+		this.batcher = maxBatch > 1 ? new MicroBatcher(network, maxBatch, maxWait, unit) : null;
+		ExecutorService virtual = newVirtualThreadExecutor();
+		virtualThreads = virtual != null;
+		connections = virtual != null ? virtual : Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			public Thread newThread(Runnable task)
+			{
+				Thread thread = new Thread(task, "prediction-connection");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		acceptor = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				accept();
+			}
+		}, "prediction-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * An executor that starts a virtual thread for each task. Virtual threads came in Java 21,
+	 * so the executor is looked up by reflection to keep building for Java 17.
+	 * @return the executor, or null if this Java has no virtual threads
+	 */
+	static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Accepts connections and hands each to a thread of its own until the server is closed
+	 */
+	private void accept()
+	{
+		try
+		{
+			while(true)
+			{
+				final Socket socket = server.accept();
+				open.add(socket);
+				connections.execute(new Runnable()
+				{
+					public void run()
+					{
+						serve(socket);
+					}
+				});
+			}
+		}
+		catch(IOException e)
+		{
+			//Closed
+		}
+	}
+
+	/**
+	 * Answers the requests of one connection until the client closes it
+	 * @param socket
+	 */
+	private void serve(Socket socket)
+	{
+		int numInputs = variables.getNumInputs();
+		int numOutputs = variables.getNumOutputs();
+		double[] window = new double[numInputs];
+		double[][] normalized = new double[1][numInputs];
+		double[][] outputs = new double[1][numOutputs];
+		double[] predicted = new double[numOutputs];
+		StringBuilder line = new StringBuilder();
+		try
+		{
+			socket.setTcpNoDelay(true);
+			PriceLoader loader = new PriceLoader(Channels.newChannel(socket.getInputStream()), numInputs, numOutputs);
+			PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false);
+			String id;
+			while((id = loader.nextTick(window)) != null)
+			{
+				long received = System.nanoTime();
+				line.setLength(0);
+				if(loader.getTickValues() != numInputs)
+				{
+					line.append("ERROR expected ").append(numInputs).append(" prices but got ").append(loader.getTickValues());
+				}
+				else
+				{
+					network.normalizeValues(window, normalized[0], variables.getDataMax(), variables.getDataMin());
+					if(batcher != null)
+					{
+						batcher.predict(normalized[0], outputs[0]);
+					}
+					else
+					{
+						network.predict(normalized, outputs, 1);
+					}
+					network.denormalizeValues(outputs[0], predicted, variables.getDataMax(), variables.getDataMin());
+					OnlineRunner.appendPrediction(line, id, predicted);
+					latency.record(System.nanoTime() - received);
+				}
+				out.println(line);
+				if(!loader.hasBufferedLine())
+				{
+					out.flush();
+				}
+			}
+			out.flush();
+		}
+		catch(SocketException e)
+		{
+			//Closed by the client or the server
+		}
+		catch(IOException e)
+		{
+			System.err.println("Dropped a connection: " + e.getMessage());
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(IllegalStateException e)
+		{
+			//The batcher closed with the server
+		}
+		finally
+		{
+			open.remove(socket);
+			try
+			{
+				socket.close();
+			}
+			catch(IOException e)
+			{
+				//Already closed
+			}
+		}
+	}
+
+	/**
+	 * Getter for the port the server listens on
+	 * @return port
+	 */
+	public int getPort()
+	{
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Whether connections are served on virtual threads
+	 * @return false on Java before 21, where they are served on platform threads
+	 */
+	public boolean isVirtualThreads()
+	{
+		return virtualThreads;
+	}
+
+	/**
+	 * Getter for the batcher
+	 * @return batcher, or null when batching is off
+	 */
+	public MicroBatcher getBatcher()
+	{
+		return batcher;
+	}
+
+	/**
+	 * Getter for the time from a request being read until its reply was ready
+	 * @return the histogram, in nanoseconds
+	 */
+	public LatencyHistogram getLatency()
+	{
+		return latency;
+	}
+
+	/**
+	 * Stops accepting connections and closes the ones open
+	 */
+	public void close() throws IOException
+	{
+		server.close();
+		for(Socket socket : open)
+		{
+			socket.close();
+		}
+		if(batcher != null)
+		{
+			batcher.close();
+		}
+		connections.shutdown();
+		try
+		{
+			acceptor.join();
+			connections.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Serves a saved network until the program is stopped.
+	 * Usage: PredictionServer checkpoint [port] [maxBatch] [maxWaitMicros]
+	 * @param args the saved network, the port (9009 by default), the most windows predicted
+	 * together (64 by default, 1 to turn batching off) and the longest a window waits for others
+	 * in microseconds (0 by default)
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String args[]) throws IOException, InterruptedException
+	{
+		if(args.length < 1)
+		{
+			System.err.println("Usage: PredictionServer checkpoint [port] [maxBatch] [maxWaitMicros]");
+			System.exit(1);
+		}
+		Network n = ModelCheckpoint.load(new File(args[0]));
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 9009;
+		int maxBatch = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+		long maxWait = args.length > 3 ? Long.parseLong(args[3]) : 0;
+		PredictionServer server = new PredictionServer(n, port, maxBatch, maxWait, TimeUnit.MICROSECONDS);
+		System.err.println("Serving " + args[0] + " on port " + server.getPort() + (maxBatch > 1 ? " in batches of up to " + maxBatch : "")
+				+ " on " + (server.isVirtualThreads() ? "virtual" : "platform") + " threads");
+		server.acceptor.join();
+	}
+}
@@ -0,0 +1,218 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Every week of a file of prices held in memory, normalized the same way Runner.train
+ * normalizes them. The inputs of all the weeks are kept in one flat array, one row of numInputs
+ * values per week, and the actuals in another, so a dataset of any number of weeks is two
+ * objects and the rows of consecutive weeks are next to each other in memory.
+ *
+ */
+public class PriceDataset
+{
+	//Number of values in the inputs and in the actuals of each week
+	private final int numInputs;
+	private final int numOutputs;
+
+	//Number of weeks in the dataset and number of weeks the arrays have room for
+	private int size;
+	private int capacity = 16;
+
+	//Normalized inputs and actuals, one row per week in the order of the file
+	private double[] inputs;
+	private double[] actuals;
+
+	//Bounds of the prices the values were normalized with
+	private final double dataMax;
+	private final double dataMin;
+
+	/**
+	 * Reads every complete week of a file of prices
+	 * @param file the file of prices
+	 * @param r the specifications of the network, giving the number of values and the data bounds
+	 * @return the dataset
+	 * @throws IOException
+	 */
+	public static PriceDataset load(File file, Runner r) throws IOException
+	{
+		PriceDataset data = new PriceDataset(r.getNumInputs(), r.getNumOutputs(), r.getDataMax(), r.getDataMin());
+		PriceLoader loader = new PriceLoader(file, r.getNumInputs(), r.getNumOutputs());
+		try
+		{
+			while(loader.nextWeek())
+			{
+				data.add(loader.getInputs(), loader.getActuals());
+			}
+		}
+		finally
+		{
+			loader.close();
+		}
+		data.trim();
+		return data;
+	}
+
+	/**
+	 * Finds the highest and lowest price in a file, for normalizing the prices of a sector with
+	 * bounds of its own
+	 * @param file the file of prices
+	 * @param r the specifications of the network, giving the most values on a line
+	 * @return the highest price and the lowest, or null if the file holds none
+	 * @throws IOException
+	 */
+	public static double[] findBounds(File file, Runner r) throws IOException
+	{
+		double[] values = new double[Math.max(r.getNumInputs(), r.getNumOutputs())];
+		double max = Double.NEGATIVE_INFINITY;
+		double min = Double.POSITIVE_INFINITY;
+		PriceLoader loader = new PriceLoader(file, r.getNumInputs(), r.getNumOutputs());
+		try
+		{
+			while(loader.nextTick(values) != null)
+			{
+				for(int i=0; i<loader.getTickValues(); i++)
+				{
+					max = Math.max(max, values[i]);
+					min = Math.min(min, values[i]);
+				}
+			}
+		}
+		finally
+		{
+			loader.close();
+		}
+		return max < min ? null : new double[] {max, min};
+	}
+
+	/**
+	 * Creates an empty dataset
+	 * @param numInputs number of values in the inputs of each week
+	 * @param numOutputs number of values in the actuals of each week
+	 * @param dataMax
+	 * @param dataMin
+	 */
+	public PriceDataset(int numInputs, int numOutputs, double dataMax, double dataMin)
+	{
+		this.numInputs = numInputs;
+		this.numOutputs = numOutputs;
+		this.dataMax = dataMax;
+		this.dataMin = dataMin;
+		inputs = new double[capacity*numInputs];
+		actuals = new double[capacity*numOutputs];
+	}
+
+	/**
+	 * Normalizes a week and adds it to the end of the dataset
+	 * @param weekInputs prices of the 4 input lines of the week
+	 * @param weekActuals prices of the line of actuals
+	 */
+	public void add(double[] weekInputs, double[] weekActuals)
+	{
+		if(size == capacity)
+		{
+			capacity = Math.max(2*capacity, 16);
+			inputs = Arrays.copyOf(inputs, capacity*numInputs);
+			actuals = Arrays.copyOf(actuals, capacity*numOutputs);
+		}
+		normalize(weekInputs, inputs, size*numInputs, numInputs);
+		normalize(weekActuals, actuals, size*numOutputs, numOutputs);
+		size++;
+	}
+
+	/**
+	 * Normalizes prices into a row of an array with the same formula as Network.normalizeValues
+	 */
+	private void normalize(double[] prices, double[] to, int offset, int length)
+	{
+		for(int i=0; i<length; i++)
+		{
+			to[offset + i] = (prices[i]-(dataMin))/((dataMax) - (dataMin));
+		}
+	}
+
+	/**
+	 * Shrinks the arrays to the number of weeks in the dataset
+	 */
+	private void trim()
+	{
+		capacity = size;
+		inputs = Arrays.copyOf(inputs, size*numInputs);
+		actuals = Arrays.copyOf(actuals, size*numOutputs);
+	}
+
+	/**
+	 * Copies the normalized inputs of a week into an array
+	 * @param week index of the week
+	 * @param to receives the numInputs values
+	 */
+	public void copyInputs(int week, double[] to)
+	{
+		System.arraycopy(inputs, week*numInputs, to, 0, numInputs);
+	}
+
+	/**
+	 * Copies the normalized actuals of a week into an array
+	 * @param week index of the week
+	 * @param to receives the numOutputs values
+	 */
+	public void copyActuals(int week, double[] to)
+	{
+		System.arraycopy(actuals, week*numOutputs, to, 0, numOutputs);
+	}
+
+	/**
+	 * Turns a normalized value back into a price
+	 * @param value
+	 * @return the price
+	 */
+	public double denormalize(double value)
+	{
+		return value*(dataMax-dataMin)+dataMin;
+	}
+
+	/**
+	 * Getter for the number of weeks in the dataset
+	 * @return size
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Getter for the number of values in the inputs of each week
+	 * @return numInputs
+	 */
+	public int getNumInputs()
+	{
+		return numInputs;
+	}
+
+	/**
+	 * Getter for the number of values in the actuals of each week
+	 * @return numOutputs
+	 */
+	public int getNumOutputs()
+	{
+		return numOutputs;
+	}
+
+	/**
+	 * Getter for the normalized inputs of every week, one row of numInputs values per week
+	 * @return inputs
+	 */
+	public double[] getInputs()
+	{
+		return inputs;
+	}
+
+	/**
+	 * Getter for the normalized actuals of every week, one row of numOutputs values per week
+	 * @return actuals
+	 */
+	public double[] getActuals()
+	{
+		return actuals;
+	}
+}
@@ -0,0 +1,452 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads a file of prices one week at a time in a single pass. Each week is 4 lines of inputs
+ * followed by a line of actuals, the same layout Runner trains on. The file is read through a
+ * channel into one direct buffer and the values are parsed straight from the bytes, so reading
+ * a week does not allocate. The inputs and actuals of each week are written into the same two
+ * arrays every time.
+ *
+ * A loader can also read an endless stream, such as standard input or a socket, one trading day
+ * at a time with nextTick, for OnlineLearner.
+ *
+ */
+public class PriceLoader implements Closeable
+{
+	//Number of lines of inputs that come before the line of actuals in each week
+	public static final int INPUT_LINES = 4;
+
+	//Size of the buffer the file is read into
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	//Powers of ten that are exactly representable as doubles
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	//Largest mantissa that can be converted to a double without rounding
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private ReadableByteChannel channel;
+	private ByteBuffer buffer;
+
+	//The inputs and actuals of the current week
+	private double[] inputs;
+	private double[] actuals;
+
+	//Characters of the value being parsed, kept for the rare value that needs Double.parseDouble
+	private byte[] token = new byte[64];
+	private int tokenLength;
+
+	//Mantissa, decimal exponent and sign of the value being parsed, and whether the mantissa
+	//holds every digit of it
+	private long mantissa;
+	private int exponent;
+	private boolean negative;
+	private boolean exact;
+
+	//Number of the line being read, for error messages
+	private long line = 1;
+
+	//Number of prices on the line nextTick read last
+	private int tickValues;
+
+	private long bytesRead;
+	private long startTime;
+	private long elapsedTime;
+
+	/**
+	 * Opens a file of prices for a network with the given number of inputs and outputs
+	 * @param file the file of prices
+	 * @param numInputs number of values in the 4 input lines of a week together
+	 * @param numOutputs number of values in the line of actuals
+	 * @throws IOException
+	 */
+	public PriceLoader(File file, int numInputs, int numOutputs) throws IOException
+	{
+		this(new FileInputStream(file).getChannel(), numInputs, numOutputs);
+	}
+
+	/**
+	 * Reads prices from a channel, such as one over standard input, a named pipe or a socket.
+	 * A read returns as soon as some bytes have arrived, so the lines of a stream are parsed as
+	 * they come in.
+	 * @param channel where the prices are read from, closed with the loader
+	 * @param numInputs number of values in the 4 input lines of a week together
+	 * @param numOutputs number of values in the line of actuals
+	 * @throws IllegalArgumentException if the channel is in non-blocking mode, where reads of
+	 * 0 bytes would have the loader spin
+	 */
+	public PriceLoader(ReadableByteChannel channel, int numInputs, int numOutputs)
+	{
+		if(channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking())
+		{
+			throw new IllegalArgumentException("The loader reads blocking channels only");
+		}
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.flip();
+		inputs = new double[numInputs];
+		actuals = new double[numOutputs];
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * Reads the next week of the file into the inputs and actuals
+	 * @return false once there is no complete week left in the file
+	 * @throws IOException if a line has more values than the network takes
+	 */
+	public boolean nextWeek() throws IOException
+	{
+		Arrays.fill(inputs, 0);
+		Arrays.fill(actuals, 0);
+		int counter = 0;
+		for(int i=0; i<INPUT_LINES; i++)
+		{
+			int count = readLine(inputs, counter);
+			if(count < 0)
+			{
+				return false;
+			}
+			counter += count;
+		}
+		return readLine(actuals, 0) >= 0;
+	}
+
+	/**
+	 * Reads the next trading day of a stream: one line of prices, optionally after the symbol
+	 * of the series it belongs to, such as "TECH,70.07,21.21,...". A first field that does not
+	 * start like a number is the symbol. Blank lines are skipped.
+	 * @param prices where the prices are stored
+	 * @return the symbol, "" if the line has none, or null at the end of the stream
+	 * @throws IOException if the line has more values than prices holds
+	 */
+	public String nextTick(double[] prices) throws IOException
+	{
+		int c = nextByte();
+		while(c == '\n' || c == '\r' || c == ' ' || c == '\t')
+		{
+			if(c == '\n')
+			{
+				line++;
+			}
+			c = nextByte();
+		}
+		if(c < 0)
+		{
+			return null;
+		}
+		String symbol = "";
+		if(c != '-' && c != '+' && c != '.' && (c < '0' || c > '9'))
+		{
+			tokenLength = 0;
+			while(c >= 0 && c != ',' && c != '\n' && c != '\r')
+			{
+				c = keep(c);
+			}
+			symbol = new String(token, 0, Math.min(tokenLength, token.length), StandardCharsets.ISO_8859_1).trim();
+		}
+		tickValues = readValues(c, prices, 0);
+		return symbol;
+	}
+
+	/**
+	 * Getter for the number of prices on the line nextTick read last
+	 * @return tickValues
+	 */
+	public int getTickValues()
+	{
+		return tickValues;
+	}
+
+	/**
+	 * Whether a whole line has already been read from the channel and waits in the buffer, so
+	 * the next nextTick will not wait for the stream. A server flushes its replies when it does not.
+	 * @return true if the buffer holds the end of a line
+	 */
+	public boolean hasBufferedLine()
+	{
+		for(int i=buffer.position(); i<buffer.limit(); i++)
+		{
+			if(buffer.get(i) == '\n')
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses the values of one line into the array. A field that is not a number ends the
+	 * values of the line, and empty fields (such as after a trailing comma) are skipped.
+	 * @param values where the values are stored
+	 * @param start position of the first value of the line
+	 * @return the number of values read, or -1 at the end of the file
+	 * @throws IOException
+	 */
+	private int readLine(double[] values, int start) throws IOException
+	{
+		int c = nextByte();
+		if(c < 0)
+		{
+			return -1;
+		}
+		return readValues(c, values, start);
+	}
+
+	/**
+	 * Parses the rest of a line whose first character has already been read
+	 * @param c first character
+	 * @param values where the values are stored
+	 * @param start position of the first value of the line
+	 * @return the number of values read
+	 * @throws IOException
+	 */
+	private int readValues(int c, double[] values, int start) throws IOException
+	{
+		int position = start;
+		boolean numeric = true;
+		while(c >= 0 && c != '\n')
+		{
+			while(c == ' ' || c == '\t' || c == '\r')
+			{
+				c = nextByte();
+			}
+			if(c == ',')
+			{
+				c = nextByte();
+				continue;
+			}
+			if(c < 0 || c == '\n')
+			{
+				break;
+			}
+			if(numeric)
+			{
+				c = parseValue(c);
+				while(c == ' ' || c == '\t' || c == '\r')
+				{
+					c = nextByte();
+				}
+				numeric = tokenLength > 0 && (c == ',' || c == '\n' || c < 0);
+				if(numeric)
+				{
+					if(position == values.length)
+					{
+						throw new IOException("Line " + line + " has more than " + values.length + " values");
+					}
+					values[position] = toDouble();
+					position++;
+					continue;
+				}
+			}
+			c = nextByte();
+		}
+		line++;
+		return position - start;
+	}
+
+	/**
+	 * Reads the characters of a number starting with the given character
+	 * @param c first character of the field
+	 * @return the character after the number
+	 * @throws IOException
+	 */
+	private int parseValue(int c) throws IOException
+	{
+		mantissa = 0;
+		exponent = 0;
+		negative = false;
+		exact = true;
+		tokenLength = 0;
+		boolean digits = false;
+		if(c == '-' || c == '+')
+		{
+			negative = c == '-';
+			c = keep(c);
+		}
+		while(c >= '0' && c <= '9')
+		{
+			addDigit(c);
+			digits = true;
+			c = keep(c);
+		}
+		if(c == '.')
+		{
+			c = keep(c);
+			while(c >= '0' && c <= '9')
+			{
+				addDigit(c);
+				exponent--;
+				digits = true;
+				c = keep(c);
+			}
+		}
+		if(digits && (c == 'e' || c == 'E'))
+		{
+			c = keep(c);
+			boolean negativeExponent = false;
+			if(c == '-' || c == '+')
+			{
+				negativeExponent = c == '-';
+				c = keep(c);
+			}
+			int e = 0;
+			boolean exponentDigits = false;
+			while(c >= '0' && c <= '9')
+			{
+				e = Math.min(e*10 + (c - '0'), 100000);
+				exponentDigits = true;
+				c = keep(c);
+			}
+			digits = exponentDigits;
+			exponent += negativeExponent ? -e : e;
+		}
+		if(!digits)
+		{
+			tokenLength = 0;
+		}
+		return c;
+	}
+
+	/**
+	 * Adds a digit to the mantissa, falling back to Double.parseDouble once it no longer fits exactly
+	 * @param c
+	 */
+	private void addDigit(int c)
+	{
+		if(mantissa < MAX_EXACT_MANTISSA/10)
+		{
+			mantissa = mantissa*10 + (c - '0');
+		}
+		else
+		{
+			exact = false;
+		}
+	}
+
+	/**
+	 * Keeps the character in the token and reads the next one
+	 * @param c
+	 * @return the next character
+	 * @throws IOException
+	 */
+	private int keep(int c) throws IOException
+	{
+		if(tokenLength < token.length)
+		{
+			token[tokenLength] = (byte) c;
+		}
+		else
+		{
+			exact = false;
+		}
+		tokenLength++;
+		return nextByte();
+	}
+
+	/**
+	 * Converts the parsed number to a double. Mantissas and exponents that are exactly
+	 * representable are multiplied or divided by a power of ten, which gives the correctly
+	 * rounded value; anything else goes through Double.parseDouble.
+	 * @return the value
+	 * @throws IOException if the number is too long to parse
+	 */
+	private double toDouble() throws IOException
+	{
+		if(exact && exponent >= -22 && exponent <= 22)
+		{
+			double value = exponent < 0 ? mantissa/POWERS_OF_TEN[-exponent] : mantissa*POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+		if(tokenLength > token.length)
+		{
+			throw new IOException("Value on line " + line + " is too long");
+		}
+		return Double.parseDouble(new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Reads the next byte of the file, refilling the buffer from the channel when it runs out.
+	 * On a stream the read waits for the next bytes to arrive.
+	 * @return the byte, or -1 at the end of the file
+	 * @throws IOException
+	 */
+	private int nextByte() throws IOException
+	{
+		if(!buffer.hasRemaining())
+		{
+			//Only -1 is the end of the stream; a read of 0 bytes is tried again
+			int read;
+			do
+			{
+				buffer.clear();
+				read = channel.read(buffer);
+				buffer.flip();
+			}
+			while(read == 0);
+			if(read < 0)
+			{
+				return -1;
+			}
+			bytesRead += read;
+		}
+		return buffer.get() & 0xff;
+	}
+
+	/**
+	 * Getter for the inputs of the current week
+	 * @return inputs
+	 */
+	public double[] getInputs()
+	{
+		return inputs;
+	}
+
+	/**
+	 * Getter for the actuals of the current week
+	 * @return actuals
+	 */
+	public double[] getActuals()
+	{
+		return actuals;
+	}
+
+	/**
+	 * Getter for the number of bytes read from the file so far
+	 * @return bytesRead
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * The rate the file has been read at, from opening it until now or until it was closed
+	 * @return megabytes per second
+	 */
+	public double getMegabytesPerSecond()
+	{
+		long elapsed = channel.isOpen() ? System.nanoTime() - startTime : elapsedTime;
+		return (bytesRead/1e6)/(elapsed/1e9);
+	}
+
+	/**
+	 * Closes the file
+	 */
+	public void close() throws IOException
+	{
+		if(channel.isOpen())
+		{
+			elapsedTime = System.nanoTime() - startTime;
+			channel.close();
+		}
+	}
+}
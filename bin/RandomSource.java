@@ -0,0 +1,189 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Random numbers for the weights and the order of training, derived from one master seed. Instead
+ * of every caller drawing from one shared generator, each use asks for its own stream by number,
+ * such as one stream per layer or per thread. A stream depends only on the master seed and its
+ * number, so streams can be drawn from on any threads, in any order, without locking, and the
+ * numbers come out the same on every run.
+ *
+ * fill draws a large array in chunks of CHUNK values, each from the stream of its own chunk, so an
+ * array filled by many threads holds the same values as one filled by a single thread.
+ *
+ */
+public class RandomSource
+{
+	//The seed SingletonRandom has always used, so runs are repeatable unless a seed is chosen
+	public static final long DEFAULT_SEED = 123456789;
+
+	//Numbers of the streams of the parts of the library that draw random numbers, well away from
+	//the numbers of the layers
+	public static final long SHUFFLE = 1L << 40;
+	public static final long SEARCH = 1L << 41;
+
+	//Values drawn from each chunk's stream by fill, and the fewest values worth splitting between threads
+	static final int CHUNK = 1 << 14;
+	static final int PARALLEL_THRESHOLD = 8*CHUNK;
+
+	//Odd constant of the golden ratio that spreads stream numbers apart before they are mixed
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final long seed;
+
+	/**
+	 * Creates the source of every stream of the given master seed
+	 * @param seed
+	 */
+	public RandomSource(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * The stream with the given number. Asking twice for the same number gives two generators
+	 * that draw the same values.
+	 * @param id number of the stream, such as the number of a layer or thread
+	 * @return a generator only the caller uses
+	 */
+	public SplittableRandom stream(long id)
+	{
+		return new SplittableRandom(mix(seed + mix(id*GOLDEN_GAMMA)));
+	}
+
+	/**
+	 * The stream of one part of the stream with the given number, such as one chunk of a layer
+	 * @param id number of the stream
+	 * @param part number of the part
+	 * @return a generator only the caller uses
+	 */
+	public SplittableRandom stream(long id, long part)
+	{
+		return new SplittableRandom(mix(mix(seed + mix(id*GOLDEN_GAMMA)) + part*GOLDEN_GAMMA));
+	}
+
+	/**
+	 * The finalizer of SplitMix64, which turns numbers that differ in a few bits into seeds that
+	 * differ in about half of them
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30))*0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27))*0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Fills an array with values spread evenly between min and max, drawn from the chunks of the
+	 * stream with the given number. Arrays of at least PARALLEL_THRESHOLD values are split
+	 * between the threads of the common fork-join pool.
+	 * @param id number of the stream
+	 * @param values the array to fill
+	 * @param min
+	 * @param max
+	 */
+	public void fill(long id, double[] values, double min, double max)
+	{
+		fill(id, values, min, max, values.length >= PARALLEL_THRESHOLD ? ForkJoinPool.commonPool() : null);
+	}
+
+	/**
+	 * Fills an array the same way as fill(id, values, min, max), splitting it between the threads
+	 * of the given pool. The values do not depend on the pool.
+	 * @param id number of the stream
+	 * @param values the array to fill
+	 * @param min
+	 * @param max
+	 * @param pool the threads to split the array between, or null to fill it on the calling thread
+	 */
+	public void fill(long id, double[] values, double min, double max, ForkJoinPool pool)
+	{
+		int chunks = (values.length + CHUNK - 1)/CHUNK;
+		FillTask task = new FillTask(this, id, values, min, max, 0, chunks);
+		if(pool == null)
+		{
+			task.fillChunks();
+		}
+		else
+		{
+			pool.invoke(task);
+		}
+	}
+
+	/**
+	 * Fills a range of an array with values spread evenly between min and max
+	 * @param random the generator to draw from
+	 * @param values the array to fill
+	 * @param from first index filled
+	 * @param to index after the last one filled
+	 * @param min
+	 * @param max
+	 */
+	public static void fill(SplittableRandom random, double[] values, int from, int to, double min, double max)
+	{
+		double range = max - min;
+		for(int i=from; i<to; i++)
+		{
+			values[i] = min + range*random.nextDouble();
+		}
+	}
+
+	/**
+	 * Getter for the master seed
+	 * @return seed
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * Fills a range of the chunks of an array, splitting it in half between the threads of the
+	 * pool for as long as each half has at least PARALLEL_THRESHOLD values
+	 */
+	private static class FillTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final RandomSource source;
+		private final long id;
+		private final double[] values;
+		private final double min;
+		private final double max;
+		private final int from;
+		private final int to;
+
+		FillTask(RandomSource source, long id, double[] values, double min, double max, int from, int to)
+		{
+			this.source = source;
+			this.id = id;
+			this.values = values;
+			this.min = min;
+			this.max = max;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute()
+		{
+			int middle = (from + to) >>> 1;
+			if((long) (to - from)*CHUNK < 2L*PARALLEL_THRESHOLD)
+			{
+				fillChunks();
+			}
+			else
+			{
+				invokeAll(new FillTask(source, id, values, min, max, from, middle), new FillTask(source, id, values, min, max, middle, to));
+			}
+		}
+
+		void fillChunks()
+		{
+			for(int c=from; c<to; c++)
+			{
+				fill(source.stream(id, c), values, c*CHUNK, (int) Math.min(values.length, (c+1L)*CHUNK), min, max);
+			}
+		}
+	}
+}
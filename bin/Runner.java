@@ -1,6 +1,8 @@
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 /**
  * The specifications of this particular neural network
@@ -10,124 +12,277 @@ import java.util.Scanner;
 public class Runner
 {
 	//Min and max weight are used to randomize initial weights of the neurons
-	private static double minWeight = -0.5;
-	private static double maxWeight = 0.5;
+	private double minWeight = -0.5;
+	private double maxWeight = 0.5;
+	//Master seed of the random initial weights and the order EpochTrainer trains the weeks in
+	private long seed = RandomSource.DEFAULT_SEED;
 
 	//4 inputs represents the first 4 trading days of week
-	private static int numInputs = 40;
+	private int numInputs = 40;
 	//1 output represents predicted 5th day closing price for that stock
-	private static int numOutputs = 10;
-	//Starts at 50 hidden layer neurons but can be optimized later
-	private static int numHidden = 17;
+	private int numOutputs = 10;
+	//Starts at 50 hidden layer neurons but can be optimized later. Each entry is the number
+	//of neurons in one hidden layer, from the input side to the output side.
+	private int[] hiddenSizes = {17};
 	//The learning rate that is used in the formula that updates the weights 1.65
-	private static double learningRate = .7;
+	private double learningRate = .7;
+	//Number of weekly windows trained together before the weights are updated (1 updates after every week)
+	private int batchSize = 1;
+	//Number of threads each batch is split between, and whether they update the weights without locking
+	private int numThreads = 1;
+	private boolean hogwild = false;
+	//Transfer functions of the hidden and output neurons
+	private Activation hiddenActivation = Activation.SIGMOID;
+	private Activation outputActivation = Activation.SIGMOID;
+	//Whether networks keep their weights and activations in floats, and add up sums in doubles when they do
+	private boolean singlePrecision = false;
+	private boolean doubleAccumulation = false;
+	//Number of weights a layer needs per thread before feedForward splits its neurons between the
+	//threads of the common fork-join pool (0 never splits)
+	private int parallelForwardThreshold = 0;
+	//How the delta weights change the weights, and how the learning rate changes as the network trains
+	private Optimizer optimizer = Optimizer.SGD;
+	private Schedule schedule = Schedule.CONSTANT;
+	//Most training passes EpochTrainer makes over the data, the share of the weeks it holds
+	//back to validate on, and the number of passes without a better validation error it
+	//waits before it stops
+	private int epochs = 1;
+	private double validationFraction = 0;
+	private int patience = 0;
 
 	private static double maxNorm = 2.0;
 	private static double minNorm = 1.0;
 
-	private static double dataMax = 348.48;
-	private static double dataMin = 8.92;
+	//Bounds of the prices in the data, used to normalize them between 0 and 1
+	private double dataMax = 348.48;
+	private double dataMin = 8.92;
 	
 
+	/**
+	 * Creates the specifications with the default number of neurons in each layer
+	 */
+	public Runner()
+	{
+	}
+
+	/**
+	 * Creates the specifications with the given number of neurons in each layer
+	 * @param numInputs
+	 * @param numHidden
+	 * @param numOutputs
+	 */
+	public Runner(int numInputs, int numHidden, int numOutputs)
+	{
+		this(numInputs, new int[] {numHidden}, numOutputs);
+	}
+
+	/**
+	 * Creates the specifications of a network with any number of hidden layers
+	 * @param numInputs
+	 * @param hiddenSizes number of neurons in each hidden layer, from the input side to the output side
+	 * @param numOutputs
+	 */
+	public Runner(int numInputs, int[] hiddenSizes, int numOutputs)
+	{
+		this.numInputs = numInputs;
+		this.numOutputs = numOutputs;
+		setHiddenSizes(hiddenSizes);
+	}
+
+	/**
+	 * Creates a copy of the specifications, which can then be changed without changing the original
+	 * @param other
+	 */
+	public Runner(Runner other)
+	{
+		minWeight = other.minWeight;
+		maxWeight = other.maxWeight;
+		seed = other.seed;
+		numInputs = other.numInputs;
+		numOutputs = other.numOutputs;
+		hiddenSizes = other.hiddenSizes.clone();
+		learningRate = other.learningRate;
+		batchSize = other.batchSize;
+		numThreads = other.numThreads;
+		hogwild = other.hogwild;
+		hiddenActivation = other.hiddenActivation;
+		outputActivation = other.outputActivation;
+		singlePrecision = other.singlePrecision;
+		doubleAccumulation = other.doubleAccumulation;
+		parallelForwardThreshold = other.parallelForwardThreshold;
+		optimizer = other.optimizer;
+		schedule = other.schedule;
+		epochs = other.epochs;
+		validationFraction = other.validationFraction;
+		patience = other.patience;
+		dataMax = other.dataMax;
+		dataMin = other.dataMin;
+	}
 
 	/**
 	 * Main method that puts together the neural network with the given parameters above.
-	 * @param args
-	 * @throws FileNotFoundException 
+	 * The training options can be changed with system properties, see setFromProperties. With
+	 * more than 1 epoch or weeks held back for validation the network is trained with
+	 * EpochTrainer, and otherwise with one pass over the file.
+	 * @param args optional path of the file of prices to train on
+	 * @throws IOException 
+	 * @throws JMException if the metrics cannot be registered with JMX
 	 */
-	public static void main(String args[]) throws FileNotFoundException
+	public static void main(String args[]) throws IOException, JMException
 	{
 		Runner r = new Runner();
+		r.setFromProperties(System.getProperties());
 		Network n = new Network(r);
 
-		Scanner scan = new Scanner(new File("//Users/ARauch/Documents/CSC499/TechnologyIndustry.csv"));
-		scan.useDelimiter(",");
-
-		Scanner endLine = new Scanner(new File("//Users/ARauch/Documents/CSC499/TechnologyIndustry.csv"));
-		endLine.useDelimiter(",");
+		//With -Dnnet.metrics=true the metrics are registered with JMX and printed every 10 seconds,
+		//as JSON lines with -Dnnet.metrics.json=true
+		MetricsReporter reporter = null;
+		if(Metrics.ENABLED)
+		{
+			n.getMetrics().register("Runner");
+			reporter = new MetricsReporter(n.getMetrics(), System.err, Boolean.getBoolean("nnet.metrics.json"));
+			reporter.start(10, TimeUnit.SECONDS);
+		}
 
-		Scanner endFile = new Scanner(new File("//Users/ARauch/Documents/CSC499/TechnologyIndustry.csv"));
+		String path = args.length > 0 ? args[0] : "//Users/ARauch/Documents/CSC499/TechnologyIndustry.csv";
+		try
+		{
+			if(r.getEpochs() > 1 || r.getValidationFraction() > 0)
+			{
+				EpochTrainer trainer = new EpochTrainer(n, PriceDataset.load(new File(path), r));
+				trainer.train();
+				System.out.println("Trained " + trainer.getEpochs() + " passes, best validation error "
+						+ trainer.getBestError() + "% after pass " + (trainer.getBestEpoch() + 1));
+			}
+			else
+			{
+				train(r, n, new File(path));
+			}
+		}
+		finally
+		{
+			if(reporter != null)
+			{
+				reporter.stop();
+			}
+		}
 
-		//Input positions
-		int counter = 0;
-		//Actuals positions
-		int position = 0;
-		//Keeps track of the iterations for inputs vs. the actuals in the file
-		int index = 0;
+		double[] predictedOuts = new double[r.getNumOutputs()];
+		for(int i=0; i<predictedOuts.length; i++)
+		{
+			predictedOuts[i] = n.outputNeurons.get(i).getOutput();
+		}
+		n.denormalizeValues(predictedOuts, predictedOuts, r.getDataMax(), r.getDataMin());
+		double[] reals = {70.07,	21.21,	39.29,	21.08,	28.3,	348.48,	33.79,	26.57,	48.75,	35.46};
+		System.out.println("DJIA Training Results:");
+		for(int i=0; i<predictedOuts.length; i++)
+		{
+//			System.out.println(predictedOuts[i]);
+			System.out.println(calculatePercError(reals[i], predictedOuts[i]));
+		}
+	}
 
-		//Inputs that are passed through the network
-		double[] in = null;
-		//Actuals that are used to determine the error
-		double[] actuals = null;
+	/**
+	 * Sets the training options found in the given properties, leaving the others as they are:
+	 *   nnet.epochs       most training passes EpochTrainer makes over the data
+	 *   nnet.validation   share of the weeks held back to validate on
+	 *   nnet.patience     passes without a better validation error before training stops
+	 *   nnet.batch        weeks trained together before the weights are updated
+	 *   nnet.threads      threads each batch is split between
+	 *   nnet.hogwild      true for the threads to update the weights without locking
+	 * such as java -Dnnet.epochs=50 -Dnnet.validation=0.2 -Dnnet.patience=5 Runner prices.csv
+	 * @param properties the properties, such as System.getProperties()
+	 * @throws NumberFormatException if a value is not a number
+	 * @throws IllegalArgumentException if a value is out of range
+	 */
+	public void setFromProperties(Properties properties)
+	{
+		setEpochs(Integer.parseInt(properties.getProperty("nnet.epochs", String.valueOf(epochs))));
+		setValidation(Double.parseDouble(properties.getProperty("nnet.validation", String.valueOf(validationFraction))),
+				Integer.parseInt(properties.getProperty("nnet.patience", String.valueOf(patience))));
+		setBatchSize(Integer.parseInt(properties.getProperty("nnet.batch", String.valueOf(batchSize))));
+		setNumThreads(Integer.parseInt(properties.getProperty("nnet.threads", String.valueOf(numThreads))));
+		setHogwild(Boolean.parseBoolean(properties.getProperty("nnet.hogwild", String.valueOf(hogwild))));
+	}
 
-		while(endFile.hasNextLine())
+	/**
+	 * Makes one training pass over a file of prices. Every 4 lines are the inputs of a week and
+	 * the 5th line holds the actuals the network is trained against.
+	 * @param r the specifications of the network
+	 * @param n the network to train
+	 * @param data the file of prices
+	 * @throws IOException
+	 */
+	public static void train(Runner r, Network n, File data) throws IOException
+	{
+		PriceLoader loader = new PriceLoader(data, r.getNumInputs(), r.getNumOutputs());
+		ParallelTrainer trainer = null;
+		if(r.getNumThreads() > 1)
 		{
-			in = new double[r.getNumInputs()];
-			while((index%4 != 0 || index==0) && endLine.hasNextLine())
-			{
-				while(endLine.hasNextDouble())
-				{
-					in[counter] = scan.nextDouble();
-					counter++;
-					endLine.nextDouble();
-				}
-
-				endLine.nextLine();
-				scan.nextLine();
-				index++;
-			}
-			double[] temp = n.normalizeValues(in, dataMax, dataMin);
-			n.setInputs(temp);
+			trainer = new ParallelTrainer(n, r.getNumThreads(), r.isHogwild());
+		}
 
-			n.feedForward();
-			counter = 0;
+		//Normalized windows waiting to be trained as one batch. The rows are reused for every
+		//batch, so training does not allocate once the file is open.
+		double[][] batchInputs = new double[r.getBatchSize()][r.getNumInputs()];
+		double[][] batchActuals = new double[r.getBatchSize()][r.getNumOutputs()];
+		int batchCount = 0;
 
-			actuals = new double[r.getNumOutputs()];
-			while((index%4 == 0 && index!=0) && endLine.hasNextLine())
+		try
+		{
+			while(loader.nextWeek())
 			{
-				while(endLine.hasNextDouble())
+				double[] temp = batchInputs[batchCount];
+				double[] tempActuals = batchActuals[batchCount];
+				n.normalizeValues(loader.getInputs(), temp, r.getDataMax(), r.getDataMin());
+				n.normalizeValues(loader.getActuals(), tempActuals, r.getDataMax(), r.getDataMin());
+				if(r.getBatchSize() == 1 && trainer == null)
 				{
-					actuals[position] = scan.nextDouble();
-					position++;
-					endLine.nextDouble();
+					n.setInputs(temp);
+					n.feedForward();
+					n.setActuals(tempActuals);
+					n.calculateError();
+					n.updateWeights();
 				}
-				endLine.nextLine();
-				scan.nextLine();
-				index++;
-				int x = 5;
-				while(x>0)
+				else
 				{
-					endFile.nextLine();
-					x--;
+					batchCount++;
+					if(batchCount == r.getBatchSize())
+					{
+						trainBatch(n, trainer, batchInputs, batchActuals, batchCount);
+						batchCount = 0;
+					}
 				}
-				double[] tempActuals = n.normalizeValues(actuals, dataMax, dataMin);
-				n.setActuals(tempActuals);
-
-
-				n.calculateError();
-				n.updateWeights();
 			}
-
-			position = 0;
-			index = 0;
-
+			//Train on the weeks left over that did not fill a whole batch
+			if(batchCount > 0)
+			{
+				trainBatch(n, trainer, batchInputs, batchActuals, batchCount);
+			}
+		}
+		finally
+		{
+			loader.close();
+			n.syncWeights();
+			if(trainer != null)
+			{
+				trainer.shutdown();
+			}
 		}
-		scan.close();
-		endLine.close();
-		endFile.close();
+	}
 
-		double[] tempPredictedOuts = new double[r.getNumOutputs()];
-		for(int i=0; i<tempPredictedOuts.length; i++)
+	/**
+	 * Trains a batch on the calling thread, or split between the threads of the trainer
+	 */
+	private static void trainBatch(Network n, ParallelTrainer trainer, double[][] inputs, double[][] actuals, int count)
+	{
+		if(trainer == null)
 		{
-			tempPredictedOuts[i] = n.outputNeurons.get(i).getOutput();
+			n.trainBatch(inputs, actuals, count);
 		}
-		double[] predictedOuts  = n.denormalizeValues(tempPredictedOuts, dataMax, dataMin);
-		double[] reals = {70.07,	21.21,	39.29,	21.08,	28.3,	348.48,	33.79,	26.57,	48.75,	35.46};
-		System.out.println("DJIA Training Results:");
-		for(int i=0; i<predictedOuts.length; i++)
+		else
 		{
-//			System.out.println(predictedOuts[i]);
-			System.out.println(calculatePercError(reals[i], predictedOuts[i]));
+			trainer.train(inputs, actuals, count);
 		}
 	}
 
@@ -156,6 +311,21 @@ public class Runner
 		return maxWeight;
 	}
 
+	/**
+	 * Setter for the range the initial weights are randomized in
+	 * @param minWeight lowest initial weight
+	 * @param maxWeight highest initial weight
+	 */
+	public void setWeightRange(double minWeight, double maxWeight)
+	{
+		if(!(minWeight < maxWeight))
+		{
+			throw new IllegalArgumentException("The lowest initial weight must be below the highest");
+		}
+		this.minWeight = minWeight;
+		this.maxWeight = maxWeight;
+	}
+
 	/**
 	 * Gets the number of inputs of the network
 	 * @return numInputs
@@ -175,12 +345,55 @@ public class Runner
 	}
 
 	/**
-	 * Gets the number of neurons in hidden layer
+	 * Gets the number of neurons in hidden layer, which is the first hidden layer when
+	 * there are several
 	 * @return numHidden
 	 */
 	public int getNumHidden()
 	{
-		return numHidden;
+		return hiddenSizes[0];
+	}
+
+	/**
+	 * Gets the number of neurons in each hidden layer
+	 * @return hiddenSizes, from the input side to the output side
+	 */
+	public int[] getHiddenSizes()
+	{
+		return hiddenSizes.clone();
+	}
+
+	/**
+	 * Sets the number of neurons in each hidden layer
+	 * @param hiddenSizes from the input side to the output side
+	 */
+	public void setHiddenSizes(int... hiddenSizes)
+	{
+		if(hiddenSizes.length == 0)
+		{
+			throw new IllegalArgumentException("A network needs at least 1 hidden layer");
+		}
+		for(int size : hiddenSizes)
+		{
+			if(size < 1)
+			{
+				throw new IllegalArgumentException("Every hidden layer needs at least 1 neuron");
+			}
+		}
+		this.hiddenSizes = hiddenSizes.clone();
+	}
+
+	/**
+	 * Gets the number of neurons in every layer
+	 * @return the size of the input layer, each hidden layer, then the output layer
+	 */
+	public int[] getLayerSizes()
+	{
+		int[] sizes = new int[hiddenSizes.length + 2];
+		sizes[0] = numInputs;
+		System.arraycopy(hiddenSizes, 0, sizes, 1, hiddenSizes.length);
+		sizes[sizes.length-1] = numOutputs;
+		return sizes;
 	}
 
 	/**
@@ -192,6 +405,327 @@ public class Runner
 		return learningRate;
 	}
 
+	/**
+	 * Setter for the learning rate. Networks read it every time they train, so it takes effect
+	 * for networks already created as well.
+	 * @param learningRate
+	 */
+	public void setLearningRate(double learningRate)
+	{
+		if(!(learningRate > 0))
+		{
+			throw new IllegalArgumentException("Learning rate must be above 0");
+		}
+		this.learningRate = learningRate;
+	}
+
+	/**
+	 * Getter for the number of weekly windows trained together in one batch
+	 * @return batchSize
+	 */
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/**
+	 * Setter for the number of weekly windows trained together in one batch
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		if(batchSize < 1)
+		{
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Getter for the number of threads each batch is split between
+	 * @return numThreads
+	 */
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Setter for the number of threads each batch is split between
+	 * @param numThreads
+	 */
+	public void setNumThreads(int numThreads)
+	{
+		if(numThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Whether the threads train the shared weights without locking instead of averaging
+	 * their gradients every batch
+	 * @return hogwild
+	 */
+	public boolean isHogwild()
+	{
+		return hogwild;
+	}
+
+	/**
+	 * Setter for whether the threads train the shared weights without locking
+	 * @param hogwild
+	 */
+	public void setHogwild(boolean hogwild)
+	{
+		this.hogwild = hogwild;
+	}
+
+	/**
+	 * Getter for the transfer function of the hidden neurons
+	 * @return hiddenActivation
+	 */
+	public Activation getHiddenActivation()
+	{
+		return hiddenActivation;
+	}
+
+	/**
+	 * Getter for the transfer function of the output neurons
+	 * @return outputActivation
+	 */
+	public Activation getOutputActivation()
+	{
+		return outputActivation;
+	}
+
+	/**
+	 * Setter for the transfer functions of the neurons. They take effect for networks
+	 * created afterwards.
+	 * @param hiddenActivation transfer function of the neurons of every hidden layer
+	 * @param outputActivation transfer function of the output neurons
+	 */
+	public void setActivations(Activation hiddenActivation, Activation outputActivation)
+	{
+		if(hiddenActivation == null || outputActivation == null)
+		{
+			throw new IllegalArgumentException("Activations cannot be null");
+		}
+		this.hiddenActivation = hiddenActivation;
+		this.outputActivation = outputActivation;
+	}
+
+	/**
+	 * Whether networks do their math in single precision
+	 * @return singlePrecision
+	 */
+	public boolean isSinglePrecision()
+	{
+		return singlePrecision;
+	}
+
+	/**
+	 * Whether single precision networks add up their sums in doubles
+	 * @return doubleAccumulation
+	 */
+	public boolean isDoubleAccumulation()
+	{
+		return doubleAccumulation;
+	}
+
+	/**
+	 * Setter for the precision networks do their math in. Single precision halves the memory
+	 * of the weights and the bytes read on every pass. It takes effect for networks created
+	 * afterwards.
+	 * @param singlePrecision true to keep weights, outputs and errors in floats
+	 * @param doubleAccumulation true to add up sums in doubles, when singlePrecision is true
+	 */
+	public void setPrecision(boolean singlePrecision, boolean doubleAccumulation)
+	{
+		if(doubleAccumulation && !singlePrecision)
+		{
+			throw new IllegalArgumentException("Double accumulation needs single precision");
+		}
+		this.singlePrecision = singlePrecision;
+		this.doubleAccumulation = doubleAccumulation;
+	}
+
+	/**
+	 * Getter for the number of weights a layer needs per thread before feedForward splits it
+	 * between threads
+	 * @return parallelForwardThreshold, or 0 when layers are never split
+	 */
+	public int getParallelForwardThreshold()
+	{
+		return parallelForwardThreshold;
+	}
+
+	/**
+	 * Setter for the number of weights a layer needs per thread before feedForward splits its
+	 * neurons between the threads of the common fork-join pool. Splitting only pays off for
+	 * wide layers; see ParallelForwardReport for where it does on a machine. Single precision
+	 * networks are not split. It takes effect for networks created afterwards.
+	 * @param parallelForwardThreshold least number of weights per thread, or 0 to never split
+	 */
+	public void setParallelForwardThreshold(int parallelForwardThreshold)
+	{
+		if(parallelForwardThreshold < 0)
+		{
+			throw new IllegalArgumentException("Threshold cannot be negative");
+		}
+		this.parallelForwardThreshold = parallelForwardThreshold;
+	}
+
+	/**
+	 * Getter for the master seed of the random numbers of networks and their training
+	 * @return seed
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * Setter for the master seed of the random numbers of networks and their training. Networks
+	 * created with the same seed start with the same weights. It takes effect for networks
+	 * created afterwards.
+	 * @param seed
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * Getter for the rule the delta weights change the weights by
+	 * @return optimizer
+	 */
+	public Optimizer getOptimizer()
+	{
+		return optimizer;
+	}
+
+	/**
+	 * Setter for the rule the delta weights change the weights by. Optimizers other than plain
+	 * gradient descent usually need a much smaller learning rate than the default; see
+	 * OptimizerReport. It takes effect for networks created afterwards.
+	 * @param optimizer
+	 */
+	public void setOptimizer(Optimizer optimizer)
+	{
+		this.optimizer = optimizer;
+	}
+
+	/**
+	 * Getter for how the learning rate changes as the network trains
+	 * @return schedule
+	 */
+	public Schedule getSchedule()
+	{
+		return schedule;
+	}
+
+	/**
+	 * Setter for how the learning rate changes as the network trains
+	 * @param schedule
+	 */
+	public void setSchedule(Schedule schedule)
+	{
+		this.schedule = schedule;
+	}
+
+	/**
+	 * Getter for the most training passes EpochTrainer makes over the data
+	 * @return epochs
+	 */
+	public int getEpochs()
+	{
+		return epochs;
+	}
+
+	/**
+	 * Setter for the most training passes EpochTrainer makes over the data. Runner.main trains
+	 * with EpochTrainer when it is more than 1.
+	 * @param epochs
+	 */
+	public void setEpochs(int epochs)
+	{
+		if(epochs < 1)
+		{
+			throw new IllegalArgumentException("Number of epochs must be at least 1");
+		}
+		this.epochs = epochs;
+	}
+
+	/**
+	 * Getter for the share of the weeks EpochTrainer holds back to validate on
+	 * @return validationFraction
+	 */
+	public double getValidationFraction()
+	{
+		return validationFraction;
+	}
+
+	/**
+	 * Getter for the number of passes without a better validation error EpochTrainer waits before it stops
+	 * @return patience, or 0 when it never stops early
+	 */
+	public int getPatience()
+	{
+		return patience;
+	}
+
+	/**
+	 * Setter for early stopping. EpochTrainer holds back the last weeks of the data, measures
+	 * the error of the network on them after every pass, and stops once the error has not
+	 * improved for the given number of passes.
+	 * @param validationFraction share of the weeks to validate on, from 0 up to but not including 1
+	 * @param patience number of passes to wait for a better error, or 0 to never stop early
+	 */
+	public void setValidation(double validationFraction, int patience)
+	{
+		if(validationFraction < 0 || validationFraction >= 1)
+		{
+			throw new IllegalArgumentException("Validation fraction must be at least 0 and less than 1");
+		}
+		if(patience < 0)
+		{
+			throw new IllegalArgumentException("Patience cannot be negative");
+		}
+		this.validationFraction = validationFraction;
+		this.patience = patience;
+	}
+
+	/**
+	 * Getter for the highest price in the data
+	 * @return dataMax
+	 */
+	public double getDataMax()
+	{
+		return dataMax;
+	}
+
+	/**
+	 * Getter for the lowest price in the data
+	 * @return dataMin
+	 */
+	public double getDataMin()
+	{
+		return dataMin;
+	}
+
+	/**
+	 * Setter for the bounds of the prices in the data that they are normalized with
+	 * @param dataMax highest price
+	 * @param dataMin lowest price
+	 */
+	public void setDataBounds(double dataMax, double dataMin)
+	{
+		this.dataMax = dataMax;
+		this.dataMin = dataMin;
+	}
+
 	/**
 	 * Getter for the maximum normalized value
 	 * @return maxNorm
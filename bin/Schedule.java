@@ -0,0 +1,153 @@
+/**
+ * How the learning rate changes as a network trains. The rate is worked out from the learning
+ * rate of the Runner and the number of samples the network has trained on so far, so the same
+ * schedule works whether the samples are trained one at a time or in batches.
+ *
+ */
+public abstract class Schedule
+{
+	//The learning rate of the Runner at every sample
+	public static final Schedule CONSTANT = new Constant();
+
+	/**
+	 * The learning rate after the given number of samples
+	 * @param learningRate the learning rate of the Runner
+	 * @param samples number of samples trained on so far
+	 * @return the learning rate to train the next samples with
+	 */
+	public abstract double rate(double learningRate, long samples);
+
+	/**
+	 * A learning rate that is multiplied by a factor each time a number of samples have been trained
+	 * @param every number of samples between drops, such as the number of weeks in a pass
+	 * @param factor what the rate is multiplied by at each drop, such as 0.5
+	 * @return the schedule
+	 */
+	public static Schedule step(long every, double factor)
+	{
+		checkArguments(every, factor);
+		return new Step(every, factor);
+	}
+
+	/**
+	 * A learning rate that falls smoothly by a factor every number of samples, so that it is
+	 * multiplied by factor^(samples/every)
+	 * @param every number of samples over which the rate falls by the factor
+	 * @param factor what the rate is multiplied by over every samples
+	 * @return the schedule
+	 */
+	public static Schedule exponential(long every, double factor)
+	{
+		checkArguments(every, factor);
+		return new Exponential(every, factor);
+	}
+
+	/**
+	 * A learning rate that falls from the rate of the Runner to a fraction of it along half a
+	 * cosine over the given number of samples, then stays at the fraction
+	 * @param samples number of samples the rate falls over, such as the samples of every pass
+	 * @param minFraction fraction of the rate left at the end
+	 * @return the schedule
+	 */
+	public static Schedule cosine(long samples, double minFraction)
+	{
+		checkArguments(samples, minFraction);
+		return new Cosine(samples, minFraction);
+	}
+
+	private static void checkArguments(long samples, double factor)
+	{
+		if(samples < 1)
+		{
+			throw new IllegalArgumentException("Number of samples must be at least 1");
+		}
+		if(factor < 0 || factor > 1)
+		{
+			throw new IllegalArgumentException("Factor must be from 0 to 1");
+		}
+	}
+
+	private static class Constant extends Schedule
+	{
+		public double rate(double learningRate, long samples)
+		{
+			return learningRate;
+		}
+
+		public String toString()
+		{
+			return "constant";
+		}
+	}
+
+	private static class Step extends Schedule
+	{
+		private final long every;
+		private final double factor;
+
+		Step(long every, double factor)
+		{
+			this.every = every;
+			this.factor = factor;
+		}
+
+		public double rate(double learningRate, long samples)
+		{
+			return learningRate*Math.pow(factor, samples/every);
+		}
+
+		public String toString()
+		{
+			return "step " + factor + " every " + every;
+		}
+	}
+
+	private static class Exponential extends Schedule
+	{
+		private final long every;
+		private final double factor;
+
+		Exponential(long every, double factor)
+		{
+			this.every = every;
+			this.factor = factor;
+		}
+
+		public double rate(double learningRate, long samples)
+		{
+			return learningRate*Math.pow(factor, (double) samples/every);
+		}
+
+		public String toString()
+		{
+			return "exponential " + factor + " every " + every;
+		}
+	}
+
+	private static class Cosine extends Schedule
+	{
+		private final long samples;
+		private final double minFraction;
+
+		Cosine(long samples, double minFraction)
+		{
+			this.samples = samples;
+			this.minFraction = minFraction;
+		}
+
+		public double rate(double learningRate, long trained)
+		{
+			if(trained >= samples)
+			{
+				return learningRate*minFraction;
+			}
+			double fraction = minFraction + (1 - minFraction)*(1 + Math.cos(Math.PI*trained/samples))/2;
+			return learningRate*fraction;
+		}
+
+		public String toString()
+		{
+			return "cosine to " + minFraction + " over " + samples;
+		}
+	}
+}
@@ -1,8 +1,8 @@
 import java.util.Random;
 
 /**
- * Singleton Pattern that is used to test the functionality of random numbers and also apply random
- * weights of the connections between neurons.
+ * Singleton Pattern that is used to test the functionality of random numbers. Networks draw their
+ * weights from RandomSource instead, which gives every layer and thread a stream of its own.
  * @author Alex Rauch
  *
  */
@@ -0,0 +1,152 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the epoch trainer is repeatable for a seed, trains on every week that is not held
+ * back, stops once the validation error stops improving and leaves the network with the weights
+ * of the pass with the lowest error.
+ */
+public class TestEpochTrainer
+{
+	//100 weeks of 12 random prices and 3 random actuals, so the validation error soon stops improving
+	private PriceDataset data;
+
+	@Before
+	public void setUp()
+	{
+		Random random = new Random(7);
+		data = new PriceDataset(12, 3, 200, 10);
+		double[] weekInputs = new double[12];
+		double[] weekActuals = new double[3];
+		for(int w=0; w<100; w++)
+		{
+			for(int j=0; j<weekInputs.length; j++)
+			{
+				weekInputs[j] = 20 + 170*random.nextDouble();
+			}
+			for(int i=0; i<weekActuals.length; i++)
+			{
+				weekActuals[i] = 20 + 170*random.nextDouble();
+			}
+			data.add(weekInputs, weekActuals);
+		}
+	}
+
+	/**
+	 * A trainer of a network that holds back a fifth of the weeks and waits 2 passes for a
+	 * better error, for up to 40 passes
+	 */
+	private EpochTrainer validating(Network n)
+	{
+		n.getVariables().setEpochs(40);
+		n.getVariables().setValidation(0.2, 2);
+		n.getVariables().setBatchSize(4);
+		return new EpochTrainer(n, data);
+	}
+
+	/**
+	 * Tests that two trainers with the same seed train the same weights
+	 */
+	@Test
+	public void testSameSeedTrainsTheSame()
+	{
+		Runner r = new Runner(12, new int[] {9}, 3);
+		r.setEpochs(3);
+		Network a = new Network(r);
+		Network b = new Network(r);
+		for(int l=0; l<a.getEngine().getNumLayers(); l++)
+		{
+			double[] weights = a.getEngine().getLayer(l).getWeights();
+			System.arraycopy(weights, 0, b.getEngine().getLayer(l).getWeights(), 0, weights.length);
+		}
+		b.reloadWeights();
+		EpochTrainer first = new EpochTrainer(a, data);
+		EpochTrainer second = new EpochTrainer(b, data);
+		first.setSeed(11);
+		second.setSeed(11);
+		first.train();
+		second.train();
+		assertArrayEquals(a.hiConnectionWeights, b.hiConnectionWeights, 0.0);
+		assertArrayEquals(a.ohConnectionWeights, b.ohConnectionWeights, 0.0);
+	}
+
+	/**
+	 * Tests that without validation every pass is made over every week
+	 */
+	@Test
+	public void testWithoutValidation()
+	{
+		Runner r = new Runner(12, new int[] {9}, 3);
+		r.setEpochs(3);
+		EpochTrainer trainer = new EpochTrainer(new Network(r), data);
+		assertEquals(3, trainer.train());
+		assertEquals(100, trainer.getTrainCount());
+		assertEquals(-1, trainer.getBestEpoch());
+		assertTrue(Double.isNaN(trainer.getBestError()));
+		assertEquals(0, trainer.getValidationErrors().length);
+	}
+
+	/**
+	 * Tests that the trainer holds back the last weeks and stops once the error has not improved
+	 * for the patience
+	 */
+	@Test
+	public void testStopsWhenValidationStopsImproving()
+	{
+		EpochTrainer trainer = validating(new Network(new Runner(12, new int[] {9}, 3)));
+		int epochs = trainer.train();
+		assertEquals(80, trainer.getTrainCount());
+		assertTrue(epochs < 40);
+		double[] errors = trainer.getValidationErrors();
+		assertEquals(epochs, errors.length);
+		int best = trainer.getBestEpoch();
+		for(int e=0; e<epochs; e++)
+		{
+			assertTrue(errors[e] > 0);
+			assertTrue(errors[best] <= errors[e]);
+		}
+		assertTrue(best == epochs-1 || epochs-2-best >= 2);
+	}
+
+	/**
+	 * Tests that the network is left with the weights of the best pass, in the engine and the neurons
+	 */
+	@Test
+	public void testKeepsWeightsOfBestPass()
+	{
+		Network n = new Network(new Runner(12, new int[] {9}, 3));
+		EpochTrainer trainer = validating(n);
+		trainer.train();
+		assertEquals(trainer.getBestError(), trainer.validate(n.getEngine()), 0.0);
+		assertEquals(n.ohConnectionWeights[5], n.outputNeurons.get(0).getConnWeight(5), 0.0);
+	}
+
+	/**
+	 * Tests that some weeks must be left to train on
+	 */
+	@Test
+	public void testNeedsWeeksToTrainOn()
+	{
+		Runner r = new Runner(12, new int[] {9}, 3);
+		try
+		{
+			r.setValidation(1, 2);
+			fail("Nothing would be left to train on");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+		try
+		{
+			new EpochTrainer(new Network(r), new PriceDataset(12, 3, 200, 10));
+			fail("An empty dataset has nothing to train on");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+}
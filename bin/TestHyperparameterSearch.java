@@ -0,0 +1,188 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a search trains every trial of a grid, and that successive halving keeps the best
+ * third of the trials each round, trains them on from where they were and gives the same results
+ * on any number of threads.
+ */
+public class TestHyperparameterSearch
+{
+	//Specifications the trials start from, holding back a quarter of the weeks
+	private Runner base;
+
+	//40 weeks of random prices
+	private PriceDataset data;
+
+	@Before
+	public void setUp()
+	{
+		base = new Runner(8, 4, 2);
+		base.setDataBounds(200, 0);
+		base.setValidation(0.25, 0);
+		base.setEpochs(2);
+		RandomSource source = new RandomSource(25);
+		data = new PriceDataset(8, 2, 200, 0);
+		double[] week = new double[8];
+		double[] actuals = new double[2];
+		for(int w=0; w<40; w++)
+		{
+			source.fill(2*w, week, 0, 200);
+			source.fill(2*w + 1, actuals, 0, 200);
+			data.add(week, actuals);
+		}
+	}
+
+	/**
+	 * Successive halving from 1 pass up to the epochs of the base, keeping a third each round
+	 */
+	private List<HyperparameterSearch.Trial> halve(List<HyperparameterSearch.Trial> trials, HyperparameterSearch search)
+	{
+		try
+		{
+			return search.successiveHalving(trials, 1, 3);
+		}
+		finally
+		{
+			search.close();
+		}
+	}
+
+	/**
+	 * Tests that a copy of a Runner can be changed without changing the original, and that the
+	 * weight range must not be empty
+	 */
+	@Test
+	public void testRunnerCopy()
+	{
+		Runner copy = new Runner(base);
+		copy.setWeightRange(-0.1, 0.2);
+		copy.setHiddenSizes(9);
+		assertEquals(-0.5, base.getMinWeight(), 0.0);
+		assertEquals(4, base.getNumHidden());
+		assertEquals(0.2, copy.getMaxWeight(), 0.0);
+		assertEquals(0.25, copy.getValidationFraction(), 0.0);
+		try
+		{
+			copy.setWeightRange(0.5, 0.5);
+			fail("An empty weight range was accepted");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+
+	/**
+	 * Tests that every trial of a grid is trained for all the epochs with its own hyperparameters,
+	 * and the trials come back lowest error first
+	 */
+	@Test
+	public void testGrid()
+	{
+		HyperparameterSearch search = new HyperparameterSearch(base, data, 2);
+		List<HyperparameterSearch.Trial> grid;
+		try
+		{
+			grid = search.run(HyperparameterSearch.grid(new int[] {3, 6}, new double[] {0.3, 0.9}, new double[] {0.2}));
+		}
+		finally
+		{
+			search.close();
+		}
+		assertEquals(4, grid.size());
+		for(int k=0; k<grid.size(); k++)
+		{
+			HyperparameterSearch.Trial trial = grid.get(k);
+			assertEquals(2, trial.getEpochs());
+			assertFalse(trial.isPruned());
+			assertFalse(Double.isNaN(trial.getError()));
+			if(k > 0)
+			{
+				assertTrue(grid.get(k-1).getError() <= trial.getError());
+			}
+			Runner r = trial.getNetwork().getVariables();
+			assertEquals(trial.getNumHidden(), r.getNumHidden());
+			assertEquals(trial.getLearningRate(), r.getLearningRate(), 0.0);
+			assertEquals(-0.2, r.getMinWeight(), 0.0);
+		}
+	}
+
+	@Test
+	public void testRandomTrialsInBounds()
+	{
+		for(HyperparameterSearch.Trial trial : HyperparameterSearch.random(9, 2, 8, 0.1, 2, 0.1, 1, 25))
+		{
+			assertTrue(trial.getNumHidden() >= 2 && trial.getNumHidden() <= 8);
+			assertTrue(trial.getLearningRate() >= 0.1 && trial.getLearningRate() <= 2);
+			assertTrue(trial.getMaxWeight() >= 0.1 && trial.getMaxWeight() <= 1);
+			assertEquals(-trial.getMinWeight(), trial.getMaxWeight(), 0.0);
+		}
+	}
+
+	/**
+	 * Tests that 9 trials are trained for 1 pass, the best 3 on to 3 passes and the best of those
+	 * on to 9, and that the pruned trials let go of their networks
+	 */
+	@Test
+	public void testSuccessiveHalving()
+	{
+		base.setEpochs(9);
+		List<HyperparameterSearch.Trial> halved = halve(HyperparameterSearch.random(9, 2, 8, 0.1, 2, 0.1, 1, 25),
+				new HyperparameterSearch(base, data, 3));
+		int[] epochs = {9, 3, 3, 1, 1, 1, 1, 1, 1};
+		for(int k=0; k<halved.size(); k++)
+		{
+			HyperparameterSearch.Trial trial = halved.get(k);
+			assertEquals(epochs[k], trial.getEpochs());
+			assertEquals(k > 0, trial.isPruned());
+			assertEquals(k > 0, trial.getNetwork() == null);
+			assertEquals(k == 0 ? 2 : k < 3 ? 1 : 0, trial.getRound());
+		}
+	}
+
+	@Test
+	public void testSameOnAnyThreads()
+	{
+		base.setEpochs(9);
+		List<HyperparameterSearch.Trial> three = HyperparameterSearch.random(9, 2, 8, 0.1, 2, 0.1, 1, 25);
+		List<HyperparameterSearch.Trial> common = HyperparameterSearch.random(9, 2, 8, 0.1, 2, 0.1, 1, 25);
+		halve(three, new HyperparameterSearch(base, data, 3));
+		halve(common, new HyperparameterSearch(base, data, ForkJoinPool.commonPool()));
+		for(int k=0; k<three.size(); k++)
+		{
+			assertEquals(three.get(k).getError(), common.get(k).getError(), 0.0);
+			assertEquals(three.get(k).getEpochs(), common.get(k).getEpochs());
+		}
+	}
+
+	/**
+	 * Tests that the table has a header and a line for each trial in rank order
+	 */
+	@Test
+	public void testTable()
+	{
+		base.setEpochs(9);
+		List<HyperparameterSearch.Trial> halved = halve(HyperparameterSearch.random(9, 2, 8, 0.1, 2, 0.1, 1, 25),
+				new HyperparameterSearch(base, data, 1));
+		ByteArrayOutputStream table = new ByteArrayOutputStream();
+		HyperparameterSearch.writeTable(halved, new PrintStream(table, true));
+		String[] lines = table.toString().split("\n");
+		assertEquals(10, lines.length);
+		assertTrue(lines[1].trim().startsWith("1 ") && lines[1].endsWith("finished"));
+		assertTrue(lines[9].endsWith("pruned after round 0"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNeedsValidation()
+	{
+		base.setValidation(0, 0);
+		new HyperparameterSearch(base, data, 1);
+	}
+}
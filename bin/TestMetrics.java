@@ -0,0 +1,190 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the buckets and percentiles of LatencyHistogram, that a network records its samples, loss
+ * and step times when metrics are switched on (as they are for the tests), and that the metrics
+ * can be read through JMX and printed by MetricsReporter.
+ */
+public class TestMetrics
+{
+	private Network n;
+	private double[] in;
+	private double[] actuals;
+
+	@Before
+	public void setUp()
+	{
+		Runner r = new Runner(12, 9, 3);
+		n = new Network(r);
+		in = new double[r.getNumInputs()];
+		actuals = new double[r.getNumOutputs()];
+		RandomSource source = new RandomSource(20);
+		source.fill(0, in, 0, 1);
+		source.fill(1, actuals, 0, 1);
+	}
+
+	/**
+	 * Trains the network one sample at a time 5 times, then a batch of 3, and predicts 2 windows
+	 * @return the mean squared error of the samples trained one at a time
+	 */
+	private double train()
+	{
+		double loss = 0;
+		for(int k=0; k<5; k++)
+		{
+			n.setInputs(in);
+			n.feedForward();
+			n.setActuals(actuals);
+			n.calculateError();
+			for(int i=0; i<actuals.length; i++)
+			{
+				double difference = actuals[i] - n.getEngine().getOutputs()[i];
+				loss += difference*difference/actuals.length/5;
+			}
+			n.updateWeights();
+		}
+		n.trainBatch(new double[][] {in, in, in}, new double[][] {actuals, actuals, actuals});
+		n.predict(new double[][] {in, in});
+		return loss;
+	}
+
+	/**
+	 * A histogram of 1 to 1000 microseconds
+	 */
+	private static LatencyHistogram histogram()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i=1; i<=1000; i++)
+		{
+			histogram.record(i*1000L);
+		}
+		return histogram;
+	}
+
+	@Test
+	public void testHistogramSummary()
+	{
+		LatencyHistogram histogram = histogram();
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500, histogram.getMean(), 1e-9);
+		assertEquals(1000000, histogram.getMax());
+	}
+
+	/**
+	 * Tests that percentiles are within the 1/16 precision of the buckets, and never below the value
+	 */
+	@Test
+	public void testHistogramPercentiles()
+	{
+		LatencyHistogram histogram = histogram();
+		assertEquals(500000, histogram.getValueAtPercentile(50), 500000/16.0);
+		assertEquals(990000, histogram.getValueAtPercentile(99), 990000/16.0);
+		assertTrue(histogram.getValueAtPercentile(50) >= 500000);
+		assertEquals(1000000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testHistogramBuckets()
+	{
+		for(long value : new long[] {0, 7, 15, 16, 17, 31, 32, 33, 1000, 123456789, 1L << 40})
+		{
+			long highest = LatencyHistogram.highestValue(LatencyHistogram.index(value));
+			assertTrue(highest >= value && highest - value <= value/16);
+		}
+	}
+
+	@Test
+	public void testHistogramReset()
+	{
+		LatencyHistogram histogram = histogram();
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testDisabledMetrics()
+	{
+		Assume.assumeFalse(Metrics.ENABLED);
+		assertSame(Metrics.DISABLED, n.getMetrics());
+	}
+
+	/**
+	 * Tests the counts, step times and mean loss a network records
+	 */
+	@Test
+	public void testNetworkRecords()
+	{
+		Assume.assumeTrue(Metrics.ENABLED);
+		double loss = train();
+		Metrics metrics = n.getMetrics();
+		assertEquals(8, metrics.getSamplesTrained());
+		assertEquals(1, metrics.getBatchesTrained());
+		assertEquals(2, metrics.getSamplesPredicted());
+		assertEquals(5, metrics.getFeedForward().getCount());
+		assertEquals(5, metrics.getCalculateError().getCount());
+		assertEquals(5, metrics.getUpdateWeights().getCount());
+		assertEquals(1, metrics.getTrainBatch().getCount());
+		assertEquals(1, metrics.getPredict().getCount());
+		assertEquals(loss, metrics.getMeanLoss(), 1e-12);
+		assertTrue(metrics.getFeedForward().getValueAtPercentile(99) > 0);
+		metrics.reset();
+		assertEquals(0, metrics.getSamplesTrained());
+	}
+
+	@Test
+	public void testJmx() throws Exception
+	{
+		Assume.assumeTrue(Metrics.ENABLED);
+		train();
+		Metrics metrics = n.getMetrics();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		metrics.register("testJmx");
+		try
+		{
+			assertEquals(8L, server.getAttribute(metrics.getObjectName(), "SamplesTrained"));
+			String json = (String) server.invoke(metrics.getObjectName(), "toJson", null, null);
+			assertTrue(json.startsWith("{\"samplesTrained\":8,"));
+			assertTrue(json.contains("\"validationError\":null"));
+		}
+		finally
+		{
+			metrics.unregister();
+		}
+		assertNull(metrics.getObjectName());
+	}
+
+	/**
+	 * Tests the JSON and text lines of the reporter, and that the loss is only reported for
+	 * samples trained since the last report
+	 */
+	@Test
+	public void testReporter()
+	{
+		Assume.assumeTrue(Metrics.ENABLED);
+		train();
+		Metrics metrics = n.getMetrics();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		MetricsReporter reporter = new MetricsReporter(metrics, new PrintStream(bytes, true), true);
+		n.setInputs(in);
+		n.feedForward();
+		n.setActuals(actuals);
+		n.calculateError();
+		n.updateWeights();
+		String line = reporter.report();
+		assertTrue(line.startsWith("{\"time\":"));
+		assertTrue(line.contains("\"metrics\":{\"samplesTrained\":9,"));
+		assertFalse(line.contains("\"loss\":null"));
+		assertTrue(reporter.report().contains("\"loss\":null"));
+		assertTrue(new MetricsReporter(metrics, System.out, false).report().contains("trained 9 (1 batches, 0 epochs)"));
+	}
+}
@@ -0,0 +1,258 @@
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that windows predicted in batches by the micro-batcher from many threads get the same
+ * outputs as predicting them one at a time, and that windows given up on are not predicted.
+ */
+public class TestMicroBatcher
+{
+	private Network n;
+	private double[][] windows;
+	private double[][] expected;
+
+	@Before
+	public void setUp()
+	{
+		Runner r = new Runner(8, 6, 2);
+		r.setDataBounds(200, 0);
+		n = new Network(r);
+		windows = new double[64][8];
+		RandomSource source = new RandomSource(23);
+		for(int b=0; b<windows.length; b++)
+		{
+			source.fill(b, windows[b], 0, 1);
+		}
+		expected = n.predict(windows);
+	}
+
+	/**
+	 * Tests that 8 threads sending windows at once get the outputs of predicting them one at a time
+	 */
+	@Test
+	public void testBatchesMatchOneAtATime() throws InterruptedException
+	{
+		final MicroBatcher batcher = new MicroBatcher(n, 16, 200, TimeUnit.MICROSECONDS);
+		final double[][] outputs = new double[windows.length][2];
+		Thread[] threads = new Thread[8];
+		for(int t=0; t<threads.length; t++)
+		{
+			final int first = t;
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						for(int b=first; b<windows.length; b+=8)
+						{
+							batcher.predict(windows[b], outputs[b]);
+						}
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		for(int b=0; b<windows.length; b++)
+		{
+			assertArrayEquals(expected[b], outputs[b], 1e-12);
+		}
+		assertEquals(windows.length, batcher.getRequests());
+		assertTrue(batcher.getBatches() <= windows.length);
+		batcher.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClosedBatcherFails() throws InterruptedException
+	{
+		MicroBatcher batcher = new MicroBatcher(n, 16, 0, TimeUnit.MICROSECONDS);
+		batcher.close();
+		batcher.predict(windows[0], new double[2]);
+	}
+
+	/**
+	 * Tests that a thread interrupted while its window waits behind a batch takes the window
+	 * back, so no later batch writes its output or counts it
+	 */
+	@Test
+	public void testInterruptedWindowIsNotPredicted() throws InterruptedException
+	{
+		//A network whose first batch waits until the test lets it go
+		final CountDownLatch predicting = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Network blocking = new Network(n.getVariables())
+		{
+			public void predict(double[][] windows, double[][] outputs, int count)
+			{
+				predicting.countDown();
+				try
+				{
+					release.await();
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				super.predict(windows, outputs, count);
+			}
+		};
+		final MicroBatcher batcher = new MicroBatcher(blocking, 16, 0, TimeUnit.MICROSECONDS);
+		Thread leader = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					batcher.predict(windows[0], new double[2]);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		final double[] abandoned = {-1, -1};
+		final boolean[] interrupted = new boolean[1];
+		Thread waiter = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					batcher.predict(windows[1], abandoned);
+				}
+				catch(InterruptedException e)
+				{
+					interrupted[0] = true;
+				}
+			}
+		};
+		leader.start();
+		assertTrue(predicting.await(10, TimeUnit.SECONDS));
+		waiter.start();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while(waiter.getState() != Thread.State.WAITING && System.nanoTime() < deadline)
+		{
+			Thread.sleep(1);
+		}
+		waiter.interrupt();
+		waiter.join();
+		release.countDown();
+		leader.join();
+		assertTrue(interrupted[0]);
+
+		//The next window leads a batch of its own
+		double[] output = new double[2];
+		batcher.predict(windows[2], output);
+		assertArrayEquals(expected[2], output, 1e-12);
+		assertArrayEquals(new double[] {-1, -1}, abandoned, 0.0);
+		assertEquals(2, batcher.getRequests());
+		assertEquals(2, batcher.getBatches());
+		batcher.close();
+	}
+
+	/**
+	 * Tests that a thread interrupted just as the lead is handed to it hands the lead on, so the
+	 * window queued behind it is still predicted. The interrupt races the leader's hand over, so
+	 * the race is run many times.
+	 */
+	@Test
+	public void testInterruptedWaiterHandsOnTheLead() throws InterruptedException
+	{
+		for(int k=0; k<200; k++)
+		{
+			final CountDownLatch predicting = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			Network blocking = new Network(n.getVariables())
+			{
+				public void predict(double[][] windows, double[][] outputs, int count)
+				{
+					predicting.countDown();
+					try
+					{
+						release.await();
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+					super.predict(windows, outputs, count);
+				}
+			};
+			final MicroBatcher batcher = new MicroBatcher(blocking, 16, 0, TimeUnit.MICROSECONDS);
+			final double[] output = new double[2];
+			Thread leader = predicting(batcher, windows[0], new double[2]);
+			Thread interrupted = predicting(batcher, windows[1], new double[2]);
+			Thread behind = predicting(batcher, windows[2], output);
+			try
+			{
+				leader.start();
+				assertTrue(predicting.await(10, TimeUnit.SECONDS));
+				interrupted.start();
+				awaitParked(interrupted);
+				behind.start();
+				awaitParked(behind);
+				release.countDown();
+				interrupted.interrupt();
+				behind.join(TimeUnit.SECONDS.toMillis(10));
+				assertFalse("The window behind the interrupted thread was left waiting", behind.isAlive());
+				assertArrayEquals(expected[2], output, 1e-12);
+			}
+			finally
+			{
+				release.countDown();
+				batcher.close();
+				leader.join();
+				interrupted.join();
+				behind.join();
+			}
+		}
+	}
+
+	/**
+	 * A thread that predicts one window with the batcher, keeping an interrupt to itself
+	 */
+	private static Thread predicting(final MicroBatcher batcher, final double[] window, final double[] output)
+	{
+		return new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					batcher.predict(window, output);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				catch(IllegalStateException e)
+				{
+					//Closed by the test after a failure
+				}
+			}
+		};
+	}
+
+	private static void awaitParked(Thread thread) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while(thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline)
+		{
+			Thread.sleep(1);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a saved network loads back as the same network, and that damaged files do not load.
+ */
+public class TestModelCheckpoint
+{
+	private File file;
+
+	//A network that has been trained on one week, and the inputs it was trained on
+	private Network n;
+	private double[] in;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = File.createTempFile("network", ".bin");
+		Runner s = new Runner(12, 7, 3);
+		s.setDataBounds(120.5, 3.25);
+		n = new Network(s);
+		in = new double[s.getNumInputs()];
+		new RandomSource(6).fill(0, in, 0, 1);
+		n.setInputs(in);
+		n.feedForward();
+		n.setActuals(new double[] {0.2, 0.5, 0.9});
+		n.calculateError();
+		n.updateWeights();
+		ModelCheckpoint.save(n, file);
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	/**
+	 * Tests that the layer sizes and data bounds load back
+	 */
+	@Test
+	public void testLoadsSpecifications() throws IOException
+	{
+		Runner loaded = ModelCheckpoint.load(file).getVariables();
+		assertEquals(12, loaded.getNumInputs());
+		assertEquals(7, loaded.getNumHidden());
+		assertEquals(3, loaded.getNumOutputs());
+		assertEquals(120.5, loaded.getDataMax(), 0.0);
+		assertEquals(3.25, loaded.getDataMin(), 0.0);
+	}
+
+	/**
+	 * Tests that the weights load back into the engine and the neurons alike
+	 */
+	@Test
+	public void testLoadsWeights() throws IOException
+	{
+		Network loaded = ModelCheckpoint.load(file);
+		assertArrayEquals(n.hiConnectionWeights, loaded.hiConnectionWeights, 0.0);
+		assertArrayEquals(n.ohConnectionWeights, loaded.ohConnectionWeights, 0.0);
+		assertEquals(n.ohConnectionWeights[8], loaded.outputNeurons.get(1).getConnWeight(1), 0.0);
+	}
+
+	/**
+	 * Tests that the loaded network predicts the same outputs
+	 */
+	@Test
+	public void testLoadedNetworkPredictsTheSame() throws IOException
+	{
+		Network loaded = ModelCheckpoint.load(file);
+		n.feedForward();
+		loaded.setInputs(in);
+		loaded.feedForward();
+		assertArrayEquals(n.getEngine().getOutputs(), loaded.getEngine().getOutputs(), 0.0);
+	}
+
+	/**
+	 * Tests that a file with a flipped bit fails its checksum
+	 */
+	@Test
+	public void testDamagedFileFailsChecksum() throws IOException
+	{
+		RandomAccessFile damaged = new RandomAccessFile(file, "rw");
+		damaged.seek(100);
+		int b = damaged.read();
+		damaged.seek(100);
+		damaged.write(b ^ 1);
+		damaged.close();
+		try
+		{
+			ModelCheckpoint.load(file);
+			fail("A damaged checkpoint should not load");
+		}
+		catch(IOException e)
+		{
+			assertTrue(e.getMessage().contains("checksum"));
+		}
+	}
+}
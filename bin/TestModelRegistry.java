@@ -0,0 +1,163 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the registry trains its networks on the pool the same as training them one after
+ * another, keeps a copy of each, and predicts the mean prices of an ensemble's members each
+ * normalized with its own bounds.
+ */
+public class TestModelRegistry
+{
+	//Bounds of the prices of the two sectors
+	private static final double[][] BOUNDS = {{200, 0}, {60, 20}};
+
+	//Window of prices inside the bounds of both sectors
+	private static final double[] WINDOW = {30, 35, 40, 45, 50, 55, 40, 30};
+
+	//Models m0 to m3, two to each sector, and the same networks trained one after another
+	private ModelRegistry registry;
+	private Network[] expected;
+
+	@Before
+	public void setUp()
+	{
+		RandomSource source = new RandomSource(24);
+		PriceDataset[] data = new PriceDataset[BOUNDS.length];
+		for(int d=0; d<data.length; d++)
+		{
+			data[d] = new PriceDataset(8, 2, BOUNDS[d][0], BOUNDS[d][1]);
+			double[] week = new double[8];
+			double[] actuals = new double[2];
+			for(int w=0; w<30; w++)
+			{
+				source.fill(100*d + 2*w, week, BOUNDS[d][1], BOUNDS[d][0]);
+				source.fill(100*d + 2*w + 1, actuals, BOUNDS[d][1], BOUNDS[d][0]);
+				data[d].add(week, actuals);
+			}
+		}
+
+		registry = new ModelRegistry(2);
+		List<ForkJoinTask<ModelRegistry.Model>> tasks = new ArrayList<ForkJoinTask<ModelRegistry.Model>>();
+		expected = new Network[4];
+		for(int k=0; k<expected.length; k++)
+		{
+			Runner r = new Runner(8, 4 + k, 2);
+			r.setDataBounds(BOUNDS[k/2][0], BOUNDS[k/2][1]);
+			r.setSeed(k);
+			r.setEpochs(3);
+			r.setValidation(0.2, 0);
+			tasks.add(registry.submit("m" + k, "sector" + k/2, r, data[k/2]));
+			expected[k] = new Network(r);
+			new EpochTrainer(expected[k], data[k/2]).train();
+		}
+		for(ForkJoinTask<ModelRegistry.Model> task : tasks)
+		{
+			task.join();
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		registry.close();
+	}
+
+	@Test
+	public void testEnsembles()
+	{
+		assertEquals(4, registry.size());
+		assertEquals(Arrays.asList("sector0", "sector1"), registry.getEnsembles());
+		assertEquals(2, registry.getMembers("sector1").size());
+		assertTrue(registry.getMembers("none").isEmpty());
+	}
+
+	/**
+	 * Tests that each model has the weights of the network trained on its own
+	 */
+	@Test
+	public void testTrainsLikeOneAfterAnother()
+	{
+		for(int k=0; k<expected.length; k++)
+		{
+			ModelRegistry.Model model = registry.get("m" + k);
+			assertEquals("sector" + k/2, model.getEnsemble());
+			assertFalse(Double.isNaN(model.getValidationError()));
+			assertEquals(8*(4 + k) + (4 + k)*2, model.getNumWeights());
+			for(int l=0; l<2; l++)
+			{
+				assertArrayEquals(expected[k].getEngine().getLayer(l).getWeights(), model.getEngine().getLayer(l).getWeights(), 0.0);
+			}
+		}
+	}
+
+	/**
+	 * Tests that each member normalizes the window with its own bounds and the predictions are averaged
+	 */
+	@Test
+	public void testPredictsMeanOfMembers()
+	{
+		for(int e=0; e<2; e++)
+		{
+			double[] mean = new double[2];
+			for(int k=2*e; k<2*e + 2; k++)
+			{
+				double[] normalized = expected[k].normalizeValues(WINDOW, BOUNDS[e][0], BOUNDS[e][1]);
+				double[] outputs = expected[k].predict(new double[][] {normalized})[0];
+				double[] prices = expected[k].denormalizeValues(outputs, BOUNDS[e][0], BOUNDS[e][1]);
+				mean[0] += prices[0]/2;
+				mean[1] += prices[1]/2;
+			}
+			assertArrayEquals(mean, registry.predict("sector" + e, WINDOW), 1e-12);
+		}
+	}
+
+	/**
+	 * Tests that more windows than a block of the engine predict the same as one at a time
+	 */
+	@Test
+	public void testPredictsManyWindows()
+	{
+		double[][] windows = new double[LayerEngine.PREDICT_BLOCK + 6][];
+		double[][] predicted = new double[windows.length][2];
+		for(int b=0; b<windows.length; b++)
+		{
+			windows[b] = WINDOW;
+		}
+		registry.predict("sector1", windows, predicted, windows.length);
+		assertArrayEquals(registry.predict("sector1", WINDOW), predicted[windows.length - 1], 1e-12);
+	}
+
+	/**
+	 * Tests that changing a network after it was added does not change its model
+	 */
+	@Test
+	public void testModelIsACopy()
+	{
+		ModelRegistry registry = new ModelRegistry(1);
+		registry.add("copy", "sector0", expected[0]);
+		double[] weights = expected[0].getEngine().getLayer(0).getWeights().clone();
+		expected[0].randomizeWeights();
+		assertArrayEquals(weights, registry.get("copy").getEngine().getLayer(0).getWeights(), 0.0);
+		registry.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNamesAreUnique()
+	{
+		registry.add("m0", "sector0", expected[0]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMembersHaveSameShape()
+	{
+		registry.add("other", "sector0", new Network(new Runner(8, 3, 1)));
+	}
+}
@@ -1,5 +1,15 @@
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assume;
 import org.junit.Test;
 
 /**
@@ -192,7 +202,7 @@ public class TestNetwork
 		for(int i=0; i<s.getNumOutputs(); i++)
 		{
 			double tempError = n.outputErrors[i];
-			double connWeights = n.outputNeurons.get(i).connWeights[0];
+			double connWeights = n.outputNeurons.get(i).getConnWeight(0);
 			sum = sum + tempError*connWeights;
 		}
 		assertEquals(-.0026546857434935614, n.hiddenErrors[0], 0.001);
@@ -229,20 +239,1119 @@ public class TestNetwork
 		for(int i=0; i<s.getNumOutputs(); i++)
 		{
 			double tempError = n.outputErrors[i];
-			double connWeights = n.outputNeurons.get(i).connWeights[0];
+			double connWeights = n.outputNeurons.get(i).getConnWeight(0);
 			sum += tempError*connWeights;
 		}
 		n.updateWeights();	
-//		System.out.println(n.hiddenNeurons.get(0).connWeights[0]);
-//		System.out.println(n.hiddenNeurons.get(0).connWeights[1]);
-//		System.out.println(n.hiddenNeurons.get(0).connWeights[2]);
-//		System.out.println(n.hiddenNeurons.get(0).connWeights[3]);
-//		System.out.println(n.hiddenNeurons.get(0).connWeights[4]);
-//		System.out.println(n.hiddenNeurons.get(0).connWeights[5]);
-//		System.out.println(n.hiddenNeurons.get(0).connWeights[6]);
+//		System.out.println(n.hiddenNeurons.get(0).getConnWeight(0));
+//		System.out.println(n.hiddenNeurons.get(0).getConnWeight(1));
+//		System.out.println(n.hiddenNeurons.get(0).getConnWeight(2));
+//		System.out.println(n.hiddenNeurons.get(0).getConnWeight(3));
+//		System.out.println(n.hiddenNeurons.get(0).getConnWeight(4));
+//		System.out.println(n.hiddenNeurons.get(0).getConnWeight(5));
+//		System.out.println(n.hiddenNeurons.get(0).getConnWeight(6));
 		
 	}
 	
+	/**
+	 * Tests that the neurons of the network are a view over the layer engine, so combining a
+	 * neuron through its connections gives the same output the engine calculated, and trained
+	 * weights show up in each neuron's connection weights.
+	 */
+	@Test
+	public void testNeuronsMatchEngine()
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner s = new Runner();
+		Network n = new Network(s);
+		double[] in = new double[s.getNumInputs()];
+		for(int i=0; i<in.length; i++)
+		{
+			in[i] = rand.nextDouble(1, 0);
+		}
+		n.setInputs(in);
+		n.feedForward();
+		double[] engineOutputs = n.getEngine().getOutputs();
+		for(int j=0; j<n.outputNeurons.size(); j++)
+		{
+			assertEquals(engineOutputs[j], n.outputNeurons.get(j).getOutput(), 0.0);
+		}
+		for(int i=0; i<n.hiddenNeurons.size(); i++)
+		{
+			double engineOut = n.hiddenNeurons.get(i).getOutput();
+			n.hiddenNeurons.get(i).combine();
+			assertEquals(engineOut, n.hiddenNeurons.get(i).getOutput(), 1e-12);
+		}
+		double[] actuals = new double[s.getNumOutputs()];
+		for(int i=0; i<actuals.length; i++)
+		{
+			actuals[i] = rand.nextDouble(1, 0);
+		}
+		n.setActuals(actuals);
+		n.calculateError();
+		n.updateWeights();
+		for(int i=0; i<s.getNumOutputs(); i++)
+		{
+			for(int j=0; j<s.getNumHidden(); j++)
+			{
+				assertEquals(n.ohConnectionWeights[i*s.getNumHidden() + j], n.outputNeurons.get(i).getConnWeight(j), 0.0);
+			}
+		}
+	}
+
+	/**
+	 * Tests that combining a neuron of a network applies the activation of its layer rather than
+	 * the sigmoid, so it writes the same output into the engine that feeding forward did
+	 */
+	@Test
+	public void testCombineUsesLayerActivation()
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner s = new Runner(8, 5, 2);
+		s.setActivations(Activation.TANH, Activation.leakyRelu(0.05));
+		Network n = new Network(s);
+		double[] in = new double[s.getNumInputs()];
+		for(int i=0; i<in.length; i++)
+		{
+			in[i] = rand.nextDouble(1, 0);
+		}
+		n.setInputs(in);
+		n.feedForward();
+		double[] hidden = n.getEngine().getLayer(0).getOutputs().clone();
+		double[] outputs = n.getEngine().getOutputs().clone();
+		for(int i=0; i<n.hiddenNeurons.size(); i++)
+		{
+			n.hiddenNeurons.get(i).setOutput(0);
+			n.hiddenNeurons.get(i).combine();
+		}
+		for(int j=0; j<n.outputNeurons.size(); j++)
+		{
+			n.outputNeurons.get(j).setOutput(0);
+			n.outputNeurons.get(j).combine();
+		}
+		assertArrayEquals(hidden, n.getEngine().getLayer(0).getOutputs(), 1e-12);
+		assertArrayEquals(outputs, n.getEngine().getOutputs(), 1e-12);
+	}
+	
+	/**
+	 * Tests that training on an empty batch changes no weights and takes no optimizer step
+	 */
+	@Test
+	public void testEmptyBatch()
+	{
+		Runner s = new Runner(8, 5, 2);
+		s.setOptimizer(Optimizer.adam(0.9, 0.999, 1e-8));
+		Network n = new Network(s);
+		double[] hi = n.hiConnectionWeights.clone();
+		double[] oh = n.ohConnectionWeights.clone();
+		n.trainBatch(new double[0][], new double[0][]);
+		assertArrayEquals(hi, n.hiConnectionWeights, 0.0);
+		assertArrayEquals(oh, n.ohConnectionWeights, 0.0);
+		assertEquals(0, n.getEngine().getLayer(0).getUpdates());
+		assertEquals(0, n.getSamplesTrained());
+	}
+
+	/**
+	 * Tests that training the single precision engine on an empty batch changes no weights
+	 */
+	@Test
+	public void testEmptyBatchSinglePrecision()
+	{
+		Runner s = new Runner(8, 5, 2);
+		s.setPrecision(true, false);
+		Network n = new Network(s);
+		float[] hi = n.getFloatEngine().getLayer(0).getWeights().clone();
+		n.trainBatch(new double[0][], new double[0][]);
+		assertArrayEquals(hi, n.getFloatEngine().getLayer(0).getWeights(), 0.0f);
+	}
+
+	/**
+	 * Tests that a batch of one sample trains the same as the single sample path, and that a
+	 * batch of the same sample repeated averages to the same update
+	 */
+	@Test
+	public void testTrainBatch()
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner s = new Runner();
+		Network single = new Network(s);
+		Network batch = new Network(s);
+		Network repeated = new Network(s);
+		System.arraycopy(single.hiConnectionWeights, 0, batch.hiConnectionWeights, 0, single.hiConnectionWeights.length);
+		System.arraycopy(single.ohConnectionWeights, 0, batch.ohConnectionWeights, 0, single.ohConnectionWeights.length);
+		System.arraycopy(single.hiConnectionWeights, 0, repeated.hiConnectionWeights, 0, single.hiConnectionWeights.length);
+		System.arraycopy(single.ohConnectionWeights, 0, repeated.ohConnectionWeights, 0, single.ohConnectionWeights.length);
+		double[] in = new double[s.getNumInputs()];
+		for(int i=0; i<in.length; i++)
+		{
+			in[i] = rand.nextDouble(1, 0);
+		}
+		double[] actuals = new double[s.getNumOutputs()];
+		for(int i=0; i<actuals.length; i++)
+		{
+			actuals[i] = rand.nextDouble(1, 0);
+		}
+
+		single.setInputs(in);
+		single.feedForward();
+		single.setActuals(actuals);
+		single.calculateError();
+		single.updateWeights();
+		batch.trainBatch(new double[][] {in}, new double[][] {actuals});
+		repeated.trainBatch(new double[][] {in, in, in}, new double[][] {actuals, actuals, actuals});
+
+		for(int i=0; i<single.hiConnectionWeights.length; i++)
+		{
+			assertEquals(single.hiConnectionWeights[i], batch.hiConnectionWeights[i], 1e-12);
+			assertEquals(single.hiConnectionWeights[i], repeated.hiConnectionWeights[i], 1e-12);
+		}
+		for(int i=0; i<single.ohConnectionWeights.length; i++)
+		{
+			assertEquals(single.ohConnectionWeights[i], batch.ohConnectionWeights[i], 1e-12);
+			assertEquals(single.ohConnectionWeights[i], repeated.ohConnectionWeights[i], 1e-12);
+		}
+		for(int j=0; j<s.getNumOutputs(); j++)
+		{
+			assertEquals(single.outputNeurons.get(j).getOutput(), batch.outputNeurons.get(j).getOutput(), 1e-12);
+			assertEquals(single.outputErrors[j], repeated.outputErrors[j], 1e-12);
+		}
+	}
+	
+	/**
+	 * Tests that predicting many windows gives the same outputs as feeding each one forward,
+	 * leaves the neurons alone, and gives the same outputs on several threads at once
+	 */
+	@Test
+	public void testPredict() throws InterruptedException
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner s = new Runner();
+		final Network n = new Network(s);
+		final double[][] windows = new double[100][s.getNumInputs()];
+		for(int b=0; b<windows.length; b++)
+		{
+			for(int i=0; i<windows[b].length; i++)
+			{
+				windows[b][i] = rand.nextDouble(1, 0);
+			}
+		}
+		n.setInputs(windows[0]);
+		n.feedForward();
+		double before = n.outputNeurons.get(0).getOutput();
+
+		final double[][] predicted = n.predict(windows);
+		assertEquals(before, n.outputNeurons.get(0).getOutput(), 0.0);
+		for(int b=0; b<windows.length; b++)
+		{
+			n.setInputs(windows[b]);
+			n.feedForward();
+			assertArrayEquals(n.getEngine().getOutputs(), predicted[b], 0.0);
+		}
+
+		final boolean[] matched = new boolean[4];
+		Thread[] threads = new Thread[matched.length];
+		for(int t=0; t<threads.length; t++)
+		{
+			final int index = t;
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					boolean same = true;
+					for(int repeat=0; repeat<20; repeat++)
+					{
+						double[][] outputs = n.predict(windows);
+						for(int b=0; b<windows.length; b++)
+						{
+							same = same && java.util.Arrays.equals(predicted[b], outputs[b]);
+						}
+					}
+					matched[index] = same;
+				}
+			};
+			threads[t].start();
+		}
+		for(int t=0; t<threads.length; t++)
+		{
+			threads[t].join();
+			assertTrue(matched[t]);
+		}
+	}
+	
+	/**
+	 * Tests that the derivative of each activation matches the slope of the function, that the
+	 * table sigmoid stays within its error bound of the exact sigmoid, and that the activations of a network are
+	 * used by both training paths and kept by a checkpoint
+	 */
+	@Test
+	public void testActivations() throws IOException
+	{
+		Activation[] activations = {Activation.SIGMOID, Activation.TANH, Activation.RELU,
+				Activation.leakyRelu(0.05)};
+		double h = 1e-6;
+		for(Activation a : activations)
+		{
+			for(double x=-4.05; x<4; x+=0.1)
+			{
+				double slope = (a.apply(x+h) - a.apply(x-h))/(2*h);
+				assertEquals(a.toString(), slope, a.derivative(a.apply(x)), 1e-3);
+			}
+		}
+		for(double maxError : new double[] {1e-3, 1e-6})
+		{
+			Activation table = Activation.tableSigmoid(maxError);
+			for(double x=-40; x<40; x+=0.0007)
+			{
+				assertEquals(Activation.SIGMOID.apply(x), table.apply(x), maxError);
+			}
+		}
+
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner s = new Runner(8, 5, 2);
+		s.setActivations(Activation.TANH, Activation.leakyRelu(0.05));
+		Network single = new Network(s);
+		Network batch = new Network(s);
+		System.arraycopy(single.hiConnectionWeights, 0, batch.hiConnectionWeights, 0, single.hiConnectionWeights.length);
+		System.arraycopy(single.ohConnectionWeights, 0, batch.ohConnectionWeights, 0, single.ohConnectionWeights.length);
+		double[][] in = new double[1][s.getNumInputs()];
+		for(int i=0; i<in[0].length; i++)
+		{
+			in[0][i] = rand.nextDouble(1, 0);
+		}
+		double[][] actuals = {{0.3, 0.8}};
+		single.setInputs(in[0]);
+		single.feedForward();
+		double sum = 0;
+		for(int i=0; i<in[0].length; i++)
+		{
+			sum = sum + (in[0][i]*single.hiConnectionWeights[i]);
+		}
+		assertEquals(Math.tanh(sum), single.hiddenNeurons.get(0).getOutput(), 1e-12);
+		single.setActuals(actuals[0]);
+		single.calculateError();
+		single.updateWeights();
+		batch.trainBatch(in, actuals);
+		assertArrayEquals(single.hiConnectionWeights, batch.hiConnectionWeights, 1e-12);
+		assertArrayEquals(single.ohConnectionWeights, batch.ohConnectionWeights, 1e-12);
+
+		File file = File.createTempFile("network", ".bin");
+		try
+		{
+			ModelCheckpoint.save(single, file);
+			Network loaded = ModelCheckpoint.load(file);
+			assertEquals(Activation.TANH, loaded.getEngine().getLayer(0).getActivation());
+			assertEquals(Activation.LEAKY_RELU_CODE, loaded.getEngine().getLayer(1).getActivation().getCode());
+			assertEquals(0.05, loaded.getEngine().getLayer(1).getActivation().getParameter(), 0.0);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Tests a network with two hidden layers of different widths. The neurons of each layer are
+	 * connected to the layer to their left, the weight updates of the single sample and batch
+	 * paths agree, the update of a weight in the middle layer is the learning rate times the
+	 * slope of the squared error, and a checkpoint keeps every layer.
+	 */
+	@Test
+	public void testDeepNetwork() throws IOException
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		assertArrayEquals(new int[] {12, 7, 3}, new Runner(12, 7, 3).getLayerSizes());
+		Runner s = new Runner(12, new int[] {16, 6}, 3);
+		assertArrayEquals(new int[] {12, 16, 6, 3}, s.getLayerSizes());
+		Network n = new Network(s);
+		assertEquals(4, n.layers.size());
+		assertEquals(3, n.getEngine().getNumLayers());
+		assertSame(n.layers.get(1), n.hiddenNeurons);
+		assertEquals(16, n.layers.get(2).get(5).getConnected().size());
+		assertEquals(6, n.outputNeurons.get(2).getConnected().size());
+		assertEquals(n.getEngine().getLayer(1).getWeights()[5*16 + 15], n.layers.get(2).get(5).getConnWeight(15), 0.0);
+
+		double[][] in = new double[1][s.getNumInputs()];
+		for(int i=0; i<in[0].length; i++)
+		{
+			in[0][i] = rand.nextDouble(1, 0);
+		}
+		double[][] actuals = {{0.2, 0.6, 0.9}};
+		Network batch = new Network(s);
+		for(int l=0; l<n.getEngine().getNumLayers(); l++)
+		{
+			double[] weights = n.getEngine().getLayer(l).getWeights();
+			System.arraycopy(weights, 0, batch.getEngine().getLayer(l).getWeights(), 0, weights.length);
+		}
+
+		int w = 37;
+		double[] middle = n.getEngine().getLayer(1).getWeights();
+		double weight = middle[w];
+		double h = 1e-6;
+		middle[w] = weight + h;
+		double above = squaredError(n, in[0], actuals[0]);
+		middle[w] = weight - h;
+		double below = squaredError(n, in[0], actuals[0]);
+		middle[w] = weight;
+
+		n.setInputs(in[0]);
+		n.feedForward();
+		n.setActuals(actuals[0]);
+		n.calculateError();
+		n.updateWeights();
+		double slope = (above - below)/(2*h);
+		assertEquals(-s.getLearningRate()*slope, middle[w] - weight, 1e-8);
+		assertEquals(middle[w], n.layers.get(2).get(w/16).getConnWeight(w%16), 0.0);
+
+		batch.trainBatch(in, actuals);
+		for(int l=0; l<n.getEngine().getNumLayers(); l++)
+		{
+			assertArrayEquals(n.getEngine().getLayer(l).getWeights(), batch.getEngine().getLayer(l).getWeights(), 1e-12);
+		}
+
+		File file = File.createTempFile("network", ".bin");
+		try
+		{
+			ModelCheckpoint.save(n, file);
+			Network loaded = ModelCheckpoint.load(file);
+			assertArrayEquals(new int[] {16, 6}, loaded.getVariables().getHiddenSizes());
+			for(int l=0; l<n.getEngine().getNumLayers(); l++)
+			{
+				assertArrayEquals(n.getEngine().getLayer(l).getWeights(), loaded.getEngine().getLayer(l).getWeights(), 0.0);
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Half the sum of the squared differences between the outputs of the network and the actuals
+	 */
+	private double squaredError(Network n, double[] in, double[] actuals)
+	{
+		n.setInputs(in);
+		n.feedForward();
+		double sum = 0;
+		for(int k=0; k<actuals.length; k++)
+		{
+			double difference = actuals[k] - n.outputNeurons.get(k).getOutput();
+			sum = sum + (difference*difference);
+		}
+		return sum/2;
+	}
+	
+	/**
+	 * Tests that once the buffers are warmed up, normalizing a window in place, training on it
+	 * one sample or one batch at a time, and predicting into reused arrays allocate nothing,
+	 * using the JVM's count of the bytes allocated by this thread
+	 */
+	@Test
+	public void testTrainingDoesNotAllocate()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner s = new Runner();
+		Network n = new Network(s);
+		//The vector kernels only stop allocating once the JIT has compiled them for a single
+		//width, and testKernels uses every width in this JVM, so the buffers are checked with
+		//the scalar kernels
+		n.getEngine().setKernels(Kernels.SCALAR);
+		double[][] prices = new double[8][s.getNumInputs()];
+		double[][] actualPrices = new double[8][s.getNumOutputs()];
+		for(int b=0; b<prices.length; b++)
+		{
+			for(int i=0; i<prices[b].length; i++)
+			{
+				prices[b][i] = rand.nextDouble(300, 10);
+			}
+			for(int k=0; k<actualPrices[b].length; k++)
+			{
+				actualPrices[b][k] = rand.nextDouble(300, 10);
+			}
+		}
+		double[][] in = new double[8][s.getNumInputs()];
+		double[][] actuals = new double[8][s.getNumOutputs()];
+		double[][] outputs = new double[8][s.getNumOutputs()];
+
+		int steps = 2000;
+		long[] allocated = new long[8];
+		for(int round=0; round<allocated.length; round++)
+		{
+			long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			for(int step=0; step<steps; step++)
+			{
+				int b = step%in.length;
+				n.normalizeValues(prices[b], in[b], s.getDataMax(), s.getDataMin());
+				n.normalizeValues(actualPrices[b], actuals[b], s.getDataMax(), s.getDataMin());
+				n.setInputs(in[b]);
+				n.feedForward();
+				n.setActuals(actuals[b]);
+				n.calculateError();
+				n.updateWeights();
+				if(b == in.length - 1)
+				{
+					n.trainBatch(in, actuals);
+					n.predict(in, outputs);
+					n.denormalizeValues(outputs[0], outputs[0], s.getDataMax(), s.getDataMin());
+				}
+			}
+			allocated[round] = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		}
+		//The first rounds fill the batch and prediction buffers and give the JIT time to compile
+		//the loops. After that a round allocates nothing, apart from the odd few bytes when the
+		//JIT recompiles something, which is far less than one object per step.
+		long least = Long.MAX_VALUE;
+		for(int round=allocated.length/2; round<allocated.length; round++)
+		{
+			least = Math.min(least, allocated[round]);
+		}
+		assertEquals(0, least);
+		assertTrue(allocated[allocated.length-1] < steps);
+	}
+	
+	/**
+	 * Tests that every kind of kernel gives the scalar results, exactly for AXPY and within
+	 * rounding for dot products, on lengths that do and do not fill whole vectors, and that a
+	 * network trained with vector kernels matches one trained with scalar kernels
+	 */
+	@Test
+	public void testKernels()
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		String[] names = {"vector", "vector128", "vector256", "vector512"};
+		for(String name : names)
+		{
+			Kernels kernels = Kernels.create(name);
+			for(int length=0; length<40; length+=3)
+			{
+				double[] a = new double[length + 5];
+				double[] b = new double[length + 7];
+				for(int i=0; i<a.length; i++)
+				{
+					a[i] = rand.nextDouble(1, -1);
+				}
+				for(int i=0; i<b.length; i++)
+				{
+					b[i] = rand.nextDouble(1, -1);
+				}
+				assertEquals(name, Kernels.SCALAR.dot(a, 5, b, 2, length), kernels.dot(a, 5, b, 2, length), 1e-12);
+				double[] expected = b.clone();
+				Kernels.SCALAR.axpy(0.3, a, 1, expected, 7, length);
+				kernels.axpy(0.3, a, 1, b, 7, length);
+				assertArrayEquals(name, expected, b, 0.0);
+
+				float[] fa = new float[a.length];
+				float[] fb = new float[b.length];
+				for(int i=0; i<fa.length; i++)
+				{
+					fa[i] = (float) a[i];
+				}
+				for(int i=0; i<fb.length; i++)
+				{
+					fb[i] = (float) b[i];
+				}
+				assertEquals(name, Kernels.SCALAR.dot(fa, 5, fb, 2, length), kernels.dot(fa, 5, fb, 2, length), 1e-5);
+				assertEquals(name, Kernels.SCALAR.wideDot(fa, 5, fb, 2, length), kernels.wideDot(fa, 5, fb, 2, length), 1e-12);
+				float[] expectedFloats = fb.clone();
+				Kernels.SCALAR.axpy(0.3f, fa, 1, expectedFloats, 7, length);
+				kernels.axpy(0.3f, fa, 1, fb, 7, length);
+				assertArrayEquals(name, expectedFloats, fb, 0.0f);
+				double[] wide = b.clone();
+				expected = b.clone();
+				Kernels.SCALAR.wideAxpy(0.3, fa, 1, expected, 7, length);
+				kernels.wideAxpy(0.3, fa, 1, wide, 7, length);
+				assertArrayEquals(name, expected, wide, 0.0);
+			}
+		}
+		assertSame(Kernels.SCALAR, Kernels.create("scalar"));
+
+		Runner s = new Runner(37, new int[] {70, 19}, 5);
+		Network scalar = new Network(s);
+		Network vector = new Network(s);
+		scalar.getEngine().setKernels(Kernels.SCALAR);
+		vector.getEngine().setKernels(Kernels.create("vector"));
+		for(int l=0; l<scalar.getEngine().getNumLayers(); l++)
+		{
+			double[] weights = scalar.getEngine().getLayer(l).getWeights();
+			System.arraycopy(weights, 0, vector.getEngine().getLayer(l).getWeights(), 0, weights.length);
+		}
+		double[][] in = new double[10][s.getNumInputs()];
+		double[][] actuals = new double[10][s.getNumOutputs()];
+		for(int b=0; b<in.length; b++)
+		{
+			for(int i=0; i<in[b].length; i++)
+			{
+				in[b][i] = rand.nextDouble(1, 0);
+			}
+			for(int k=0; k<actuals[b].length; k++)
+			{
+				actuals[b][k] = rand.nextDouble(1, 0);
+			}
+			scalar.setInputs(in[b]);
+			scalar.feedForward();
+			scalar.setActuals(actuals[b]);
+			scalar.calculateError();
+			scalar.updateWeights();
+			vector.setInputs(in[b]);
+			vector.feedForward();
+			vector.setActuals(actuals[b]);
+			vector.calculateError();
+			vector.updateWeights();
+		}
+		scalar.trainBatch(in, actuals);
+		vector.trainBatch(in, actuals);
+		for(int l=0; l<scalar.getEngine().getNumLayers(); l++)
+		{
+			assertArrayEquals(scalar.getEngine().getLayer(l).getWeights(), vector.getEngine().getLayer(l).getWeights(), 1e-10);
+		}
+	}
+	
+	/**
+	 * Splitting the neurons of each layer between threads gives exactly the outputs of feeding
+	 * forward on one thread, with the common pool through the Runner setting and with a pool
+	 * of several threads that splits layers into ranges not divisible by 4
+	 */
+	@Test
+	public void testParallelForward()
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner r = new Runner(37, new int[] {130, 45}, 5);
+		Runner p = new Runner(37, new int[] {130, 45}, 5);
+		p.setParallelForwardThreshold(100);
+		assertEquals(100, p.getParallelForwardThreshold());
+		Network sequential = new Network(r);
+		Network parallel = new Network(p);
+		for(int l=0; l<sequential.getEngine().getNumLayers(); l++)
+		{
+			double[] weights = sequential.getEngine().getLayer(l).getWeights();
+			System.arraycopy(weights, 0, parallel.getEngine().getLayer(l).getWeights(), 0, weights.length);
+		}
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try
+		{
+			for(int round=0; round<2; round++)
+			{
+				if(round == 1)
+				{
+					parallel.getEngine().setParallelForward(pool, 37);
+				}
+				for(int k=0; k<5; k++)
+				{
+					double[] in = new double[r.getNumInputs()];
+					for(int i=0; i<in.length; i++)
+					{
+						in[i] = rand.nextDouble(1, 0);
+					}
+					sequential.setInputs(in);
+					sequential.feedForward();
+					parallel.setInputs(in);
+					parallel.feedForward();
+					for(int l=0; l<sequential.getEngine().getNumLayers(); l++)
+					{
+						assertArrayEquals(sequential.getEngine().getLayer(l).getOutputs(), parallel.getEngine().getLayer(l).getOutputs(), 0.0);
+					}
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		try
+		{
+			p.setParallelForwardThreshold(-1);
+			fail("A negative threshold should be rejected");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+
+	/**
+	 * The tiled matrix products give exactly the same results as a row at a time for shapes
+	 * that do not divide into the tiles or into blocks of four rows, with every kind of kernel,
+	 * so the tiles the tuner picks never change what a network learns.
+	 */
+	@Test
+	public void testGemm()
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Gemm[] tiles = {new Gemm(1, 1, 1), new Gemm(3, 5, 2), new Gemm(4, 8, 4), new Gemm(8, 64, 16), Gemm.UNTILED, Gemm.DEFAULT};
+		Kernels[] kernels = {Kernels.SCALAR, Kernels.create("vector128"), Kernels.create("vector256"), Kernels.create("vector")};
+		int[][] shapes = {{1, 1, 1}, {5, 7, 3}, {9, 33, 5}, {16, 70, 8}};
+		for(int[] shape : shapes)
+		{
+			int rows = shape[0];
+			int depth = shape[1];
+			int count = shape[2];
+			double[] w = new double[rows*depth];
+			double[] x = new double[count*depth];
+			double[] e = new double[count*rows];
+			double[] g = new double[rows*depth];
+			for(int k=0; k<w.length; k++)
+			{
+				w[k] = rand.nextDouble(1, -1);
+				g[k] = rand.nextDouble(1, -1);
+			}
+			for(int k=0; k<x.length; k++)
+			{
+				x[k] = rand.nextDouble(1, 0);
+			}
+			for(int k=0; k<e.length; k++)
+			{
+				e[k] = rand.nextDouble(1, -1);
+			}
+			for(Kernels kernel : kernels)
+			{
+				//A row at a time with the same kernels
+				double[] products = new double[count*rows];
+				double[] transposed = new double[count*depth];
+				double[] gradients = g.clone();
+				for(int b=0; b<count; b++)
+				{
+					for(int i=0; i<rows; i++)
+					{
+						products[b*rows + i] = kernel.dot(x, b*depth, w, i*depth, depth);
+						kernel.axpy(e[b*rows + i], w, i*depth, transposed, b*depth, depth);
+					}
+				}
+				for(int i=0; i<rows; i++)
+				{
+					for(int b=0; b<count; b++)
+					{
+						kernel.axpy(e[b*rows + i], x, b*depth, gradients, i*depth, depth);
+					}
+				}
+
+				for(Gemm gemm : tiles)
+				{
+					String name = kernel + " " + gemm + " " + rows + "x" + depth + "x" + count;
+					double[] out = new double[count*rows];
+					gemm.multiply(kernel, w, rows, depth, x, count, out);
+					assertArrayEquals(name, products, out, 0.0);
+					out = new double[count*depth];
+					gemm.multiplyTransposed(kernel, w, rows, depth, e, count, out);
+					assertArrayEquals(name, transposed, out, 0.0);
+					out = g.clone();
+					gemm.accumulate(kernel, e, rows, x, depth, count, out);
+					assertArrayEquals(name, gradients, out, 0.0);
+				}
+			}
+		}
+		assertEquals("8,64,16", Gemm.create("8, 64, 16").toString());
+		assertTrue(Gemm.DEFAULT.getRowBlock() > 0 && Gemm.DEFAULT.getDepthBlock() > 0 && Gemm.DEFAULT.getSampleBlock() > 0);
+		if(System.getProperty("nn.tiles") == null)
+		{
+			assertEquals(Gemm.DEFAULT_TILES, Gemm.DEFAULT.toString());
+		}
+	}
+
+	/**
+	 * A single precision network, with and without double accumulation, trained one sample at a
+	 * time and in a batch from the same weights as a double precision network, stays within float
+	 * rounding of it. Its neurons, predict and checkpoints see the single precision weights.
+	 */
+	@Test
+	public void testSinglePrecision() throws IOException
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner d = new Runner(37, new int[] {70, 19}, 5);
+		Runner f = new Runner(37, new int[] {70, 19}, 5);
+		f.setPrecision(true, false);
+		Runner fd = new Runner(37, new int[] {70, 19}, 5);
+		fd.setPrecision(true, true);
+		Network[] networks = {new Network(d), new Network(f), new Network(fd)};
+		assertNull(networks[0].getFloatEngine());
+		for(int m=1; m<networks.length; m++)
+		{
+			for(int l=0; l<networks[0].getEngine().getNumLayers(); l++)
+			{
+				double[] weights = networks[0].getEngine().getLayer(l).getWeights();
+				System.arraycopy(weights, 0, networks[m].getEngine().getLayer(l).getWeights(), 0, weights.length);
+			}
+			networks[m].reloadWeights();
+		}
+
+		double[][] in = new double[10][d.getNumInputs()];
+		double[][] actuals = new double[10][d.getNumOutputs()];
+		for(int b=0; b<in.length; b++)
+		{
+			for(int i=0; i<in[b].length; i++)
+			{
+				in[b][i] = rand.nextDouble(1, 0);
+			}
+			for(int k=0; k<actuals[b].length; k++)
+			{
+				actuals[b][k] = rand.nextDouble(1, 0);
+			}
+			for(Network n : networks)
+			{
+				n.setInputs(in[b]);
+				n.feedForward();
+				n.setActuals(actuals[b]);
+				n.calculateError();
+				n.updateWeights();
+			}
+			for(int m=1; m<networks.length; m++)
+			{
+				for(int k=0; k<d.getNumOutputs(); k++)
+				{
+					assertEquals(networks[0].outputNeurons.get(k).getOutput(), networks[m].outputNeurons.get(k).getOutput(), 1e-5);
+					assertEquals(networks[0].outputErrors[k], networks[m].outputErrors[k], 1e-5);
+				}
+			}
+		}
+		for(Network n : networks)
+		{
+			n.trainBatch(in, actuals);
+			n.syncWeights();
+		}
+		for(int m=1; m<networks.length; m++)
+		{
+			Network n = networks[m];
+			for(int l=0; l<n.getEngine().getNumLayers(); l++)
+			{
+				assertArrayEquals(networks[0].getEngine().getLayer(l).getWeights(), n.getEngine().getLayer(l).getWeights(), 1e-5);
+				float[] weights = n.getFloatEngine().getLayer(l).getWeights();
+				for(int w=0; w<weights.length; w++)
+				{
+					assertEquals(weights[w], n.getEngine().getLayer(l).getWeights()[w], 0.0);
+				}
+			}
+			assertEquals(n.ohConnectionWeights[3], n.outputNeurons.get(0).getConnWeight(3), 0.0);
+
+			double[][] predicted = n.predict(in);
+			n.setInputs(in[4]);
+			n.feedForward();
+			for(int k=0; k<d.getNumOutputs(); k++)
+			{
+				assertEquals(n.outputNeurons.get(k).getOutput(), predicted[4][k], 1e-6);
+			}
+
+			File file = File.createTempFile("single", ".nnet");
+			try
+			{
+				ModelCheckpoint.save(n, file);
+				Network loaded = ModelCheckpoint.load(file);
+				assertNull(loaded.getFloatEngine());
+				assertArrayEquals(predicted[4], loaded.predict(in)[4], 1e-5);
+			}
+			finally
+			{
+				file.delete();
+			}
+		}
+
+		try
+		{
+			new ParallelTrainer(networks[1], 2, false);
+			fail("Single precision networks should not train on several threads");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+		try
+		{
+			d.setPrecision(false, true);
+			fail("Double accumulation should need single precision");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+
+	/**
+	 * Tests that the off-heap kernels match the array kernels, that an engine over a copy of the
+	 * weights or over a mapped checkpoint trains and predicts like the network, that a read-only
+	 * mapping cannot be trained, and that a writable mapping trains the file itself
+	 */
+	@Test
+	public void testOffHeapWeights() throws IOException
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		double[] x = new double[37];
+		double[] y = new double[37];
+		for(int j=0; j<x.length; j++)
+		{
+			x[j] = rand.nextDouble(1, -1);
+			y[j] = rand.nextDouble(1, -1);
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(8*40).order(ByteOrder.LITTLE_ENDIAN);
+		for(Kernels kernels : new Kernels[] {Kernels.SCALAR, Kernels.DEFAULT})
+		{
+			for(int j=0; j<y.length; j++)
+			{
+				buffer.putDouble((3+j)*8, y[j]);
+			}
+			assertEquals(kernels.dot(x, 0, y, 0, 37), kernels.dot(x, 0, buffer, 3, 37), 1e-14);
+			double[] expected = x.clone();
+			double[] sums = x.clone();
+			kernels.axpy(0.3, y, 0, expected, 0, 37);
+			kernels.axpy(0.3, buffer, 3, sums, 0, 37);
+			assertArrayEquals(expected, sums, 0.0);
+			expected = y.clone();
+			kernels.axpy(-0.7, x, 0, expected, 0, 37);
+			kernels.axpy(-0.7, x, 0, buffer, 3, 37);
+			for(int j=0; j<y.length; j++)
+			{
+				assertEquals(expected[j], buffer.getDouble((3+j)*8), 0.0);
+			}
+		}
+
+		Runner r = new Runner(12, new int[] {9, 6}, 4);
+		Network n = new Network(r);
+		File file = File.createTempFile("network", ".bin");
+		try
+		{
+			ModelCheckpoint.save(n, file);
+			OffHeapWeights copy = OffHeapWeights.copyOf(n);
+			OffHeapWeights mapped = OffHeapWeights.map(file, true);
+			OffHeapWeights readOnly = OffHeapWeights.map(file, false);
+			assertEquals(12*9 + 9*6 + 6*4, copy.getNumWeights());
+			assertArrayEquals(new int[] {12, 9, 6, 4}, mapped.getSizes());
+			assertTrue(mapped.isWritable());
+			assertFalse(readOnly.isWritable());
+			OffHeapEngine[] engines = {new OffHeapEngine(copy), new OffHeapEngine(mapped)};
+			double[] in = new double[12];
+			double[] actuals = new double[4];
+			for(int step=0; step<20; step++)
+			{
+				for(int j=0; j<in.length; j++)
+				{
+					in[j] = rand.nextDouble(1, 0);
+				}
+				for(int i=0; i<actuals.length; i++)
+				{
+					actuals[i] = rand.nextDouble(1, 0);
+				}
+				n.setInputs(in);
+				n.feedForward();
+				n.setActuals(actuals);
+				n.calculateError();
+				for(OffHeapEngine engine : engines)
+				{
+					engine.setInputs(in);
+					engine.feedForward();
+					assertArrayEquals(n.getEngine().getOutputs(), engine.getOutputs(), 1e-12);
+					engine.calculateError(actuals);
+					assertArrayEquals(n.hiddenErrors, engine.getErrors(0), 1e-12);
+					engine.updateWeights(r.getLearningRate());
+				}
+				n.updateWeights();
+			}
+
+			//The read-only mapping sees the weights the writable one trained
+			double[][] windows = {in, new double[12]};
+			System.arraycopy(x, 0, windows[1], 0, 12);
+			double[][] predictions = new double[2][4];
+			new OffHeapEngine(readOnly).predict(windows, predictions, 2);
+			double[][] expected = n.predict(windows);
+			assertArrayEquals(expected[0], predictions[0], 1e-12);
+			assertArrayEquals(expected[1], predictions[1], 1e-12);
+			try
+			{
+				new OffHeapEngine(readOnly).updateWeights(0.1);
+				fail("A read-only mapping should not be trained");
+			}
+			catch(ReadOnlyBufferException e)
+			{
+			}
+
+			mapped.force();
+			Network loaded = ModelCheckpoint.load(file);
+			assertArrayEquals(n.hiConnectionWeights, loaded.hiConnectionWeights, 1e-12);
+			assertArrayEquals(n.ohConnectionWeights, loaded.ohConnectionWeights, 1e-12);
+			Network fromCopy = new Network(r, false);
+			copy.copyTo(fromCopy);
+			assertArrayEquals(loaded.ohConnectionWeights, fromCopy.ohConnectionWeights, 1e-12);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Tests that the neurons of a network store no weights of their own: each is a view of its
+	 * row of the layer's weight matrix, sized to the layer to its left, so training, setting a
+	 * weight through a neuron and loading a checkpoint are all seen on both sides at once. The
+	 * deprecated getConnWeights is only a copy, so writing into it changes nothing.
+	 */
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testNeuronWeightViews() throws IOException
+	{
+		Runner r = new Runner(12, new int[] {9, 7}, 3);
+		Network n = new Network(r);
+		for(int l=1; l<n.layers.size(); l++)
+		{
+			double[] matrix = n.getEngine().getLayer(l-1).getWeights();
+			int fanIn = n.layers.get(l-1).size();
+			for(int i=0; i<n.layers.get(l).size(); i++)
+			{
+				Neuron neuron = n.layers.get(l).get(i);
+				assertSame(matrix, neuron.getWeightBuffer());
+				assertEquals(i*fanIn, neuron.getWeightOffset());
+				assertEquals(fanIn, neuron.getConnWeights().length);
+				assertArrayEquals(Arrays.copyOfRange(matrix, i*fanIn, (i+1)*fanIn), neuron.getConnWeights(), 0.0);
+			}
+		}
+		assertEquals(0, n.inputNeurons.get(0).getConnWeights().length);
+		assertEquals(7, n.outputNeurons.get(2).getConnWeights().length);
+
+		SingletonRandom rand = SingletonRandom.getInstance();
+		double[] in = new double[r.getNumInputs()];
+		double[] actuals = new double[r.getNumOutputs()];
+		for(int i=0; i<in.length; i++)
+		{
+			in[i] = rand.nextDouble(1, 0);
+		}
+		for(int i=0; i<actuals.length; i++)
+		{
+			actuals[i] = rand.nextDouble(1, 0);
+		}
+		double before = n.outputNeurons.get(1).getConnWeight(4);
+		n.setInputs(in);
+		n.feedForward();
+		n.setActuals(actuals);
+		n.calculateError();
+		n.updateWeights();
+		assertNotEquals(before, n.outputNeurons.get(1).getConnWeight(4), 0.0);
+		assertEquals(n.ohConnectionWeights[1*7 + 4], n.outputNeurons.get(1).getConnWeight(4), 0.0);
+		n.trainBatch(new double[][] {in, in}, new double[][] {actuals, actuals});
+		assertEquals(n.hiConnectionWeights[8*12 + 11], n.hiddenNeurons.get(8).getConnWeight(11), 0.0);
+
+		n.layers.get(2).get(3).setConnectionWeight(5, 0.125);
+		assertEquals(0.125, n.getEngine().getLayer(1).getWeights()[3*9 + 5], 0.0);
+		n.layers.get(2).get(3).getConnWeights()[5] = 0.5;
+		assertEquals(0.125, n.layers.get(2).get(3).getConnWeight(5), 0.0);
+
+		File file = File.createTempFile("views", ".nnet");
+		try
+		{
+			ModelCheckpoint.save(n, file);
+			Network loaded = ModelCheckpoint.load(file);
+			assertEquals(0.125, loaded.layers.get(2).get(3).getConnWeight(5), 0.0);
+			assertArrayEquals(n.outputNeurons.get(2).getConnWeights(), loaded.outputNeurons.get(2).getConnWeights(), 0.0);
+		}
+		finally
+		{
+			file.delete();
+		}
+
+		//A neuron on its own grows its weights as connections are added
+		Neuron alone = new Neuron(r);
+		for(int j=0; j<10; j++)
+		{
+			alone.addConnection(n.inputNeurons.get(j), j/10.0);
+		}
+		assertEquals(10, alone.getConnWeights().length);
+		assertEquals(0.9, alone.getConnWeight(9), 0.0);
+	}
+
+	/**
+	 * Tests that networks take their weights from the seed of their Runner, in its weight range,
+	 * and that randomizing the weights again draws new ones
+	 */
+	@Test
+	public void testWeightsFromSeed()
+	{
+		Runner r = new Runner(12, new int[] {9, 7}, 3);
+		Network a = new Network(r);
+		Network b = new Network(r);
+		assertArrayEquals(a.hiConnectionWeights, b.hiConnectionWeights, 0.0);
+		assertArrayEquals(a.ohConnectionWeights, b.ohConnectionWeights, 0.0);
+		assertFalse(Arrays.equals(a.hiConnectionWeights, a.ohConnectionWeights));
+		for(int i=0; i<a.hiConnectionWeights.length; i++)
+		{
+			assertTrue(a.hiConnectionWeights[i] >= r.getMinWeight() && a.hiConnectionWeights[i] <= r.getMaxWeight());
+		}
+		b.randomizeWeights();
+		assertFalse(Arrays.equals(a.hiConnectionWeights, b.hiConnectionWeights));
+		r.setSeed(99);
+		Network c = new Network(r);
+		assertFalse(Arrays.equals(a.ohConnectionWeights, c.ohConnectionWeights));
+	}
+
+	/**
+	 * Checks the gradients of back propagation, one sample at a time and in batches, against
+	 * finite differences of the loss, for networks of one and two hidden layers with each
+	 * hidden activation. Then checks that a step of training moves every weight by minus the
+	 * learning rate times its gradient, so the hidden errors use the weights into the layer
+	 * to their right.
+	 */
+	@Test
+	public void testGradientCheck()
+	{
+		RandomSource source = new RandomSource(21);
+		int count = 3;
+		double[][] inputs = new double[count][6];
+		double[][] actuals = new double[count][3];
+		for(int b=0; b<count; b++)
+		{
+			source.fill(2*b, inputs[b], 0, 1);
+			source.fill(2*b + 1, actuals[b], 0.1, 0.9);
+		}
+		int[][] hiddenSizes = {{5}, {7, 4}};
+		Activation[] activations = {Activation.SIGMOID, Activation.TANH, Activation.leakyRelu(0.1)};
+		for(int[] hidden : hiddenSizes)
+		{
+			for(Activation activation : activations)
+			{
+				Runner r = new Runner(6, hidden, 3);
+				r.setActivations(activation, Activation.SIGMOID);
+				LayerEngine engine = new Network(r).getEngine();
+				double[][] numeric = GradientCheck.finiteDifferences(engine, inputs, actuals, count, 1e-6);
+				double[][] single = GradientCheck.backPropagated(engine, inputs, actuals, count, false);
+				double[][] batch = GradientCheck.backPropagated(engine, inputs, actuals, count, true);
+				String shape = Arrays.toString(hidden) + " " + activation;
+				assertTrue(shape, GradientCheck.maxRelativeError(single, numeric) < 1e-5);
+				assertTrue(shape, GradientCheck.maxRelativeError(batch, numeric) < 1e-5);
+				assertTrue(shape, GradientCheck.maxRelativeError(single, batch) < 1e-12);
+			}
+		}
+
+		Runner r = new Runner(6, new int[] {7, 4}, 3);
+		Network n = new Network(r);
+		double[][] gradients = GradientCheck.backPropagated(n.getEngine(), inputs, actuals, 1, false);
+		double[][] before = new double[gradients.length][];
+		for(int l=0; l<before.length; l++)
+		{
+			before[l] = n.getEngine().getLayer(l).getWeights().clone();
+		}
+		n.setInputs(inputs[0]);
+		n.feedForward();
+		n.setActuals(actuals[0]);
+		n.calculateError();
+		n.updateWeights();
+		for(int l=0; l<before.length; l++)
+		{
+			double[] after = n.getEngine().getLayer(l).getWeights();
+			for(int k=0; k<after.length; k++)
+			{
+				assertEquals(-r.getLearningRate()*gradients[l][k], after[k] - before[l][k], 1e-14);
+			}
+		}
+		double[] hidden = n.getEngine().getLayer(1).getErrors();
+		double[] outputErrors = n.outputErrors;
+		for(int h=0; h<hidden.length; h++)
+		{
+			double sum = 0;
+			for(int i=0; i<outputErrors.length; i++)
+			{
+				sum += outputErrors[i]*before[2][i*hidden.length + h];
+			}
+			double out = n.layers.get(2).get(h).getOutput();
+			assertEquals(out*(1-out)*sum, hidden[h], 1e-15);
+		}
+	}
+
 	@Test
 	public void testNormalize()
 	{
@@ -38,8 +38,8 @@ public class TestNeuron
 		double weight2 = 0.99;
 		n2.addConnection(n3,weight2);
 		assertEquals(2, n2.getConnected().size());
-		assertEquals(0.75, n2.connWeights[0], 0.001);
-		assertEquals(0.99, n2.connWeights[1], 0.001);
+		assertEquals(0.75, n2.getConnWeight(0), 0.001);
+		assertEquals(0.99, n2.getConnWeight(1), 0.001);
 	}
 	
 	/**
@@ -66,8 +66,8 @@ public class TestNeuron
 		assertEquals(0.45, n1.getOutput(),0.001);
 		assertEquals(0.55, n2.getOutput(),0.001);
 		assertEquals(0.616566504213193, n3.getOutput(),0.001);
-		assertEquals(0.75, n3.connWeights[0], 0.001);
-		assertEquals(0.25, n3.connWeights[1], 0.001);
+		assertEquals(0.75, n3.getConnWeight(0), 0.001);
+		assertEquals(0.25, n3.getConnWeight(1), 0.001);
 	}
 	
 	/**
@@ -98,8 +98,8 @@ public class TestNeuron
 		assertEquals(0.55, n2.getOutput(),0.001);
 		assertEquals(0.708373991032327, n3.getOutput(),0.001);
 		assertEquals(0.75, n4.getOutput(), 0.001);
-		assertEquals(0.75, n3.connWeights[0], 0.001);
-		assertEquals(0.25, n3.connWeights[1], 0.001);
-		assertEquals(0.55, n3.connWeights[2], 0.001);
+		assertEquals(0.75, n3.getConnWeight(0), 0.001);
+		assertEquals(0.25, n3.getConnWeight(1), 0.001);
+		assertEquals(0.55, n3.getConnWeight(2), 0.001);
 	}
 }
@@ -0,0 +1,159 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the online learner predicts from each series' last 4 days once it has them, and
+ * trains on each day that follows a prediction the same as training on the windows by hand.
+ */
+public class TestOnlineLearner
+{
+	//Two series whose days arrive interleaved, and a third that only starts later. A has 7 days, B 5 and C 5.
+	private static final String[] SYMBOLS = {"A", "B", "A", "B", "A", "B", "A", "A", "B", "C", "A", "B", "C", "C", "C", "A", "C"};
+
+	//The network the learner trains, and one trained by hand on the same windows
+	private Network online;
+	private Network manual;
+	private OnlineLearner learner;
+
+	@Before
+	public void setUp()
+	{
+		Runner r = new Runner(8, 5, 2);
+		r.setDataBounds(200, 0);
+		online = new Network(r);
+		manual = new Network(r);
+		learner = new OnlineLearner(online);
+	}
+
+	/**
+	 * Gives the learner every day of SYMBOLS, training and predicting with the manual network
+	 * alongside, and checks each prediction is made once a series has 4 days and matches the
+	 * manual network's
+	 */
+	private void replay()
+	{
+		RandomSource source = new RandomSource(22);
+		double[][] days = new double[SYMBOLS.length][2];
+		double[] predicted = new double[2];
+		for(int t=0; t<SYMBOLS.length; t++)
+		{
+			source.fill(t, days[t], 10, 190);
+			//Days of the same series before this one, oldest first
+			ArrayList<double[]> history = new ArrayList<double[]>();
+			for(int u=0; u<t; u++)
+			{
+				if(SYMBOLS[u].equals(SYMBOLS[t]))
+				{
+					history.add(days[u]);
+				}
+			}
+			if(history.size() >= 4)
+			{
+				manual.setInputs(window(manual, history, history.size() - 4));
+				manual.feedForward();
+				manual.setActuals(manual.normalizeValues(days[t], 200, 0));
+				manual.calculateError();
+				manual.updateWeights();
+			}
+			history.add(days[t]);
+			boolean made = learner.tick(SYMBOLS[t], days[t], System.nanoTime(), predicted);
+			assertEquals(SYMBOLS[t] + " day " + history.size(), history.size() >= 4, made);
+			if(made)
+			{
+				manual.setInputs(window(manual, history, history.size() - 4));
+				manual.feedForward();
+				double[] expected = manual.denormalizeValues(manual.getEngine().getOutputs(), 200, 0);
+				assertArrayEquals(expected, predicted, 1e-12);
+			}
+		}
+	}
+
+	/**
+	 * The normalized inputs of 4 days starting at the given one
+	 */
+	private static double[] window(Network n, List<double[]> days, int first)
+	{
+		double[] window = new double[8];
+		for(int d=0; d<4; d++)
+		{
+			System.arraycopy(n.normalizeValues(days.get(first + d), 200, 0), 0, window, 2*d, 2);
+		}
+		return window;
+	}
+
+	@Test
+	public void testPredictsLikeByHand()
+	{
+		replay();
+	}
+
+	@Test
+	public void testTrainsLikeByHand()
+	{
+		replay();
+		for(int l=0; l<online.getEngine().getNumLayers(); l++)
+		{
+			assertArrayEquals(manual.getEngine().getLayer(l).getWeights(), online.getEngine().getLayer(l).getWeights(), 1e-15);
+		}
+	}
+
+	/**
+	 * Tests the counts of series, days, predictions and updates, and that each prediction and
+	 * update is timed
+	 */
+	@Test
+	public void testCounts()
+	{
+		replay();
+		assertEquals(3, learner.getNumSeries());
+		assertEquals(SYMBOLS.length, learner.getTicks());
+		assertEquals(4 + 2 + 2, learner.getPredictions());
+		assertEquals(3 + 1 + 1, learner.getUpdates());
+		assertEquals(learner.getPredictions(), learner.getTickToPrediction().getCount());
+		assertEquals(learner.getUpdates(), learner.getUpdate().getCount());
+		assertTrue(learner.getMeanPercError() > 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNetworkMustTakeFourDays()
+	{
+		new OnlineLearner(new Network(new Runner(8, 5, 3)));
+	}
+
+	/**
+	 * Tests that the runner writes a line for each prediction and skips days with the wrong
+	 * number of prices
+	 */
+	@Test
+	public void testRunnerWritesPredictions() throws IOException
+	{
+		String stream = "X,10,20\nX,11,21\nX,12\nX,13,23\nX,14,24\n15,25\nX,16,26\n";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(new ByteArrayOutputStream()));
+		try
+		{
+			OnlineRunner.serve(learner, Channels.newChannel(new ByteArrayInputStream(stream.getBytes())), new PrintStream(out));
+		}
+		finally
+		{
+			System.setErr(err);
+		}
+		String[] lines = out.toString().split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0], lines[0].startsWith("X,"));
+		assertEquals(3, lines[1].split(",").length);
+		assertEquals(2, learner.getNumSeries());
+		assertEquals(6, learner.getTicks());
+	}
+}
@@ -0,0 +1,211 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests the first updates of each optimizer against their formulas, that the optimizers train
+ * the same on several threads as on one, and the learning rate of each schedule.
+ */
+public class TestOptimizer
+{
+	//Gradients and weights of a layer of one neuron with 5 inputs, and the learning rate
+	private static final double[] G = {0.5, -2, 0, 8, -0.25};
+	private static final double[] W = {0.1, 0.2, 0.3, 0.4, 0.5};
+	private static final double LR = 0.01;
+
+	/**
+	 * A layer holding W and G, updated by the optimizer
+	 */
+	private static DenseLayer layer(Optimizer optimizer)
+	{
+		DenseLayer layer = new DenseLayer(1, 5, W.clone());
+		layer.setOptimizer(optimizer);
+		layer.gradients = G.clone();
+		return layer;
+	}
+
+	/**
+	 * Networks of the given specifications with the same weights as the first
+	 */
+	private static Network[] copies(Runner... r)
+	{
+		Network[] networks = new Network[r.length];
+		for(int m=0; m<networks.length; m++)
+		{
+			networks[m] = new Network(r[m]);
+			for(int l=0; l<networks[0].getEngine().getNumLayers(); l++)
+			{
+				double[] weights = networks[0].getEngine().getLayer(l).getWeights();
+				System.arraycopy(weights, 0, networks[m].getEngine().getLayer(l).getWeights(), 0, weights.length);
+			}
+			networks[m].reloadWeights();
+		}
+		return networks;
+	}
+
+	/**
+	 * Fills a batch with random inputs and actuals
+	 */
+	private static void fill(RandomSource source, int round, double[][] in, double[][] actuals)
+	{
+		for(int b=0; b<in.length; b++)
+		{
+			source.fill(100*round + 2*b, in[b], 0, 1);
+			source.fill(100*round + 2*b + 1, actuals[b], 0, 1);
+		}
+	}
+
+	/**
+	 * Tests that the first step of Adam moves every weight by the learning rate in the direction
+	 * of its gradient
+	 */
+	@Test
+	public void testAdamFirstStep()
+	{
+		DenseLayer layer = layer(Optimizer.adam(0.9, 0.999, 1e-8));
+		layer.applyGradients(LR, 2);
+		for(int k=0; k<W.length; k++)
+		{
+			assertEquals(W[k] + LR*Math.signum(G[k]), layer.getWeights()[k], 1e-9);
+		}
+		assertEquals(1, layer.getUpdates());
+	}
+
+	@Test
+	public void testRmsPropFirstStep()
+	{
+		DenseLayer layer = layer(Optimizer.rmsProp(0.9, 1e-8));
+		layer.applyGradients(LR, 1);
+		for(int k=0; k<W.length; k++)
+		{
+			assertEquals(W[k] + LR*G[k]/(Math.sqrt(0.1*G[k]*G[k]) + 1e-8), layer.getWeights()[k], 1e-12);
+		}
+	}
+
+	/**
+	 * Tests two steps of Nesterov momentum, the velocity being g after the first step and 1.9g
+	 * after the second
+	 */
+	@Test
+	public void testNesterovTwoSteps()
+	{
+		DenseLayer layer = layer(Optimizer.nesterov(0.9));
+		layer.applyGradients(LR, 1);
+		layer.applyGradients(LR, 1);
+		for(int k=0; k<W.length; k++)
+		{
+			double expected = W[k] + LR*(0.9*G[k] + G[k]) + LR*(0.9*1.9*G[k] + G[k]);
+			assertEquals(expected, layer.getWeights()[k], 1e-12);
+		}
+	}
+
+	/**
+	 * Tests that momentum of 0 trains the same as plain gradient descent, in batches and one
+	 * sample at a time
+	 */
+	@Test
+	public void testMomentumOfZeroIsSgd()
+	{
+		Runner still = new Runner(12, new int[] {9, 6}, 4);
+		still.setOptimizer(Optimizer.momentum(0));
+		Network[] networks = copies(new Runner(12, new int[] {9, 6}, 4), still);
+		double[][] in = new double[5][12];
+		double[][] actuals = new double[5][4];
+		RandomSource source = new RandomSource(16);
+		for(int round=0; round<4; round++)
+		{
+			fill(source, round, in, actuals);
+			for(Network n : networks)
+			{
+				n.trainBatch(in, actuals);
+				n.setInputs(in[0]);
+				n.feedForward();
+				n.setActuals(actuals[0]);
+				n.calculateError();
+				n.updateWeights();
+			}
+		}
+		assertEquals(24, networks[1].getSamplesTrained());
+		for(int l=0; l<networks[0].getEngine().getNumLayers(); l++)
+		{
+			assertArrayEquals(networks[0].getEngine().getLayer(l).getWeights(), networks[1].getEngine().getLayer(l).getWeights(), 1e-12);
+		}
+		assertEquals(networks[1].ohConnectionWeights[3], networks[1].outputNeurons.get(0).getConnWeight(3), 0.0);
+	}
+
+	/**
+	 * Tests that the threads of ParallelTrainer update Adam's weights in slices to the same
+	 * weights as trainBatch
+	 */
+	@Test
+	public void testParallelSlicesMatchTrainBatch()
+	{
+		Runner adam = new Runner(12, new int[] {9, 6}, 4);
+		adam.setOptimizer(Optimizer.adam(0.9, 0.999, 1e-8));
+		adam.setLearningRate(0.01);
+		Network[] networks = copies(adam, adam);
+		double[][] in = new double[5][12];
+		double[][] actuals = new double[5][4];
+		RandomSource source = new RandomSource(16);
+		ParallelTrainer trainer = new ParallelTrainer(networks[1], 3, false);
+		for(int round=0; round<4; round++)
+		{
+			fill(source, round, in, actuals);
+			networks[0].trainBatch(in, actuals);
+			trainer.train(in, actuals, in.length);
+		}
+		trainer.shutdown();
+		assertEquals(20, networks[1].getSamplesTrained());
+		for(int l=0; l<networks[0].getEngine().getNumLayers(); l++)
+		{
+			assertArrayEquals(networks[0].getEngine().getLayer(l).getWeights(), networks[1].getEngine().getLayer(l).getWeights(), 1e-12);
+			assertEquals(4, networks[1].getEngine().getLayer(l).getUpdates());
+		}
+	}
+
+	@Test
+	public void testSchedules()
+	{
+		assertEquals(0.7, Schedule.CONSTANT.rate(0.7, 1000), 0.0);
+		assertEquals(0.8, Schedule.step(100, 0.5).rate(0.8, 99), 0.0);
+		assertEquals(0.2, Schedule.step(100, 0.5).rate(0.8, 250), 0.0);
+		assertEquals(0.4, Schedule.exponential(100, 0.25).rate(0.8, 50), 1e-15);
+		assertEquals(0.8, Schedule.cosine(100, 0.1).rate(0.8, 0), 1e-15);
+		assertEquals(0.44, Schedule.cosine(100, 0.1).rate(0.8, 50), 1e-15);
+		assertEquals(0.08, Schedule.cosine(100, 0.1).rate(0.8, 100), 1e-15);
+		assertEquals(0.08, Schedule.cosine(100, 0.1).rate(0.8, 500), 1e-15);
+	}
+
+	/**
+	 * Tests that a network's learning rate follows its schedule as it trains
+	 */
+	@Test
+	public void testScheduledLearningRate()
+	{
+		Runner r = new Runner(12, new int[] {9, 6}, 4);
+		r.setSchedule(Schedule.step(5, 0.5));
+		Network scheduled = new Network(r);
+		double[][] in = new double[5][12];
+		double[][] actuals = new double[5][4];
+		fill(new RandomSource(16), 0, in, actuals);
+		assertEquals(0.7, scheduled.getLearningRate(), 0.0);
+		scheduled.trainBatch(in, actuals);
+		assertEquals(0.35, scheduled.getLearningRate(), 0.0);
+	}
+
+	@Test
+	public void testSinglePrecisionNeedsSgd()
+	{
+		Runner adam = new Runner(12, new int[] {9, 6}, 4);
+		adam.setOptimizer(Optimizer.adam(0.9, 0.999, 1e-8));
+		adam.setPrecision(true, false);
+		try
+		{
+			new Network(adam);
+			fail("Single precision networks should only train with plain gradient descent");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+}
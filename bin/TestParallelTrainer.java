@@ -0,0 +1,131 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests that training on several threads, with the gradients averaged or with Hogwild updates,
+ * trains the same weights the network would on one thread.
+ */
+public class TestParallelTrainer
+{
+	/**
+	 * Tests that splitting a batch between threads and averaging their gradients trains the
+	 * same as one thread, and that the Hogwild mode on 1 thread trains the same as one sample
+	 * at a time
+	 */
+	@Test
+	public void testParallelTrainer()
+	{
+		SingletonRandom rand = SingletonRandom.getInstance();
+		Runner s = new Runner();
+		Network expected = new Network(s);
+		Network parallel = new Network(s);
+		Network hogwild = new Network(s);
+		Network sequential = new Network(s);
+		Network[] copies = {parallel, hogwild, sequential};
+		for(int c=0; c<copies.length; c++)
+		{
+			System.arraycopy(expected.hiConnectionWeights, 0, copies[c].hiConnectionWeights, 0, expected.hiConnectionWeights.length);
+			System.arraycopy(expected.ohConnectionWeights, 0, copies[c].ohConnectionWeights, 0, expected.ohConnectionWeights.length);
+		}
+		double[][] in = new double[7][s.getNumInputs()];
+		double[][] actuals = new double[7][s.getNumOutputs()];
+		for(int b=0; b<in.length; b++)
+		{
+			for(int i=0; i<in[b].length; i++)
+			{
+				in[b][i] = rand.nextDouble(1, 0);
+			}
+			for(int i=0; i<actuals[b].length; i++)
+			{
+				actuals[b][i] = rand.nextDouble(1, 0);
+			}
+		}
+
+		expected.trainBatch(in, actuals);
+		ParallelTrainer trainer = new ParallelTrainer(parallel, 3, false);
+		trainer.train(in, actuals, in.length);
+		trainer.shutdown();
+		ParallelTrainer single = new ParallelTrainer(hogwild, 1, true);
+		single.train(in, actuals, in.length);
+		single.shutdown();
+		for(int b=0; b<in.length; b++)
+		{
+			sequential.setInputs(in[b]);
+			sequential.feedForward();
+			sequential.setActuals(actuals[b]);
+			sequential.calculateError();
+			sequential.updateWeights();
+		}
+
+		for(int i=0; i<expected.hiConnectionWeights.length; i++)
+		{
+			assertEquals(expected.hiConnectionWeights[i], parallel.hiConnectionWeights[i], 1e-12);
+			assertEquals(sequential.hiConnectionWeights[i], hogwild.hiConnectionWeights[i], 0.0);
+		}
+		for(int i=0; i<expected.ohConnectionWeights.length; i++)
+		{
+			assertEquals(expected.ohConnectionWeights[i], parallel.ohConnectionWeights[i], 1e-12);
+			assertEquals(sequential.ohConnectionWeights[i], hogwild.ohConnectionWeights[i], 0.0);
+		}
+		assertEquals(parallel.ohConnectionWeights[0], parallel.outputNeurons.get(0).getConnWeight(0), 0.0);
+	}
+
+	/**
+	 * Tests that Hogwild threads count their updates on the master's layers, so Adam's bias
+	 * correction sees every update and training on one thread afterwards carries on the count
+	 */
+	@Test
+	public void testHogwildSharesOptimizerSteps()
+	{
+		Runner s = new Runner(6, 4, 2);
+		s.setOptimizer(Optimizer.adam(0.9, 0.999, 1e-8));
+		Network n = new Network(s);
+		double[][] in = new double[7][6];
+		double[][] actuals = new double[7][2];
+		RandomSource source = new RandomSource(5);
+		for(int b=0; b<in.length; b++)
+		{
+			source.fill(2*b, in[b], 0, 1);
+			source.fill(2*b + 1, actuals[b], 0, 1);
+		}
+
+		ParallelTrainer trainer = new ParallelTrainer(n, 3, true);
+		trainer.train(in, actuals, in.length);
+		trainer.train(in, actuals, in.length);
+		trainer.shutdown();
+		for(int l=0; l<n.getEngine().getNumLayers(); l++)
+		{
+			assertEquals(14, n.getEngine().getLayer(l).getUpdates());
+		}
+
+		n.setInputs(in[0]);
+		n.feedForward();
+		n.setActuals(actuals[0]);
+		n.calculateError();
+		n.updateWeights();
+		for(int l=0; l<n.getEngine().getNumLayers(); l++)
+		{
+			assertEquals(15, n.getEngine().getLayer(l).getUpdates());
+		}
+	}
+
+	/**
+	 * Tests that training on an empty batch, synchronously or Hogwild, changes no weights
+	 */
+	@Test
+	public void testEmptyBatch()
+	{
+		for(boolean hogwild : new boolean[] {false, true})
+		{
+			Network n = new Network(new Runner(8, 5, 2));
+			double[] hi = n.hiConnectionWeights.clone();
+			double[] oh = n.ohConnectionWeights.clone();
+			ParallelTrainer trainer = new ParallelTrainer(n, 3, hogwild);
+			trainer.train(new double[0][], new double[0][], 0);
+			trainer.shutdown();
+			assertArrayEquals(hi, n.hiConnectionWeights, 0.0);
+			assertArrayEquals(oh, n.ohConnectionWeights, 0.0);
+		}
+	}
+}
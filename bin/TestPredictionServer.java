@@ -0,0 +1,105 @@
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the prediction server answers a window of prices with the predicted prices, with
+ * batching on and off, and answers a window of the wrong size with an error.
+ */
+public class TestPredictionServer
+{
+	private Network n;
+	private double[][] windows;
+	private double[][] expected;
+
+	@Before
+	public void setUp()
+	{
+		Runner r = new Runner(8, 6, 2);
+		r.setDataBounds(200, 0);
+		n = new Network(r);
+		windows = new double[3][8];
+		RandomSource source = new RandomSource(23);
+		for(int b=0; b<windows.length; b++)
+		{
+			source.fill(b, windows[b], 0, 1);
+		}
+		expected = n.predict(windows);
+	}
+
+	/**
+	 * Sends each window as a line of prices with an id and checks the replies, then sends a line
+	 * of the wrong size
+	 */
+	private void exchange(PredictionServer server) throws IOException
+	{
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		try
+		{
+			PrintStream out = new PrintStream(socket.getOutputStream(), true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			for(int b=0; b<windows.length; b++)
+			{
+				double[] prices = n.denormalizeValues(windows[b], 200, 0);
+				StringBuilder request = new StringBuilder("W" + b);
+				for(double price : prices)
+				{
+					request.append(',').append(price);
+				}
+				out.println(request);
+				String[] reply = in.readLine().split(",");
+				assertEquals("W" + b, reply[0]);
+				assertEquals(expected[b][0]*200, Double.parseDouble(reply[1]), 1e-4);
+				assertEquals(expected[b][1]*200, Double.parseDouble(reply[2]), 1e-4);
+			}
+			out.println("1,2,3");
+			assertTrue(in.readLine().startsWith("ERROR"));
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testWithoutBatching() throws IOException
+	{
+		PredictionServer server = new PredictionServer(n, 0, 1, 0, TimeUnit.MICROSECONDS);
+		try
+		{
+			assertNull(server.getBatcher());
+			exchange(server);
+		}
+		finally
+		{
+			server.close();
+		}
+		assertEquals(3, server.getLatency().getCount());
+	}
+
+	@Test
+	public void testWithBatching() throws IOException
+	{
+		PredictionServer server = new PredictionServer(n, 0, 32, 0, TimeUnit.MICROSECONDS);
+		try
+		{
+			assertNotNull(server.getBatcher());
+			exchange(server);
+			assertEquals(3, server.getBatcher().getRequests());
+		}
+		finally
+		{
+			server.close();
+		}
+		assertEquals(3, server.getLatency().getCount());
+	}
+}
@@ -0,0 +1,250 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the price loader groups the lines of a file into weeks of 4 input lines and
+ * 1 line of actuals, and parses the values the same as Double.parseDouble.
+ */
+public class TestPriceLoader
+{
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = File.createTempFile("prices", ".csv");
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	private void write(String contents) throws IOException
+	{
+		PrintWriter out = new PrintWriter(file);
+		out.print(contents);
+		out.close();
+	}
+
+	/**
+	 * Tests that each week fills the inputs from 4 lines and the actuals from the 5th, with
+	 * or without a trailing comma and with Windows line endings
+	 */
+	@Test
+	public void testWeeks() throws IOException
+	{
+		write("1,2,\n3,4,\r\n5,6\n7,8\n9.5,10.25\n"
+				+ "11,12\n13,14\n15,16\n17,18\n19,20\n"
+				+ "21,22\n");
+		PriceLoader loader = new PriceLoader(file, 8, 2);
+		assertTrue(loader.nextWeek());
+		double[] expected = {1, 2, 3, 4, 5, 6, 7, 8};
+		assertArrayEquals(expected, loader.getInputs(), 0.0);
+		assertArrayEquals(new double[] {9.5, 10.25}, loader.getActuals(), 0.0);
+		double[] inputs = loader.getInputs();
+		assertTrue(loader.nextWeek());
+		assertSame(inputs, loader.getInputs());
+		assertEquals(17, loader.getInputs()[6], 0.0);
+		assertArrayEquals(new double[] {19, 20}, loader.getActuals(), 0.0);
+		//The last week is not complete
+		assertFalse(loader.nextWeek());
+		loader.close();
+		assertEquals(file.length(), loader.getBytesRead());
+		assertTrue(loader.getMegabytesPerSecond() > 0);
+	}
+
+	/**
+	 * Tests that the values of a line stop at the first field that is not a number
+	 */
+	@Test
+	public void testNonNumericField() throws IOException
+	{
+		write("1,x,3\n2\n3\n4\n5\n");
+		PriceLoader loader = new PriceLoader(file, 4, 1);
+		assertTrue(loader.nextWeek());
+		assertArrayEquals(new double[] {1, 2, 3, 4}, loader.getInputs(), 0.0);
+		assertEquals(5, loader.getActuals()[0], 0.0);
+		loader.close();
+	}
+
+	/**
+	 * Tests that the parsed values are exactly the values Double.parseDouble gives
+	 */
+	@Test
+	public void testParse() throws IOException
+	{
+		String[] values = {"348.48", "8.92", "-0.001", "+7", "1e3", "2.5E-4", "0.1234567890123456789",
+				"123456789012345678901234", "1.7976931348623157E308", "4.9e-324"};
+		StringBuilder contents = new StringBuilder();
+		for(int i=0; i<values.length; i++)
+		{
+			contents.append(values[i]).append(i%2 == 0 ? "," : "\n");
+		}
+		write(contents.toString());
+		PriceLoader loader = new PriceLoader(file, 8, 2);
+		assertTrue(loader.nextWeek());
+		for(int i=0; i<8; i++)
+		{
+			assertEquals(Double.parseDouble(values[i]), loader.getInputs()[i], 0.0);
+		}
+		assertEquals(Double.parseDouble(values[8]), loader.getActuals()[0], 0.0);
+		assertEquals(Double.parseDouble(values[9]), loader.getActuals()[1], 0.0);
+		loader.close();
+	}
+
+	/**
+	 * Tests that a dataset holds every complete week of the file normalized with the data bounds
+	 * of the Runner, one row after another
+	 */
+	@Test
+	public void testDataset() throws IOException
+	{
+		StringBuilder contents = new StringBuilder();
+		for(int line=0; line<5*40+3; line++)
+		{
+			contents.append(line).append(',').append(line + 0.5).append('\n');
+		}
+		write(contents.toString());
+		Runner r = new Runner(8, 3, 2);
+		r.setDataBounds(300, 100);
+		PriceDataset data = PriceDataset.load(file, r);
+		assertEquals(40, data.size());
+		assertEquals(40*8, data.getInputs().length);
+		assertEquals(40*2, data.getActuals().length);
+		double[] inputs = new double[8];
+		double[] actuals = new double[2];
+		data.copyInputs(37, inputs);
+		data.copyActuals(37, actuals);
+		assertEquals((37*5 - 100)/200.0, inputs[0], 1e-15);
+		assertEquals((37*5 + 3.5 - 100)/200.0, inputs[7], 1e-15);
+		assertEquals((37*5 + 4 - 100)/200.0, actuals[0], 1e-15);
+		assertEquals(37*5 + 4.5, data.denormalize(actuals[1]), 1e-12);
+	}
+
+	/**
+	 * Tests that a stream is read a day at a time, with or without the symbol of its series
+	 */
+	@Test
+	public void testTicks() throws IOException
+	{
+		String contents = "TECH,1,2.5\n\r\n 70.07,21.21\nOIL, 3 ,4,\r\nTECH,5\nx\n";
+		PriceLoader loader = new PriceLoader(Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.ISO_8859_1))), 4, 2);
+		double[] prices = new double[2];
+		assertEquals("TECH", loader.nextTick(prices));
+		assertArrayEquals(new double[] {1, 2.5}, prices, 0.0);
+		assertTrue(loader.hasBufferedLine());
+		assertEquals("", loader.nextTick(prices));
+		assertEquals(2, loader.getTickValues());
+		assertArrayEquals(new double[] {70.07, 21.21}, prices, 0.0);
+		assertEquals("OIL", loader.nextTick(prices));
+		assertArrayEquals(new double[] {3, 4}, prices, 0.0);
+		assertEquals("TECH", loader.nextTick(prices));
+		assertEquals(1, loader.getTickValues());
+		assertEquals("x", loader.nextTick(prices));
+		assertEquals(0, loader.getTickValues());
+		assertFalse(loader.hasBufferedLine());
+		assertNull(loader.nextTick(prices));
+		loader.close();
+	}
+
+	/**
+	 * Tests that a line with more values than the network takes is an error
+	 */
+	@Test(expected = IOException.class)
+	public void testTooManyValues() throws IOException
+	{
+		write("1,2,3\n");
+		PriceLoader loader = new PriceLoader(file, 2, 1);
+		try
+		{
+			loader.nextWeek();
+		}
+		finally
+		{
+			loader.close();
+		}
+	}
+
+	/**
+	 * Tests that a read of 0 bytes, which a stream can return before its next bytes arrive, does
+	 * not end the stream
+	 */
+	@Test
+	public void testEmptyReads() throws IOException
+	{
+		final ReadableByteChannel bytes = Channels.newChannel(new ByteArrayInputStream("TECH,1,2\nOIL,3,4\n".getBytes(StandardCharsets.ISO_8859_1)));
+		ReadableByteChannel stuttering = new ReadableByteChannel()
+		{
+			private int reads;
+
+			public int read(ByteBuffer dst) throws IOException
+			{
+				//Every other read has nothing, and the others 3 bytes at most
+				if(reads++ % 2 == 0)
+				{
+					return 0;
+				}
+				ByteBuffer part = dst.slice();
+				part.limit(Math.min(3, part.remaining()));
+				int read = bytes.read(part);
+				if(read > 0)
+				{
+					dst.position(dst.position() + read);
+				}
+				return read;
+			}
+
+			public boolean isOpen()
+			{
+				return bytes.isOpen();
+			}
+
+			public void close() throws IOException
+			{
+				bytes.close();
+			}
+		};
+		PriceLoader loader = new PriceLoader(stuttering, 4, 2);
+		double[] prices = new double[2];
+		assertEquals("TECH", loader.nextTick(prices));
+		assertArrayEquals(new double[] {1, 2}, prices, 0.0);
+		assertEquals("OIL", loader.nextTick(prices));
+		assertArrayEquals(new double[] {3, 4}, prices, 0.0);
+		assertNull(loader.nextTick(prices));
+		loader.close();
+	}
+
+	/**
+	 * Tests that a channel in non-blocking mode is refused
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonBlockingChannel() throws IOException
+	{
+		Pipe pipe = Pipe.open();
+		try
+		{
+			pipe.source().configureBlocking(false);
+			new PriceLoader(pipe.source(), 4, 2);
+		}
+		finally
+		{
+			pipe.source().close();
+			pipe.sink().close();
+		}
+	}
+}
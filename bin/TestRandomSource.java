@@ -0,0 +1,81 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests that the streams of a RandomSource depend only on the seed and their number, and that a
+ * large array fills the same on any number of threads.
+ */
+public class TestRandomSource
+{
+	private final RandomSource source = new RandomSource(42);
+
+	//Long enough to be filled in chunks on several threads
+	private final double[] single = new double[5*RandomSource.PARALLEL_THRESHOLD + 123];
+
+	@Test
+	public void testSameSeedAndNumberSameStream()
+	{
+		assertEquals(source.stream(7).nextLong(), new RandomSource(42).stream(7).nextLong());
+	}
+
+	@Test
+	public void testStreamsDiffer()
+	{
+		assertNotEquals(source.stream(7).nextLong(), source.stream(8).nextLong());
+		assertNotEquals(source.stream(7).nextLong(), new RandomSource(43).stream(7).nextLong());
+		assertNotEquals(source.stream(7, 0).nextLong(), source.stream(7, 1).nextLong());
+	}
+
+	@Test
+	public void testFillInRange()
+	{
+		source.fill(3, single, -0.25, 0.75, null);
+		for(int i=0; i<single.length; i++)
+		{
+			assertTrue(single[i] >= -0.25 && single[i] < 0.75);
+		}
+	}
+
+	/**
+	 * Tests that each chunk of an array is drawn from the stream of its own chunk
+	 */
+	@Test
+	public void testFillChunks()
+	{
+		source.fill(3, single, -0.25, 0.75, null);
+		double[] chunk = new double[RandomSource.CHUNK];
+		RandomSource.fill(source.stream(3, 2), chunk, 0, chunk.length, -0.25, 0.75);
+		assertArrayEquals(chunk, Arrays.copyOfRange(single, 2*RandomSource.CHUNK, 3*RandomSource.CHUNK), 0.0);
+	}
+
+	/**
+	 * Tests that an array fills the same on one thread, on pools of 1 and 3 threads and on the
+	 * common pool
+	 */
+	@Test
+	public void testFillSameOnAnyThreads()
+	{
+		source.fill(3, single, -0.25, 0.75, null);
+		for(int threads : new int[] {1, 3})
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				double[] split = new double[single.length];
+				source.fill(3, split, -0.25, 0.75, pool);
+				assertArrayEquals(single, split, 0.0);
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		double[] common = new double[single.length];
+		source.fill(3, common, -0.25, 0.75);
+		assertArrayEquals(single, common, 0.0);
+	}
+}
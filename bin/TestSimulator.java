@@ -1,5 +1,7 @@
 import static org.junit.Assert.*;
 
+import java.util.Properties;
+
 import org.junit.Test;
 
 
@@ -38,4 +40,38 @@ public class TestSimulator
 		assertEquals(0,  s.calculatePercError(.5, .5), 0.0001);
 		
 	}
+
+	/**
+	 * Tests that the training options are read from properties and that those not given keep
+	 * their values
+	 */
+	@Test
+	public void testSetFromProperties()
+	{
+		Runner s = new Runner();
+		s.setBatchSize(4);
+		Properties properties = new Properties();
+		properties.setProperty("nnet.epochs", "30");
+		properties.setProperty("nnet.validation", "0.2");
+		properties.setProperty("nnet.patience", "3");
+		properties.setProperty("nnet.threads", "2");
+		properties.setProperty("nnet.hogwild", "true");
+		s.setFromProperties(properties);
+		assertEquals(30, s.getEpochs());
+		assertEquals(0.2, s.getValidationFraction(), 0.0);
+		assertEquals(3, s.getPatience());
+		assertEquals(4, s.getBatchSize());
+		assertEquals(2, s.getNumThreads());
+		assertTrue(s.isHogwild());
+
+		properties.setProperty("nnet.validation", "1.5");
+		try
+		{
+			s.setFromProperties(properties);
+			fail("A validation fraction above 1 was accepted");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
 }
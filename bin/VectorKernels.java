@@ -0,0 +1,779 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels that work on several doubles at once with the incubating vector API. Only Kernels
+ * refers to this class, by name, so the rest of the network runs without the vector module.
+ * The AXPY kernel multiplies and adds separately like the scalar loop, so it gives exactly the
+ * same results; the dot product adds in a different order and can differ in the last bits. The
+ * float kernels use vectors of the same width, holding twice as many lanes. The wide float kernels
+ * load half as many floats as a double vector has lanes and convert them to doubles.
+ *
+ * The JIT only turns vector code into vector instructions when the species is a constant, so
+ * each width is its own class with its own copy of the loops reading the species from a static
+ * final field. Shared loops taking the species as a parameter are not reliably inlined and fall
+ * back to allocating a vector object for every operation.
+ *
+ */
+abstract class VectorKernels extends Kernels
+{
+	/**
+	 * Creates the kernels for vectors of the given width
+	 * @param bits width of the vectors, or 0 for the widest the CPU supports
+	 * @return the kernels
+	 */
+	static Kernels forBits(int bits)
+	{
+		int widest = DoubleVector.SPECIES_PREFERRED.vectorBitSize();
+		if(bits == 0)
+		{
+			bits = widest;
+		}
+		if(bits > widest)
+		{
+			throw new IllegalArgumentException("The CPU does not have " + bits + " bit vectors");
+		}
+		switch(bits)
+		{
+			case 128:
+				return new Vector128();
+			case 256:
+				return new Vector256();
+			case 512:
+				return new Vector512();
+			default:
+				throw new IllegalArgumentException("No kernels for " + bits + " bit vectors");
+		}
+	}
+
+	private static class Vector128 extends VectorKernels
+	{
+		private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_128;
+		private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_128;
+		private static final VectorSpecies<Float> HALF_FLOATS = FloatVector.SPECIES_64;
+
+		public double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset+j);
+				DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset+j);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				sums.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public void dot4(double[] x, int xOffset, double[] w, int wOffset, int wStride, int length,
+				double[] sums, int sumsOffset)
+		{
+			int w1 = wOffset + wStride;
+			int w2 = w1 + wStride;
+			int w3 = w2 + wStride;
+			int upper = SPECIES.loopBound(length);
+			DoubleVector s0 = DoubleVector.zero(SPECIES);
+			DoubleVector s1 = DoubleVector.zero(SPECIES);
+			DoubleVector s2 = DoubleVector.zero(SPECIES);
+			DoubleVector s3 = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector v = DoubleVector.fromArray(SPECIES, x, xOffset+j);
+				s0 = s0.add(v.mul(DoubleVector.fromArray(SPECIES, w, wOffset+j)));
+				s1 = s1.add(v.mul(DoubleVector.fromArray(SPECIES, w, w1+j)));
+				s2 = s2.add(v.mul(DoubleVector.fromArray(SPECIES, w, w2+j)));
+				s3 = s3.add(v.mul(DoubleVector.fromArray(SPECIES, w, w3+j)));
+			}
+			double t0 = s0.reduceLanes(VectorOperators.ADD);
+			double t1 = s1.reduceLanes(VectorOperators.ADD);
+			double t2 = s2.reduceLanes(VectorOperators.ADD);
+			double t3 = s3.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				double v = x[xOffset+j];
+				t0 = t0 + (v*w[wOffset+j]);
+				t1 = t1 + (v*w[w1+j]);
+				t2 = t2 + (v*w[w2+j]);
+				t3 = t3 + (v*w[w3+j]);
+			}
+			sums[sumsOffset] = sums[sumsOffset] + t0;
+			sums[sumsOffset+1] = sums[sumsOffset+1] + t1;
+			sums[sumsOffset+2] = sums[sumsOffset+2] + t2;
+			sums[sumsOffset+3] = sums[sumsOffset+3] + t3;
+		}
+
+		public void axpy4(double a0, double a1, double a2, double a3, double[] x, int xOffset, int xStride,
+				double[] y, int yOffset, int length)
+		{
+			int x1 = xOffset + xStride;
+			int x2 = x1 + xStride;
+			int x3 = x2 + xStride;
+			int upper = SPECIES.loopBound(length);
+			DoubleVector b0 = DoubleVector.broadcast(SPECIES, a0);
+			DoubleVector b1 = DoubleVector.broadcast(SPECIES, a1);
+			DoubleVector b2 = DoubleVector.broadcast(SPECIES, a2);
+			DoubleVector b3 = DoubleVector.broadcast(SPECIES, a3);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector v = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				v = v.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(b0));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x1+j).mul(b1));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x2+j).mul(b2));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x3+j).mul(b3));
+				v.intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				double v = y[yOffset+j];
+				v = v + (a0*x[xOffset+j]);
+				v = v + (a1*x[x1+j]);
+				v = v + (a2*x[x2+j]);
+				v = v + (a3*x[x3+j]);
+				y[yOffset+j] = v;
+			}
+		}
+
+		public float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+		{
+			int upper = FLOATS.loopBound(length);
+			FloatVector sums = FloatVector.zero(FLOATS);
+			int j = 0;
+			for(; j<upper; j+=FLOATS.length())
+			{
+				FloatVector x = FloatVector.fromArray(FLOATS, a, aOffset+j);
+				FloatVector y = FloatVector.fromArray(FLOATS, b, bOffset+j);
+				sums = sums.add(x.mul(y));
+			}
+			float sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public double wideDot(float[] a, int aOffset, float[] b, int bOffset, int length)
+		{
+			int upper = HALF_FLOATS.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=HALF_FLOATS.length())
+			{
+				DoubleVector x = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, a, aOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				DoubleVector y = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, b, bOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + ((double) a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+		{
+			int upper = FLOATS.loopBound(length);
+			FloatVector a = FloatVector.broadcast(FLOATS, alpha);
+			int j = 0;
+			for(; j<upper; j+=FLOATS.length())
+			{
+				FloatVector sums = FloatVector.fromArray(FLOATS, y, yOffset+j);
+				sums.add(FloatVector.fromArray(FLOATS, x, xOffset+j).mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public void wideAxpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length)
+		{
+			int upper = HALF_FLOATS.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=HALF_FLOATS.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				DoubleVector values = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, x, xOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				sums.add(values.mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public double dot(double[] a, int aOffset, ByteBuffer b, int bIndex, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset+j);
+				DoubleVector y = DoubleVector.fromByteBuffer(SPECIES, b, (bIndex+j)*8, ByteOrder.LITTLE_ENDIAN);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b.getDouble((bIndex+j)*8));
+			}
+			return sum;
+		}
+
+		public void axpy(double alpha, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				DoubleVector values = DoubleVector.fromByteBuffer(SPECIES, x, (xIndex+j)*8, ByteOrder.LITTLE_ENDIAN);
+				sums.add(values.mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x.getDouble((xIndex+j)*8));
+			}
+		}
+
+		public void axpy(double alpha, double[] x, int xOffset, ByteBuffer y, int yIndex, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				int at = (yIndex+j)*8;
+				DoubleVector sums = DoubleVector.fromByteBuffer(SPECIES, y, at, ByteOrder.LITTLE_ENDIAN);
+				sums.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(a)).intoByteBuffer(y, at, ByteOrder.LITTLE_ENDIAN);
+			}
+			for(; j<length; j++)
+			{
+				int at = (yIndex+j)*8;
+				y.putDouble(at, y.getDouble(at) + (alpha*x[xOffset+j]));
+			}
+		}
+
+		public String toString()
+		{
+			return "vector128";
+		}
+	}
+
+	private static class Vector256 extends VectorKernels
+	{
+		private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+		private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_256;
+		private static final VectorSpecies<Float> HALF_FLOATS = FloatVector.SPECIES_128;
+
+		public double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset+j);
+				DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset+j);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				sums.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public void dot4(double[] x, int xOffset, double[] w, int wOffset, int wStride, int length,
+				double[] sums, int sumsOffset)
+		{
+			int w1 = wOffset + wStride;
+			int w2 = w1 + wStride;
+			int w3 = w2 + wStride;
+			int upper = SPECIES.loopBound(length);
+			DoubleVector s0 = DoubleVector.zero(SPECIES);
+			DoubleVector s1 = DoubleVector.zero(SPECIES);
+			DoubleVector s2 = DoubleVector.zero(SPECIES);
+			DoubleVector s3 = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector v = DoubleVector.fromArray(SPECIES, x, xOffset+j);
+				s0 = s0.add(v.mul(DoubleVector.fromArray(SPECIES, w, wOffset+j)));
+				s1 = s1.add(v.mul(DoubleVector.fromArray(SPECIES, w, w1+j)));
+				s2 = s2.add(v.mul(DoubleVector.fromArray(SPECIES, w, w2+j)));
+				s3 = s3.add(v.mul(DoubleVector.fromArray(SPECIES, w, w3+j)));
+			}
+			double t0 = s0.reduceLanes(VectorOperators.ADD);
+			double t1 = s1.reduceLanes(VectorOperators.ADD);
+			double t2 = s2.reduceLanes(VectorOperators.ADD);
+			double t3 = s3.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				double v = x[xOffset+j];
+				t0 = t0 + (v*w[wOffset+j]);
+				t1 = t1 + (v*w[w1+j]);
+				t2 = t2 + (v*w[w2+j]);
+				t3 = t3 + (v*w[w3+j]);
+			}
+			sums[sumsOffset] = sums[sumsOffset] + t0;
+			sums[sumsOffset+1] = sums[sumsOffset+1] + t1;
+			sums[sumsOffset+2] = sums[sumsOffset+2] + t2;
+			sums[sumsOffset+3] = sums[sumsOffset+3] + t3;
+		}
+
+		public void axpy4(double a0, double a1, double a2, double a3, double[] x, int xOffset, int xStride,
+				double[] y, int yOffset, int length)
+		{
+			int x1 = xOffset + xStride;
+			int x2 = x1 + xStride;
+			int x3 = x2 + xStride;
+			int upper = SPECIES.loopBound(length);
+			DoubleVector b0 = DoubleVector.broadcast(SPECIES, a0);
+			DoubleVector b1 = DoubleVector.broadcast(SPECIES, a1);
+			DoubleVector b2 = DoubleVector.broadcast(SPECIES, a2);
+			DoubleVector b3 = DoubleVector.broadcast(SPECIES, a3);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector v = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				v = v.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(b0));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x1+j).mul(b1));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x2+j).mul(b2));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x3+j).mul(b3));
+				v.intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				double v = y[yOffset+j];
+				v = v + (a0*x[xOffset+j]);
+				v = v + (a1*x[x1+j]);
+				v = v + (a2*x[x2+j]);
+				v = v + (a3*x[x3+j]);
+				y[yOffset+j] = v;
+			}
+		}
+
+		public float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+		{
+			int upper = FLOATS.loopBound(length);
+			FloatVector sums = FloatVector.zero(FLOATS);
+			int j = 0;
+			for(; j<upper; j+=FLOATS.length())
+			{
+				FloatVector x = FloatVector.fromArray(FLOATS, a, aOffset+j);
+				FloatVector y = FloatVector.fromArray(FLOATS, b, bOffset+j);
+				sums = sums.add(x.mul(y));
+			}
+			float sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public double wideDot(float[] a, int aOffset, float[] b, int bOffset, int length)
+		{
+			int upper = HALF_FLOATS.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=HALF_FLOATS.length())
+			{
+				DoubleVector x = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, a, aOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				DoubleVector y = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, b, bOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + ((double) a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+		{
+			int upper = FLOATS.loopBound(length);
+			FloatVector a = FloatVector.broadcast(FLOATS, alpha);
+			int j = 0;
+			for(; j<upper; j+=FLOATS.length())
+			{
+				FloatVector sums = FloatVector.fromArray(FLOATS, y, yOffset+j);
+				sums.add(FloatVector.fromArray(FLOATS, x, xOffset+j).mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public void wideAxpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length)
+		{
+			int upper = HALF_FLOATS.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=HALF_FLOATS.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				DoubleVector values = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, x, xOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				sums.add(values.mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public double dot(double[] a, int aOffset, ByteBuffer b, int bIndex, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset+j);
+				DoubleVector y = DoubleVector.fromByteBuffer(SPECIES, b, (bIndex+j)*8, ByteOrder.LITTLE_ENDIAN);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b.getDouble((bIndex+j)*8));
+			}
+			return sum;
+		}
+
+		public void axpy(double alpha, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				DoubleVector values = DoubleVector.fromByteBuffer(SPECIES, x, (xIndex+j)*8, ByteOrder.LITTLE_ENDIAN);
+				sums.add(values.mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x.getDouble((xIndex+j)*8));
+			}
+		}
+
+		public void axpy(double alpha, double[] x, int xOffset, ByteBuffer y, int yIndex, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				int at = (yIndex+j)*8;
+				DoubleVector sums = DoubleVector.fromByteBuffer(SPECIES, y, at, ByteOrder.LITTLE_ENDIAN);
+				sums.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(a)).intoByteBuffer(y, at, ByteOrder.LITTLE_ENDIAN);
+			}
+			for(; j<length; j++)
+			{
+				int at = (yIndex+j)*8;
+				y.putDouble(at, y.getDouble(at) + (alpha*x[xOffset+j]));
+			}
+		}
+
+		public String toString()
+		{
+			return "vector256";
+		}
+	}
+
+	private static class Vector512 extends VectorKernels
+	{
+		private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_512;
+		private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_512;
+		private static final VectorSpecies<Float> HALF_FLOATS = FloatVector.SPECIES_256;
+
+		public double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset+j);
+				DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset+j);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				sums.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public void dot4(double[] x, int xOffset, double[] w, int wOffset, int wStride, int length,
+				double[] sums, int sumsOffset)
+		{
+			int w1 = wOffset + wStride;
+			int w2 = w1 + wStride;
+			int w3 = w2 + wStride;
+			int upper = SPECIES.loopBound(length);
+			DoubleVector s0 = DoubleVector.zero(SPECIES);
+			DoubleVector s1 = DoubleVector.zero(SPECIES);
+			DoubleVector s2 = DoubleVector.zero(SPECIES);
+			DoubleVector s3 = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector v = DoubleVector.fromArray(SPECIES, x, xOffset+j);
+				s0 = s0.add(v.mul(DoubleVector.fromArray(SPECIES, w, wOffset+j)));
+				s1 = s1.add(v.mul(DoubleVector.fromArray(SPECIES, w, w1+j)));
+				s2 = s2.add(v.mul(DoubleVector.fromArray(SPECIES, w, w2+j)));
+				s3 = s3.add(v.mul(DoubleVector.fromArray(SPECIES, w, w3+j)));
+			}
+			double t0 = s0.reduceLanes(VectorOperators.ADD);
+			double t1 = s1.reduceLanes(VectorOperators.ADD);
+			double t2 = s2.reduceLanes(VectorOperators.ADD);
+			double t3 = s3.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				double v = x[xOffset+j];
+				t0 = t0 + (v*w[wOffset+j]);
+				t1 = t1 + (v*w[w1+j]);
+				t2 = t2 + (v*w[w2+j]);
+				t3 = t3 + (v*w[w3+j]);
+			}
+			sums[sumsOffset] = sums[sumsOffset] + t0;
+			sums[sumsOffset+1] = sums[sumsOffset+1] + t1;
+			sums[sumsOffset+2] = sums[sumsOffset+2] + t2;
+			sums[sumsOffset+3] = sums[sumsOffset+3] + t3;
+		}
+
+		public void axpy4(double a0, double a1, double a2, double a3, double[] x, int xOffset, int xStride,
+				double[] y, int yOffset, int length)
+		{
+			int x1 = xOffset + xStride;
+			int x2 = x1 + xStride;
+			int x3 = x2 + xStride;
+			int upper = SPECIES.loopBound(length);
+			DoubleVector b0 = DoubleVector.broadcast(SPECIES, a0);
+			DoubleVector b1 = DoubleVector.broadcast(SPECIES, a1);
+			DoubleVector b2 = DoubleVector.broadcast(SPECIES, a2);
+			DoubleVector b3 = DoubleVector.broadcast(SPECIES, a3);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector v = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				v = v.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(b0));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x1+j).mul(b1));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x2+j).mul(b2));
+				v = v.add(DoubleVector.fromArray(SPECIES, x, x3+j).mul(b3));
+				v.intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				double v = y[yOffset+j];
+				v = v + (a0*x[xOffset+j]);
+				v = v + (a1*x[x1+j]);
+				v = v + (a2*x[x2+j]);
+				v = v + (a3*x[x3+j]);
+				y[yOffset+j] = v;
+			}
+		}
+
+		public float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+		{
+			int upper = FLOATS.loopBound(length);
+			FloatVector sums = FloatVector.zero(FLOATS);
+			int j = 0;
+			for(; j<upper; j+=FLOATS.length())
+			{
+				FloatVector x = FloatVector.fromArray(FLOATS, a, aOffset+j);
+				FloatVector y = FloatVector.fromArray(FLOATS, b, bOffset+j);
+				sums = sums.add(x.mul(y));
+			}
+			float sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public double wideDot(float[] a, int aOffset, float[] b, int bOffset, int length)
+		{
+			int upper = HALF_FLOATS.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=HALF_FLOATS.length())
+			{
+				DoubleVector x = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, a, aOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				DoubleVector y = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, b, bOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + ((double) a[aOffset+j]*b[bOffset+j]);
+			}
+			return sum;
+		}
+
+		public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+		{
+			int upper = FLOATS.loopBound(length);
+			FloatVector a = FloatVector.broadcast(FLOATS, alpha);
+			int j = 0;
+			for(; j<upper; j+=FLOATS.length())
+			{
+				FloatVector sums = FloatVector.fromArray(FLOATS, y, yOffset+j);
+				sums.add(FloatVector.fromArray(FLOATS, x, xOffset+j).mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public void wideAxpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length)
+		{
+			int upper = HALF_FLOATS.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=HALF_FLOATS.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				DoubleVector values = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, x, xOffset+j).convertShape(VectorOperators.F2D, SPECIES, 0);
+				sums.add(values.mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x[xOffset+j]);
+			}
+		}
+
+		public double dot(double[] a, int aOffset, ByteBuffer b, int bIndex, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector sums = DoubleVector.zero(SPECIES);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset+j);
+				DoubleVector y = DoubleVector.fromByteBuffer(SPECIES, b, (bIndex+j)*8, ByteOrder.LITTLE_ENDIAN);
+				sums = sums.add(x.mul(y));
+			}
+			double sum = sums.reduceLanes(VectorOperators.ADD);
+			for(; j<length; j++)
+			{
+				sum = sum + (a[aOffset+j]*b.getDouble((bIndex+j)*8));
+			}
+			return sum;
+		}
+
+		public void axpy(double alpha, ByteBuffer x, int xIndex, double[] y, int yOffset, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				DoubleVector sums = DoubleVector.fromArray(SPECIES, y, yOffset+j);
+				DoubleVector values = DoubleVector.fromByteBuffer(SPECIES, x, (xIndex+j)*8, ByteOrder.LITTLE_ENDIAN);
+				sums.add(values.mul(a)).intoArray(y, yOffset+j);
+			}
+			for(; j<length; j++)
+			{
+				y[yOffset+j] = y[yOffset+j] + (alpha*x.getDouble((xIndex+j)*8));
+			}
+		}
+
+		public void axpy(double alpha, double[] x, int xOffset, ByteBuffer y, int yIndex, int length)
+		{
+			int upper = SPECIES.loopBound(length);
+			DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+			int j = 0;
+			for(; j<upper; j+=SPECIES.length())
+			{
+				int at = (yIndex+j)*8;
+				DoubleVector sums = DoubleVector.fromByteBuffer(SPECIES, y, at, ByteOrder.LITTLE_ENDIAN);
+				sums.add(DoubleVector.fromArray(SPECIES, x, xOffset+j).mul(a)).intoByteBuffer(y, at, ByteOrder.LITTLE_ENDIAN);
+			}
+			for(; j<length; j++)
+			{
+				int at = (yIndex+j)*8;
+				y.putDouble(at, y.getDouble(at) + (alpha*x[xOffset+j]));
+			}
+		}
+
+		public String toString()
+		{
+			return "vector512";
+		}
+	}
+}